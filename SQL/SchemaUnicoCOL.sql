@@ -9,6 +9,16 @@
 --  all'esistenza dell'entità o della relazione interessata dall'istruzione stessa
 --  Torre, Tue Jul  1 03:33:06 PM CEST 2025
 --  Torre, Wed Oct 29 10:49:48 CET 2025: aggiunta di un campo note, facoltativo, alla convenzione
+--  Torre, Sun Oct 18 2026: riallineamento delle sequenze SERIAL di convenzione e access_log,
+--  i cui id vengono ora assegnati dalle sequenze invece che da MAX(id)+1
+--  Torre, Sun Oct 18 2026: indice full-text (tsvector pesato, configurazione italiana)
+--  per la ricerca libera delle convenzioni
+--  Torre, Sun Oct 18 2026: indici sull'ordinamento di base di convenzioni e contraenti
+--  per la paginazione keyset degli elenchi
+--  Torre, Sun Oct 18 2026: vettore full-text con configurazione 'simple' sul testo normalizzato
+--  (minuscolo, senza accenti), come l'indice di ricerca in memoria dell'applicazione
+--  Torre, Sun Oct 18 2026: nomi dei contraenti nel vettore full-text, mantenuto da trigger
+--  anziche' generato, cosi' che la ricerca usi sempre l'indice GIN
 
 ------------------------------------------
 --          ENUMERATIVI DINAMICI        --
@@ -200,6 +210,56 @@ CREATE TABLE IF NOT EXISTS convenzione
     id_convenzione          INT                             REFERENCES convenzione (id) -- self-relationship
 );
 
+-- Rimozione degli accenti, per la normalizzazione della ricerca libera
+CREATE EXTENSION IF NOT EXISTS unaccent;
+
+-- Normalizzazione del testo della ricerca libera, identica a quella dell'indice
+-- di ricerca in memoria (it.col.db.ConventionIndex): minuscolo, senza accenti,
+-- parole separate da tutto cio' che non e' lettera o cifra.
+-- Dichiarata IMMUTABLE (indicando il dizionario) per poterla usare nella colonna generata
+CREATE OR REPLACE FUNCTION col_normalizza(testo TEXT) RETURNS TEXT AS
+$$ SELECT regexp_replace(lower(public.unaccent('public.unaccent', coalesce(testo, ''))), '[^[:alnum:]]+', ' ', 'g') $$
+LANGUAGE SQL IMMUTABLE PARALLEL SAFE;
+
+-- Vettore della ricerca libera, mantenuto dal database a ogni inserimento/aggiornamento.
+-- Configurazione 'simple' (senza radici ne' parole vuote) sul testo normalizzato:
+-- le parole coincidono con quelle dell'indice di ricerca in memoria.
+-- I campi sono pesati per rilevanza:
+-- A = titolo e numero di repertorio, B = informativa, C = note,
+-- D = note sulle date e nomi dei contraenti.
+-- Poiche' comprende i nomi dei contraenti, che stanno in altre tabelle, la colonna
+-- non puo' essere generata: la valorizzano i trigger definiti dopo contraente_convenzione
+-- (la colonna viene ricreata per aggiornarne la definizione)
+ALTER TABLE convenzione DROP COLUMN IF EXISTS indice_ricerca;
+ALTER TABLE convenzione ADD COLUMN indice_ricerca tsvector;
+
+-- Calcola il vettore della ricerca libera della convenzione che sta per essere
+-- inserita o aggiornata, compresi i nomi dei contraenti collegati
+CREATE OR REPLACE FUNCTION col_indice_ricerca() RETURNS TRIGGER AS
+$$
+BEGIN
+    NEW.indice_ricerca :=
+        setweight(to_tsvector('simple', col_normalizza(NEW.titolo)), 'A') ||
+        setweight(to_tsvector('simple', col_normalizza(NEW.num_repertorio)), 'A') ||
+        setweight(to_tsvector('simple', col_normalizza(NEW.informativa)), 'B') ||
+        setweight(to_tsvector('simple', col_normalizza(NEW.note)), 'C') ||
+        setweight(to_tsvector('simple', col_normalizza(coalesce(NEW.nota_approvazione, '') || ' ' ||
+                                                       coalesce(NEW.nota_approvazione2, '') || ' ' ||
+                                                       coalesce(NEW.nota_sottoscrizione, '') || ' ' ||
+                                                       coalesce(NEW.nota_scadenza, ''))), 'D') ||
+        setweight(to_tsvector('simple', col_normalizza((SELECT string_agg(P.nome, ' ')
+                                                        FROM contraente_convenzione CC
+                                                            INNER JOIN contraente P ON P.id = CC.id_contraente
+                                                        WHERE CC.id_convenzione = NEW.id))), 'D');
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS indice_ricerca_convenzione ON convenzione;
+CREATE TRIGGER indice_ricerca_convenzione
+    BEFORE INSERT OR UPDATE ON convenzione
+    FOR EACH ROW EXECUTE FUNCTION col_indice_ricerca();
+
 -- Ogni tupla rappresenta un contraente
 CREATE TABLE IF NOT EXISTS contraente
 (
@@ -260,6 +320,39 @@ CREATE TABLE IF NOT EXISTS contraente_convenzione
     PRIMARY KEY (id_convenzione, id_contraente)
 );
 
+-- Ricalcolo del vettore della ricerca libera (v. col_indice_ricerca) delle convenzioni
+-- i cui contraenti sono cambiati: l'aggiornamento fittizio attiva il trigger sulla convenzione
+CREATE OR REPLACE FUNCTION col_indice_ricerca_contraenti() RETURNS TRIGGER AS
+$$
+BEGIN
+    IF TG_TABLE_NAME = 'contraente' THEN
+        UPDATE convenzione SET indice_ricerca = NULL
+        WHERE id IN (SELECT id_convenzione FROM contraente_convenzione WHERE id_contraente = NEW.id);
+    ELSE
+        IF TG_OP IN ('INSERT', 'UPDATE') THEN
+            UPDATE convenzione SET indice_ricerca = NULL WHERE id = NEW.id_convenzione;
+        END IF;
+        IF TG_OP IN ('DELETE', 'UPDATE') THEN
+            UPDATE convenzione SET indice_ricerca = NULL WHERE id = OLD.id_convenzione;
+        END IF;
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS indice_ricerca_contraenteconvenzione ON contraente_convenzione;
+CREATE TRIGGER indice_ricerca_contraenteconvenzione
+    AFTER INSERT OR UPDATE OR DELETE ON contraente_convenzione
+    FOR EACH ROW EXECUTE FUNCTION col_indice_ricerca_contraenti();
+
+DROP TRIGGER IF EXISTS indice_ricerca_contraente ON contraente;
+CREATE TRIGGER indice_ricerca_contraente
+    AFTER UPDATE OF nome ON contraente
+    FOR EACH ROW EXECUTE FUNCTION col_indice_ricerca_contraenti();
+
+-- Valorizza il vettore della ricerca libera delle convenzioni esistenti
+UPDATE convenzione SET indice_ricerca = NULL;
+
 -- Relazione tra convenzione e persona.
 -- Il referente NON è parte integrante di una convenzione.
 -- Ciò significa che ha date di inizio e fine associazione indipendenti da quelle della convenzione,
@@ -354,10 +447,13 @@ CREATE INDEX IF NOT EXISTS id_convenzione_tipoconvenzione_index ON convenzione (
 CREATE INDEX IF NOT EXISTS id_convenzione_statoconvenzione_index ON convenzione (id_stato);
 CREATE INDEX IF NOT EXISTS id_convenzione_convenzione_index ON convenzione (id_convenzione); -- self-relationship    
 -- CREATE INDEX IF NOT EXISTS id_convenzione_finalita_index ON convenzione (id_scopo);
+CREATE INDEX IF NOT EXISTS indicericerca_convenzione_index ON convenzione USING GIN (indice_ricerca); -- ricerca libera
+CREATE INDEX IF NOT EXISTS ordinamento_convenzione_index ON convenzione (ordinale, data_scadenza, id); -- paginazione keyset
 
 -- INDEXES ON contraente
 CREATE INDEX IF NOT EXISTS id_contraente_usr_index ON contraente (id_usr_ultima_modifica);
 CREATE INDEX IF NOT EXISTS id_contraente_tipocontraente_index ON contraente (id_tipo);
+CREATE INDEX IF NOT EXISTS ordinamento_contraente_index ON contraente (ordinale, nome, id); -- paginazione keyset
 
 -- INDEXES ON relazione tra convenzione e finalità
 CREATE INDEX IF NOT EXISTS id_convenzionefinalita_usr_index ON convenzione_finalita (id_usr_ultima_modifica);
@@ -390,3 +486,14 @@ CREATE INDEX IF NOT EXISTS id_belongs_grp_index ON belongs (id_grp);
 CREATE INDEX IF NOT EXISTS id_convenzionegrp_convenzione_index ON convenzione_grp (id_convenzione);
 CREATE INDEX IF NOT EXISTS id_convenzionegrp_grp_index ON convenzione_grp (id_grp);
 CREATE INDEX IF NOT EXISTS id_convenzionegrp_usr_index ON convenzione_grp (id_usr_ultima_modifica);
+
+------------------------------------------
+--              SEQUENZE                --
+------------------------------------------
+
+-- Gli id di convenzione e access_log sono assegnati dalle sequenze SERIAL
+-- (INSERT ... RETURNING id); le tuple inserite in passato con id esplicito
+-- (MAX(id)+1) non hanno fatto avanzare le sequenze, che vanno quindi
+-- riallineate al massimo id presente. L'istruzione e' idempotente.
+SELECT setval(pg_get_serial_sequence('convenzione', 'id'), COALESCE(MAX(id), 0) + 1, false) FROM convenzione;
+SELECT setval(pg_get_serial_sequence('access_log', 'id'), COALESCE(MAX(id), 0) + 1, false) FROM access_log;
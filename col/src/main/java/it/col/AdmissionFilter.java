@@ -0,0 +1,576 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import it.col.bean.PersonBean;
+import it.col.util.Constants;
+
+
+/**
+ * <p><code>AdmissionFilter</code> &egrave; il filtro della web-application col
+ * che controlla l'ammissione delle richieste dinamiche (quelle servite da
+ * {@link Main} e da {@link Data}), rifiutando subito il lavoro in eccesso
+ * invece di lasciarlo accodare in attesa delle connessioni del pool
+ * <code>jdbc/col</code>.</p>
+ * <p>Il numero di richieste ammesse contemporaneamente &egrave; un limite
+ * adattivo, stimato con l'algoritmo del gradiente sui tempi di risposta
+ * (dominati dall'accesso al database): il limite cresce finch&eacute;
+ * la latenza recente resta vicina a quella di riferimento (una media
+ * di lungo periodo) e si riduce in proporzione quando la latenza sale;
+ * le richieste terminate con errore (5xx o timeout) lo riducono
+ * in modo moltiplicativo (AIMD).</p>
+ * <p>Le richieste oltre il limite ricevono 503 (Service Unavailable);
+ * quelle di un client che ha gi&agrave; troppe richieste in corso ricevono
+ * 429 (Too Many Requests). Il client &egrave; l'utente autenticato
+ * o, prima della login, la sessione; le richieste senza sessione
+ * sono invece raggruppate per indirizzo, per cui tutti i client
+ * dietro lo stesso proxy o NAT condividono un unico limite
+ * (<code>anonymousLimit</code>, pi&ugrave; ampio).
+ * In entrambi i casi la risposta ha l'header <code>Retry-After</code>
+ * e usa le pagine di errore configurate in <code>web.xml</code>.
+ * Le risorse statiche, il logout e il monitoraggio non sono mai rifiutati.</p>
+ * <p>Parametri di inizializzazione:<ul>
+ * <li><code>initialLimit</code>: limite iniziale (default: 16)</li>
+ * <li><code>minLimit</code>: limite minimo (default: 4)</li>
+ * <li><code>maxLimit</code>: limite massimo (default: 64)</li>
+ * <li><code>clientLimit</code>: richieste in corso per utente o sessione (default: 6)</li>
+ * <li><code>anonymousLimit</code>: richieste in corso per indirizzo,
+ * senza sessione (default: 32)</li>
+ * <li><code>exempt</code>: prefissi dei percorsi mai rifiutati,
+ * separati da virgole</li>
+ * </ul></p>
+ * <p>Lo stato del limite &egrave; riportato dalla pagina
+ * di monitoraggio (<code>data?op=mon</code>).</p>
+ *
+ * <p>Created on Sun Oct 18 2026</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public class AdmissionFilter implements Filter {
+
+    /**
+     * Static name of this class
+     */
+    private static final String FOR_NAME = "\n" + Logger.getLogger(AdmissionFilter.class.getName()) + Constants.COLON + Constants.BLANK_SPACE;
+    /**
+     * All logging goes through this logger.
+     */
+    private static Logger log = Logger.getLogger(AdmissionFilter.class.getName());
+    /**
+     * Name of the context attribute holding the filter
+     */
+    public static final String ATTRIBUTE = AdmissionFilter.class.getName();
+    /**
+     * Paths never rejected when not configured
+     */
+    private static final String DEFAULT_EXEMPT = "/assets/,/vendor/,/html/,/auth";
+    /**
+     * Number of samples of the long-term (reference) latency average
+     */
+    private static final double LONG_WINDOW = 100.0;
+    /**
+     * Number of samples of the short-term (recent) latency average
+     */
+    private static final double SHORT_WINDOW = 10.0;
+    /**
+     * Ratio of the recent latency to the reference one still tolerated
+     */
+    private static final double TOLERANCE = 1.5;
+    /**
+     * Weight of each new estimate of the limit
+     */
+    private static final double SMOOTHING = 0.2;
+    /**
+     * Multiplicative decrease of the limit on errors and timeouts
+     */
+    private static final double BACKOFF = 0.9;
+    /**
+     * Maximum value of the Retry-After header, in seconds
+     */
+    private static final long MAX_RETRY_AFTER = 30L;
+    /**
+     * Prefix of the keys of the clients identified by address only
+     */
+    private static final String ADDRESS = "addr:";
+    /**
+     * Lower bound of the limit
+     */
+    private int minLimit = 4;
+    /**
+     * Upper bound of the limit
+     */
+    private int maxLimit = 64;
+    /**
+     * Maximum requests in flight for a single client
+     */
+    private int clientLimit = 6;
+    /**
+     * Maximum requests in flight for an address, without a session
+     */
+    private int anonymousLimit = 32;
+    /**
+     * Prefixes of the paths never rejected
+     */
+    private final List<String> exempt = new ArrayList<>();
+    /**
+     * Current limit (guarded by this)
+     */
+    private double limit = 16;
+    /**
+     * Long-term average of the latency, in nanoseconds (guarded by this)
+     */
+    private double longRtt;
+    /**
+     * Short-term average of the latency, in nanoseconds (guarded by this)
+     */
+    private double shortRtt;
+    /**
+     * Requests in flight
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * Requests in flight per client
+     */
+    private final ConcurrentHashMap<String, Integer> clients = new ConcurrentHashMap<>();
+    /**
+     * Requests admitted
+     */
+    private final LongAdder admitted = new LongAdder();
+    /**
+     * Requests not subject to the limit
+     */
+    private final LongAdder exempted = new LongAdder();
+    /**
+     * Requests rejected because of the global limit (503)
+     */
+    private final LongAdder overloaded = new LongAdder();
+    /**
+     * Requests rejected because of the limit per client (429)
+     */
+    private final LongAdder throttled = new LongAdder();
+    /**
+     * Requests ended with an error or a timeout
+     */
+    private final LongAdder dropped = new LongAdder();
+
+
+    /* (non-Javadoc)
+     * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
+     */
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+        minLimit = getIntParameter(config, "minLimit", minLimit, 1);
+        maxLimit = getIntParameter(config, "maxLimit", maxLimit, minLimit);
+        clientLimit = getIntParameter(config, "clientLimit", clientLimit, 1);
+        anonymousLimit = getIntParameter(config, "anonymousLimit", anonymousLimit, 1);
+        limit = Math.min(maxLimit, getIntParameter(config, "initialLimit", (int) limit, minLimit));
+        String paths = config.getInitParameter("exempt");
+        for (String path : (paths == null ? DEFAULT_EXEMPT : paths).split(",")) {
+            if (!path.isBlank()) {
+                exempt.add(path.trim());
+            }
+        }
+        config.getServletContext().setAttribute(ATTRIBUTE, this);
+    }
+
+
+    /**
+     * <p>Admits the request, if within the limits, and records
+     * its latency once completed, even asynchronously;
+     * otherwise rejects it at once with 503 or 429.</p>
+     *
+     * @param req   the request
+     * @param res   the response
+     * @param chain the rest of the chain
+     * @throws IOException      if a problem occurs in writing the response
+     * @throws ServletException if a problem occurs in the chain
+     */
+    @Override
+    public void doFilter(ServletRequest req,
+                         ServletResponse res,
+                         FilterChain chain)
+                  throws IOException, ServletException {
+        if (!(req instanceof HttpServletRequest) || isExempt((HttpServletRequest) req)) {
+            exempted.increment();
+            chain.doFilter(req, res);
+            return;
+        }
+        HttpServletResponse response = (HttpServletResponse) res;
+        if (inFlight.incrementAndGet() > getLimit()) {
+            inFlight.decrementAndGet();
+            overloaded.increment();
+            reject(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        String client = getClient((HttpServletRequest) req);
+        int share = client.startsWith(ADDRESS) ? anonymousLimit : clientLimit;
+        if (clients.merge(client, 1, Integer::sum) > share) {
+            release(client);
+            inFlight.decrementAndGet();
+            throttled.increment();
+            reject(response, 429);  // Too Many Requests
+            return;
+        }
+        admitted.increment();
+        Admission admission = new Admission(client, inFlight.get(), System.nanoTime());
+        // The executor, if it takes the request, releases it when the work actually ends
+        req.setAttribute(CommandExecutor.ON_FINISH, admission);
+        boolean async = false;
+        try {
+            chain.doFilter(req, res);
+            async = req.isAsyncStarted();
+        } catch (IOException | ServletException | RuntimeException e) {
+            admission.failed = true;
+            throw e;
+        } finally {
+            boolean taken = req.getAttribute(CommandExecutor.ON_FINISH) == null;
+            req.removeAttribute(CommandExecutor.ON_FINISH);
+            if (taken) {
+                // Released by CommandExecutor, even after the timeout of the request
+            } else if (async) {
+                // Asynchronous without the executor: released on completion
+                req.getAsyncContext().addListener(new AdmissionListener(admission));
+            } else {
+                admission.complete(response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+
+    /* (non-Javadoc)
+     * @see javax.servlet.Filter#destroy()
+     */
+    @Override
+    public void destroy() {
+        // Nothing to release
+    }
+
+
+    /**
+     * <p>Returns the current limit of the requests in flight.</p>
+     *
+     * @return <code>int</code> - the current limit
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+
+    /**
+     * <p>Returns the state of the limiter, as plain text,
+     * to be appended to the monitoring report.</p>
+     *
+     * @return <code>String</code> - the state of the limiter
+     */
+    public String getReport() {
+        long longMicros, shortMicros;
+        synchronized (this) {
+            longMicros = (long) (longRtt / 1000);
+            shortMicros = (long) (shortRtt / 1000);
+        }
+        return "# Controllo di ammissione\n" +
+               "  limit=" + getLimit() +
+               " inFlight=" + inFlight.get() +
+               " clients=" + clients.size() +
+               " rttLong=" + longMicros + "us" +
+               " rttShort=" + shortMicros + "us\n" +
+               "  admitted=" + admitted.sum() +
+               " exempt=" + exempted.sum() +
+               " rejected503=" + overloaded.sum() +
+               " rejected429=" + throttled.sum() +
+               " dropped=" + dropped.sum() + "\n";
+    }
+
+
+    /**
+     * <p>Returns the filter registered in a context,
+     * or null if it has not been initialized.</p>
+     *
+     * @param context the servlet context
+     * @return <code>AdmissionFilter</code> - the filter, or null
+     */
+    public static AdmissionFilter getInstance(ServletContext context) {
+        return (AdmissionFilter) context.getAttribute(ATTRIBUTE);
+    }
+
+
+    /**
+     * <p>Updates the limit with the latency of a completed request.</p>
+     * <p>Errors and timeouts decrease the limit multiplicatively.
+     * Otherwise the new limit is the current one scaled by the gradient
+     * between the reference latency and the recent one (between 0.5 and 1)
+     * plus a small allowance to probe for more capacity; it grows only
+     * while the requests in flight actually use at least half of it.</p>
+     *
+     * @param rtt      latency of the request, in nanoseconds
+     * @param inFlight requests in flight when the request was admitted
+     * @param failed   true if the request ended with an error or a timeout
+     */
+    synchronized void onSample(long rtt,
+                               int inFlight,
+                               boolean failed) {
+        if (failed) {
+            dropped.increment();
+            limit = Math.max(minLimit, limit * BACKOFF);
+            return;
+        }
+        if (longRtt == 0) {
+            longRtt = shortRtt = rtt;
+        } else {
+            longRtt += (rtt - longRtt) / LONG_WINDOW;
+            shortRtt += (rtt - shortRtt) / SHORT_WINDOW;
+        }
+        // The latency dropped well below the reference: let the reference follow faster
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        if (inFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double estimate = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + estimate * SMOOTHING));
+    }
+
+
+    /**
+     * <p>Tells whether a request is never rejected:
+     * static resources, logout and monitoring.</p>
+     *
+     * @param req the request
+     * @return <code>boolean</code> - true if the request is not subject to the limit
+     */
+    private boolean isExempt(HttpServletRequest req) {
+        String path = req.getServletPath() + (req.getPathInfo() == null ? Constants.VOID_STRING : req.getPathInfo());
+        for (String prefix : exempt) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return "/data".equals(req.getServletPath()) && Constants.MONITOR.equals(req.getParameter("op"));
+    }
+
+
+    /**
+     * <p>Returns the key identifying the client of a request:
+     * the logged user, if any, otherwise its session,
+     * otherwise its address (shared by the clients behind
+     * the same proxy or NAT).</p>
+     *
+     * @param req the request
+     * @return <code>String</code> - the key of the client
+     */
+    private static String getClient(HttpServletRequest req) {
+        HttpSession session = req.getSession(false);
+        if (session == null) {
+            return ADDRESS + req.getRemoteAddr();
+        }
+        try {
+            Object user = session.getAttribute("usr");
+            if (user instanceof PersonBean) {
+                return "usr:" + ((PersonBean) user).getUsrId();
+            }
+        } catch (IllegalStateException ise) {
+            // Session invalidated meanwhile: the session id still identifies the client
+        }
+        return "ses:" + session.getId();
+    }
+
+
+    /**
+     * <p>Decrements the requests in flight of a client,
+     * forgetting it when none is left.</p>
+     *
+     * @param client the key of the client
+     */
+    private void release(String client) {
+        clients.computeIfPresent(client, (k, n) -> (n > 1 ? n - 1 : null));
+    }
+
+
+    /**
+     * <p>Rejects a request with the given status and
+     * a <code>Retry-After</code> of about two recent latencies.</p>
+     *
+     * @param res    the response
+     * @param status 503 or 429
+     * @throws IOException if a problem occurs in writing the response
+     */
+    private void reject(HttpServletResponse res,
+                        int status)
+                 throws IOException {
+        double rtt;
+        synchronized (this) {
+            rtt = shortRtt;
+        }
+        long seconds = Math.max(1L, Math.min(MAX_RETRY_AFTER, (long) Math.ceil(2 * rtt / 1e9)));
+        res.setHeader("Retry-After", String.valueOf(seconds));
+        res.sendError(status);
+    }
+
+
+    /**
+     * <p>Returns a positive integer init parameter, or its default
+     * if missing or not valid.</p>
+     *
+     * @param config       the configuration of the filter
+     * @param name         name of the parameter
+     * @param defaultValue default value
+     * @param min          minimum value
+     * @return <code>int</code> - the value of the parameter
+     */
+    private static int getIntParameter(FilterConfig config,
+                                       String name,
+                                       int defaultValue,
+                                       int min) {
+        String value = config.getInitParameter(name);
+        if (value != null) {
+            try {
+                return Math.max(min, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException nfe) {
+                log.warning(FOR_NAME + "Parametro " + name + " non valido (" + value + "): viene usato il default.\n");
+            }
+        }
+        return Math.max(min, defaultValue);
+    }
+
+
+    /* ********************************************************** *
+     *                    Richieste ammesse                       *
+     * ********************************************************** */
+    /**
+     * <p>An admitted request, released exactly once when its work ends.</p>
+     */
+    private final class Admission implements Consumer<Boolean> {
+        final String client;
+        final int inFlightAtStart;
+        final long start;
+        final AtomicBoolean released = new AtomicBoolean();
+        volatile boolean failed;
+
+        Admission(String client,
+                  int inFlightAtStart,
+                  long start) {
+            this.client = client;
+            this.inFlightAtStart = inFlightAtStart;
+            this.start = start;
+        }
+
+        /**
+         * <p>Releases the request and records its latency.</p>
+         *
+         * @param error true if the request ended with a server error or a timeout
+         */
+        void complete(boolean error) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            release(client);
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - start, inFlightAtStart, failed || error);
+        }
+
+        /**
+         * <p>Called by {@link CommandExecutor} when the work ends.</p>
+         *
+         * @param error true if the work failed, was rejected or timed out
+         */
+        @Override
+        public void accept(Boolean error) {
+            complete(error.booleanValue());
+        }
+    }
+
+
+    /**
+     * <p>Releases an admitted request run in async mode
+     * without the {@link CommandExecutor}.</p>
+     */
+    private static final class AdmissionListener implements AsyncListener {
+        private final Admission admission;
+
+        AdmissionListener(Admission admission) {
+            this.admission = admission;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            HttpServletResponse res = (HttpServletResponse) event.getAsyncContext().getResponse();
+            admission.complete(res.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            admission.failed = true;
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            admission.failed = true;
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Nothing to do
+        }
+    }
+
+}
@@ -0,0 +1,694 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import it.col.util.Constants;
+import it.col.util.Utils;
+
+
+/**
+ * <p><code>AssetServlet</code> &egrave; la servlet della web-application col
+ * che serve le risorse statiche (fogli di stile, script, immagini, font)
+ * contenute nelle directory <code>assets/</code> e <code>vendor/</code>,
+ * al posto della servlet di default del container.</p>
+ * <p>Rispetto alla servlet di default:<ul>
+ * <li>ogni risorsa pu&ograve; essere richiesta attraverso un URL
+ * che contiene un'impronta del suo contenuto
+ * (p.es. <code>assets/css/col.1a2b3c4d5e.css</code>); a tali URL,
+ * che cambiano quando il contenuto cambia, viene associata una cache
+ * di un anno marcata <code>immutable</code>, per cui il browser
+ * non li richiede pi&ugrave; n&eacute; li rivalida;</li>
+ * <li>le pagine ottengono gli URL con l'impronta dalla mappa
+ * esposta nel contesto con il nome <code>assets</code>
+ * (p.es. <code>${assets['vendor/jquery/jquery.min.js']}</code>);</li>
+ * <li>le risorse richieste senza impronta (p.es. i font e le immagini
+ * referenziati dai fogli di stile) vengono rivalidate a ogni uso,
+ * con ETag e Last-Modified;</li>
+ * <li>ai client che lo accettano vengono inviate le varianti
+ * precompresse: quella brotli, se accanto alla risorsa c'&egrave;
+ * il file <code>.br</code> prodotto in fase di build, altrimenti
+ * quella gzip, letta dal file <code>.gz</code> accanto alla risorsa
+ * o generata alla prima richiesta nella directory temporanea
+ * del contesto (solo per i tipi di contenuto testuali);</li>
+ * <li>il file viene trasferito senza copie in memoria: con il
+ * <em>sendfile</em> del container, se disponibile, altrimenti
+ * con <code>FileChannel.transferTo</code>;</li>
+ * <li>come la servlet di default, le richieste di un singolo intervallo
+ * di byte (<code>Range</code>, p.es. per riprendere uno scaricamento)
+ * ricevono la porzione richiesta del file originale;
+ * le richieste di pi&ugrave; intervalli ricevono l'intero file.</li>
+ * </ul></p>
+ * <p>Descrittori delle risorse e URL con impronta vengono calcolati
+ * alla prima richiesta e poi riusati senza accedere al file system:
+ * le risorse cambiano solo con un nuovo deploy, che riavvia il contesto.
+ * Solo in sviluppo (init-param <code>devMode</code>) ogni uso verifica
+ * se il file &egrave; cambiato.</p>
+ * <p>Se l'applicazione non &egrave; espansa su file system
+ * (e le risorse non hanno quindi un percorso reale),
+ * le richieste vengono inoltrate alla servlet di default.</p>
+ *
+ * <p>Created on Sun Oct 18 2026</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public class AssetServlet extends HttpServlet {
+
+    /**
+     * Serialization requires the declaration
+     * of a long constant identifying the serial version.
+     */
+    private static final long serialVersionUID = 4211917052305373208L;
+    /**
+     * Static name of this class
+     */
+    private static final String FOR_NAME = "\n" + Logger.getLogger(AssetServlet.class.getName()) + Constants.COLON + Constants.BLANK_SPACE;
+    /**
+     * All logging goes through this logger.
+     */
+    private static Logger log = Logger.getLogger(AssetServlet.class.getName());
+    /**
+     * Name of the context attribute exposing the fingerprinted URLs
+     */
+    public static final String ASSETS = "assets";
+    /**
+     * Directories served by this servlet
+     */
+    private static final String[] DIRECTORIES = { "assets", "vendor" };
+    /**
+     * Number of hexadecimal digits of the fingerprint
+     */
+    private static final int FINGERPRINT_LENGTH = 10;
+    /**
+     * Fingerprinted file name: base name, fingerprint, extension
+     */
+    private static final Pattern FINGERPRINTED = Pattern.compile("^(.+)\\.([0-9a-f]{" + FINGERPRINT_LENGTH + "})(\\.[^./]+)$");
+    /**
+     * Cache policy of fingerprinted URLs: they never change
+     */
+    private static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+    /**
+     * Cache policy of plain URLs: stored, but always revalidated
+     */
+    private static final String CACHE_REVALIDATE = "public, no-cache";
+    /**
+     * Request attribute set by Tomcat when sendfile is available
+     */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    /**
+     * Request attributes asking Tomcat to send a file
+     */
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    /**
+     * Single byte range: first and last byte, either of which may be missing
+     */
+    private static final Pattern BYTE_RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+    /**
+     * Real path of the web application root, null if not expanded
+     */
+    private Path root;
+    /**
+     * Directory where the generated gzip variants are written
+     */
+    private Path gzipDir;
+    /**
+     * Descriptors of the assets already requested, by relative path
+     */
+    private final ConcurrentHashMap<String, Asset> catalog = new ConcurrentHashMap<>();
+    /**
+     * Fingerprinted URLs already computed, by path
+     */
+    private final ConcurrentHashMap<String, String> urls = new ConcurrentHashMap<>();
+    /**
+     * Flag of development mode: the assets are checked for changes at every use
+     */
+    private boolean devMode = false;
+
+
+    /**
+     * <p>Finds the real path of the web application and exposes
+     * to the pages the map of the fingerprinted URLs.</p>
+     *
+     * @param config the configuration used by the servlet container to pass information to the Servlet during the initialization
+     * @throws ServletException exception that can be raised in case of trouble
+     */
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        devMode = Boolean.parseBoolean(config.getInitParameter("devMode"));
+        ServletContext context = getServletContext();
+        String realPath = context.getRealPath("/");
+        if (realPath == null) {
+            log.warning(FOR_NAME + "Applicazione non espansa su file system: le risorse statiche vengono servite dalla servlet di default.\n");
+        } else {
+            root = Paths.get(realPath).toAbsolutePath().normalize();
+            Object tempDir = context.getAttribute(ServletContext.TEMPDIR);
+            try {
+                gzipDir = Files.createDirectories(tempDir instanceof java.io.File ?
+                                                  ((java.io.File) tempDir).toPath().resolve("assets-gz") :
+                                                  Files.createTempDirectory("col-assets-gz"));
+            } catch (IOException ioe) {
+                log.log(Level.WARNING, FOR_NAME + "Impossibile creare la directory delle varianti compresse: verranno servite solo quelle precalcolate.\n", ioe);
+            }
+        }
+        context.setAttribute(ASSETS, new Fingerprints());
+    }
+
+
+    /**
+     * <p>Serves a static resource, choosing the best encoding accepted
+     * by the client and the cache policy depending on the URL.</p>
+     *
+     * @param req HttpServletRequest containing the client request
+     * @param res HttpServletResponse containing the server response
+     * @throws ServletException exception that is raised if a problem occurs in forwarding the request/response
+     * @throws IOException      exception that is raised if a problem occurs in sending the response
+     */
+    @Override
+    public void doGet(HttpServletRequest req,
+                      HttpServletResponse res)
+               throws ServletException, IOException {
+        if (root == null) {
+            RequestDispatcher rd = getServletContext().getNamedDispatcher("default");
+            rd.forward(req, res);
+            return;
+        }
+        String path = req.getServletPath() + (req.getPathInfo() == null ? "" : req.getPathInfo());
+        boolean immutable = false;
+        Asset asset = lookup(path);
+        if (asset == null) {
+            // Maybe a fingerprinted URL: look for the original name
+            Matcher m = FINGERPRINTED.matcher(path);
+            if (m.matches()) {
+                asset = lookup(m.group(1) + m.group(3));
+                // A stale fingerprint gets the current content, but cannot be cached forever
+                immutable = asset != null && asset.fingerprint.equals(m.group(2));
+            }
+        }
+        if (asset == null) {
+            res.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // Choose the variant: each one has its own entity tag; byte ranges refer to the original file
+        Path file = asset.file;
+        String encoding = null;
+        String range = req.getHeader("Range");
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (range == null) {
+            if (asset.brotli != null && Utils.acceptsEncoding(acceptEncoding, "br")) {
+                file = asset.brotli;
+                encoding = "br";
+            } else if (asset.gzip != null && Utils.acceptsEncoding(acceptEncoding, "gzip")) {
+                file = asset.gzip;
+                encoding = "gzip";
+            }
+        }
+        String etag = '"' + asset.fingerprint + (encoding == null ? "" : "-" + encoding) + '"';
+        res.setHeader("Cache-Control", immutable ? CACHE_IMMUTABLE : CACHE_REVALIDATE);
+        res.setHeader("ETag", etag);
+        res.setDateHeader("Last-Modified", asset.lastModified);
+        res.setHeader("Accept-Ranges", "bytes");
+        if (asset.gzip != null || asset.brotli != null) {
+            res.setHeader("Vary", "Accept-Encoding");
+        }
+        if (isNotModified(req, etag, asset.lastModified)) {
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (encoding != null) {
+            res.setHeader("Content-Encoding", encoding);
+        }
+        res.setContentType(asset.contentType);
+        if (range != null && isRangeApplicable(req, etag, asset.lastModified)) {
+            long[] bytes = parseRange(range, asset.length);
+            if (bytes != null && bytes.length == 0) {
+                res.setHeader("Content-Range", "bytes */" + asset.length);
+                res.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bytes != null) {
+                res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                res.setHeader("Content-Range", "bytes " + bytes[0] + "-" + bytes[1] + "/" + asset.length);
+                send(req, res, file, bytes[0], bytes[1] + 1);
+                return;
+            }
+        }
+        send(req, res, file, 0L, Files.size(file));
+    }
+
+
+    /**
+     * <p>Returns the descriptor of an asset, given its path relative
+     * to the web application root (with the leading slash),
+     * building it at the first request (in development mode,
+     * also when the file has changed); returns null if the file
+     * does not exist or is outside the directories served.</p>
+     *
+     * @param path path of the asset, e.g. <code>/assets/css/col.css</code>
+     * @return <code>Asset</code> - the descriptor of the asset, or null
+     * @throws IOException if the file cannot be read
+     */
+    private Asset lookup(String path)
+                  throws IOException {
+        Asset known = catalog.get(path);
+        if (known != null && !devMode) {
+            return known;
+        }
+        Path file = root.resolve(path.substring(1)).normalize();
+        if (!isServed(file) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        long length = Files.size(file);
+        Asset asset = known;
+        if (asset == null || asset.lastModified != lastModified / 1000L * 1000L || asset.length != length) {
+            asset = new Asset(file, lastModified, length);
+            catalog.put(path, asset);
+        }
+        return asset;
+    }
+
+
+    /**
+     * <p>Returns true if a file lies in one of the directories served.</p>
+     *
+     * @param file absolute and normalized path of the file
+     * @return <code>boolean</code> - true if the file can be served
+     */
+    private boolean isServed(Path file) {
+        for (String dir : DIRECTORIES) {
+            if (file.startsWith(root.resolve(dir))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * <p>Returns true if the copy held by the client is still valid.</p>
+     *
+     * @param req          HttpServletRequest containing the conditional headers
+     * @param etag         entity tag of the variant to send
+     * @param lastModified last modification time of the asset
+     * @return <code>boolean</code> - true if a 304 response can be sent
+     */
+    private static boolean isNotModified(HttpServletRequest req,
+                                         String etag,
+                                         long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            return req.getDateHeader("If-Modified-Since") >= lastModified;
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
+    }
+
+
+    /**
+     * <p>Returns true if the Range header of a request has to be honoured,
+     * i.e. if it is a GET without If-Range or with an If-Range
+     * matching the entity tag or the last modification time
+     * of the asset.</p>
+     *
+     * @param req          HttpServletRequest containing the conditional headers
+     * @param etag         entity tag of the original file
+     * @param lastModified last modification time of the asset
+     * @return <code>boolean</code> - true if only the range requested has to be sent
+     */
+    private static boolean isRangeApplicable(HttpServletRequest req,
+                                             String etag,
+                                             long lastModified) {
+        if (!"GET".equals(req.getMethod())) {
+            return false;
+        }
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.trim().startsWith("\"") || ifRange.trim().startsWith("W/")) {
+            return ifRange.trim().equals(etag);
+        }
+        try {
+            return req.getDateHeader("If-Range") == lastModified;
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
+    }
+
+
+    /**
+     * <p>Parses a Range header asking for a single range of bytes
+     * (<code>bytes=first-last</code>, <code>bytes=first-</code>
+     * or <code>bytes=-suffix</code>).</p>
+     *
+     * @param range  value of the Range header
+     * @param length size of the file
+     * @return <code>long[]</code> - first and last byte (inclusive); an empty array
+     *                               if the range cannot be satisfied; null if the header
+     *                               is malformed or asks for more ranges, so the whole file is sent
+     */
+    private static long[] parseRange(String range,
+                                     long length) {
+        Matcher m = BYTE_RANGE.matcher(range.trim());
+        if (!m.matches() || (m.group(1).isEmpty() && m.group(2).isEmpty())) {
+            return null;
+        }
+        try {
+            long first, last;
+            if (m.group(1).isEmpty()) {
+                // Last bytes of the file
+                long suffix = Long.parseLong(m.group(2));
+                if (suffix == 0L) {
+                    return new long[0];
+                }
+                first = Math.max(length - suffix, 0L);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(m.group(1));
+                last = m.group(2).isEmpty() ? length - 1 : Math.min(Long.parseLong(m.group(2)), length - 1);
+                if (last < first) {
+                    return (m.group(2).isEmpty() || Long.parseLong(m.group(2)) >= first) ? new long[0] : null;
+                }
+            }
+            return (first >= length ? new long[0] : new long[] { first, last });
+        } catch (NumberFormatException nfe) {
+            // Too many digits
+            return null;
+        }
+    }
+
+
+    /**
+     * <p>Writes a portion of a file to the response without copying it in memory:
+     * through the sendfile of the container, if available,
+     * otherwise transferring it from its channel to the response.</p>
+     *
+     * @param req   HttpServletRequest containing the sendfile support flag
+     * @param res   HttpServletResponse where to write the file
+     * @param file  the file to send
+     * @param start first byte to send
+     * @param end   byte following the last one to send
+     * @throws IOException if a problem occurs reading the file or writing the response
+     */
+    private static void send(HttpServletRequest req,
+                             HttpServletResponse res,
+                             Path file,
+                             long start,
+                             long end)
+                      throws IOException {
+        res.setContentLengthLong(end - start);
+        if ("HEAD".equals(req.getMethod())) {
+            return;
+        }
+        if (Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+            req.setAttribute(SENDFILE_FILENAME, file.toString());
+            req.setAttribute(SENDFILE_START, Long.valueOf(start));
+            req.setAttribute(SENDFILE_END, Long.valueOf(end));
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            OutputStream out = res.getOutputStream();
+            WritableByteChannel channel = Channels.newChannel(out);
+            long position = start;
+            while (position < end) {
+                long sent = in.transferTo(position, end - position, channel);
+                if (sent <= 0L) {
+                    break;
+                }
+                position += sent;
+            }
+        }
+    }
+
+
+    /**
+     * <p>Returns the fingerprint of the content of a file:
+     * the first digits of its SHA-256 hash.</p>
+     *
+     * @param file the file
+     * @return <code>String</code> - the fingerprint
+     * @throws IOException if the file cannot be read
+     */
+    private static String fingerprint(Path file)
+                               throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder hex = new StringBuilder(FINGERPRINT_LENGTH);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+                if (hex.length() >= FINGERPRINT_LENGTH) {
+                    break;
+                }
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+
+    /**
+     * <p>Returns true if a content type is worth compressing.</p>
+     *
+     * @param contentType the content type
+     * @return <code>boolean</code> - true for textual contents
+     */
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") ||
+               contentType.contains("javascript") ||
+               contentType.contains("json") ||
+               contentType.contains("xml") ||
+               contentType.equals("image/svg+xml") ||
+               contentType.equals("application/vnd.ms-fontobject") ||
+               contentType.equals("font/ttf");
+    }
+
+
+    /* **************************************************************** *
+     *                 Descriptors of the assets served                 *
+     * **************************************************************** */
+
+    /**
+     * <p>Descriptor of a static resource: the file, its precompressed
+     * variants, its fingerprint and the values of the cache headers.
+     * It is immutable: when the file changes a new descriptor is built.</p>
+     */
+    private final class Asset {
+        /** The original file */
+        final Path file;
+        /** Last modification, truncated to seconds */
+        final long lastModified;
+        /** Size of the original file */
+        final long length;
+        /** Fingerprint of the content */
+        final String fingerprint;
+        /** Content type */
+        final String contentType;
+        /** Gzip variant, or null */
+        final Path gzip;
+        /** Brotli variant (produced at build time), or null */
+        final Path brotli;
+
+        /**
+         * <p>Builds the descriptor of a file,
+         * generating its gzip variant if needed.</p>
+         *
+         * @param file         the file
+         * @param lastModified last modification time of the file
+         * @param length       size of the file
+         * @throws IOException if the file cannot be read
+         */
+        Asset(Path file, long lastModified, long length) throws IOException {
+            this.file = file;
+            this.lastModified = lastModified / 1000L * 1000L;
+            this.length = length;
+            this.fingerprint = fingerprint(file);
+            String type = getServletContext().getMimeType(file.getFileName().toString());
+            this.contentType = type == null ? "application/octet-stream" : type;
+            this.brotli = variant(file, ".br");
+            Path gz = variant(file, ".gz");
+            if (gz == null && gzipDir != null && isCompressible(contentType)) {
+                gz = compress(file);
+            }
+            this.gzip = gz;
+        }
+
+        /**
+         * <p>Returns the precompressed variant of a file placed beside it,
+         * if it exists and is not older than the file.</p>
+         *
+         * @param file      the file
+         * @param extension extension of the variant
+         * @return <code>Path</code> - the variant, or null
+         * @throws IOException if the files cannot be read
+         */
+        private Path variant(Path file, String extension) throws IOException {
+            Path variant = file.resolveSibling(file.getFileName() + extension);
+            if (Files.isRegularFile(variant) &&
+                    Files.getLastModifiedTime(variant).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+                return variant;
+            }
+            return null;
+        }
+
+        /**
+         * <p>Writes the gzip variant of a file in the temporary directory,
+         * named after its fingerprint, unless it already exists;
+         * returns null if the compression does not save space.</p>
+         *
+         * @param file the file
+         * @return <code>Path</code> - the gzip variant, or null
+         */
+        private Path compress(Path file) {
+            Path gz = gzipDir.resolve(fingerprint + ".gz");
+            try {
+                if (!Files.isRegularFile(gz)) {
+                    Path tmp = Files.createTempFile(gzipDir, fingerprint, ".tmp");
+                    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                        Files.copy(file, out);
+                    }
+                    Files.move(tmp, gz, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                return Files.size(gz) < length ? gz : null;
+            } catch (IOException ioe) {
+                log.log(Level.WARNING, FOR_NAME + "Impossibile comprimere " + file + ".\n", ioe);
+                return null;
+            }
+        }
+    }
+
+
+    /**
+     * <p>Map exposed to the pages, giving the fingerprinted URL
+     * of an asset from its path relative to the web application root
+     * (e.g. <code>assets/css/col.css</code> &rarr;
+     * <code>assets/css/col.1a2b3c4d5e.css</code>).
+     * If the asset does not exist, or cannot be read,
+     * the path is returned unchanged.
+     * The URLs are computed once (in development mode, at every use),
+     * so rendering a page does not touch the file system.</p>
+     */
+    private final class Fingerprints extends AbstractMap<String, String> {
+
+        @Override
+        public String get(Object key) {
+            String path = String.valueOf(key);
+            if (root == null) {
+                return path;
+            }
+            String url = devMode ? null : urls.get(path);
+            if (url != null) {
+                return url;
+            }
+            try {
+                Asset asset = lookup(path.startsWith("/") ? path : "/" + path);
+                int dot = path.lastIndexOf('.');
+                if (asset == null || dot <= path.lastIndexOf('/')) {
+                    // Not cached: the file may still be created
+                    return path;
+                }
+                url = path.substring(0, dot) + '.' + asset.fingerprint + path.substring(dot);
+                urls.put(path, url);
+                return url;
+            } catch (IOException ioe) {
+                log.log(Level.WARNING, FOR_NAME + "Impossibile calcolare l'impronta di " + path + ".\n", ioe);
+                return path;
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return true;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return Collections.emptySet();
+        }
+    }
+
+}
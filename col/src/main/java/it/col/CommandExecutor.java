@@ -0,0 +1,671 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import it.col.util.Constants;
+
+
+/**
+ * <p><code>CommandExecutor</code> esegue le richieste gestite da {@link Main}
+ * e da {@link Data} in modalit&agrave; asincrona (Servlet 3), su un esecutore
+ * dedicato e limitato, cos&igrave; che l'attesa del database non occupi
+ * i thread del container, che restano disponibili per le altre richieste
+ * (p.es. le risorse statiche).</p>
+ * <p>Su un JDK che li supporta (21 o successivi) il lavoro viene eseguito
+ * su <em>virtual thread</em>, altrimenti su un pool di thread di dimensione
+ * fissa con una coda limitata. In entrambi i casi:<ul>
+ * <li>il numero di richieste accettate (in esecuzione o in coda)
+ * non supera <code>asyncThreads + asyncQueue</code>;</li>
+ * <li>il numero di richieste in esecuzione contemporanea per ogni Command
+ * non supera il limite configurato per quella Command;</li>
+ * <li>le richieste in eccesso ricevono subito un 503
+ * con l'header <code>Retry-After</code>.</li>
+ * </ul></p>
+ * <p>Viene creato all'avvio del contesto (&egrave; registrato come listener
+ * in <code>web.xml</code>), dove legge i parametri di contesto:<ul>
+ * <li><code>asyncThreads</code>: thread del pool (default: 32)</li>
+ * <li><code>asyncQueue</code>: richieste in coda (default: 64)</li>
+ * <li><code>asyncCommandLimit</code>: limite di default per Command (default: 32)</li>
+ * <li><code>asyncCommandLimits</code>: limiti specifici, p.es. <code>co=16,data.tab=8</code></li>
+ * <li><code>asyncTimeout</code>: timeout delle richieste, in millisecondi (default: 30000)</li>
+ * </ul>
+ * e viene chiuso alla chiusura del contesto.</p>
+ * <p>Sull'esecutore viene svolto solo il lavoro che non richiede la risposta
+ * (tipicamente, l'esecuzione della Command); al termine la richiesta viene
+ * restituita al container con <code>AsyncContext.dispatch</code>, cos&igrave;
+ * che la risposta (p.es. la pagina JSP) venga prodotta
+ * su un thread del container.</p>
+ * <p>I contatori (richieste in coda, in esecuzione, completate e respinte,
+ * in totale e per Command) sono riportati dalla pagina di monitoraggio
+ * (<code>data?op=mon</code>).</p>
+ *
+ * <p>Created on Sun Oct 18 2026</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class CommandExecutor implements ServletContextListener {
+
+    /**
+     * Static name of this class
+     */
+    private static final String FOR_NAME = "\n" + Logger.getLogger(CommandExecutor.class.getName()) + Constants.COLON + Constants.BLANK_SPACE;
+    /**
+     * All logging goes through this logger.
+     */
+    private static Logger log = Logger.getLogger(CommandExecutor.class.getName());
+    /**
+     * Name of the context attribute holding the executor
+     */
+    public static final String ATTRIBUTE = CommandExecutor.class.getName();
+    /**
+     * Name of the request attribute in which a filter can put a
+     * <code>Consumer&lt;Boolean&gt;</code>, called (with true if the work
+     * failed, was rejected or timed out) when the work of the request
+     * actually ends; the executor removes the attribute when it takes
+     * the request in charge
+     */
+    public static final String ON_FINISH = ATTRIBUTE + ".onFinish";
+    /**
+     * Seconds suggested to the clients before retrying a rejected request
+     */
+    private static final String RETRY_AFTER = "1";
+    /**
+     * Executor running the requests
+     */
+    private ExecutorService executor;
+    /**
+     * True if the executor runs on virtual threads
+     */
+    private boolean virtual;
+    /**
+     * Requests accepted and not yet completed (running or queued)
+     */
+    private Semaphore capacity;
+    /**
+     * Concurrency limit of the commands without a specific limit
+     */
+    private int defaultLimit;
+    /**
+     * Timeout of the asynchronous requests, in milliseconds
+     */
+    private long timeout;
+    /**
+     * Specific concurrency limits, by command
+     */
+    private final Map<String, Integer> limits = new ConcurrentHashMap<>();
+    /**
+     * Counters and permits, by command
+     */
+    private final Map<String, CommandStats> commands = new ConcurrentHashMap<>();
+    /**
+     * Requests waiting for a thread
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+    /**
+     * Requests running
+     */
+    private final AtomicInteger running = new AtomicInteger();
+    /**
+     * Requests completed
+     */
+    private final LongAdder completed = new LongAdder();
+    /**
+     * Requests rejected (global or per command limit)
+     */
+    private final LongAdder rejected = new LongAdder();
+
+
+    /**
+     * <p>Work to be done on the executor on behalf of a servlet.</p>
+     */
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * Does the work of the request that does not need the response
+         * (typically: executes the Command), leaving its outcome in the
+         * attributes of the request. The task neither writes nor forwards:
+         * when it ends, the request is dispatched back to the container,
+         * which renders the response on one of its own threads.
+         *
+         * @param req the request
+         * @return <code>String</code> - the path, relative to the context, of the resource rendering the response, or null to dispatch back to the servlet that submitted the task
+         * @throws ServletException if a problem occurs in doing the work
+         * @throws IOException      if a problem occurs in doing the work
+         */
+        String run(HttpServletRequest req)
+            throws ServletException, IOException;
+    }
+
+
+    /**
+     * <p>Creates the executor from the context parameters
+     * and exposes it as context attribute.</p>
+     *
+     * @param sce the event of the context initialization
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        ServletContext context = sce.getServletContext();
+        int threads = getIntParameter(context, "asyncThreads", 32);
+        int queue = getIntParameter(context, "asyncQueue", 64);
+        defaultLimit = getIntParameter(context, "asyncCommandLimit", 32);
+        timeout = getIntParameter(context, "asyncTimeout", 30000);
+        String specific = context.getInitParameter("asyncCommandLimits");
+        if (specific != null) {
+            for (String limit : specific.split(",")) {
+                String[] pair = limit.split("=");
+                try {
+                    if (pair.length == 2) {
+                        limits.put(pair[0].trim(), Integer.valueOf(Math.max(1, Integer.parseInt(pair[1].trim()))));
+                    }
+                } catch (NumberFormatException nfe) {
+                    log.warning(FOR_NAME + "Limite non valido per la Command: " + limit + ".\n");
+                }
+            }
+        }
+        capacity = new Semaphore(threads + queue);
+        executor = newVirtualThreadExecutor();
+        virtual = executor != null;
+        if (!virtual) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread t = new Thread(r, "col-command-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                                             new ArrayBlockingQueue<>(Math.max(1, queue)), factory);
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        context.setAttribute(ATTRIBUTE, this);
+        log.info(FOR_NAME + "Esecuzione asincrona delle Command su " + (virtual ? "virtual thread" : threads + " thread") +
+                 ", al massimo " + (threads + queue) + " richieste accettate.\n");
+    }
+
+
+    /**
+     * <p>Stops the executor, waiting briefly for the requests running.</p>
+     *
+     * @param sce the event of the context destruction
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        sce.getServletContext().removeAttribute(ATTRIBUTE);
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException ie) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * <p>Runs a task on the executor, for a request already put
+     * in asynchronous mode, and dispatches the request back to the
+     * container when the task ends, so that the response is rendered
+     * on a container thread.
+     * If the limits are exceeded the task is not run and the request
+     * is completed at once with a 503 response.</p>
+     * <p>The task and the timeout race for the asynchronous context:
+     * only the side that wins (the task ending, which dispatches it,
+     * or the timeout answering 503, which completes it) uses it,
+     * and after the timeout the task is interrupted.
+     * A filter can be told when the work actually ends (even after
+     * the timeout) by setting the request attribute {@link #ON_FINISH}.</p>
+     *
+     * @param command the name of the command, for the per-command limit
+     * @param ac      the asynchronous context of the request
+     * @param task    the work to do
+     * @throws IOException if a problem occurs in writing the rejection
+     */
+    public void submit(String command,
+                       AsyncContext ac,
+                       Task task)
+                throws IOException {
+        AsyncRequest request = new AsyncRequest(ac);
+        ac.setTimeout(timeout);
+        ac.addListener(new TimeoutListener(request));
+        CommandStats stats = commands.computeIfAbsent(command, k -> new CommandStats(limits.getOrDefault(k, Integer.valueOf(defaultLimit)).intValue()));
+        if (!capacity.tryAcquire()) {
+            reject(stats, request);
+            return;
+        }
+        if (!stats.permits.tryAcquire()) {
+            capacity.release();
+            reject(stats, request);
+            return;
+        }
+        queued.incrementAndGet();
+        try {
+            request.future = executor.submit(() -> run(stats, request, task));
+        } catch (RejectedExecutionException ree) {
+            queued.decrementAndGet();
+            stats.permits.release();
+            capacity.release();
+            reject(stats, request);
+        }
+    }
+
+
+    /**
+     * <p>Runs a task on a thread of the executor, unless
+     * the request has already timed out while queued.</p>
+     *
+     * @param stats   the counters of the command
+     * @param request the state of the request
+     * @param task    the work to do
+     */
+    private void run(CommandStats stats,
+                     AsyncRequest request,
+                     Task task) {
+        queued.decrementAndGet();
+        running.incrementAndGet();
+        stats.active.incrementAndGet();
+        boolean failed = false;
+        String path = null;
+        try {
+            if (request.start()) {
+                path = task.run(request.req);
+            } else {
+                failed = true;
+            }
+        } catch (Exception e) {
+            failed = true;
+            if (request.isLive()) {
+                log.log(Level.SEVERE, FOR_NAME + "Problema nell'esecuzione asincrona della richiesta.\n", e);
+                request.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, null);
+            } else {
+                log.fine(FOR_NAME + "Richiesta scaduta interrotta: " + e.getMessage() + ".\n");
+            }
+        } finally {
+            stats.active.decrementAndGet();
+            stats.completed.increment();
+            running.decrementAndGet();
+            completed.increment();
+            stats.permits.release();
+            capacity.release();
+            request.finish(failed, path);
+        }
+    }
+
+
+    /**
+     * <p>Completes a request at once with a 503 response.</p>
+     *
+     * @param stats   the counters of the command
+     * @param request the state of the request
+     */
+    private void reject(CommandStats stats,
+                        AsyncRequest request) {
+        stats.rejected.increment();
+        rejected.increment();
+        if (request.start()) {
+            request.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, RETRY_AFTER);
+            request.finish(true, null);
+        }
+    }
+
+
+    /**
+     * <p>Returns the counters of the executor, as plain text,
+     * to be appended to the monitoring report.</p>
+     *
+     * @return <code>String</code> - the counters of the executor
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder("# Esecuzione asincrona delle Command\n");
+        report.append("  executor=").append(virtual ? "virtual" : "platform")
+              .append(" queued=").append(queued.get())
+              .append(" running=").append(running.get())
+              .append(" completed=").append(completed.sum())
+              .append(" rejected=").append(rejected.sum())
+              .append('\n');
+        for (Map.Entry<String, CommandStats> entry : new TreeMap<>(commands).entrySet()) {
+            CommandStats stats = entry.getValue();
+            report.append("  ").append(entry.getKey())
+                  .append(" limit=").append(stats.limit)
+                  .append(" active=").append(stats.active.get())
+                  .append(" completed=").append(stats.completed.sum())
+                  .append(" rejected=").append(stats.rejected.sum())
+                  .append('\n');
+        }
+        return report.toString();
+    }
+
+
+    /**
+     * <p>Returns the executor shared by the servlets of a context,
+     * or null if it has not been registered.</p>
+     *
+     * @param context the servlet context
+     * @return <code>CommandExecutor</code> - the executor, or null
+     */
+    public static CommandExecutor getInstance(ServletContext context) {
+        return (CommandExecutor) context.getAttribute(ATTRIBUTE);
+    }
+
+
+    /**
+     * <p>Returns an executor starting a virtual thread per task,
+     * if the JDK supports them, otherwise null.</p>
+     *
+     * @return <code>ExecutorService</code> - executor on virtual threads, or null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JDK without (or with preview only) virtual threads
+            return null;
+        }
+    }
+
+
+    /**
+     * <p>Returns an integer context parameter, or its default
+     * if missing or not valid.</p>
+     *
+     * @param context      the servlet context
+     * @param name         the name of the parameter
+     * @param defaultValue the default value
+     * @return <code>int</code> - the value of the parameter
+     */
+    private static int getIntParameter(ServletContext context,
+                                       String name,
+                                       int defaultValue) {
+        String value = context.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException nfe) {
+            log.warning(FOR_NAME + "Parametro " + name + " non valido (" + value + "): viene usato il default.\n");
+            return defaultValue;
+        }
+    }
+
+
+    /**
+     * <p>Permits and counters of a command.</p>
+     */
+    private static final class CommandStats {
+        /** Concurrency limit */
+        final int limit;
+        /** Permits to run */
+        final Semaphore permits;
+        /** Requests running */
+        final AtomicInteger active = new AtomicInteger();
+        /** Requests completed */
+        final LongAdder completed = new LongAdder();
+        /** Requests rejected */
+        final LongAdder rejected = new LongAdder();
+
+        /**
+         * @param limit concurrency limit of the command
+         */
+        CommandStats(int limit) {
+            this.limit = limit;
+            this.permits = new Semaphore(limit);
+        }
+    }
+
+
+    /* ********************************************************** *
+     *              Stato delle richieste asincrone               *
+     * ********************************************************** */
+    /**
+     * <p>State of a request run on the executor, shared by the task
+     * and by the listener of the timeout: the transitions of the state,
+     * the dispatch or completion of the asynchronous context and the
+     * error responses are made holding the lock of this object,
+     * so that nothing reaches the response once the other side
+     * has taken it (and the container may have recycled it).
+     * The task itself never touches the response.</p>
+     */
+    static final class AsyncRequest {
+        /** Waiting for a thread */
+        static final int QUEUED = 0;
+        /** Task running */
+        static final int RUNNING = 1;
+        /** Dispatched (or completed, on error) by the task */
+        static final int FINISHED = 2;
+        /** Completed by the timeout, or failed on the container side */
+        static final int ABORTED = 3;
+        /** Asynchronous context of the request */
+        final AsyncContext ac;
+        /** Current state */
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        /** Request passed to the task */
+        final HttpServletRequest req;
+        /** Callback of the filters, called once when the work ends */
+        private final Consumer<Boolean> onFinish;
+        /** Thread running the task, interrupted on timeout */
+        volatile Future<?> future;
+
+        /**
+         * @param ac the asynchronous context of the request
+         */
+        @SuppressWarnings("unchecked")
+        AsyncRequest(AsyncContext ac) {
+            this.ac = ac;
+            req = (HttpServletRequest) ac.getRequest();
+            onFinish = (Consumer<Boolean>) req.getAttribute(ON_FINISH);
+            req.removeAttribute(ON_FINISH);
+        }
+
+        /**
+         * @return <code>boolean</code> - true if the task can start (the request has not timed out while queued)
+         */
+        boolean start() {
+            return state.compareAndSet(QUEUED, RUNNING);
+        }
+
+        /**
+         * @return <code>boolean</code> - true while the task is running and the request has not timed out
+         */
+        boolean isLive() {
+            return state.get() == RUNNING;
+        }
+
+        /**
+         * <p>Sends an error, if the task still owns the response
+         * and nothing has been sent yet.</p>
+         *
+         * @param status     the status
+         * @param retryAfter the value of the Retry-After header, or null
+         */
+        synchronized void sendError(int status,
+                                    String retryAfter) {
+            if (!isLive()) {
+                return;
+            }
+            HttpServletResponse response = (HttpServletResponse) ac.getResponse();
+            try {
+                if (!response.isCommitted()) {
+                    if (retryAfter != null) {
+                        response.setHeader("Retry-After", retryAfter);
+                    }
+                    response.sendError(status);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client gone: nothing more to do
+            }
+        }
+
+        /**
+         * <p>Ends the work of the task, unless the timeout has already
+         * completed the request: dispatches the request to the container,
+         * which renders the response on one of its threads, or completes
+         * it if the task failed (the error has already been sent).
+         * Then tells the filters.</p>
+         *
+         * @param failed true if the task failed or did not run
+         * @param path   the path of the resource rendering the response, or null to dispatch back to the servlet
+         */
+        void finish(boolean failed,
+                    String path) {
+            boolean taken;
+            synchronized (this) {
+                taken = state.compareAndSet(RUNNING, FINISHED);
+                if (taken) {
+                    try {
+                        if (failed) {
+                            ac.complete();
+                        } else if (path == null) {
+                            ac.dispatch();
+                        } else {
+                            ac.dispatch(path);
+                        }
+                    } catch (IllegalStateException ise) {
+                        // Already completed by the container
+                    }
+                }
+            }
+            if (onFinish != null) {
+                onFinish.accept(Boolean.valueOf(failed || !taken));
+            }
+        }
+
+        /**
+         * <p>Takes the response away from the task, on timeout
+         * (answering 503 if nothing has been sent yet) or on error,
+         * and interrupts the task if running. A task still queued
+         * will not run at all.</p>
+         *
+         * @param timedOut true on timeout, false on error
+         */
+        void abort(boolean timedOut) {
+            int previous;
+            synchronized (this) {
+                previous = state.get();
+                if (previous != QUEUED && previous != RUNNING) {
+                    return;  // The task has already completed the request
+                }
+                state.set(ABORTED);
+                try {
+                    HttpServletResponse response = (HttpServletResponse) ac.getResponse();
+                    if (timedOut && !response.isCommitted()) {
+                        response.setHeader("Retry-After", RETRY_AFTER);
+                        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    }
+                    ac.complete();
+                } catch (IOException | IllegalStateException e) {
+                    // Client gone or already completed: nothing more to do
+                }
+            }
+            Future<?> running = future;
+            if (previous == RUNNING && running != null) {
+                running.cancel(true);
+            }
+        }
+    }
+
+
+    /**
+     * <p>Takes the response away from the task when the request
+     * times out (answering 503 if nothing has been sent yet)
+     * or fails on the container side.</p>
+     */
+    private static final class TimeoutListener implements AsyncListener {
+        private final AsyncRequest request;
+
+        TimeoutListener(AsyncRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            request.abort(true);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            request.abort(false);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Nothing to do
+        }
+    }
+
+}
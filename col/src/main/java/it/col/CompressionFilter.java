@@ -0,0 +1,620 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import it.col.util.Constants;
+import it.col.util.Utils;
+
+
+/**
+ * <p><code>CompressionFilter</code> &egrave; il filtro della web-application col
+ * che comprime con gzip le risposte dinamiche (le pagine prodotte da
+ * {@link Main} e l'output di {@link Data}) mentre vengono scritte,
+ * per i client che dichiarano di accettarlo nell'header
+ * <code>Accept-Encoding</code>.</p>
+ * <p>La risposta non viene mai accumulata per intero: vengono trattenuti
+ * solo i primi byte, fino alla dimensione minima configurata;
+ * se la risposta resta pi&ugrave; piccola viene inviata cos&igrave; com'&egrave;,
+ * altrimenti (o se il tipo di contenuto non &egrave; tra quelli configurati)
+ * la decisione viene presa una volta per tutte e il resto
+ * del contenuto passa direttamente, compresso o meno, verso il client.
+ * Finch&eacute; nulla &egrave; stato inviato, la risposta pu&ograve; ancora essere
+ * azzerata, per cui l'inoltro alle pagine JSP e la redirezione
+ * effettuati da {@link Main} funzionano come senza il filtro.</p>
+ * <p>Parametri di inizializzazione:<ul>
+ * <li><code>minSize</code>: dimensione minima, in byte,
+ * delle risposte da comprimere (default: 1024)</li>
+ * <li><code>mimeTypes</code>: tipi di contenuto da comprimere,
+ * separati da virgole</li>
+ * </ul></p>
+ * <p>I byte ricevuti e quelli effettivamente inviati sono conteggiati
+ * e riportati dalla pagina di monitoraggio (<code>data?op=mon</code>).</p>
+ *
+ * <p>Created on Sun Oct 18 2026</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public class CompressionFilter implements Filter {
+
+    /**
+     * Static name of this class
+     */
+    private static final String FOR_NAME = "\n" + Logger.getLogger(CompressionFilter.class.getName()) + Constants.COLON + Constants.BLANK_SPACE;
+    /**
+     * All logging goes through this logger.
+     */
+    private static Logger log = Logger.getLogger(CompressionFilter.class.getName());
+    /**
+     * Minimum size of the compressed responses when not configured
+     */
+    private static final int DEFAULT_MIN_SIZE = 1024;
+    /**
+     * Content types compressed when not configured
+     */
+    private static final String DEFAULT_MIME_TYPES = "text/html,text/plain,text/css,text/csv,text/xml,text/javascript,application/javascript,application/json,application/xml";
+    /**
+     * Bytes written by the servlets to the responses through this filter
+     */
+    private static final LongAdder BYTES_IN = new LongAdder();
+    /**
+     * Bytes actually sent to the clients
+     */
+    private static final LongAdder BYTES_OUT = new LongAdder();
+    /**
+     * Number of responses compressed
+     */
+    private static final LongAdder COMPRESSED = new LongAdder();
+    /**
+     * Number of responses sent uncompressed
+     */
+    private static final LongAdder UNCOMPRESSED = new LongAdder();
+    /**
+     * Minimum size, in bytes, of the responses to compress
+     */
+    private int minSize = DEFAULT_MIN_SIZE;
+    /**
+     * Content types to compress, without parameters
+     */
+    private Set<String> mimeTypes;
+
+
+    /* (non-Javadoc)
+     * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
+     */
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+        String size = config.getInitParameter("minSize");
+        if (size != null) {
+            try {
+                minSize = Math.max(0, Integer.parseInt(size.trim()));
+            } catch (NumberFormatException nfe) {
+                log.warning(FOR_NAME + "Parametro minSize non valido (" + size + "): viene usato il default.\n");
+            }
+        }
+        String types = config.getInitParameter("mimeTypes");
+        mimeTypes = new HashSet<>();
+        for (String type : (types == null ? DEFAULT_MIME_TYPES : types).split(",")) {
+            if (!type.isBlank()) {
+                mimeTypes.add(type.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+
+    /**
+     * <p>Wraps the response, if the client accepts gzip,
+     * so that its content is compressed as it is written.</p>
+     *
+     * @param req   the request
+     * @param res   the response
+     * @param chain the rest of the chain
+     * @throws IOException      if a problem occurs in writing the response
+     * @throws ServletException if a problem occurs in the chain
+     */
+    @Override
+    public void doFilter(ServletRequest req,
+                         ServletResponse res,
+                         FilterChain chain)
+                  throws IOException, ServletException {
+        if (!(req instanceof HttpServletRequest) ||
+                !Utils.acceptsEncoding(((HttpServletRequest) req).getHeader("Accept-Encoding"), "gzip")) {
+            chain.doFilter(req, res);
+            return;
+        }
+        CompressionResponse wrapper = new CompressionResponse((HttpServletResponse) res);
+        boolean async = false;
+        try {
+            chain.doFilter(req, wrapper);
+            async = req.isAsyncStarted();
+        } finally {
+            if (async) {
+                // The response is written later, in the asynchronous dispatch (see CommandExecutor)
+                req.getAsyncContext().addListener(new FinishListener(wrapper));
+            } else {
+                wrapper.finish();
+            }
+        }
+    }
+
+
+    /* (non-Javadoc)
+     * @see javax.servlet.Filter#destroy()
+     */
+    @Override
+    public void destroy() {
+        // Nothing to release
+    }
+
+
+    /**
+     * <p>Returns the counters of the compression, as plain text,
+     * to be appended to the monitoring report.</p>
+     *
+     * @return <code>String</code> - the counters of the compression
+     */
+    public static String getReport() {
+        long in = BYTES_IN.sum();
+        long out = BYTES_OUT.sum();
+        return "# Compressione delle risposte\n" +
+               "  compressed=" + COMPRESSED.sum() +
+               " uncompressed=" + UNCOMPRESSED.sum() +
+               " bytesIn=" + in +
+               " bytesOut=" + out +
+               " saved=" + (in == 0L ? 0L : (in - out) * 100L / in) + "%\n";
+    }
+
+
+    /* **************************************************************** *
+     *              Response compressed while it is written             *
+     * **************************************************************** */
+
+    /**
+     * <p>Response whose content is held back up to the minimum size
+     * and then sent, compressed or not, as it is written.</p>
+     */
+    private final class CompressionResponse extends HttpServletResponseWrapper {
+        /** Still holding back the first bytes */
+        private static final int BUFFERING = 0;
+        /** Content compressed as it is written */
+        private static final int COMPRESSING = 1;
+        /** Content sent as it is */
+        private static final int PASSTHROUGH = 2;
+        /** Current state */
+        private int state = BUFFERING;
+        /** First bytes of the content, held back */
+        private final byte[] buffer = new byte[minSize];
+        /** Number of bytes held back */
+        private int count = 0;
+        /** Content length declared by the servlet, -1 if unknown */
+        private long declaredLength = -1L;
+        /** Bytes written by the servlet */
+        private long written = 0L;
+        /** Stream counting the bytes sent to the client */
+        private CountingOutputStream sink;
+        /** Compressor, while compressing */
+        private GZIPOutputStream gzip;
+        /** Stream returned to the servlet */
+        private CompressionStream stream;
+        /** Writer returned to the servlet */
+        private PrintWriter writer;
+        /** Flag of response completed */
+        private boolean finished = false;
+
+        /**
+         * @param res the wrapped response
+         */
+        CompressionResponse(HttpServletResponse res) {
+            super(res);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called on this response");
+            }
+            if (stream == null) {
+                stream = new CompressionStream();
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called on this response");
+                }
+                stream = new CompressionStream();
+                try {
+                    writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+                } catch (UnsupportedEncodingException uee) {
+                    stream = null;
+                    throw uee;
+                }
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (state == BUFFERING) {
+                declaredLength = len;
+            } else if (state == PASSTHROUGH) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(value == null ? -1L : Long.parseLong(value.trim()));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else if (stream != null) {
+                stream.flush();
+            }
+            if (state != BUFFERING) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return state != BUFFERING || super.isCommitted();
+        }
+
+        @Override
+        public void reset() {
+            resetBuffer();
+            declaredLength = -1L;
+            super.reset();
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (state != BUFFERING) {
+                throw new IllegalStateException("Response already committed");
+            }
+            count = 0;
+            written = 0L;
+            // Whatever the old writer still holds is discarded along with the content
+            if (writer != null) {
+                writer = null;
+                stream = null;
+            }
+            super.resetBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            release();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            release();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            release();
+            super.sendRedirect(location);
+        }
+
+        /**
+         * <p>Gives the response back to the container (error or redirect),
+         * discarding the content held back.</p>
+         */
+        private void release() {
+            if (state == BUFFERING) {
+                count = 0;
+                written = 0L;
+                state = PASSTHROUGH;
+            }
+        }
+
+        /**
+         * <p>Decides whether to compress the response, sends the bytes
+         * held back and leaves the buffering state.</p>
+         *
+         * @param complete true if the whole content has been written
+         * @throws IOException if a problem occurs in writing the response
+         */
+        private void commit(boolean complete) throws IOException {
+            int status = getStatus();
+            String type = getContentType();
+            if (type != null) {
+                int semicolon = type.indexOf(';');
+                type = (semicolon < 0 ? type : type.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+            }
+            boolean eligible = type != null && mimeTypes.contains(type) &&
+                               status >= 200 && status != HttpServletResponse.SC_NO_CONTENT &&
+                               status != HttpServletResponse.SC_NOT_MODIFIED &&
+                               getHeader("Content-Encoding") == null;
+            if (eligible) {
+                // The representation depends on Accept-Encoding, whatever the size
+                addHeader("Vary", "Accept-Encoding");
+            }
+            long size = complete ? count : declaredLength;
+            sink = new CountingOutputStream(super.getOutputStream());
+            if (eligible && (size < 0L || size >= minSize)) {
+                super.setHeader("Content-Encoding", "gzip");
+                gzip = new GZIPOutputStream(sink, Math.max(512, minSize), true);
+                gzip.write(buffer, 0, count);
+                state = COMPRESSING;
+            } else {
+                if (declaredLength >= 0L) {
+                    super.setContentLengthLong(declaredLength);
+                }
+                sink.write(buffer, 0, count);
+                state = PASSTHROUGH;
+            }
+            count = 0;
+        }
+
+        /**
+         * <p>Writes a portion of the content, holding it back
+         * as long as it fits within the minimum size.</p>
+         *
+         * @param b   the data
+         * @param off the start offset in the data
+         * @param len the number of bytes to write
+         * @throws IOException if a problem occurs in writing the response
+         */
+        void write(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                throw new IOException("Response already completed");
+            }
+            written += len;
+            if (state == BUFFERING) {
+                if (count + len <= buffer.length) {
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                commit(false);
+            }
+            if (state == COMPRESSING) {
+                gzip.write(b, off, len);
+            } else {
+                if (sink == null) {
+                    // Released to the container by an error or a redirect
+                    sink = new CountingOutputStream(super.getOutputStream());
+                }
+                sink.write(b, off, len);
+            }
+        }
+
+        /**
+         * <p>Sends what has already been written; while the first bytes
+         * are held back there is nothing to send yet.</p>
+         *
+         * @throws IOException if a problem occurs in writing the response
+         */
+        void flush() throws IOException {
+            if (state == COMPRESSING) {
+                gzip.flush();
+            } else if (sink != null) {
+                sink.flush();
+            }
+        }
+
+        /**
+         * <p>Completes the response: sends the content still held back,
+         * ends the compressed stream and updates the counters.</p>
+         *
+         * @throws IOException if a problem occurs in writing the response
+         */
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+            finished = true;
+            if (state == BUFFERING) {
+                commit(true);
+            }
+            if (state == COMPRESSING) {
+                gzip.finish();
+                COMPRESSED.increment();
+            } else {
+                UNCOMPRESSED.increment();
+            }
+            BYTES_IN.add(written);
+            BYTES_OUT.add(sink == null ? 0L : sink.count);
+        }
+
+        /**
+         * <p>Stream handed to the servlet: every write goes through
+         * the enclosing response.</p>
+         */
+        private final class CompressionStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                CompressionResponse.this.write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                CompressionResponse.this.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                CompressionResponse.this.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+            }
+
+            @Override
+            public boolean isReady() {
+                try {
+                    return CompressionResponse.super.getOutputStream().isReady();
+                } catch (IOException ioe) {
+                    return false;
+                }
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+                try {
+                    CompressionResponse.super.getOutputStream().setWriteListener(listener);
+                } catch (IOException ioe) {
+                    throw new IllegalStateException(ioe);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * <p>Completes a compressed response written asynchronously,
+     * if the servlet did not close its stream.</p>
+     */
+    private static final class FinishListener implements AsyncListener {
+        /** The response to complete */
+        private final CompressionResponse wrapper;
+
+        /**
+         * @param wrapper the response to complete
+         */
+        FinishListener(CompressionResponse wrapper) {
+            this.wrapper = wrapper;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            try {
+                wrapper.finish();
+            } catch (IOException | IllegalStateException e) {
+                log.fine(FOR_NAME + "Risposta asincrona gia\' chiusa: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // Completed by the executor
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // Completed by the executor
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Nothing to do
+        }
+    }
+
+
+    /**
+     * <p>Stream counting the bytes that go through it.</p>
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        /** Bytes written */
+        long count = 0L;
+
+        /**
+         * @param out the underlying stream
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+}
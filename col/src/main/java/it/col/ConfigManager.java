@@ -38,6 +38,8 @@
 package it.col;
 
 import java.util.ArrayList;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
@@ -198,6 +200,21 @@ public class ConfigManager extends HttpServlet {
      * <dd>subdir contenente documenti generati dall'applicazione stessa</dd></dl></p>
      */
     private static String dirDocuments;
+    /**
+     * <p>Nome del parametro di contesto che indica ogni quanti minuti
+     * ricaricare per intero l'indice di ricerca in memoria (0 = mai).</p>
+     */
+    private static final String SEARCH_INDEX_RELOAD = "searchIndexReload";
+    /**
+     * <p>Intervallo predefinito di ricaricamento dell'indice di ricerca, in minuti.</p>
+     */
+    private static final int DEFAULT_SEARCH_INDEX_RELOAD = 10;
+    /**
+     * <p>Timer che ricarica periodicamente l'indice di ricerca,
+     * per recepire le modifiche fatte sul database al di fuori
+     * dell'applicazione.</p>
+     */
+    private static Timer indexTimer = null;
 
 
     /**
@@ -273,7 +290,7 @@ public class ConfigManager extends HttpServlet {
          * Attiva la connessione al database
          */
         try {
-            db = new DBWrapper();
+            db = DBWrapper.getInstance();
         }
         catch (WebStorageException wse) {
             throw new ServletException(FOR_NAME + "Non e\' possibile avere una connessione al database.\n" + wse.getMessage(), wse);
@@ -339,6 +356,46 @@ public class ConfigManager extends HttpServlet {
         catch (Exception e) {
             throw new ServletException(FOR_NAME + "Problemi nel caricare le finalita\'.\n" + e.getMessage(), e);
         }
+        // Carica l'indice di ricerca in memoria delle convenzioni
+        try {
+            db.loadSearchIndex();
+        }
+        catch (WebStorageException wse) {
+            // Non bloccante: finche' l'indice non e' caricato la ricerca interroga il database
+            log.severe(FOR_NAME + "Problemi nel caricare l\'indice di ricerca; la ricerca usera\' il database.\n" + wse.getMessage());
+        }
+        // Ricarica periodicamente l'indice (e, se il caricamento iniziale e' fallito, ci riprova)
+        String reload = getServletContext().getInitParameter(SEARCH_INDEX_RELOAD);
+        long minutes = (reload == null ? DEFAULT_SEARCH_INDEX_RELOAD : Long.parseLong(reload.trim()));
+        if (minutes > 0 && indexTimer == null) {
+            long period = minutes * 60 * 1000;
+            indexTimer = new Timer("col-search-index", true);
+            indexTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        db.loadSearchIndex();
+                    } catch (WebStorageException wse) {
+                        log.warning(FOR_NAME + "Problemi nel ricaricare l\'indice di ricerca.\n" + wse.getMessage());
+                    }
+                }
+            }, period, period);
+        }
+    }
+
+
+    /**
+     * <p>Ferma il ricaricamento periodico dell'indice di ricerca.</p>
+     *
+     * @see javax.servlet.GenericServlet#destroy()
+     */
+    @Override
+    public void destroy() {
+        if (indexTimer != null) {
+            indexTimer.cancel();
+            indexTimer = null;
+        }
+        super.destroy();
     }
 
 
@@ -37,16 +37,26 @@
 
 package it.col;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
 import java.util.logging.Logger;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -54,6 +64,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import com.oreilly.servlet.ParameterParser;
 
@@ -62,8 +73,16 @@ import it.col.bean.Convenzione;
 import it.col.bean.PersonBean;
 import it.col.command.ConventionCommand;
 import it.col.db.DBManager;
+import it.col.db.DBWrapper;
+import it.col.db.PageCursor;
+import it.col.db.QueryMetrics;
+import it.col.db.SuggestionIndex;
+import it.col.exception.AttributoNonValorizzatoException;
 import it.col.exception.CommandException;
+import it.col.exception.WebStorageException;
+import it.col.tag.FragmentCache;
 import it.col.util.Constants;
+import it.col.util.JsonWriter;
 import it.col.util.MailManager;
 import it.col.util.Utils;
 
@@ -123,10 +142,45 @@ public class Data extends HttpServlet implements Constants {
      * All logging goes through this logger.
      */
     private static Logger log = Logger.getLogger(Data.class.getName());
+    /**
+     * Number of rows of a page of a list when not requested otherwise
+     */
+    private static final int DEFAULT_PAGE_LENGTH = 10;
+    /**
+     * Maximum number of rows of a page of a list served server-side
+     */
+    private static final int MAX_PAGE_LENGTH = 100;
+    /**
+     * Number of search suggestions returned when not requested otherwise
+     */
+    private static final int DEFAULT_SUGGESTIONS = 10;
+    /**
+     * Maximum number of search suggestions returned per request
+     */
+    private static final int MAX_SUGGESTIONS = 50;
     /**
      * Used to initialize redirects with the servletToken
      */
     private ServletContext servletContext;
+    /**
+     * Flag of operations executed asynchronously (init-param 'async')
+     */
+    private boolean async = false;
+    /**
+     * Name of the request attribute holding the output prepared by an
+     * operation (possibly on the executor), written by {@link #render}
+     */
+    private static final String OUTPUT = Data.class.getName() + ".output";
+    /**
+     * Name of the request attribute holding the HTTP error status
+     * of an operation, sent by {@link #render}
+     */
+    private static final String STATUS = Data.class.getName() + ".status";
+    /**
+     * Application roles allowed to read the monitor (init-param 'monitorRoles',
+     * comma separated); when empty, the monitor is not served to anybody
+     */
+    private static Set<String> monitorRoles = new HashSet<>();
 
 
     /**
@@ -141,6 +195,19 @@ public class Data extends HttpServlet implements Constants {
         super.init(config);
         // ServletToken Initialization
         servletContext = getServletContext();
+        // Operations executed on the CommandExecutor, if required
+        async = Boolean.parseBoolean(config.getInitParameter("async"));
+        // Roles allowed to read the metrics
+        Set<String> roles = new HashSet<>();
+        String value = config.getInitParameter("monitorRoles");
+        if (value != null) {
+            for (String role : value.split(",")) {
+                if (!role.isBlank()) {
+                    roles.add(role.trim().toLowerCase());
+                }
+            }
+        }
+        monitorRoles = roles;
     }
 
 
@@ -151,6 +218,39 @@ public class Data extends HttpServlet implements Constants {
     @Override
     protected void service(HttpServletRequest req, HttpServletResponse res)
                     throws ServletException, IOException {
+        if (req.getDispatcherType() == DispatcherType.ASYNC) {
+            // The work has been done on the executor: the response is rendered here, on a container thread
+            render(req, res);
+            return;
+        }
+        String operation = req.getParameter(OPERATION);
+        CommandExecutor executor = async ? CommandExecutor.getInstance(servletContext) : null;
+        // The monitor stays on the container thread, to be available even under load
+        if (executor != null && req.isAsyncSupported() && !req.isAsyncStarted() && !MONITOR.equals(operation)) {
+            executor.submit("data." + (operation == null ? VOID_STRING : operation), req.startAsync(req, res), this::execute);
+            return;
+        }
+        String fileJsp = execute(req);
+        if (fileJsp != null) {
+            // Common Forward logic (only reached for non-SEND operations)
+            RequestDispatcher dispatcher = servletContext.getRequestDispatcher(fileJsp);
+            dispatcher.forward(req, res);
+            return;
+        }
+        render(req, res);
+    }
+    
+    
+    /**
+     * Does the work of a request that does not need the response:
+     * dispatches the operation to its handler, which leaves its output
+     * on the request, either on the container thread or on the 
+     * {@link CommandExecutor}.
+     * 
+     * @param req the HTTP request
+     * @return <code>String</code> - the JSP page to forward to, or <code>null</code> if the output is written by {@link #render}
+     */
+    private String execute(HttpServletRequest req) {
         // Parser of parameters
         ParameterParser parser = new ParameterParser(req);
         // Retrieve/initialize the operation got to do
@@ -162,33 +262,67 @@ public class Data extends HttpServlet implements Constants {
         // Message
         switch (operation) {
             case INSERT:
-                // handleInsert(req, res);
+                // handleInsert(req);
                 break;
             case UPDATE:
-                // handleUpdate(req, res);
+                // handleUpdate(req);
                 break;
             case DELETE:
-                // handleDelete(req, res);
+                // handleDelete(req);
                 break;
             case SEND: // -> col/data?op=put&
                 String ent = parser.getStringParameter(ENTITY, VOID_STRING);
                 // se c'è un parametro in più
                 if (!ent.equals(VOID_STRING)) {
                     // -> handleSendCertificates
-                    handleSendCertificates(req, res);
+                    handleSendCertificates(req);
                 } else {
                     // altrimenti:
-                    handleSendEmail(req, res);  // ← Extracted externally
+                    handleSendEmail(req);  // ← Extracted externally
                 }
-                return; // Early return since email completes response
+                return null; // Early return since the outcome is rendered by render()
+            case MONITOR: // -> col/data?op=mon
+                return null; // Early return since the report is written by render()
+            case SUGGEST: // -> col/data?op=sug&term=
+                handleSuggest(req, parser);
+                return null; // Early return since the suggestions are written by render()
+            case TABLE: // -> col/data?op=tab&obj=conv|cont&draw=&start=&length=
+                handleTable(req, parser);
+                return null; // Early return since the page of the list is written by render()
             default:
                 log.warning("Unknown operation: { " + operation + " }");
                 break; // Not required here, still here for consistency
         }
-        if (fileJsp != null) {
-            // Common Forward logic (only reached for non-SEND operations)
-            RequestDispatcher dispatcher = servletContext.getRequestDispatcher(fileJsp);
-            dispatcher.forward(req, res);
+        return fileJsp;
+    }
+    
+    
+    /**
+     * Writes the response of a request whose operation has been executed,
+     * always on a container thread: the output left on the request by the
+     * handler (JSON, TXT log of the email or error page), or the monitor.
+     * 
+     * @param req the HTTP request, carrying the output of the operation
+     * @param res the HTTP response
+     * @throws ServletException if forward fails
+     * @throws IOException if response writing fails
+     */
+    private void render(HttpServletRequest req, HttpServletResponse res)
+                 throws ServletException, IOException {
+        String operation = new ParameterParser(req).getStringParameter(OPERATION, VOID_STRING);
+        switch (operation) {
+            case SEND:
+                renderSend(req, res);
+                break;
+            case MONITOR:
+                handleMonitor(req, res);
+                break;
+            case SUGGEST:
+            case TABLE:
+                writeJson(req, res);
+                break;
+            default:
+                break; // Nothing to write
         }
     }
 
@@ -245,45 +379,331 @@ public class Data extends HttpServlet implements Constants {
     }
     
     
+    /**
+     * Handles the MONITOR operation by writing, as plain text, the latency
+     * metrics collected per named query (connection-acquire wait, execute
+     * time, rows, fetch/mapping time), the counters of the conventions cache
+     * and of the cache of the page fragments, the bytes saved by the
+     * compression of the responses, the queues of the asynchronous execution,
+     * the state of the admission control and the times of the password hashing.
+     * Completes the HTTP response directly - no JSP forward required.
+     * The same data is exposed via JMX under {@link QueryMetrics#OBJECT_NAME}.
+     * 
+     * The metrics are only served to users whose application role is listed
+     * in the init-param <code>monitorRoles</code>.
+     * 
+     * @param req the HTTP request, which must belong to a logged user
+     * @param res the HTTP response (401 Unauthorized if no user is logged, 
+     *            403 Forbidden if the user's role is not allowed to read the monitor)
+     * @throws IOException if response writing fails
+     */
+    private static void handleMonitor(HttpServletRequest req, HttpServletResponse res) 
+                               throws IOException {
+        PersonBean user = null;
+        try {
+            user = SessionManager.checkSession(req.getSession(IF_EXISTS_DONOT_CREATE_NEW));
+        } catch (CommandException ce) {
+            res.sendError(HttpServletResponse.SC_UNAUTHORIZED);  // 401
+            return;
+        }
+        if (user.getRuolo() == null || !monitorRoles.contains(user.getRuolo().trim().toLowerCase())) {
+            res.sendError(HttpServletResponse.SC_FORBIDDEN);  // 403
+            return;
+        }
+        res.setContentType(MIME_TYPE_TEXT);
+        res.setCharacterEncoding("UTF-8");
+        res.setHeader("Cache-Control", "no-store");
+        try (PrintWriter out = res.getWriter()) {
+            out.print(QueryMetrics.getInstance().getReport());
+            out.print(CompressionFilter.getReport());
+            out.print(FragmentCache.getInstance().getReport());
+            CommandExecutor executor = CommandExecutor.getInstance(req.getServletContext());
+            if (executor != null) {
+                out.print(executor.getReport());
+            }
+            AdmissionFilter admission = AdmissionFilter.getInstance(req.getServletContext());
+            if (admission != null) {
+                out.print(admission.getReport());
+            }
+            PasswordHasher hasher = PasswordHasher.getInstance(req.getServletContext());
+            if (hasher != null) {
+                out.print(hasher.getReport());
+            }
+        }
+    }
+    
+    
+    /**
+     * Handles the SUGGEST operation, called via XHR while the user types
+     * in the search box, by writing as JSON the best completions of the
+     * typed term among convention titles, repertory numbers and contractor
+     * names. The completions come from the in-memory {@link SuggestionIndex},
+     * so no query is made to the database; titles and repertory numbers
+     * are only suggested to users belonging to one of the groups of
+     * the convention.
+     * The JSON is left on the request and written by {@link #writeJson}.
+     * 
+     * <pre>
+     * [{"label":"Convenzione quadro...","type":"titolo","id":58}, ...]
+     * </pre>
+     * 
+     * @param req the HTTP request, which must belong to a logged user (401 Unauthorized otherwise)
+     * @param parser the parser of the request parameters ("term" and optional "max")
+     */
+    private static void handleSuggest(HttpServletRequest req, ParameterParser parser) {
+        PersonBean user = null;
+        try {
+            user = SessionManager.checkSession(req.getSession(IF_EXISTS_DONOT_CREATE_NEW));
+        } catch (CommandException ce) {
+            req.setAttribute(STATUS, Integer.valueOf(HttpServletResponse.SC_UNAUTHORIZED));  // 401
+            return;
+        }
+        // Titoli e repertori sono suggeriti solo agli utenti dei gruppi della convenzione
+        Integer[] groupIds = new Integer[NOTHING];
+        try {
+            groupIds = Utils.convert(user.getGruppi());
+        } catch (AttributoNonValorizzatoException anve) {
+            // Utente senza gruppi: riceve i soli suggerimenti visibili a tutti
+            log.warning(FOR_NAME + "Utente privo di gruppi: suggeriti solo i contraenti.\n" + anve.getMessage());
+        }
+        String term = parser.getStringParameter("term", VOID_STRING);
+        int max = Math.min(Math.max(parser.getIntParameter("max", DEFAULT_SUGGESTIONS), 1), MAX_SUGGESTIONS);
+        List<SuggestionIndex.Suggestion> suggestions = DBWrapper.getSuggestions().suggest(term, max, groupIds);
+        StringBuilder json = new StringBuilder(64 * (suggestions.size() + 1)).append('[');
+        for (SuggestionIndex.Suggestion suggestion : suggestions) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"label\":");
+            JsonWriter.appendString(json, suggestion.getLabel());
+            json.append(",\"type\":");
+            JsonWriter.appendString(json, suggestion.getKind());
+            json.append(",\"id\":").append(suggestion.getId()).append('}');
+        }
+        json.append(']');
+        req.setAttribute(OUTPUT, json.toString());
+    }
+    
+    
+    /**
+     * Handles the TABLE operation, which implements the server-side processing
+     * protocol of DataTables for the lists of conventions (<code>obj=conv</code>)
+     * and of contractors (<code>obj=cont</code>): reads the requested page
+     * (<code>draw</code>, <code>start</code>, <code>length</code>), ordering
+     * (<code>order[0][column]</code>, <code>order[0][dir]</code>) and filter
+     * (<code>search[value]</code>) and writes the rows of the page as JSON,
+     * together with the total and filtered counts.
+     * The JSON is left on the request and written by {@link #writeJson}.
+     * 
+     * <p>The pages are extracted by keyset pagination: the sort keys of
+     * the pages already served are kept in the user's session, in a
+     * {@link PageCursor} for each list, which is replaced when the ordering
+     * or the filter change. Thus each request costs about as much
+     * as the page it returns. Counts and keys are discarded after
+     * every write made through the application and whenever the
+     * first page is requested again, so that changes made
+     * directly on the database are picked up too.</p>
+     * 
+     * @param req the HTTP request, which must belong to a logged user (401 Unauthorized otherwise)
+     * @param parser the parser of the request parameters
+     */
+    private static void handleTable(HttpServletRequest req, ParameterParser parser) {
+        PersonBean user = null;
+        try {
+            user = SessionManager.checkSession(req.getSession(IF_EXISTS_DONOT_CREATE_NEW));
+        } catch (CommandException ce) {
+            req.setAttribute(STATUS, Integer.valueOf(HttpServletResponse.SC_UNAUTHORIZED));  // 401
+            return;
+        }
+        String list = parser.getStringParameter(OBJECT, CONVENTION);
+        int draw = parser.getIntParameter("draw", NOTHING);
+        int start = Math.max(parser.getIntParameter("start", NOTHING), NOTHING);
+        int length = parser.getIntParameter("length", DEFAULT_PAGE_LENGTH);
+        // DataTables sends -1 for "all the rows": a page is never larger than the maximum
+        length = (length < 1 || length > MAX_PAGE_LENGTH) ? MAX_PAGE_LENGTH : length;
+        int column = parser.getIntParameter("order[0][column]", -1);
+        boolean descending = "desc".equalsIgnoreCase(parser.getStringParameter("order[0][dir]", VOID_STRING));
+        String search = parser.getStringParameter("search[value]", VOID_STRING).trim();
+        // Cursor of the list, replaced if the ordering or the filter changed
+        HttpSession session = req.getSession(IF_EXISTS_DONOT_CREATE_NEW);
+        String attribute = "cursor-" + list;
+        PageCursor cursor = (PageCursor) session.getAttribute(attribute);
+        if (cursor == null || !cursor.isFor(list, column, descending, search)) {
+            cursor = new PageCursor(list, column, descending, search);
+            session.setAttribute(attribute, cursor);
+        } else if (start == NOTHING) {
+            // Back to the first page: counts and keys are recomputed
+            cursor.reset();
+        }
+        StringBuilder json = new StringBuilder(2048);
+        SimpleDateFormat iso = new SimpleDateFormat(DATA_SQL_PATTERN);
+        try {
+            DBWrapper db = DBWrapper.getInstance();
+            StringBuilder rows = new StringBuilder(1024).append('[');
+            if (list.equals(CONTRACTOR)) {
+                for (PersonBean p : db.getContractorsPage(cursor, start, length)) {
+                    if (rows.length() > 1) {
+                        rows.append(',');
+                    }
+                    rows.append("{\"id\":").append(p.getId()).append(",\"tipo\":");
+                    JsonWriter.appendString(rows, p.getNote());
+                    rows.append(",\"nome\":");
+                    JsonWriter.appendString(rows, p.getNome());
+                    rows.append(",\"codiceFiscale\":");
+                    JsonWriter.appendString(rows, p.getCodiceFiscale());
+                    rows.append(",\"partitaIva\":");
+                    JsonWriter.appendString(rows, p.getPartitaIva());
+                    rows.append(",\"email\":");
+                    JsonWriter.appendString(rows, p.getEmail());
+                    rows.append(",\"informativa\":");
+                    JsonWriter.appendString(rows, p.getInformativa());
+                    rows.append(",\"convenzioni\":[");
+                    for (Convenzione c : p.getConvenzioni()) {
+                        rows.append(rows.charAt(rows.length() - 1) == '[' ? "" : ",");
+                        rows.append("{\"id\":").append(c.getId()).append(",\"titolo\":");
+                        JsonWriter.appendString(rows, c.getTitolo());
+                        rows.append('}');
+                    }
+                    rows.append("]}");
+                }
+            } else {
+                FragmentCache fragments = FragmentCache.getInstance();
+                // Read before the query, so that a row loaded during a write is not cached
+                long dataVersion = fragments.dataVersion();
+                for (Convenzione c : db.getConventionsPage(user, cursor, start, length)) {
+                    if (rows.length() > 1) {
+                        rows.append(',');
+                    }
+                    String key = "tab-conv:" + c.getId();
+                    String version = c.getDataUltimaModifica() + "." + c.getOraUltimaModifica();
+                    String row = fragments.get(key, version);
+                    if (row == null) {
+                        row = writeConventionRow(c, iso);
+                        fragments.put(key, version, row, dataVersion);
+                    }
+                    rows.append(row);
+                }
+            }
+            rows.append(']');
+            json.append("{\"draw\":").append(draw)
+                .append(",\"recordsTotal\":").append(cursor.getTotal())
+                .append(",\"recordsFiltered\":").append(cursor.getFiltered())
+                .append(",\"data\":").append(rows).append('}');
+        } catch (WebStorageException | AttributoNonValorizzatoException e) {
+            String msg = FOR_NAME + "Problema nel recupero di una pagina dell'elenco " + list + ".\n";
+            log.severe(msg + e.getMessage());
+            json.setLength(NOTHING);
+            json.append("{\"draw\":").append(draw).append(",\"error\":\"Impossibile recuperare i dati dell'elenco\"}");
+        }
+        req.setAttribute(OUTPUT, json.toString());
+    }
+    
+    
+    /**
+     * Writes the JSON left on the request by {@link #handleSuggest}
+     * or {@link #handleTable}, or sends the error status they set.
+     * 
+     * @param req the HTTP request, carrying the JSON or the error status
+     * @param res the HTTP response
+     * @throws IOException if response writing fails
+     */
+    private static void writeJson(HttpServletRequest req, HttpServletResponse res) 
+                           throws IOException {
+        Integer status = (Integer) req.getAttribute(STATUS);
+        if (status != null) {
+            res.sendError(status.intValue());
+            return;
+        }
+        res.setContentType(MIME_TYPE_JSON);
+        res.setCharacterEncoding("UTF-8");
+        res.setHeader("Cache-Control", "no-store");
+        try (PrintWriter out = res.getWriter()) {
+            out.print((String) req.getAttribute(OUTPUT));
+        }
+    }
+    
+    
+    /**
+     * Writes, as a JSON object, the row of a convention in the list
+     * of the conventions. Since a row depends only on the convention
+     * (and on its contractors), the rows are kept in the
+     * {@link FragmentCache} keyed by convention id and versioned by
+     * the time of last modification of the convention.
+     * 
+     * @param c the convention
+     * @param iso the formatter of the dates
+     * @return <code>String</code> - the JSON object of the row
+     * @throws AttributoNonValorizzatoException if an attribute of the convention or of a contractor is not valued
+     */
+    private static String writeConventionRow(Convenzione c, SimpleDateFormat iso) 
+                                      throws AttributoNonValorizzatoException {
+        StringBuilder row = new StringBuilder(256);
+        row.append("{\"id\":").append(c.getId()).append(",\"tipo\":");
+        JsonWriter.appendString(row, c.getTipo());
+        row.append(",\"titolo\":");
+        JsonWriter.appendString(row, c.getTitolo());
+        row.append(",\"note\":");
+        JsonWriter.appendString(row, c.getNote());
+        row.append(",\"dataApprovazione\":");
+        JsonWriter.appendString(row, c.getDataApprovazione() == null ? null : iso.format(c.getDataApprovazione()));
+        row.append(",\"dataSottoscrizione\":");
+        JsonWriter.appendString(row, c.getDataSottoscrizione() == null ? null : iso.format(c.getDataSottoscrizione()));
+        row.append(",\"dataScadenza\":");
+        JsonWriter.appendString(row, c.getDataScadenza() == null ? null : iso.format(c.getDataScadenza()));
+        row.append(",\"numRepertorio\":");
+        JsonWriter.appendString(row, c.getNumRepertorio());
+        row.append(",\"caricoBollo\":").append(c.getCaricoBollo());
+        row.append(",\"pagato\":").append(c.getPagato());
+        row.append(",\"contraenti\":[");
+        for (PersonBean p : c.getContraenti()) {
+            row.append(row.charAt(row.length() - 1) == '[' ? "" : ",");
+            row.append("{\"id\":").append(p.getId()).append(",\"nome\":");
+            JsonWriter.appendString(row, p.getNome());
+            row.append('}');
+        }
+        return row.append("]}").toString();
+    }
+    
+    
     /* **************************************************************** *
      *          Email methods : for sending emails on-demand            *
      * **************************************************************** */
     
     /**
-     * Handles the SEND operation by extracting the email message from the request,
-     * sending it via MailManager, and generating a confirmation TXT response.
-     * Completes the HTTP response directly - no JSP forward required.
+     * Handles the SEND operation by extracting the email message from the request
+     * and sending it via MailManager; the confirmation TXT response is then
+     * written by {@link #renderSend}.
      * 
      * <p><strong>Flow:</strong></p>
      * <ul>
-     * <li>Extracts email body from request parameters</li>
-     * <li>Delegates to {@link #sendEmail(String)} for environment-aware sending</li>
-     * <li>Calls {@link #makeTXT} for response logging</li>
-     * <li>Early return - bypasses JSP forwarding</li>
+     * <li>Writes the email body, selected by request parameters, to a temporary file</li>
+     * <li>Delegates to {@link #sendEmail(File)} for environment-aware sending</li>
+     * <li>Leaves the file on the request, for {@link #makeTXT} to log it in the response</li>
+     * <li>On failure, leaves the error on the request instead</li>
      * </ul>
      * 
      * @param req the HTTP request containing email message parameters
-     * @param res the HTTP response for TXT confirmation output
-     * @throws ServletException if servlet processing fails
-     * @throws IOException if response writing fails
      */
-    private void handleSendEmail(HttpServletRequest req, HttpServletResponse res) 
-                          throws ServletException, IOException {
+    private static void handleSendEmail(HttpServletRequest req) {
+        File body = null;
         try {
-            // Build the message
-            String body = getMessage(req);
+            // Build the message, spooled to a temporary file
+            body = createSpool();
+            try (Writer out = Files.newBufferedWriter(body.toPath(), StandardCharsets.UTF_8)) {
+                writeMessage(req, out);
+            }
             // Single responsibility
             sendEmail(body);
-            // Save a txt log (just in case)
-            makeTXT(req, res, body + DBManager.getDbName());
+            // Save a txt log (just in case): the file is deleted once written, or at shutdown if never written
+            body.deleteOnExit();
+            req.setAttribute(OUTPUT, body);
             // Notify the success
             log.info("===> Email sent successfully <===");
         } catch (Exception e) {
             log.severe("Failed to send email: " + e.getLocalizedMessage());
             // Set error attribute for JSP
             req.setAttribute("error", "Email sending failed: " + e.getMessage());
-            // Forward to error page instead of crashing
-            forwardToErrorPage(req, res);
+            deleteSpool(body);
         }
     }
 
@@ -292,12 +712,8 @@ public class Data extends HttpServlet implements Constants {
      * Handles the SEND operation with attachments.
      * 
      * @param req the HTTP request containing email message parameters
-     * @param res the HTTP response for TXT confirmation output
-     * @throws ServletException if servlet processing fails
-     * @throws IOException if response writing fails
      */
-    private void handleSendCertificates(HttpServletRequest req, HttpServletResponse res) 
-                          throws ServletException, IOException {
+    private static void handleSendCertificates(HttpServletRequest req) {
         try {
             sendEmail();
             // Notify the success
@@ -306,26 +722,54 @@ public class Data extends HttpServlet implements Constants {
             log.severe("Failed to send email: " + e.getLocalizedMessage());
             // Set error attribute for JSP
             req.setAttribute("error", "Email sending failed: " + e.getMessage());
+        }
+    }
+    
+    
+    /**
+     * Writes the response of the SEND operation: forwards to the error page
+     * if the email could not be sent, otherwise writes the TXT log 
+     * of the message sent, if any, and deletes its temporary file.
+     * 
+     * @param req the HTTP request, carrying the outcome of the operation
+     * @param res the HTTP response for TXT confirmation output
+     * @throws ServletException if forward fails
+     * @throws IOException if response writing fails
+     */
+    private void renderSend(HttpServletRequest req, HttpServletResponse res) 
+                     throws ServletException, IOException {
+        if (req.getAttribute("error") != null) {
             // Forward to error page instead of crashing
             forwardToErrorPage(req, res);
+            return;
+        }
+        File body = (File) req.getAttribute(OUTPUT);
+        if (body != null) {
+            try {
+                makeTXT(req, res, body);
+            } finally {
+                deleteSpool(body);
+            }
         }
     }
     
     
     /**
      * Extracts parameters from the given HttpServletRequest and 
-     * returns a message string to send about the data selected via
+     * writes the message to send about the data selected via
      * those parameters.
      * This method reads data from the HTTP request (such as parameters),
-     * processes it, and returns a message string. 
+     * processes it, and writes the message to the given Writer
+     * one convention at a time, so that the whole body is never held in memory. 
      * It throws CommandException on failure
      * to report problems during message composition or parameters processing.
      *
      * @param req the HttpServletRequest object containing the client request data
-     * @return the generated message as a String
+     * @param out the Writer to write the message to
      * @throws CommandException if there is an error processing the request or componing the message
      */
-    private static String getMessage(HttpServletRequest req) 
+    private static void writeMessage(HttpServletRequest req,
+                                     Writer out) 
                               throws CommandException {
         // Parser of parameters
         ParameterParser parser = new ParameterParser(req);
@@ -334,29 +778,39 @@ public class Data extends HttpServlet implements Constants {
         //String data = parser.getStringParameter(DB_CONSTRUCT, VOID_STRING);
         String start = parser.getStringParameter("start", VOID_STRING);
         String end = parser.getStringParameter("end", VOID_STRING);
-        StringBuffer message = new StringBuffer("<p>Convenzioni in scadenza nell\'intervallo considerato: ");
         // Manage the request
         try {
             // Here the user session must be active, otherwise something's odd
             PersonBean user = SessionManager.checkSession(req.getSession(IF_EXISTS_DONOT_CREATE_NEW));
             Date from = Utils.format(start);
             Date to = Utils.format(end);
-            message.append("<strong>da ")
-                   .append(Utils.format(from))
-                   .append(" a ")
-                   .append(Utils.format(to))
-                   .append("</strong></p><hr><ul>");
-            ArrayList<Convenzione> conventions = ConventionCommand.retrieveConventions(user, from, to);
-            for (Convenzione c : conventions) {
-                message.append("<li> <a href='https://at.univr.it/col/?q=co&id=")
-                       .append(c.getId())
+            out.append("<p>Convenzioni in scadenza nell\'intervallo considerato: ")
+               .append("<strong>da ")
+               .append(Utils.format(from))
+               .append(" a ")
+               .append(Utils.format(to))
+               .append("</strong></p><hr><ul>");
+            // The conventions are read by blocks and written one at a time
+            ConventionCommand.streamConventions(user, from, to, c -> {
+                try {
+                    out.append("<li> <a href='https://at.univr.it/col/?q=co&id=")
+                       .append(String.valueOf(c.getId()))
                        .append("'>")
                        .append(c.getTitolo())
                        .append("</a> (<strong>scade il: ")
                        .append(Utils.format(c.getDataScadenza()))
                        .append("</strong>)</li>");
-            }
-            message.append("</ul>");
+                } catch (AttributoNonValorizzatoException anve) {
+                    log.warning(FOR_NAME + "Convenzione priva di id, esclusa dal riepilogo: " + c.getTitolo());
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            out.append("</ul>");
+        } catch (UncheckedIOException | IOException e) {
+            String msg = FOR_NAME + "Impossibile scrivere il messaggio.\n" + e.getLocalizedMessage();
+            log.severe(msg);
+            throw new CommandException(msg, e);
         } catch (RuntimeException re) {
             throw new CommandException(FOR_NAME + "Problema a livello dell\'autenticazione utente!\n" + re.getMessage(), re);
         } catch (CommandException ce) {
@@ -368,7 +822,6 @@ public class Data extends HttpServlet implements Constants {
             log.severe(msg);
             throw new CommandException(msg, e);
         }
-        return String.valueOf(message);
     }    
     
     
@@ -385,11 +838,11 @@ public class Data extends HttpServlet implements Constants {
      * PROD:  MailManager.sendEmail(body)
      * </pre>
      * 
-     * @param body the email content to send
+     * @param body the file holding the email content to send
      * @throws IOException if email delivery fails (logged by caller)
      * @throws Exception if some pointer is wrong
      */
-    private static void sendEmail(String body) 
+    private static void sendEmail(File body) 
             throws IOException, Exception {
         String subject = "Riepilogo Convenzioni in scadenza del " + Utils.format(Utils.getCurrentDate());
         // Development environment
@@ -415,8 +868,8 @@ public class Data extends HttpServlet implements Constants {
      * 
      * <p><strong>Flow:</strong></p>
      * <ul>
-     * <li>Build email body using a specific method</li>
-     * <li>Delegates to {@link #sendEmail(int[], String)} for environment-aware sending</li>
+     * <li>Writes email body to a temporary file using a specific method</li>
+     * <li>Delegates to {@link #sendEmail(int[], File)} for environment-aware sending</li>
      * </ul>
      * 
      * @param groupIds the IDs of the groups from which to extract the Conventions
@@ -426,36 +879,44 @@ public class Data extends HttpServlet implements Constants {
     public static void handleSendEmail(int[] groupIds, 
                                        Date start, 
                                        Date end)  {
+        File body = null;
         try {
-            // Invoke a method to build the message body
-            String body = getMessage(groupIds, start, end);
+            // Invoke a method to write the message body, spooled to a temporary file
+            body = createSpool();
+            try (Writer out = Files.newBufferedWriter(body.toPath(), StandardCharsets.UTF_8)) {
+                writeMessage(groupIds, start, end, out);
+            }
             // Single responsibility
             sendEmail(groupIds, body);
             // Logging
             log.info("===> Email sent successfully <===");
         } catch (Exception e) {
             log.severe("Failed to send email: " + e.getLocalizedMessage());
+        } finally {
+            deleteSpool(body);
         }
     }
     
     
     /**
-     * Returns a message string to send about the data selected via
+     * Writes the message to send about the data selected via
      * the given parameters.
      * This method extracts data based on parameters received,
-     * processes it, and returns a message string. 
+     * processes it, and writes the formatted body to the given Writer
+     * one convention at a time, so that the whole body is never held in memory. 
      * It throws CommandException on failure
      * to report problems during message composition or parameters processing.
      * 
      * @param groupIds the IDs of the user's groups to wrap in an user
      * @param from  the Date to be used as the starting expiration date
      * @param to    the date to be used as the ending expiration date
-     * @return <code>String</code> - the formatted body to use in a mail message
+     * @param out   the Writer to write the body of the mail message to
      * @throws CommandException if something went wrong
      */
-    private static String getMessage(int[] groupIds, 
+    private static void writeMessage(int[] groupIds, 
                                      Date from, 
-                                     Date to) 
+                                     Date to,
+                                     Writer out) 
                               throws CommandException {
         // Vector to encapsulate the received group IDs
         Vector<CodeBean> groups = new Vector<>();
@@ -469,49 +930,38 @@ public class Data extends HttpServlet implements Constants {
         }
         // Put the Vector into a dummy user
         user.setGruppi(groups);
-        StringBuffer message = new StringBuffer("<p>Convenzioni in scadenza nell\'intervallo considerato: ");
         // Manage the request
         try {
-            message.append("<strong>da ")
-                   .append(Utils.format(from))
-                   .append(" a ")
-                   .append(Utils.format(to))
-                   .append("</strong></p><hr><ol>");
-            ArrayList<Convenzione> conventions = ConventionCommand.retrieveConventions(user, from, to);
-            for (Convenzione c : conventions) {
-                int remainingYears = Utils.getYearsInBetween(Utils.convert(Utils.getCurrentDate()), c.getDataScadenza());
-                int remainingDays = Utils.getDaysInBetween(Utils.convert(Utils.getCurrentDate()), c.getDataScadenza());
-                message.append("<li>")
-                       .append("<strong>")
-                       .append("scadenza ");
-                if (remainingYears == NOTHING  && remainingDays < 30) {
-                    message.append("<span style='color:red'>");
-                }
-                message.append(Utils.format(c.getDataScadenza()))
-                       .append("</strong>: ")            
-                       .append("<a href='https://at.univr.it/col/?q=co&id=")
-                       .append(c.getId())
-                       .append("'>")
-                       .append(c.getTitolo())
-                       .append("</a>");
-                if (user.getGruppi().size() > ELEMENT_LEV_1) {
-                    message.append(" <strong><em>[");
-                    message.append(c.getGruppoPrincipale().getNome());
-                    message.append("]</em></strong>");
+            out.append("<p>Convenzioni in scadenza nell\'intervallo considerato: ")
+               .append("<strong>da ")
+               .append(Utils.format(from))
+               .append(" a ")
+               .append(Utils.format(to))
+               .append("</strong></p><hr><ol>");
+            // Le convenzioni vengono lette in streaming e scritte una alla volta
+            final boolean showGroup = user.getGruppi().size() > ELEMENT_LEV_1;
+            ConventionCommand.streamConventions(user, from, to, c -> {
+                try {
+                    writeDeadline(out, c, showGroup);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
                 }
-                message.append("</li>");
-            }
-            message.append("</ol>");
+            });
+            out.append("</ol>");
             if (user.getGruppi().size() > ELEMENT_LEV_1) {
-                message.append("<hr>")
-                       .append("<u>LEGENDA:</u> <br><pre>")
-                       .append("[ACCP] = Area Convenzioni Centri e Partecipate<br>")
-                       .append("[AG]   = Area Affari Generali</pre>")
-                       .append("<span style='color:red'><strong>")
-                       .append("data evidenziata")
-                       .append("</strong></span>")
-                       .append(" = manca meno di un mese alla scadenza");
+                out.append("<hr>")
+                   .append("<u>LEGENDA:</u> <br><pre>")
+                   .append("[ACCP] = Area Convenzioni Centri e Partecipate<br>")
+                   .append("[AG]   = Area Affari Generali</pre>")
+                   .append("<span style='color:red'><strong>")
+                   .append("data evidenziata")
+                   .append("</strong></span>")
+                   .append(" = manca meno di un mese alla scadenza");
             }
+        } catch (UncheckedIOException | IOException e) {
+            String msg = FOR_NAME + "Impossibile scrivere il messaggio.\n" + e.getLocalizedMessage();
+            log.severe(msg);
+            throw new CommandException(msg, e);
         } catch (RuntimeException re) {
             throw new CommandException(FOR_NAME + "Problema a livello dell\'autenticazione utente!\n" + re.getMessage(), re);
         } catch (CommandException ce) {
@@ -523,7 +973,48 @@ public class Data extends HttpServlet implements Constants {
             log.severe(msg);
             throw new CommandException(msg);
         }
-        return String.valueOf(message);
+    }
+    
+    
+    /**
+     * Writes to the digest message the list item of an expiring convention,
+     * highlighting the date when less than a month is left and, if required,
+     * the main group of the convention.
+     * 
+     * @param message   the Writer of the message being composed
+     * @param c         the expiring convention
+     * @param showGroup true if the main group of the convention has to be shown
+     * @throws IOException if the item cannot be written
+     */
+    private static void writeDeadline(Writer message,
+                                      Convenzione c,
+                                      boolean showGroup) 
+                               throws IOException {
+        try {
+            int remainingYears = Utils.getYearsInBetween(Utils.convert(Utils.getCurrentDate()), c.getDataScadenza());
+            int remainingDays = Utils.getDaysInBetween(Utils.convert(Utils.getCurrentDate()), c.getDataScadenza());
+            message.append("<li>")
+                   .append("<strong>")
+                   .append("scadenza ");
+            if (remainingYears == NOTHING  && remainingDays < 30) {
+                message.append("<span style='color:red'>");
+            }
+            message.append(Utils.format(c.getDataScadenza()))
+                   .append("</strong>: ")            
+                   .append("<a href='https://at.univr.it/col/?q=co&id=")
+                   .append(String.valueOf(c.getId()))
+                   .append("'>")
+                   .append(c.getTitolo())
+                   .append("</a>");
+            if (showGroup) {
+                message.append(" <strong><em>[");
+                message.append(c.getGruppoPrincipale().getNome());
+                message.append("]</em></strong>");
+            }
+            message.append("</li>");
+        } catch (AttributoNonValorizzatoException anve) {
+            log.warning(FOR_NAME + "Convenzione priva di id, esclusa dal riepilogo: " + c.getTitolo());
+        }
     }
     
     
@@ -541,12 +1032,12 @@ public class Data extends HttpServlet implements Constants {
      * </pre>
      * 
      * @param groupIds the IDs of the groups from which to determine the mailing lists to send the message
-     * @param body the email content to send
+     * @param body the file holding the email content to send
      * @throws IOException if email delivery fails (logged by caller)
      * @throws Exception if some pointer is wrong
      */
     private static void sendEmail(int[] groupIds, 
-                                  String body) 
+                                  File body) 
                            throws IOException, Exception {
         String subject = "Riepilogo Convenzioni in scadenza del " + Utils.format(Utils.getCurrentDate());
         // Development environment
@@ -594,6 +1085,31 @@ public class Data extends HttpServlet implements Constants {
     }
     
 
+    /**
+     * Creates the temporary file to which the body of a digest is written,
+     * so that it is then read by blocks while the message is sent.
+     * 
+     * @return <code>File</code> - the empty temporary file
+     * @throws IOException if the file cannot be created
+     */
+    private static File createSpool() 
+                             throws IOException {
+        return File.createTempFile("digest", DOT + HTML);
+    }
+    
+    
+    /**
+     * Deletes the temporary file holding the body of a digest, if any.
+     * 
+     * @param spool the temporary file, or null if it has not been created
+     */
+    private static void deleteSpool(File spool) {
+        if (spool != null && !spool.delete()) {
+            log.warning(FOR_NAME + "Impossibile eliminare il file temporaneo " + spool.getAbsolutePath());
+        }
+    }
+    
+
     /* **************************************************************** *
      *         Methods for serving asynchronous requests (XHR)          *
      * **************************************************************** */
@@ -659,7 +1175,7 @@ public class Data extends HttpServlet implements Constants {
      * @throws ServletException eccezione eventualmente proveniente dalla fprinf, da propagare
      * @throws IOException  eccezione eventualmente proveniente dalla fprinf, da propagare
      */
-    private static void makeTXT(HttpServletRequest req, HttpServletResponse res, String content)
+    private static void makeTXT(HttpServletRequest req, HttpServletResponse res, File content)
                          throws ServletException, IOException {
         // Genera un nome univoco per il file che verrà servito
         String fileName = makeFilename("email");
@@ -669,10 +1185,13 @@ public class Data extends HttpServlet implements Constants {
         res.setCharacterEncoding("UTF-8");
         // Configura l'header
         res.setHeader("Content-Disposition","attachment;filename=" + fileName + DOT + TEXT);
-        
-        req.setAttribute("body", content);
-        // Stampa il file sullo standard output
-        printf(req, res);
+        // Copia il messaggio sullo standard output a blocchi, senza caricarlo in memoria
+        PrintWriter out = res.getWriter();
+        out.print(getSentHeader());
+        try (Reader in = Files.newBufferedReader(content.toPath(), StandardCharsets.UTF_8)) {
+            in.transferTo(out);
+        }
+        out.println(DBManager.getDbName());
     }
     
     
@@ -768,14 +1287,24 @@ public class Data extends HttpServlet implements Constants {
             throws ServletException, IOException {
         // Genera l'oggetto per lo standard output
         PrintWriter out = res.getWriter();
-        Calendar now = Calendar.getInstance();
-        String header = "Email inviata alle " + now.get(Calendar.HOUR_OF_DAY) + ":" + now.get(Calendar.MINUTE) + " " + now.get(Calendar.SECOND) + "\"";
-        String content = header + req.getAttribute("body");
+        String content = getSentHeader() + req.getAttribute("body");
         out.println(content);
         return DEFAULT_ID;
     }
     
     
+    /**
+     * <p>Restituisce l'intestazione dei file di testo generati,
+     * con l'orario corrente.</p>
+     *
+     * @return <code>String</code> - l'intestazione
+     */
+    private static String getSentHeader() {
+        Calendar now = Calendar.getInstance();
+        return "Email inviata alle " + now.get(Calendar.HOUR_OF_DAY) + ":" + now.get(Calendar.MINUTE) + " " + now.get(Calendar.SECOND) + "\"";
+    }
+    
+    
     /**
      * Loads username and password from a properties file named "credentials.properties"
      * located in the classpath root.
@@ -38,23 +38,39 @@
 package it.col;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
+import it.col.bean.CodeBean;
+import it.col.bean.Convenzione;
 import it.col.bean.ItemBean;
+import it.col.bean.PersonBean;
 import it.col.command.Command;
 import it.col.command.HomePageCommand;
+import it.col.db.DBWrapper;
 import it.col.exception.AttributoNonValorizzatoException;
 import it.col.exception.CommandException;
+import it.col.util.Constants;
+import it.col.util.JsonWriter;
 import it.col.util.Utils;
 
 
@@ -83,6 +99,15 @@ public class Main extends HttpServlet {
      *  Nome of this (for error messages)
      */
     static final String FOR_NAME = "\n" + Logger.getLogger(new Throwable().getStackTrace()[0].getClassName()) + ": ";
+    /**
+     *  Flag of Commands executed asynchronously (init-param 'async')
+     */
+    private boolean async = false;
+    /**
+     *  Name of the request attribute holding the HTTP status of a failed
+     *  Command, rendered after the execution (possibly on another thread)
+     */
+    private static final String FAILURE = Main.class.getName() + ".failure";
 
 
     /**
@@ -96,6 +121,8 @@ public class Main extends HttpServlet {
     public void init(ServletConfig config) throws ServletException {
         // Init from superclass
         super.init(config);
+        // Commands executed on the CommandExecutor, if required
+        async = Boolean.parseBoolean(config.getInitParameter("async"));
     }
 
 
@@ -123,42 +150,68 @@ public class Main extends HttpServlet {
     public void doGet(HttpServletRequest req,
                       HttpServletResponse res)
                throws ServletException, IOException {
+        if (req.getDispatcherType() == DispatcherType.ASYNC) {
+            // The Command has run on the executor: the response is rendered here, on a container thread
+            renderGet(req, res);
+            return;
+        }
+        CommandExecutor executor = getExecutor(req);
+        if (executor != null) {
+            // The container thread is released at once: the Command runs on the executor
+            executor.submit(getCommandName(req), req.startAsync(req, res), r -> {
+                executeGet(r);
+                return null;
+            });
+            return;
+        }
+        executeGet(req);
+        renderGet(req, res);
+    }
+
+
+    /**
+     * <p>Does the work of a GET request that does not need the response:
+     * looks up and executes the Command, which puts its beans on the request,
+     * either on the container thread or on the {@link CommandExecutor}.
+     * A failure is recorded on the request, to be rendered
+     * by {@link #renderGet(HttpServletRequest, HttpServletResponse)}.</p>
+     *
+     * @param req HttpServletRequest containing the client request
+     */
+    private void executeGet(HttpServletRequest req) {
         // Command
         String q = null;
-        // Domain
-        String o = null;
-        // Output page
-        String fileJsp = null;
-        // Get the error page
-        String errorJsp = ConfigManager.getErrorJsp();
+        // Data requested as JSON instead of an HTML page
+        boolean json = isJsonRequested(req);
         /* 
          * Get the token associated with the wanted Command
          */
         try {
             q = req.getParameter(ConfigManager.getEntToken());
         } catch (NullPointerException npe) {
-            req.setAttribute("javax.servlet.jsp.jspException", npe);
             log(FOR_NAME + "Problema di puntamento: applicazione terminata!" + npe);
-            flush(req, res, errorJsp);
+            fail(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, npe);
+            return;
         } catch (Exception e) { // Just in case
-            req.setAttribute("javax.servlet.jsp.jspException", e);
             log(FOR_NAME + "Eccezione generica: " + e);
-            flush(req, res, errorJsp);
+            fail(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+            return;
         }
         /* 
-         * Get the header voices
+         * Get the header voices (useless when no page has to be rendered)
          */
-        try {
-            LinkedHashMap<String, ItemBean> mO = HomePageCommand.getHorizontalMenu();
-            req.setAttribute("menu", mO);
-        } catch (AttributoNonValorizzatoException anve) {
-            String msg = FOR_NAME +
-                         "L\'errore e\' stato generato dalla seguente chiamata: " +
-                         "HomePageCommand.getHorizontalMenu()";
-            log.log(Level.SEVERE, msg, anve);
-            req.setAttribute("message", anve.getMessage());
-            req.setAttribute("javax.servlet.jsp.jspException", anve);
-            flush(req, res, errorJsp);
+        if (!json) {
+            try {
+                LinkedHashMap<String, ItemBean> mO = HomePageCommand.getHorizontalMenu();
+                req.setAttribute("menu", mO);
+            } catch (AttributoNonValorizzatoException anve) {
+                String msg = FOR_NAME +
+                             "L\'errore e\' stato generato dalla seguente chiamata: " +
+                             "HomePageCommand.getHorizontalMenu()";
+                log.log(Level.SEVERE, msg, anve);
+                fail(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, anve);
+                return;
+            }
         }
         // Get the Command and try to invoke its execute method
         try {
@@ -172,9 +225,7 @@ public class Main extends HttpServlet {
                          ", presente nella pagina: " +
                          req.getHeader("Referer");
             log.log(Level.WARNING, msg, ce);
-            req.setAttribute("message", ce.getMessage());
-            req.setAttribute("javax.servlet.jsp.jspException", ce);
-            flush(req, res, errorJsp);
+            fail(req, HttpServletResponse.SC_BAD_REQUEST, ce);
         } catch (Exception e) {
             String msg = FOR_NAME +
                          "L\'errore e\' stato generato dalla seguente chiamata: " +
@@ -182,26 +233,68 @@ public class Main extends HttpServlet {
                          ", presente nella pagina: " +
                          req.getHeader("Referer");
             log.log(Level.SEVERE, msg, e);
-            req.setAttribute("message", e.getMessage());
-            req.setAttribute("javax.servlet.jsp.jspException", e);
-            flush(req, res, errorJsp);
+            fail(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+
+    /**
+     * <p>Renders the response of a GET request whose Command has been
+     * executed, always on a container thread: answers 304 if the data
+     * did not change, otherwise writes the JSON output or forwards
+     * to the template (or to the error page, if the Command failed).</p>
+     *
+     * @param req HttpServletRequest containing the beans set by the Command
+     * @param res HttpServletResponse containing the server response
+     * @throws ServletException exception that is raised if a problem occurs in forwarding the request/response
+     * @throws IOException      exception that is raised if a problem occurs in forwarding the request/response
+     */
+    private void renderGet(HttpServletRequest req,
+                           HttpServletResponse res)
+                    throws ServletException, IOException {
+        // Data requested as JSON instead of an HTML page
+        boolean json = isJsonRequested(req);
+        // Failure of the Command, if any
+        if (renderFailure(req, res, json)) {
+            return;
+        }
+        /*
+         * Conditional GET: if the data loaded by the Command did not change
+         * since the copy held by the client, answer 304 without rendering
+         */
+        String etag = null;
+        long lastModified = res.isCommitted() ? -1L : getDataLastModified(req);
+        if (lastModified > 0L) {
+            etag = getETag(req, lastModified);
+            res.setHeader("ETag", etag);
+            res.setDateHeader("Last-Modified", lastModified);
+            res.setHeader("Cache-Control", "private, no-cache"); // Stored, but always revalidated
+            if (isNotModified(req, etag, lastModified)) {
+                res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+        // JSON output: the beans are written straight to the response
+        if (json) {
+            flushJson(req, res);
+            return;
         }
         // Get the navigation params
         req.setAttribute("queryString", req.getQueryString());
-        // Template view
-        fileJsp = ConfigManager.getTemplate();
         // Fixed infos regarding the view layer (header, current date, baseHref and so on)
         retrieveFixedInfo(req);
         /*
-         * Disable the Cache
+         * Disable the Cache, unless the page can be revalidated
          */
-        res.setHeader("Cache-Control", "no-cache, no-store, must-revalidate"); // HTTP 1.1
-        res.setHeader("Pragma", "no-cache"); // HTTP 1.0
-        res.setDateHeader("Expires", 0); // Proxies.
+        if (etag == null) {
+            res.setHeader("Cache-Control", "no-cache, no-store, must-revalidate"); // HTTP 1.1
+            res.setHeader("Pragma", "no-cache"); // HTTP 1.0
+            res.setDateHeader("Expires", 0); // Proxies.
+        }
         /*
          * Finally, it ends in a proper way
          */
-        flush(req, res, fileJsp);
+        flush(req, res, ConfigManager.getTemplate());
     }
 
 
@@ -217,14 +310,39 @@ public class Main extends HttpServlet {
     public void doPost(HttpServletRequest req,
                        HttpServletResponse res)
                throws ServletException, IOException {
+        if (req.getDispatcherType() == DispatcherType.ASYNC) {
+            // La Command e' stata eseguita sull'esecutore: la risposta viene prodotta qui, su un thread del container
+            renderPost(req, res);
+            return;
+        }
+        CommandExecutor executor = getExecutor(req);
+        if (executor != null) {
+            // Il thread del container viene liberato subito: la Command viene eseguita sull'esecutore
+            executor.submit(getCommandName(req), req.startAsync(req, res), r -> {
+                executePost(r);
+                return null;
+            });
+            return;
+        }
+        executePost(req);
+        renderPost(req, res);
+    }
+
+
+    /**
+     * <p>Esegue il lavoro di una richiesta POST che non richiede la risposta:
+     * cerca ed esegue la Command, sul thread del container oppure sul 
+     * {@link CommandExecutor}. Un eventuale errore viene registrato nella
+     * richiesta, per essere mostrato da
+     * {@link #renderPost(HttpServletRequest, HttpServletResponse)}.</p>
+     *
+     * @param req la HttpServletRequest contenente la richiesta del client
+     */
+    private void executePost(HttpServletRequest req) {
         /*
          * Dichiara le variabili in base a cui ricercare la Command
          */
         String q = null;
-        /*
-         * Recupera il nome della pagina di errore
-         */
-        String errorJsp = ConfigManager.getErrorJsp();
         /*
          * Cerca la command associata al parametro 'ent'
          * e, se la trova, ne invoca il metodo execute()
@@ -232,22 +350,16 @@ public class Main extends HttpServlet {
         try {
             q = req.getParameter(ConfigManager.getEntToken());
         } catch (NullPointerException npe) { // Potrebbe già uscire qui
-            req.setAttribute("javax.servlet.jsp.jspException", npe);
-            req.setAttribute("message", npe.getMessage());
             log(FOR_NAME + "Problema di puntamento: applicazione terminata!" + npe);
-            flush(req, res, errorJsp);
+            fail(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, npe);
             return;
         } catch (NumberFormatException nfe) { // Controllo sull'input
-            req.setAttribute("javax.servlet.jsp.jspException", nfe);
-            req.setAttribute("message", nfe.getMessage());
             log(FOR_NAME + "Parametro in formato non valido: applicazione terminata!" + nfe);
-            flush(req, res, errorJsp);
+            fail(req, HttpServletResponse.SC_BAD_REQUEST, nfe);
             return;
         } catch (Exception e) { // Just in case
-            req.setAttribute("javax.servlet.jsp.jspException", e);
-            req.setAttribute("message", e.getMessage());
             log(FOR_NAME + "Eccezione generica: " + e);
-            flush(req, res, errorJsp);
+            fail(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
             return;
         }
         try {
@@ -259,17 +371,38 @@ public class Main extends HttpServlet {
             Command cmd = lookupCommand(q);
             cmd.execute(req);
         } catch (CommandException ce) { // Potrebbe già uscire qui
-            req.setAttribute("javax.servlet.jsp.jspException", ce);
-            req.setAttribute("message", ce.getMessage());
             log("Problema: " + ce);
-            flush(req, res, errorJsp);
-            return;
+            fail(req, HttpServletResponse.SC_BAD_REQUEST, ce);
         } catch (Exception e) {
-            req.setAttribute("javax.servlet.jsp.jspException", e);
-            req.setAttribute("message", e.getMessage());
-            log("Problema: " + e);
-            e.printStackTrace();
-            flush(req, res, errorJsp);
+            log("Problema: " + e, e);
+            fail(req, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+
+    /**
+     * <p>Produce la risposta di una richiesta POST la cui Command
+     * &egrave; stata eseguita, sempre su un thread del container:
+     * scrive l'output JSON oppure inoltra al template, o effettua la 
+     * redirezione (o inoltra alla pagina di errore, se la Command
+     * non &egrave; andata a buon fine).</p>
+     *
+     * @param req la HttpServletRequest contenente i bean impostati dalla Command
+     * @param res la HttpServletResponse contenente la risposta del server
+     * @throws ServletException eccezione che viene sollevata se si verifica un problema nell'inoltro (forward) della richiesta/risposta
+     * @throws IOException      eccezione che viene sollevata se si verifica un problema nell'inoltro (forward) della richiesta/risposta
+     */
+    private void renderPost(HttpServletRequest req,
+                            HttpServletResponse res)
+                     throws ServletException, IOException {
+        // Risposta JSON: i bean vengono scritti direttamente nella risposta
+        boolean json = isJsonRequested(req);
+        // Eventuale errore della Command
+        if (renderFailure(req, res, json)) {
+            return;
+        }
+        if (json) {
+            flushJson(req, res);
             return;
         }
         retrieveFixedInfo(req);
@@ -287,6 +420,81 @@ public class Main extends HttpServlet {
     }
 
 
+    /**
+     * <p>Records on the request the failure of the lookup or
+     * of the execution of the Command, to be rendered later.</p>
+     *
+     * @param req    HttpServletRequest of the failed Command
+     * @param status HTTP status of the JSON error response
+     * @param e      the exception raised
+     */
+    private static void fail(HttpServletRequest req,
+                             int status,
+                             Exception e) {
+        req.setAttribute(FAILURE, Integer.valueOf(status));
+        req.setAttribute("message", e.getMessage());
+        req.setAttribute("javax.servlet.jsp.jspException", e);
+    }
+
+
+    /**
+     * <p>Renders the failure of the Command recorded on the request,
+     * if any, as a JSON error or by forwarding to the error page.</p>
+     *
+     * @param req  HttpServletRequest possibly carrying a failure
+     * @param res  HttpServletResponse containing the server response
+     * @param json true if the client asked for JSON
+     * @return <code>boolean</code> - true if a failure has been rendered
+     * @throws ServletException if a problem occurs in forwarding the request/response
+     * @throws IOException      if a problem occurs in writing the response
+     */
+    private boolean renderFailure(HttpServletRequest req,
+                                  HttpServletResponse res,
+                                  boolean json)
+                           throws ServletException, IOException {
+        Integer status = (Integer) req.getAttribute(FAILURE);
+        if (status == null) {
+            return false;
+        }
+        if (json) {
+            flushJsonError(res, status.intValue(), (String) req.getAttribute("message"));
+        } else {
+            flush(req, res, ConfigManager.getErrorJsp());
+        }
+        return true;
+    }
+
+
+    /**
+     * <p>Returns the executor on which the request has to be processed
+     * asynchronously, or null if it has to be processed on the
+     * container thread (asynchronous mode not enabled for this servlet
+     * or not supported by the filters of the request).</p>
+     *
+     * @param req HttpServletRequest to process
+     * @return <code>CommandExecutor</code> - the executor, or null
+     */
+    private CommandExecutor getExecutor(HttpServletRequest req) {
+        if (!async || !req.isAsyncSupported() || req.isAsyncStarted()) {
+            return null;
+        }
+        return CommandExecutor.getInstance(getServletContext());
+    }
+
+
+    /**
+     * <p>Returns the token of the Command requested,
+     * used to apply its concurrency limit.</p>
+     *
+     * @param req HttpServletRequest containing the parameters
+     * @return <code>String</code> - the token of the Command
+     */
+    private static String getCommandName(HttpServletRequest req) {
+        String q = req.getParameter(ConfigManager.getEntToken());
+        return q == null ? ConfigManager.getHomePage() : q;
+    }
+
+
     /**
      * lookupCommand restituisce la classe Command associata parametro
      * d'input <code>cmd</code>, come specificato nella HashTable
@@ -408,4 +616,358 @@ public class Main extends HttpServlet {
         res.sendRedirect(getServletContext().getInitParameter("appName") + "/?" + (String) req.getAttribute("redirect"));
     }
 
+
+    /* **************************************************************** *
+     *     Conditional GET : validators of the data loaded by Command   *
+     * **************************************************************** */
+
+    /**
+     * <p>Returns the last modification time of the data that the Command
+     * has put on the request, truncated to seconds (the precision of the
+     * <code>Last-Modified</code> header), or -1 if the request does not
+     * carry conventions or contractors (or asks for a redirect),
+     * so that the page must not be validated.</p>
+     * <p>The time is the most recent among:
+     * <ul>
+     * <li>the last write made through this application
+     * (or its startup time, see {@link DBWrapper#getLastDataChange()});</li>
+     * <li>the last modification of each loaded convention
+     * (<code>data_ultima_modifica</code> and <code>ora_ultima_modifica</code>),
+     * which also accounts for changes made outside of the application;</li>
+     * <li>the start of the current day, since the state of the conventions
+     * depends on today's date;</li>
+     * <li>the creation of the session, since what the user can see
+     * depends on the groups loaded at login.</li>
+     * </ul></p>
+     *
+     * @param req HttpServletRequest containing the beans set by the Command
+     * @return <code>long</code> - last modification time in milliseconds, or -1
+     */
+    @SuppressWarnings("unchecked")
+    private static long getDataLastModified(HttpServletRequest req) {
+        Object convention = req.getAttribute("convenzione");
+        Object conventions = req.getAttribute("convenzioni");
+        Object contractor = req.getAttribute("contraente");
+        Object contractors = req.getAttribute("contraenti");
+        if (req.getAttribute("redirect") != null ||
+                (convention == null && conventions == null && contractor == null && contractors == null)) {
+            return -1L;
+        }
+        long lastModified = Math.max(DBWrapper.getLastDataChange(),
+                                     LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        HttpSession session = req.getSession(Constants.IF_EXISTS_DONOT_CREATE_NEW);
+        if (session != null) {
+            lastModified = Math.max(lastModified, session.getCreationTime());
+        }
+        if (convention instanceof Convenzione) {
+            lastModified = Math.max(lastModified, getModificationTime((Convenzione) convention));
+        }
+        if (conventions instanceof ArrayList) {
+            for (Convenzione c : (ArrayList<Convenzione>) conventions) {
+                lastModified = Math.max(lastModified, getModificationTime(c));
+            }
+        }
+        if (contractor instanceof PersonBean && ((PersonBean) contractor).getConvenzioni() != null) {
+            for (Convenzione c : ((PersonBean) contractor).getConvenzioni()) {
+                lastModified = Math.max(lastModified, getModificationTime(c));
+            }
+        }
+        return lastModified / 1000L * 1000L;
+    }
+
+
+    /**
+     * <p>Returns the last modification time of a convention,
+     * combining its date and time of last modification,
+     * or -1 if the date is not valued.</p>
+     *
+     * @param c the convention
+     * @return <code>long</code> - last modification time in milliseconds, or -1
+     */
+    private static long getModificationTime(Convenzione c) {
+        if (c.getDataUltimaModifica() == null) {
+            return -1L;
+        }
+        LocalDate day = new java.sql.Date(c.getDataUltimaModifica().getTime()).toLocalDate();
+        LocalDateTime modified = c.getOraUltimaModifica() == null ?
+                                 day.atStartOfDay() :
+                                 day.atTime(c.getOraUltimaModifica().toLocalTime());
+        return modified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+
+    /**
+     * <p>Builds the entity tag of the page, made of the data version,
+     * of the last modification time and of a hash of the query string
+     * and of the identity of the session, so that different users
+     * (or the same user in a different session) never share a validator.
+     * The tag is weak, because the markup may differ in details
+     * (e.g. the footer) that do not depend on the data.</p>
+     *
+     * @param req          HttpServletRequest containing the query string
+     * @param lastModified last modification time of the data
+     * @return <code>String</code> - the weak entity tag, quoted
+     */
+    private static String getETag(HttpServletRequest req,
+                                  long lastModified) {
+        HttpSession session = req.getSession(Constants.IF_EXISTS_DONOT_CREATE_NEW);
+        int identity = Objects.hash(req.getQueryString(),
+                                    session == null ? null : session.getId());
+        return "W/\"" + Long.toHexString(DBWrapper.getDataVersion()) + '-'
+                      + Long.toHexString(lastModified / 1000L) + '-'
+                      + Integer.toHexString(identity) + '"';
+    }
+
+
+    /**
+     * <p>Returns true if the copy held by the client is still valid,
+     * i.e. if one of the entity tags in the <code>If-None-Match</code>
+     * header matches (with the weak comparison) or, only when that
+     * header is missing, if the data have not been modified after
+     * the date in the <code>If-Modified-Since</code> header.</p>
+     *
+     * @param req          HttpServletRequest containing the conditional headers
+     * @param etag         entity tag of the current data
+     * @param lastModified last modification time of the current data
+     * @return <code>boolean</code> - true if a 304 response can be sent
+     */
+    private static boolean isNotModified(HttpServletRequest req,
+                                         String etag,
+                                         long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            String opaque = etag.substring(2);
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(opaque)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= lastModified;
+        } catch (IllegalArgumentException iae) {
+            // Malformed date: the page is sent in full
+            return false;
+        }
+    }
+
+
+    /* **************************************************************** *
+     *       JSON output : beans serialized straight to the response    *
+     * **************************************************************** */
+
+    /**
+     * <p>Returns true if the client asked for the data prepared
+     * by the Command in JSON format instead of an HTML page,
+     * i.e. if the output parameter has the value <code>json</code>
+     * (e.g. <code>?q=co&amp;out=json</code>).</p>
+     *
+     * @param req HttpServletRequest containing the parameters
+     * @return <code>boolean</code> - true if JSON output has been requested
+     */
+    private static boolean isJsonRequested(HttpServletRequest req) {
+        return Constants.JSON.equals(req.getParameter(ConfigManager.getOutToken()));
+    }
+
+
+    /**
+     * <p>Writes to the response, as a JSON object, the beans that
+     * the Command has put on the request (<code>convenzioni, convenzione,
+     * contraenti, contraente, faccette</code>); only the attributes
+     * actually valued are written.<br />
+     * The document is written field by field, without reflection,
+     * so neither the template nor the fixed info of the view layer
+     * are involved. It is completed in a buffer before anything
+     * is sent: if a bean cannot be serialized, the client receives
+     * a JSON error object instead of a truncated document.
+     * If the Command asked for a redirect,
+     * the object contains only its query string.</p>
+     *
+     * @param req HttpServletRequest containing the beans set by the Command
+     * @param res HttpServletResponse where to write the JSON document
+     * @throws IOException if a problem occurs writing the response
+     */
+    @SuppressWarnings("unchecked")
+    private static void flushJson(HttpServletRequest req,
+                                  HttpServletResponse res)
+                           throws IOException {
+        StringWriter payload = new StringWriter(4096);
+        try (JsonWriter json = new JsonWriter(payload)) {
+            json.beginObject();
+            Object redirect = req.getAttribute("redirect");
+            if (redirect != null) {
+                json.name("redirect").value(String.valueOf(redirect));
+            } else {
+                Object convention = req.getAttribute("convenzione");
+                if (convention instanceof Convenzione) {
+                    json.name("convenzione");
+                    writeConvention(json, (Convenzione) convention);
+                }
+                Object conventions = req.getAttribute("convenzioni");
+                if (conventions instanceof ArrayList) {
+                    json.name("convenzioni").beginArray();
+                    for (Convenzione c : (ArrayList<Convenzione>) conventions) {
+                        writeConvention(json, c);
+                    }
+                    json.endArray();
+                }
+                Object contractor = req.getAttribute("contraente");
+                if (contractor instanceof PersonBean) {
+                    json.name("contraente");
+                    writeContractor(json, (PersonBean) contractor);
+                }
+                Object contractors = req.getAttribute("contraenti");
+                if (contractors instanceof ArrayList) {
+                    json.name("contraenti").beginArray();
+                    for (PersonBean p : (ArrayList<PersonBean>) contractors) {
+                        writeContractor(json, p);
+                    }
+                    json.endArray();
+                }
+                Object facets = req.getAttribute("faccette");
+                if (facets instanceof HashMap) {
+                    json.name("faccette").beginObject();
+                    for (Map.Entry<String, HashMap<Integer, Integer>> facet : ((HashMap<String, HashMap<Integer, Integer>>) facets).entrySet()) {
+                        json.name(facet.getKey()).beginObject();
+                        for (Map.Entry<Integer, Integer> count : facet.getValue().entrySet()) {
+                            json.name(String.valueOf(count.getKey())).value(count.getValue());
+                        }
+                        json.endObject();
+                    }
+                    json.endObject();
+                }
+            }
+            json.endObject();
+        } catch (AttributoNonValorizzatoException anve) {
+            // Nothing has been sent yet: the client gets an error instead of a truncated document
+            log.log(Level.SEVERE, FOR_NAME + "Bean privo di identificativo nella serializzazione JSON.\n", anve);
+            flushJsonError(res, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, anve.getMessage());
+            return;
+        }
+        res.setContentType(Constants.MIME_TYPE_JSON);
+        res.setCharacterEncoding("UTF-8");
+        if (!res.containsHeader("ETag")) {
+            res.setHeader("Cache-Control", "no-cache, no-store, must-revalidate"); // HTTP 1.1
+            res.setHeader("Pragma", "no-cache"); // HTTP 1.0
+            res.setDateHeader("Expires", 0); // Proxies.
+        }
+        res.getWriter().write(payload.toString());
+    }
+
+
+    /**
+     * <p>Writes to the response a JSON object describing an error,
+     * with the given HTTP status code.</p>
+     *
+     * @param res     HttpServletResponse where to write the error
+     * @param status  HTTP status code
+     * @param message error message
+     * @throws IOException if a problem occurs writing the response
+     */
+    private static void flushJsonError(HttpServletResponse res,
+                                       int status,
+                                       String message)
+                                throws IOException {
+        res.setStatus(status);
+        res.setContentType(Constants.MIME_TYPE_JSON);
+        res.setCharacterEncoding("UTF-8");
+        res.setHeader("Cache-Control", "no-store");
+        try (JsonWriter json = new JsonWriter(res.getWriter())) {
+            json.beginObject().name("error").value(message).endObject();
+        }
+    }
+
+
+    /**
+     * <p>Writes a convention as a JSON object,
+     * including its contractors and scopes, if loaded.</p>
+     *
+     * @param json the JSON writer
+     * @param c    the convention to write
+     * @throws IOException if a problem occurs writing the response
+     * @throws AttributoNonValorizzatoException if a bean has no id
+     */
+    private static void writeConvention(JsonWriter json,
+                                        Convenzione c)
+                                 throws IOException,
+                                        AttributoNonValorizzatoException {
+        json.beginObject()
+            .name("id").value(c.getId())
+            .name("titolo").value(c.getTitolo())
+            .name("informativa").value(c.getInformativa())
+            .name("tipo").value(c.getTipo())
+            .name("stato").value(c.getStato())
+            .name("note").value(c.getNote())
+            .name("dataApprovazione").value(c.getDataApprovazione())
+            .name("notaApprovazione").value(c.getNotaApprovazione())
+            .name("dataApprovazione2").value(c.getDataApprovazione2())
+            .name("notaApprovazione2").value(c.getNotaApprovazione2())
+            .name("dataSottoscrizione").value(c.getDataSottoscrizione())
+            .name("notaSottoscrizione").value(c.getNotaSottoscrizione())
+            .name("dataScadenza").value(c.getDataScadenza())
+            .name("notaScadenza").value(c.getNotaScadenza())
+            .name("numRepertorio").value(c.getNumRepertorio())
+            .name("caricoBollo").value(c.getCaricoBollo())
+            .name("pagato").value(c.getPagato());
+        if (c.getContraenti() != null) {
+            json.name("contraenti").beginArray();
+            for (PersonBean p : c.getContraenti()) {
+                json.beginObject()
+                    .name("id").value(p.getId())
+                    .name("nome").value(p.getNome())
+                    .endObject();
+            }
+            json.endArray();
+        }
+        if (c.getFinalita() != null) {
+            json.name("finalita").beginArray();
+            for (CodeBean f : c.getFinalita()) {
+                json.beginObject()
+                    .name("id").value(f.getId())
+                    .name("nome").value(f.getNome())
+                    .endObject();
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
+
+    /**
+     * <p>Writes a contractor as a JSON object,
+     * including the titles of its conventions, if loaded.</p>
+     *
+     * @param json the JSON writer
+     * @param p    the contractor to write
+     * @throws IOException if a problem occurs writing the response
+     * @throws AttributoNonValorizzatoException if a bean has no id
+     */
+    private static void writeContractor(JsonWriter json,
+                                        PersonBean p)
+                                 throws IOException,
+                                        AttributoNonValorizzatoException {
+        json.beginObject()
+            .name("id").value(p.getId())
+            .name("nome").value(p.getNome())
+            .name("tipo").value(p.getNote())
+            .name("informativa").value(p.getInformativa())
+            .name("codiceFiscale").value(p.getCodiceFiscale())
+            .name("partitaIva").value(p.getPartitaIva())
+            .name("email").value(p.getEmail());
+        if (p.getConvenzioni() != null) {
+            json.name("convenzioni").beginArray();
+            for (Convenzione c : p.getConvenzioni()) {
+                json.beginObject()
+                    .name("id").value(c.getId())
+                    .name("titolo").value(c.getTitolo())
+                    .endObject();
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
 }
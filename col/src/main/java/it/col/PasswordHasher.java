@@ -0,0 +1,313 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import it.col.bean.CodeBean;
+import it.col.db.LatencyHistogram;
+import it.col.exception.AttributoNonValorizzatoException;
+import it.col.util.Constants;
+
+
+/**
+ * <p><code>PasswordHasher</code> &egrave; l'esecutore dedicato al calcolo
+ * degli hash delle password (PBKDF2, v. {@link SessionManager#hashPassword(String, String)})
+ * durante la login.</p>
+ * <p>Il calcolo &egrave; volutamente costoso e satura la CPU: eseguirlo
+ * direttamente sui thread del container, quando molti utenti accedono
+ * nello stesso momento, rallenterebbe anche le pagine degli utenti
+ * gi&agrave; autenticati. Le verifiche vengono quindi eseguite
+ * su un pool di thread di dimensione fissa, pari ai processori disponibili,
+ * con una coda limitata; quando la coda &egrave; piena, o l'attesa supera
+ * il timeout, la verifica viene rifiutata subito
+ * ({@link RejectedExecutionException}) e la login riceve un 503
+ * con l'header <code>Retry-After</code>.</p>
+ * <p>Viene creato all'avvio del contesto (&egrave; registrato come listener
+ * in <code>web.xml</code>), dove legge i parametri di contesto:<ul>
+ * <li><code>hashThreads</code>: thread del pool (default: processori disponibili)</li>
+ * <li><code>hashQueue</code>: verifiche in coda (default: 4 per thread)</li>
+ * <li><code>hashTimeout</code>: attesa massima di una verifica, in millisecondi (default: 5000)</li>
+ * </ul></p>
+ * <p>I tempi di attesa in coda e di calcolo sono raccolti in istogrammi
+ * e riportati dalla pagina di monitoraggio (<code>data?op=mon</code>).</p>
+ *
+ * <p>Created on Sun Oct 18 2026</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class PasswordHasher implements ServletContextListener {
+
+    /**
+     * Static name of this class
+     */
+    private static final String FOR_NAME = "\n" + Logger.getLogger(PasswordHasher.class.getName()) + Constants.COLON + Constants.BLANK_SPACE;
+    /**
+     * All logging goes through this logger.
+     */
+    private static Logger log = Logger.getLogger(PasswordHasher.class.getName());
+    /**
+     * Name of the context attribute holding the executor
+     */
+    public static final String ATTRIBUTE = PasswordHasher.class.getName();
+    /**
+     * Seconds suggested to the clients before retrying a rejected login
+     */
+    public static final String RETRY_AFTER = "2";
+    /**
+     * Time spent computing the hashes
+     */
+    private static final LatencyHistogram HASH = new LatencyHistogram();
+    /**
+     * Time spent by the verifications waiting for a thread
+     */
+    private static final LatencyHistogram WAIT = new LatencyHistogram();
+    /**
+     * Pool running the verifications
+     */
+    private ThreadPoolExecutor pool;
+    /**
+     * Maximum wait of a verification, in milliseconds
+     */
+    private long timeout;
+    /**
+     * Verifications completed
+     */
+    private final LongAdder completed = new LongAdder();
+    /**
+     * Verifications rejected because the queue was full
+     */
+    private final LongAdder rejected = new LongAdder();
+    /**
+     * Verifications abandoned after the timeout
+     */
+    private final LongAdder timedOut = new LongAdder();
+
+
+    /**
+     * <p>Creates the pool from the context parameters
+     * and exposes the executor as context attribute.</p>
+     *
+     * @param sce the event of the context initialization
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        ServletContext context = sce.getServletContext();
+        int threads = getIntParameter(context, "hashThreads", Runtime.getRuntime().availableProcessors());
+        int queue = getIntParameter(context, "hashQueue", 4 * threads);
+        timeout = getIntParameter(context, "hashTimeout", 5000);
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "col-pbkdf2-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                      new ArrayBlockingQueue<>(queue), factory);
+        context.setAttribute(ATTRIBUTE, this);
+        log.info(FOR_NAME + "Verifica delle password su " + threads + " thread, al massimo " + queue + " verifiche in coda.\n");
+    }
+
+
+    /**
+     * <p>Stops the pool.</p>
+     *
+     * @param sce the event of the context destruction
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        sce.getServletContext().removeAttribute(ATTRIBUTE);
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+
+    /**
+     * <p>Verifies a password on the pool, waiting for the result
+     * at most for the configured timeout.</p>
+     *
+     * @param password    the password typed by the user
+     * @param credentials the encrypted password and the salt of the user
+     * @return <code>boolean</code> - true if the password matches the encrypted one
+     * @throws RejectedExecutionException       if the pool is saturated or the timeout expires
+     * @throws NoSuchAlgorithmException         if the algorithm is not available
+     * @throws InvalidKeySpecException          if the key is not valid
+     * @throws AttributoNonValorizzatoException if a mandatory attribute of the credentials is not valued
+     */
+    public boolean verify(String password,
+                          CodeBean credentials)
+                   throws NoSuchAlgorithmException,
+                          InvalidKeySpecException,
+                          AttributoNonValorizzatoException {
+        long queued = System.nanoTime();
+        Future<Boolean> result;
+        try {
+            result = pool.submit(() -> {
+                WAIT.record(System.nanoTime() - queued);
+                return Boolean.valueOf(measure(password, credentials));
+            });
+        } catch (RejectedExecutionException ree) {
+            rejected.increment();
+            throw ree;
+        }
+        try {
+            boolean verified = result.get(timeout, TimeUnit.MILLISECONDS).booleanValue();
+            completed.increment();
+            return verified;
+        } catch (TimeoutException te) {
+            // If not started yet, it leaves the queue
+            result.cancel(false);
+            timedOut.increment();
+            throw new RejectedExecutionException(FOR_NAME + "Verifica della password non completata entro " + timeout + " ms.\n", te);
+        } catch (InterruptedException ie) {
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(FOR_NAME + "Verifica della password interrotta.\n", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) cause;
+            } else if (cause instanceof InvalidKeySpecException) {
+                throw (InvalidKeySpecException) cause;
+            } else if (cause instanceof AttributoNonValorizzatoException) {
+                throw (AttributoNonValorizzatoException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+
+    /**
+     * <p>Verifies a password on the calling thread,
+     * recording the time of the hash.</p>
+     *
+     * @param password    the password typed by the user
+     * @param credentials the encrypted password and the salt of the user
+     * @return <code>boolean</code> - true if the password matches the encrypted one
+     * @throws NoSuchAlgorithmException         if the algorithm is not available
+     * @throws InvalidKeySpecException          if the key is not valid
+     * @throws AttributoNonValorizzatoException if a mandatory attribute of the credentials is not valued
+     */
+    static boolean measure(String password,
+                           CodeBean credentials)
+                    throws NoSuchAlgorithmException,
+                           InvalidKeySpecException,
+                           AttributoNonValorizzatoException {
+        long start = System.nanoTime();
+        try {
+            return SessionManager.verifyPassword(password, credentials);
+        } finally {
+            HASH.record(System.nanoTime() - start);
+        }
+    }
+
+
+    /**
+     * <p>Returns the counters and the histograms of the verifications,
+     * as plain text, to be appended to the monitoring report.</p>
+     *
+     * @return <code>String</code> - the counters of the verifications
+     */
+    public String getReport() {
+        return "# Verifica delle password (PBKDF2)\n" +
+               "  threads=" + pool.getMaximumPoolSize() +
+               " active=" + pool.getActiveCount() +
+               " queued=" + pool.getQueue().size() +
+               " completed=" + completed.sum() +
+               " rejected=" + rejected.sum() +
+               " timedOut=" + timedOut.sum() + "\n" +
+               "  wait: " + WAIT + "\n" +
+               "  hash: " + HASH + "\n";
+    }
+
+
+    /**
+     * <p>Returns the executor registered in a context,
+     * or null if it has not been registered.</p>
+     *
+     * @param context the servlet context
+     * @return <code>PasswordHasher</code> - the executor, or null
+     */
+    public static PasswordHasher getInstance(ServletContext context) {
+        return (PasswordHasher) context.getAttribute(ATTRIBUTE);
+    }
+
+
+    /**
+     * <p>Returns a positive integer context parameter, or its default
+     * if missing or not valid.</p>
+     *
+     * @param context      the servlet context
+     * @param name         name of the parameter
+     * @param defaultValue default value
+     * @return <code>int</code> - the value of the parameter
+     */
+    private static int getIntParameter(ServletContext context,
+                                       String name,
+                                       int defaultValue) {
+        String value = context.getInitParameter(name);
+        if (value != null) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException nfe) {
+                log.warning(FOR_NAME + "Parametro " + name + " non valido (" + value + "): viene usato il default.\n");
+            }
+        }
+        return Math.max(1, defaultValue);
+    }
+
+}
@@ -44,12 +44,14 @@ import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -138,6 +140,19 @@ public class SessionManager extends HttpServlet implements Constants {
      * <p>Costante random definita da un generatore di numeri casuali sicuro.</p>
      */
     private static final SecureRandom RAND = new SecureRandom();
+    /**
+     * <p>Factory delle chiavi, una per thread: <code>SecretKeyFactory</code>
+     * non &egrave; thread-safe e la sua creazione (ricerca del provider)
+     * ha un costo che non vale la pena ripetere ad ogni login.
+     * Vale null se l'algoritmo non &egrave; disponibile.</p>
+     */
+    private static final ThreadLocal<SecretKeyFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException nsae) {
+            return null;
+        }
+    });
     /**
      * <p>Costante indicante la lunghezza in termini di caratteri del seme,
      * usato per la criptazione della password.</p>
@@ -218,7 +233,7 @@ public class SessionManager extends HttpServlet implements Constants {
         StringBuffer msg = new StringBuffer();              // Messaggio
         // Effettua la connessione al databound
         try {
-            db = new DBWrapper();
+            db = DBWrapper.getInstance();
         } catch (WebStorageException wse) {
             throw new ServletException(FOR_NAME + "Non riesco ad instanziare databound.\n" + wse.getMessage(), wse);
         }
@@ -229,10 +244,13 @@ public class SessionManager extends HttpServlet implements Constants {
         boolean authenticated = false;
         // Crea la sessione stessa, se non c'è già, altrimenti la recupera
         try {
-            authenticated = authenticateEncrypted(username, password, req, db, msg);
-            if (!authenticated) {
-                authenticated = authenticate(username, password, req, db, msg);
-            }
+            authenticated = authenticate(username, password, req, db, msg);
+        } catch (RejectedExecutionException ree) {
+            // Troppe login contemporanee: meglio rifiutare subito che accodare
+            LOG.warning(FOR_NAME + "Verifica della password rifiutata.\n" + ree.getMessage());
+            res.setHeader("Retry-After", PasswordHasher.RETRY_AFTER);
+            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
         } catch (InvalidKeySpecException ikse) {
             throw new ServletException(FOR_NAME + "Chiave specificata non valida.\n" + ikse.getMessage(), ikse);
         } catch (NoSuchAlgorithmException nsae) {
@@ -293,6 +311,13 @@ public class SessionManager extends HttpServlet implements Constants {
      * <p>Crea la sessione utente.<br>
      * Inserisce la sessione creata nella HttpServletRequest, modificandola
      * per riferimento (<code>ByRef</code>).</p>
+     * <p>L'utente, con ruoli e gruppi, e le sue credenziali vengono
+     * recuperati con un'unica query; la password viene quindi verificata
+     * sulle credenziali in chiaro (utenze storiche, gi&agrave; confrontate
+     * dalla query) oppure, calcolandone l'hash, su quelle criptate.<br>
+     * La sessione viene creata solo dopo la verifica, cos&igrave; che
+     * una login rifiutata per saturazione del pool di verifica
+     * ({@link RejectedExecutionException}) non lasci sessioni vuote.</p>
      *
      * @param username nome utente inserito ai fini di login
      * @param password password inserita ai fini di login
@@ -301,23 +326,33 @@ public class SessionManager extends HttpServlet implements Constants {
      * @param message messaggio per l'output circa l'esito della login
      * @return <code>boolean</code> - true se l'autenticazione e' andata a buon fine, false in caso contrario
      * @throws CommandException se si verifica un problema nel recupero dell'utente in base alle credenziali fornite
+     * @throws InvalidKeySpecException   se la chiave non &egrave; valida (codifica non valida, lunghezza non valida, non inizializzata, ...)
+     * @throws NoSuchAlgorithmException  se non &egrave; disponibile l'algoritmo di criptaggio nell'ambiente
      */
     public static boolean authenticate(String username,
                                        String password,
                                        HttpServletRequest req,
                                        DBWrapper db,
                                        StringBuffer message)
-                                throws CommandException {
+                                throws CommandException,
+                                       NoSuchAlgorithmException,
+                                       InvalidKeySpecException {
         boolean authenticated = false;
-        HttpSession session = req.getSession();
+        HttpSession session = req.getSession(Constants.IF_EXISTS_DONOT_CREATE_NEW);
         // Se la sessione non è nuova ci sono già dentro dei valori
-        if (session.getAttribute("usr") != null) {
+        if (session != null && session.getAttribute("usr") != null) {
             authenticated = true;
         }
         else {  // Se la sessione è nuova bisogna valorizzarla opportunamente
-            // Interroga il database a proposito dell'utente
+            // Interroga il database a proposito dell'utente e delle sue credenziali
             try {
-                PersonBean user = db.getUser(username, password);
+                CodeBean credentials = new CodeBean();
+                PersonBean user = db.getUserLogin(username, password, credentials);
+                if (user != null && !isPasswordValid(password, credentials, req.getServletContext())) {
+                    user = null;
+                }
+                // Password verificata, valida o meno: solo ora serve la sessione
+                session = req.getSession();
                 if (user != null) {
                     message.append("Benvenuto" + user.getNome());
                     session.setAttribute("msg", message);
@@ -349,66 +384,35 @@ public class SessionManager extends HttpServlet implements Constants {
 
 
     /**
-     * <p>Crea la sessione utente.<br>
-     * Inserisce la sessione creata nella HttpServletRequest, modificandola
-     * per riferimento <code>ByRef</code>.</p>
+     * <p>Verifica la password inserita dall'utente sulle credenziali
+     * restituite dalla query di login: &egrave; valida se corrisponde
+     * alle credenziali in chiaro oppure, se l'utenza ha una password
+     * criptata e un seme, se il suo hash corrisponde a quello memorizzato.</p>
+     * <p>L'hash viene calcolato sul pool dedicato ({@link PasswordHasher}),
+     * se registrato, altrimenti sul thread corrente.</p>
      *
-     * @param username nome utente inserito ai fini di login
-     * @param password password inserita ai fini di login
-     * @param req   HttpServletRequest per la creazione della sessione
-     * @param db    DataBound per la query riguardo le credenziali
-     * @param message messaggio per l'output circa l'esito della login
-     * @return <code>boolean</code> - true se l'autenticazione e' andata a buon fine, false in caso contrario
-     * @throws CommandException se si verifica un problema nel recupero dell'utente in base alle credenziali fornite
-     * @throws InvalidKeySpecException   se la chiave non &egrave; valida (codifica non valida, lunghezza non valida, non inizializzata, ...)
-     * @throws NoSuchAlgorithmException  se non &egrave; disponibile l'algoritmo di criptaggio nell'ambiente
+     * @param password    password inserita dall'utente
+     * @param credentials credenziali dell'utente (v. {@link DBWrapper#getUserLogin(String, String, CodeBean)})
+     * @param context     contesto dell'applicazione, in cui &egrave; registrato il pool
+     * @return <code>boolean</code> - true se la password &egrave; valida, false altrimenti
+     * @throws AttributoNonValorizzatoException se un campo obbligatorio del bean &egrave; stato trovato non valorizzato
+     * @throws InvalidKeySpecException se la chiave non &egrave; valida (codifica non valida, lunghezza non valida, non inizializzata, ...)
+     * @throws NoSuchAlgorithmException se non &egrave; disponibile l'algoritmo di criptaggio nell'ambiente
      */
-    public static boolean authenticateEncrypted(String username,
-                                                String password,
-                                                HttpServletRequest req,
-                                                DBWrapper db,
-                                                StringBuffer message)
-                                         throws CommandException,
-                                                NoSuchAlgorithmException,
-                                                InvalidKeySpecException {
-        boolean authenticated = false;
-        HttpSession session = req.getSession();
-        // Se la sessione non è nuova ci sono già dentro dei valori
-        if (session.getAttribute("usr") != null) {
-            authenticated = true;
+    private static boolean isPasswordValid(String password,
+                                           CodeBean credentials,
+                                           ServletContext context)
+                                    throws NoSuchAlgorithmException,
+                                           InvalidKeySpecException,
+                                           AttributoNonValorizzatoException {
+        if (credentials.getOrdinale() > NOTHING) {
+            return true;
         }
-        else {
-            // Interroga il database a proposito dell'utente
-            try {
-                CodeBean encryptedPassword = db.getEncryptedPassword(username);
-                PersonBean user = null;
-                if (encryptedPassword != null && verifyPassword(password, encryptedPassword)) {
-                    user = db.getUser(username, encryptedPassword.getNome());
-                }
-                if (user != null) {
-                    message.append("Benvenuto" + user.getNome());
-                    session.setAttribute("msg", message);
-                    session.setAttribute("error", false);
-                    session.setAttribute("usr", user);
-                    authenticated = true;
-                } else {
-                    authenticated = false;
-                }
-            } catch (WebStorageException wse) {
-                String msg = FOR_NAME + "Non riesco a determinare l'utente";
-                LOG.severe(msg);
-                throw new CommandException(msg + wse.getMessage(), wse);
-            } catch (AttributoNonValorizzatoException anve) {
-                String msg = FOR_NAME + "Attributo della persona non valorizzato.\n";
-                LOG.severe(msg);
-                throw new CommandException(msg + anve.getMessage(), anve);
-            } catch (NullPointerException npe) {
-                String msg = FOR_NAME + "Oggetto persona non valorizzato.\n";
-                LOG.severe(msg);
-                throw new CommandException(msg + npe.getMessage(), npe);
-            }
+        if (credentials.getNome() == null || credentials.getInformativa() == null) {
+            return false;
         }
-        return authenticated;
+        PasswordHasher hasher = PasswordHasher.getInstance(context);
+        return (hasher != null ? hasher.verify(password, credentials) : PasswordHasher.measure(password, credentials));
     }
 
 
@@ -473,7 +477,10 @@ public class SessionManager extends HttpServlet implements Constants {
         KeySpec spec = new PBEKeySpec(chars, bytes, ITERATIONS, KEY_LENGTH);
         Arrays.fill(chars, Character.MIN_VALUE);
         try {
-            SecretKeyFactory fac = SecretKeyFactory.getInstance(ALGORITHM);
+            SecretKeyFactory fac = FACTORY.get();
+            if (fac == null) {
+                throw new NoSuchAlgorithmException(ALGORITHM);
+            }
             byte[] securePassword = fac.generateSecret(spec).getEncoded();
             return DatatypeConverter.printBase64Binary(securePassword);
         } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
@@ -0,0 +1,430 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.bean;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.beanutils.BeanUtils;
+
+
+/**
+ * <p><code>BeanMapper</code> &egrave; un mappatore compilato tra le righe
+ * di un ResultSet e gli attributi di un Java Data Bean.</p>
+ * <p>La prima volta che incontra una coppia (classe del bean, tracciato
+ * delle colonne del ResultSet) risolve, una volta per tutte, il setter
+ * corrispondente a ogni colonna sotto forma di <code>MethodHandle</code>
+ * e sceglie l'accessor tipizzato del ResultSet (<code>getInt</code>,
+ * <code>getString</code>, <code>getDate</code>...) compatibile con il tipo
+ * della colonna e del parametro del setter; il mappatore cos&igrave; ottenuto
+ * viene memorizzato in una cache e riutilizzato per tutte le righe
+ * e per tutte le esecuzioni successive della stessa query.</p>
+ * <p>Le regole di popolamento sono quelle di {@link BeanUtil#populate(Object, ResultSet)}:
+ * <ul>
+ * <li>le colonne il cui nome non corrisponde ad alcun attributo del bean
+ * vengono ignorate (e segnalate una volta sola, alla compilazione);</li>
+ * <li>il valore null di una colonna di tipo VARCHAR viene inserito
+ * nel bean come stringa vuota;</li>
+ * <li>le combinazioni di tipi per cui non esiste un accessor tipizzato
+ * vengono delegate alla conversione di <code>BeanUtils.copyProperty</code>.</li>
+ * </ul>
+ * Le conversioni replicano quelle di <code>BeanUtils.copyProperty</code>
+ * con i convertitori predefiniti (quelli con valori di default di
+ * {@link BeanUtil} sono disattivati):
+ * <ul>
+ * <li>il valore null di una colonna associata a un attributo di tipo
+ * wrapper (<code>Integer</code>, <code>Boolean</code>, <code>Float</code>...)
+ * imposta l'attributo a null, non a 0 o false;</li>
+ * <li>gli attributi di tipo <code>java.util.Date</code> ricevono un
+ * <code>java.util.Date</code>, non il <code>java.sql.Date</code>
+ * (o <code>Timestamp</code>) restituito dal driver, che ha
+ * una diversa rappresentazione testuale.</li>
+ * </ul>
+ * L'unica differenza riguarda il valore null di una colonna associata
+ * a un attributo di tipo primitivo: BeanUtils solleva un'eccezione,
+ * mentre il mappatore lascia invariato il valore dell'attributo.</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class BeanMapper {
+
+    /**
+     * <p>Logger della classe per scrivere i messaggi di errore.</p>
+     */
+    private static Logger LOG = Logger.getLogger(BeanMapper.class.getName());
+    /**
+     * <p>Nome di questa classe
+     * (viene utilizzato per contestualizzare i messaggi di errore).</p>
+     */
+    private static final String FOR_NAME = "\n" + BeanMapper.class.getName() + ": ";
+    /**
+     * <p>Cache dei mappatori compilati, indicizzati per
+     * classe del bean e tracciato delle colonne.</p>
+     */
+    private static final ConcurrentHashMap<String, BeanMapper> MAPPERS = new ConcurrentHashMap<>();
+    /**
+     * <p>Mappatori delle singole colonne, nell'ordine del ResultSet.</p>
+     */
+    private final ColumnMapper[] columns;
+
+
+    /**
+     * <p>Mappatore di una singola colonna su un attributo del bean.</p>
+     */
+    @FunctionalInterface
+    private interface ColumnMapper {
+        void map(Object bean, ResultSet rs) throws Throwable;
+    }
+
+
+    /**
+     * <p>Costruttore privato: i mappatori si ottengono tramite
+     * {@link #forResultSet(Class, ResultSet)}.</p>
+     *
+     * @param columns mappatori delle singole colonne
+     */
+    private BeanMapper(ColumnMapper[] columns) {
+        this.columns = columns;
+    }
+
+
+    /**
+     * <p>Restituisce il mappatore compilato per la classe di bean e per il
+     * tracciato delle colonne del ResultSet passati, compilandolo e
+     * memorizzandolo in cache la prima volta che la coppia viene incontrata.</p>
+     *
+     * @param beanClass classe del bean da popolare
+     * @param rs        ResultSet da cui leggere i valori
+     * @return <code>BeanMapper</code> - il mappatore da applicare alle righe del ResultSet
+     * @throws SQLException se non &egrave; possibile leggere i metadati del ResultSet o ispezionare il bean
+     */
+    public static BeanMapper forResultSet(Class<?> beanClass,
+                                          ResultSet rs)
+                                   throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int cols = metaData.getColumnCount();
+        StringBuilder key = new StringBuilder(beanClass.getName());
+        for (int i = 1; i <= cols; i++) {
+            key.append('|').append(metaData.getColumnLabel(i)).append(':').append(metaData.getColumnType(i));
+        }
+        BeanMapper mapper = MAPPERS.get(key.toString());
+        if (mapper == null) {
+            mapper = compile(beanClass, metaData);
+            BeanMapper previous = MAPPERS.putIfAbsent(key.toString(), mapper);
+            if (previous != null) {
+                mapper = previous;
+            }
+        }
+        return mapper;
+    }
+
+
+    /**
+     * <p>Popola il bean passato con i valori della riga corrente del ResultSet.</p>
+     *
+     * @param bean bean da popolare
+     * @param rs   ResultSet posizionato sulla riga da leggere
+     * @throws SQLException se si verifica un problema nella lettura di un valore o nell'invocazione di un setter
+     */
+    public void map(Object bean,
+                    ResultSet rs)
+             throws SQLException {
+        for (ColumnMapper column : columns) {
+            try {
+                column.map(bean, rs);
+            } catch (SQLException sqle) {
+                throw sqle;
+            } catch (Throwable t) {
+                throw new SQLException(FOR_NAME + "Problemi nel settare un attributo nel bean di tipo '"
+                                       + bean.getClass() + "': " + t.getMessage(), t);
+            }
+        }
+    }
+
+
+    /**
+     * <p>Compila il mappatore per una classe di bean e un tracciato di colonne.</p>
+     *
+     * @param beanClass classe del bean da popolare
+     * @param metaData  metadati del ResultSet
+     * @return <code>BeanMapper</code> - il mappatore compilato
+     * @throws SQLException se non &egrave; possibile ispezionare il bean o risolverne un setter
+     */
+    private static BeanMapper compile(Class<?> beanClass,
+                                      ResultSetMetaData metaData)
+                               throws SQLException {
+        HashMap<String, Method> setters = new HashMap<>();
+        try {
+            for (PropertyDescriptor pd : Introspector.getBeanInfo(beanClass).getPropertyDescriptors()) {
+                if (pd.getWriteMethod() != null) {
+                    setters.put(pd.getName(), pd.getWriteMethod());
+                }
+            }
+        } catch (IntrospectionException ie) {
+            String msg = FOR_NAME + "Impossibile ispezionare il bean di tipo '" + beanClass + "'.\n";
+            LOG.severe(msg);
+            throw new SQLException(msg + ie.getMessage(), ie);
+        }
+        int cols = metaData.getColumnCount();
+        List<ColumnMapper> columns = new ArrayList<>(cols);
+        for (int i = 1; i <= cols; i++) {
+            String label = metaData.getColumnLabel(i);
+            Method setter = setters.get(label);
+            if (setter == null) {
+                // il result set è più ricco del bean... ignoriamo.
+                LOG.info("Il result set contiene la colonna '" + label
+                         + "' che non è presente nel bean '" + beanClass + "'");
+                continue;
+            }
+            try {
+                columns.add(compile(i, label, metaData.getColumnType(i), setter));
+            } catch (IllegalAccessException iae) {
+                String msg = FOR_NAME + "Non è possibile accedere al metodo associato a '" + label
+                             + "' nel bean di tipo '" + beanClass + "'.\n";
+                LOG.severe(msg);
+                throw new SQLException(msg + iae.getMessage(), iae);
+            }
+        }
+        return new BeanMapper(columns.toArray(new ColumnMapper[0]));
+    }
+
+
+    /**
+     * <p>Compila il mappatore di una singola colonna, scegliendo l'accessor
+     * tipizzato del ResultSet in base al tipo del parametro del setter
+     * e al tipo SQL della colonna.</p>
+     *
+     * @param i      indice della colonna (a partire da 1)
+     * @param label  etichetta della colonna, coincidente con il nome dell'attributo
+     * @param type   tipo SQL della colonna (v. {@link Types})
+     * @param setter setter dell'attributo
+     * @return <code>ColumnMapper</code> - il mappatore della colonna
+     * @throws IllegalAccessException se il setter non &egrave; accessibile
+     */
+    private static ColumnMapper compile(int i,
+                                        String label,
+                                        int type,
+                                        Method setter)
+                                 throws IllegalAccessException {
+        Class<?> param = setter.getParameterTypes()[0];
+        MethodHandle handle = MethodHandles.lookup().unreflect(setter);
+        if ((param == int.class || param == Integer.class) && isInteger(type)) {
+            if (param == int.class) {
+                MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, int.class));
+                return (bean, rs) -> {
+                    int value = rs.getInt(i);
+                    if (!rs.wasNull()) {
+                        set.invokeExact(bean, value);
+                    }
+                };
+            }
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, Integer.class));
+            return (bean, rs) -> {
+                int value = rs.getInt(i);
+                Integer boxed = (rs.wasNull() ? null : Integer.valueOf(value));
+                set.invokeExact(bean, boxed);
+            };
+        }
+        if ((param == long.class || param == Long.class) && isInteger(type)) {
+            if (param == long.class) {
+                MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, long.class));
+                return (bean, rs) -> {
+                    long value = rs.getLong(i);
+                    if (!rs.wasNull()) {
+                        set.invokeExact(bean, value);
+                    }
+                };
+            }
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, Long.class));
+            return (bean, rs) -> {
+                long value = rs.getLong(i);
+                Long boxed = (rs.wasNull() ? null : Long.valueOf(value));
+                set.invokeExact(bean, boxed);
+            };
+        }
+        if ((param == float.class || param == Float.class) && isNumeric(type)) {
+            if (param == float.class) {
+                MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, float.class));
+                return (bean, rs) -> {
+                    float value = rs.getFloat(i);
+                    if (!rs.wasNull()) {
+                        set.invokeExact(bean, value);
+                    }
+                };
+            }
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, Float.class));
+            return (bean, rs) -> {
+                float value = rs.getFloat(i);
+                Float boxed = (rs.wasNull() ? null : Float.valueOf(value));
+                set.invokeExact(bean, boxed);
+            };
+        }
+        if ((param == double.class || param == Double.class) && isNumeric(type)) {
+            if (param == double.class) {
+                MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, double.class));
+                return (bean, rs) -> {
+                    double value = rs.getDouble(i);
+                    if (!rs.wasNull()) {
+                        set.invokeExact(bean, value);
+                    }
+                };
+            }
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, Double.class));
+            return (bean, rs) -> {
+                double value = rs.getDouble(i);
+                Double boxed = (rs.wasNull() ? null : Double.valueOf(value));
+                set.invokeExact(bean, boxed);
+            };
+        }
+        if ((param == boolean.class || param == Boolean.class) && (type == Types.BOOLEAN || type == Types.BIT)) {
+            if (param == boolean.class) {
+                MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+                return (bean, rs) -> {
+                    boolean value = rs.getBoolean(i);
+                    if (!rs.wasNull()) {
+                        set.invokeExact(bean, value);
+                    }
+                };
+            }
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, Boolean.class));
+            return (bean, rs) -> {
+                boolean value = rs.getBoolean(i);
+                Boolean boxed = (rs.wasNull() ? null : Boolean.valueOf(value));
+                set.invokeExact(bean, boxed);
+            };
+        }
+        if (param == String.class && isCharacter(type)) {
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, String.class));
+            // Secondo la direttiva 08 il valore null di una colonna di tipo VARCHAR
+            // deve essere inserito nell'attributo del bean come stringa ""
+            final String nullValue = (type == Types.VARCHAR ? "" : null);
+            return (bean, rs) -> {
+                String value = rs.getString(i);
+                if (value == null) {
+                    value = nullValue;
+                }
+                set.invokeExact(bean, value);
+            };
+        }
+        if (param == java.sql.Date.class && type == Types.DATE) {
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, java.sql.Date.class));
+            return (bean, rs) -> {
+                java.sql.Date value = rs.getDate(i);
+                set.invokeExact(bean, value);
+            };
+        }
+        if (param == java.sql.Time.class && type == Types.TIME) {
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, java.sql.Time.class));
+            return (bean, rs) -> {
+                java.sql.Time value = rs.getTime(i);
+                set.invokeExact(bean, value);
+            };
+        }
+        if (param == java.sql.Timestamp.class && type == Types.TIMESTAMP) {
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, java.sql.Timestamp.class));
+            return (bean, rs) -> {
+                java.sql.Timestamp value = rs.getTimestamp(i);
+                set.invokeExact(bean, value);
+            };
+        }
+        if (param == java.util.Date.class && (type == Types.DATE || type == Types.TIME || type == Types.TIMESTAMP)) {
+            MethodHandle set = handle.asType(MethodType.methodType(void.class, Object.class, java.util.Date.class));
+            // Come il DateConverter di BeanUtils, l'attributo riceve un java.util.Date
+            // e non la sottoclasse java.sql restituita dal driver
+            return (bean, rs) -> {
+                java.util.Date value = (type == Types.DATE ? rs.getDate(i)
+                                        : type == Types.TIME ? rs.getTime(i)
+                                        : rs.getTimestamp(i));
+                java.util.Date date = (value == null ? null : new java.util.Date(value.getTime()));
+                set.invokeExact(bean, date);
+            };
+        }
+        // Combinazione di tipi senza accessor tipizzato: conversione generica
+        return (bean, rs) -> {
+            Object value = rs.getObject(i);
+            if (value == null && type == Types.VARCHAR) {
+                value = "";
+            }
+            BeanUtils.copyProperty(bean, label, value);
+        };
+    }
+
+
+    /**
+     * @param type tipo SQL della colonna
+     * @return <code>true</code> se la colonna contiene valori interi
+     */
+    private static boolean isInteger(int type) {
+        return type == Types.INTEGER || type == Types.SMALLINT || type == Types.TINYINT || type == Types.BIGINT;
+    }
+
+
+    /**
+     * @param type tipo SQL della colonna
+     * @return <code>true</code> se la colonna contiene valori numerici
+     */
+    private static boolean isNumeric(int type) {
+        return isInteger(type) || type == Types.REAL || type == Types.FLOAT || type == Types.DOUBLE
+               || type == Types.NUMERIC || type == Types.DECIMAL;
+    }
+
+
+    /**
+     * @param type tipo SQL della colonna
+     * @return <code>true</code> se la colonna contiene testo
+     */
+    private static boolean isCharacter(int type) {
+        return type == Types.VARCHAR || type == Types.CHAR || type == Types.LONGVARCHAR
+               || type == Types.NVARCHAR || type == Types.NCHAR || type == Types.LONGNVARCHAR;
+    }
+
+}
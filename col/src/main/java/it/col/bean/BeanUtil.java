@@ -38,12 +38,9 @@
 package it.col.bean;
 
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.beanutils.BeanUtils;
 
 
 /**
@@ -123,77 +120,13 @@ public class BeanUtil {
 	 *        a JavaDataBean to fill.
 	 * @param resultSet
 	 *        the result set that contains data.
+	 * @see BeanMapper
 	 */
 	public static void populate(Object bean, ResultSet resultSet) throws SQLException {
-		int cols = 0;
-		ResultSetMetaData metaData = null;
-
-		try {
-			metaData = resultSet.getMetaData();
-			cols = metaData.getColumnCount();
-		} catch (SQLException emd) {
-			throw new SQLException("Errore nell'acquisire MetaData per un ResultSet: " + emd.getMessage());
-		}
-
-		log.finest("Numero colonne 'cols': " + cols);
-
 		if (resultSet != null) {
-			String columnName = null;
-			int columnType = java.sql.Types.NULL;
-			Object columnValue = null;
-			ValoreELingua valoreELingua = null;
-
-			for (int i = 1; i <= cols; i++) {
-				try {
-					try {
-						columnName = metaData.getColumnName(i);
-						columnType = metaData.getColumnType(i);
-					} catch (SQLException emd1) {
-						throw new SQLException(
-								"BeanUtil.populate: errore nell'acquisire nome colonna e suo tipo dal metadata: "
-										+ emd1.getMessage());
-					}
-
-					// gestione di un attributo normale (cioè senza lingue)
-					columnValue = resultSet.getObject(i);
-
-					if (columnValue == null) {
-						// Secondo la direttiva 08 il valore null di una
-						// colonna di tipo VARCHAR deve essere inserito
-						// nell'attributo del bean come stringa ""
-						// Per i tipi primitivi, la gestione dei valori di
-						// default è demandata al ConvertUtils
-						if (columnType == java.sql.Types.VARCHAR)
-							columnValue = "";
-					}
-
-					BeanUtils.copyProperty(bean, columnName, columnValue);
-
-					if (log.getLevel() == Level.FINEST) {
-						log.logp(Level.FINEST, BeanUtil.class.getName(), "populate()", "columnName: '" + columnName
-								+ "'\nValore nel result set: '" + resultSet.getObject(i) + "'\nValore nel bean: '"
-								+ BeanUtils.getProperty(bean, columnName) + "'");
-					}
-				} catch (java.lang.IllegalAccessException ie) {
-					throw new SQLException("Non è possibile accedere al metodo associato a '" + columnName
-							+ "' nel bean di tipo '" + bean.getClass() + "': " + ie.getMessage());
-				} catch (java.lang.reflect.InvocationTargetException te) {
-					if (te.getMessage() == null) {
-						log.logp(Level.SEVERE, "it.univr.di.dol.bean.BeanUtils", "populate()",
-								"Il messaggio associato all'eccezione è vuoto, in stderr viene stampato lo StackTrace");
-						te.printStackTrace();
-					}
-					throw new SQLException("Problemi nel settare l'attributo '" + columnName + "' nel bean di tipo '"
-							+ bean.getClass() + "': " + te.getMessage());
-				} catch (SQLException emd1) {
-					throw new SQLException("BeanUtil.populate: errore generico all'interno del ciclo for: "
-							+ emd1.getMessage());
-				} catch (NoSuchMethodException emd2) {
-					// il result set è più ricco del bean... ignoriamo.
-					log.logp(Level.INFO, BeanUtil.class.getName(), "populate()", "Il result set contiene la colonna '"
-							+ columnName + "' che non è presente nel bean '" + bean.getClass() + "'");
-				}
-			}
+			// Il mappatore viene compilato una volta sola per coppia
+			// (classe del bean, tracciato delle colonne) e poi riusato
+			BeanMapper.forResultSet(bean.getClass(), resultSet).map(bean, resultSet);
 		}
 	}
 
@@ -218,6 +218,41 @@ public class Convenzione extends CodeBean {
     }
 
     
+    /**
+     * Copy constructor: copies all the properties of the given agreement,
+     * so that the copy can be handed out while the original stays shared
+     * (the lists and the main group are referenced, not cloned).
+     * 
+     * @param o agreement which to copy properties
+     * @throws AttributoNonValorizzatoException if the id of the agreement is not correctly set
+     */
+    public Convenzione(Convenzione o) 
+                throws AttributoNonValorizzatoException {
+        super(o);
+        setTitolo(o.getTitolo());
+        setNote(o.getNote());
+        setDataApprovazione(o.getDataApprovazione());
+        setNotaApprovazione(o.getNotaApprovazione());
+        setDataApprovazione2(o.getDataApprovazione2());
+        setNotaApprovazione2(o.getNotaApprovazione2());
+        setDataSottoscrizione(o.getDataSottoscrizione());
+        setNotaSottoscrizione(o.getNotaSottoscrizione());
+        setDataScadenza(o.getDataScadenza());
+        setNotaScadenza(o.getNotaScadenza());
+        setNumRepertorio(o.getNumRepertorio());
+        setCaricoBollo(o.getCaricoBollo());
+        setPagato(o.getPagato());
+        setDataUltimaModifica(o.getDataUltimaModifica());
+        setOraUltimaModifica(o.getOraUltimaModifica());
+        setIdUsrUltimaModifica(o.getIdUsrUltimaModifica());
+        setTipo(o.getTipo());
+        setStato(o.getStato());
+        setContraenti(o.getContraenti());
+        setFinalita(o.getFinalita());
+        setGruppoPrincipale(o.getGruppoPrincipale());
+    }
+
+    
     /**
      * Parametrized constructor which calls the parent class
      * 
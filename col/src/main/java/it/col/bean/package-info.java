@@ -42,6 +42,7 @@
  * 
  * <code>Elementi del package:
  * <ul>
+ * <li>BeanMapper</li>
  * <li>BeanUtil</li>
  * <li>CodeBean</li>
  * <li>CommandBean</li>
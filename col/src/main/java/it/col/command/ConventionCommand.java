@@ -44,6 +44,7 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -198,6 +199,8 @@ public class ConventionCommand extends CommandBean implements Command, Constants
         ArrayList<Convenzione> conventions = null;
         // List of Contractors
         ArrayList<PersonBean> contractors = null;
+        // Number of search results per agreement type and scope
+        HashMap<String, HashMap<Integer, Integer>> facets = null;
         // All the params coming from forms
         HashMap<String, LinkedHashMap<String, String>> params = null;
         // List of agreement types
@@ -242,7 +245,7 @@ public class ConventionCommand extends CommandBean implements Command, Constants
          *                          Build the db access                         *
          * ******************************************************************** */
         try {
-            db = new DBWrapper();
+            db = DBWrapper.getInstance();
         } catch (WebStorageException wse) {
             throw new CommandException(FOR_NAME + "Non e\' disponibile un collegamento al database\n." + wse.getMessage(), wse);
         }
@@ -310,7 +313,8 @@ public class ConventionCommand extends CommandBean implements Command, Constants
                         break;
                     case SEARCH:
                         // Search the conventions
-                        conventions = db.getConventions(user, params);
+                        facets = new HashMap<>();
+                        conventions = db.getConventions(user, params, facets);
                         fileJspT = pages.get(operation);
                         break;
                     default:
@@ -375,8 +379,7 @@ public class ConventionCommand extends CommandBean implements Command, Constants
                                 // Show the contractor's page
                                 fileJspT = pages.get(object);
                             } else {                // List of contractors
-                                // Get all the contractors
-                                contractors = db.getContractors(user, new Convenzione(DEFAULT_ID), Query.GET_ALL);
+                                // The rows of the list are served page by page (Data, op=tab&obj=cont)
                                 /* Customize the header horizontal menuto make active the appropriate voice
                                 menu = (LinkedHashMap<String, ItemBean>) req.getAttribute("menu");
                                 current = menu.get(object);
@@ -392,8 +395,7 @@ public class ConventionCommand extends CommandBean implements Command, Constants
                                 // Show the details page
                                 fileJspT = pages.get(SELECT);
                             } else {
-                                // Get the conventions
-                                conventions = db.getConventions(user);
+                                // The rows of the list are served page by page (Data, op=tab&obj=conv)
                                 // Show the landing page
                                 fileJspT = pages.get(this.getNome());
                             }
@@ -447,6 +449,10 @@ public class ConventionCommand extends CommandBean implements Command, Constants
         if (conventions != null) {
             req.setAttribute("convenzioni", conventions);
         }
+        // Search results per agreement type and scope, if they do exist
+        if (facets != null) {
+            req.setAttribute("faccette", facets);
+        }
         // Single contractor, if it does exist
         if (contractor != null) {
             req.setAttribute("contraente", contractor);
@@ -547,7 +553,7 @@ public class ConventionCommand extends CommandBean implements Command, Constants
                     // Finalità
                     convention.put("scop", req.getParameter("co-fine"));
                     // Chiave di ricerca
-                    convention.put("keys", Utils.escapeRegex(req.getParameter("co-nome")));
+                    convention.put("keys", req.getParameter("co-nome"));
                     // Aggiunge le chiavi di ricerca ai parametri
                     formParams.put(operation, convention);
                 }
@@ -657,7 +663,7 @@ public class ConventionCommand extends CommandBean implements Command, Constants
                                                              Date end)
                                                       throws CommandException {
         try {
-            DBWrapper db = new DBWrapper();
+            DBWrapper db = DBWrapper.getInstance();
             return retrieveConventions(user, start, end, db);
         } catch (WebStorageException wse) {
             String msg = FOR_NAME + "Si e\' verificato un problema nella creazione del databound.\n";
@@ -703,6 +709,31 @@ public class ConventionCommand extends CommandBean implements Command, Constants
     }
     
     
+    /**
+     * <p>Passa al consumatore, una alla volta, le convenzioni in scadenza
+     * in una data finestra temporale, senza materializzarne la lista.</p>
+     *
+     * @param user      utente loggato; viene passato ai metodi del DBWrapper per controllare che abbia i diritti di fare quello che vuol fare
+     * @param start     data scadenza iniziale         
+     * @param end       data scadenza finale
+     * @param consumer  destinatario delle convenzioni recuperate
+     * @throws CommandException se si verifica un problema nell'estrazione dei dati, o in qualche tipo di puntamento
+     */
+    public static void streamConventions(PersonBean user,
+                                         Date start,
+                                         Date end,
+                                         Consumer<? super Convenzione> consumer)
+                                  throws CommandException {
+        try {
+            DBWrapper.getInstance().streamConventions(user, start, end, consumer);
+        } catch (WebStorageException wse) {
+            String msg = FOR_NAME + "Si e\' verificato un problema nel recupero.\n";
+            log.severe(msg);
+            throw new CommandException(msg + wse.getMessage(), wse);
+        }
+    }
+    
+    
     /**
      * <p>Aggiunge la stringa "checked" all'informativa dei CodeBean rappresentanti
      * le finalit&agrave; di una convenzione in base alle finalit&agrave; collegate
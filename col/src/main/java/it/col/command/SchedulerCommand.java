@@ -295,7 +295,7 @@ public class SchedulerCommand extends CommandBean implements Command, Constants
          *                          Build the db access                         *
          * ******************************************************************** */
         try {
-            db = new DBWrapper();
+            db = DBWrapper.getInstance();
         } catch (WebStorageException wse) {
             throw new CommandException(FOR_NAME + "Non e\' disponibile un collegamento al database\n." + wse.getMessage(), wse);
         }
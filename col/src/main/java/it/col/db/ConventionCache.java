@@ -0,0 +1,449 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import it.col.bean.Convenzione;
+import it.col.exception.AttributoNonValorizzatoException;
+
+
+/**
+ * <p><code>ConventionCache</code> &egrave; una cache read-through
+ * delle pagine dell'elenco delle convenzioni attive
+ * (v. {@link DBWrapper#getConventionsPage(it.col.bean.PersonBean, PageCursor, int, int)}),
+ * indicizzate per insieme (ordinato) degli identificativi dei gruppi
+ * dell'utente: due utenti che appartengono agli stessi gruppi vedono
+ * infatti le stesse convenzioni, e quindi le stesse pagine.</p>
+ * <p>Per ogni insieme di gruppi vengono memorizzate le pagine richieste,
+ * distinte per ordinamento, filtro, posizione e lunghezza, ciascuna con la
+ * chiave di ordinamento dell'ultima riga (che apre la pagina seguente),
+ * e i conteggi dell'elenco per ciascun filtro.
+ * Le convenzioni vengono copiate sia in memorizzazione sia in lettura.</p>
+ * <p>La cache &egrave; limitata sia in numero di insiemi di gruppi, e di
+ * pagine per insieme, con politica di rimozione LRU (Least Recently Used),
+ * sia nel tempo di permanenza di ciascun insieme (TTL); inoltre, ogni
+ * scrittura che tocca una convenzione invalida puntualmente gli insiemi
+ * di gruppi che contengono almeno uno dei gruppi collegati alla
+ * convenzione stessa.</p>
+ * <p>Per evitare che un caricamento concorrente a una scrittura
+ * rimetta in cache dati gi&agrave; superati, ogni invalidazione incrementa
+ * un contatore di generazione: un caricamento iniziato prima
+ * di un'invalidazione non viene memorizzato.</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class ConventionCache {
+
+    /**
+     * <p>Numero massimo di insiemi di gruppi memorizzati.</p>
+     */
+    static final int MAX_ENTRIES = 128;
+    /**
+     * <p>Numero massimo di pagine memorizzate per insieme di gruppi.</p>
+     */
+    static final int MAX_PAGES = 32;
+    /**
+     * <p>Tempo massimo di permanenza di un elemento in cache (in nanosecondi).</p>
+     */
+    static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(10);
+    /**
+     * <p>Elementi memorizzati, in ordine di accesso (LRU).</p>
+     */
+    private final LinkedHashMap<String, Entry> entries;
+    /**
+     * <p>Generazione corrente, incrementata da ogni invalidazione.</p>
+     */
+    private final AtomicLong generation = new AtomicLong();
+    /**
+     * <p>Contatori delle statistiche di utilizzo.</p>
+     */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+
+    /**
+     * <p>Pagina memorizzata: le convenzioni, nell'ordine dell'elenco,
+     * e la chiave di ordinamento dell'ultima riga.</p>
+     */
+    static final class Page {
+        /** Convenzioni della pagina, mai esposte direttamente */
+        private final ArrayList<Convenzione> conventions;
+        /** Chiave di ordinamento dell'ultima riga, null se la pagina &egrave; vuota */
+        final Object[] lastKey;
+
+        Page(ArrayList<Convenzione> conventions,
+             Object[] lastKey) {
+            this.conventions = conventions;
+            this.lastKey = lastKey;
+        }
+
+        /**
+         * <p>Restituisce una copia delle convenzioni della pagina.</p>
+         *
+         * @return <code>ArrayList&lt;Convenzione&gt;</code> - copie delle convenzioni, nello stesso ordine
+         * @throws AttributoNonValorizzatoException se l'id di una convenzione non risulta valorizzato
+         */
+        ArrayList<Convenzione> getConventions()
+                                       throws AttributoNonValorizzatoException {
+            return copy(conventions);
+        }
+    }
+
+
+    /**
+     * <p>Elemento della cache: le pagine e i conteggi di un insieme
+     * di gruppi, i gruppi cui si riferisce e l'istante di caricamento.</p>
+     */
+    private static final class Entry {
+        final LinkedHashMap<String, Page> pages;
+        final HashMap<String, long[]> counts = new HashMap<>();
+        final Set<Integer> groupIds;
+        final long loadedAt;
+
+        Entry(Set<Integer> groupIds) {
+            this.groupIds = groupIds;
+            this.loadedAt = System.nanoTime();
+            this.pages = new LinkedHashMap<String, Page>(MAX_PAGES, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Page> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            };
+        }
+    }
+
+
+    /**
+     * <p>Costruttore: prepara la mappa ad accesso ordinato,
+     * che rimuove l'elemento usato meno di recente
+     * quando si supera il numero massimo di elementi.</p>
+     */
+    ConventionCache() {
+        entries = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > MAX_ENTRIES) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * <p>Calcola la chiave di una pagina all'interno di un insieme di gruppi.</p>
+     *
+     * @param column     colonna di ordinamento
+     * @param descending true se l'ordinamento &egrave; decrescente
+     * @param tsQuery    testo della tsquery del filtro (vuoto = nessun filtro)
+     * @param start      posizione della prima riga della pagina
+     * @param length     numero di righe della pagina
+     * @return <code>String</code> - chiave della pagina
+     */
+    static String pageKey(int column,
+                          boolean descending,
+                          String tsQuery,
+                          int start,
+                          int length) {
+        return column + (descending ? "|desc|" : "|asc|") + start + "|" + length + "|" + tsQuery;
+    }
+
+
+    /**
+     * <p>Restituisce la generazione corrente, da leggere
+     * <em>prima</em> di caricare i dati dal database e da passare
+     * poi a {@link #putPage(Integer[], String, ArrayList, Object[], long)}
+     * e {@link #putCounts(Integer[], String, long, long, long)}.</p>
+     *
+     * @return <code>long</code> - generazione corrente
+     */
+    long generation() {
+        return generation.get();
+    }
+
+
+    /**
+     * <p>Restituisce la pagina memorizzata per i gruppi passati,
+     * oppure null se non presente o scaduta.</p>
+     *
+     * @param groupIds identificativi dei gruppi dell'utente
+     * @param pageKey  chiave della pagina (v. {@link #pageKey(int, boolean, String, int, int)})
+     * @return <code>Page</code> - pagina memorizzata, oppure null
+     */
+    Page getPage(Integer[] groupIds,
+                 String pageKey) {
+        Page page = null;
+        synchronized (entries) {
+            Entry entry = lookup(key(groupIds));
+            if (entry != null) {
+                page = entry.pages.get(pageKey);
+            }
+        }
+        if (page == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return page;
+    }
+
+
+    /**
+     * <p>Restituisce i conteggi dell'elenco (totale e filtrato) memorizzati
+     * per i gruppi e il filtro passati, oppure null se non presenti.</p>
+     *
+     * @param groupIds identificativi dei gruppi dell'utente
+     * @param tsQuery  testo della tsquery del filtro (vuoto = nessun filtro)
+     * @return <code>long[]</code> - totale e filtrato, oppure null
+     */
+    long[] getCounts(Integer[] groupIds,
+                     String tsQuery) {
+        synchronized (entries) {
+            Entry entry = lookup(key(groupIds));
+            return (entry == null ? null : entry.counts.get(tsQuery));
+        }
+    }
+
+
+    /**
+     * <p>Memorizza una pagina caricata per i gruppi passati,
+     * a meno che nel frattempo non sia intervenuta un'invalidazione.</p>
+     *
+     * @param groupIds         identificativi dei gruppi dell'utente
+     * @param pageKey          chiave della pagina
+     * @param conventions      convenzioni della pagina caricate dal database
+     * @param lastKey          chiave di ordinamento dell'ultima riga, o null
+     * @param generationAtLoad generazione letta prima del caricamento
+     * @throws AttributoNonValorizzatoException se l'id di una convenzione non risulta valorizzato
+     */
+    void putPage(Integer[] groupIds,
+                 String pageKey,
+                 ArrayList<Convenzione> conventions,
+                 Object[] lastKey,
+                 long generationAtLoad)
+          throws AttributoNonValorizzatoException {
+        Page page = new Page(copy(conventions), lastKey);
+        synchronized (entries) {
+            if (generation.get() == generationAtLoad) {
+                entry(groupIds).pages.put(pageKey, page);
+            }
+        }
+    }
+
+
+    /**
+     * <p>Memorizza i conteggi dell'elenco per i gruppi e il filtro passati,
+     * a meno che nel frattempo non sia intervenuta un'invalidazione.</p>
+     *
+     * @param groupIds         identificativi dei gruppi dell'utente
+     * @param tsQuery          testo della tsquery del filtro (vuoto = nessun filtro)
+     * @param total            numero totale di convenzioni dell'elenco
+     * @param filtered         numero di convenzioni che soddisfano il filtro
+     * @param generationAtLoad generazione letta prima del caricamento
+     */
+    void putCounts(Integer[] groupIds,
+                   String tsQuery,
+                   long total,
+                   long filtered,
+                   long generationAtLoad) {
+        synchronized (entries) {
+            if (generation.get() == generationAtLoad) {
+                entry(groupIds).counts.put(tsQuery, new long[] { total, filtered });
+            }
+        }
+    }
+
+
+    /**
+     * <p>Invalida tutti gli elementi il cui insieme di gruppi contiene
+     * almeno uno dei gruppi passati (tipicamente, i gruppi collegati
+     * a una convenzione appena inserita o modificata).</p>
+     *
+     * @param groupIds identificativi dei gruppi collegati alla convenzione modificata
+     */
+    void invalidate(Collection<Integer> groupIds) {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                for (Integer id : groupIds) {
+                    if (entry.groupIds.contains(id)) {
+                        it.remove();
+                        invalidations.increment();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * <p>Restituisce l'elemento di una chiave, rimuovendolo se scaduto;
+     * va invocato tenendo il lock sugli elementi.</p>
+     *
+     * @param key chiave dell'insieme di gruppi
+     * @return <code>Entry</code> - elemento valido, oppure null
+     */
+    private Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.loadedAt > TTL_NANOS) {
+            entries.remove(key);
+            evictions.increment();
+            entry = null;
+        }
+        return entry;
+    }
+
+
+    /**
+     * <p>Restituisce l'elemento valido dei gruppi passati, creandolo
+     * se assente o scaduto; va invocato tenendo il lock sugli elementi.</p>
+     *
+     * @param groupIds identificativi dei gruppi dell'utente
+     * @return <code>Entry</code> - elemento dei gruppi
+     */
+    private Entry entry(Integer[] groupIds) {
+        String key = key(groupIds);
+        Entry entry = lookup(key);
+        if (entry == null) {
+            entry = new Entry(new HashSet<>(Arrays.asList(groupIds)));
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+
+    /**
+     * <p>Calcola la chiave di un insieme di gruppi,
+     * indipendente dall'ordine in cui i gruppi vengono passati.</p>
+     *
+     * @param groupIds identificativi dei gruppi
+     * @return <code>String</code> - chiave della cache
+     */
+    private static String key(Integer[] groupIds) {
+        Integer[] sorted = groupIds.clone();
+        Arrays.sort(sorted);
+        return Arrays.toString(sorted);
+    }
+
+
+    /**
+     * <p>Restituisce una copia della lista e delle convenzioni che contiene,
+     * comprese le liste dei loro contraenti.</p>
+     *
+     * @param conventions convenzioni da copiare
+     * @return <code>ArrayList&lt;Convenzione&gt;</code> - copie delle convenzioni, nello stesso ordine
+     * @throws AttributoNonValorizzatoException se l'id di una convenzione non risulta valorizzato
+     */
+    private static ArrayList<Convenzione> copy(ArrayList<Convenzione> conventions)
+                                        throws AttributoNonValorizzatoException {
+        ArrayList<Convenzione> copies = new ArrayList<>(conventions.size());
+        for (Convenzione c : conventions) {
+            Convenzione copy = new Convenzione(c);
+            if (c.getContraenti() != null) {
+                copy.setContraenti(new ArrayList<>(c.getContraenti()));
+            }
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+
+    /* **************************************************** *
+     *                  Statistiche (getters)               *
+     * **************************************************** */
+    /**
+     * @return <code>long</code> - numero di pagine servite dalla cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return <code>long</code> - numero di pagine che hanno richiesto l'accesso al database
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return <code>long</code> - numero di elementi rimossi per superamento della dimensione massima o del TTL
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return <code>long</code> - numero di elementi rimossi a seguito di scritture sulle convenzioni
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return <code>int</code> - numero di insiemi di gruppi attualmente in cache
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+}
@@ -0,0 +1,848 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import it.col.bean.Convenzione;
+import it.col.exception.AttributoNonValorizzatoException;
+import it.col.util.Utils;
+
+
+/**
+ * <p><code>ConventionIndex</code> &egrave; un indice invertito, residente
+ * in memoria, dei campi testuali delle convenzioni (titolo, informativa,
+ * note, note sulle date, numero di repertorio) e dei nomi dei loro contraenti.</p>
+ * <p>Ogni convenzione indicizzata riceve un ordinale progressivo;
+ * per ogni termine l'indice conserva la lista ordinata (<code>int[]</code>)
+ * degli ordinali delle convenzioni che lo contengono.
+ * I termini sono mantenuti in un array ordinato, per cui la ricerca
+ * di un prefisso &egrave; una ricerca binaria seguita dall'unione
+ * delle liste dei termini contigui che lo condividono.</p>
+ * <p>Le ricerche leggono un'istantanea immutabile e non acquisiscono lock;
+ * gli aggiornamenti (caricamento all'avvio, inserimento o modifica
+ * di una convenzione) sono serializzati e pubblicano una nuova istantanea.
+ * Poich&eacute; la convenzione aggiornata riceve sempre l'ordinale pi&ugrave;
+ * alto, le sue occorrenze vengono accodate alle liste, che restano ordinate;
+ * quando gli ordinali dismessi superano quelli in uso l'indice viene compattato.</p>
+ * <p>La semantica della ricerca &egrave; quella della ricerca libera su database
+ * (v. {@link Query#getTsQueryByKeys(String)}): chiavi separate da virgola
+ * in alternativa tra loro, parole di una stessa chiave tutte richieste,
+ * ogni parola vale come prefisso; maiuscole e accenti sono ignorati.
+ * I risultati sono ristretti alle convenzioni collegate ad almeno uno
+ * dei gruppi dell'utente e sono restituiti come id, in ordine di rilevanza:
+ * la ricerca non crea bean. I bean indicizzati restano condivisi tra le
+ * ricerche e non possono quindi essere esposti: ne vengono copiati
+ * ({@link #getConventions(int[], int, int)}) soltanto quelli da mostrare.</p>
+ * <p>Le scritture fatte dall'applicazione aggiornano l'indice puntualmente;
+ * per recepire anche quelle fatte direttamente sul database,
+ * l'indice viene ricaricato periodicamente per intero
+ * (v. {@link DBWrapper#loadSearchIndex()}).</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class ConventionIndex {
+
+    /**
+     * <p>Chiave delle faccette per tipologia.</p>
+     */
+    public static final String FACET_TYPE = "type";
+    /**
+     * <p>Chiave delle faccette per finalit&agrave;.</p>
+     */
+    public static final String FACET_SCOPE = "scop";
+    /**
+     * <p>Separatore delle parole: tutto ci&ograve; che non &egrave; lettera o cifra.</p>
+     */
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    /**
+     * <p>Segni diacritici, rimossi dopo la decomposizione canonica.</p>
+     */
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    /**
+     * <p>Punteggio massimo considerato nell'ordinamento dei risultati.</p>
+     */
+    private static final int MAX_SCORE = 1024;
+    /**
+     * <p>Lista vuota di ordinali.</p>
+     */
+    private static final int[] EMPTY = new int[0];
+    /**
+     * <p>Ordinamento di base dei risultati, per ordinale e titolo
+     * (come la lista delle convenzioni).</p>
+     */
+    private static final Comparator<Document> LIST_ORDER =
+            Comparator.comparingInt((Document d) -> d.convention.getOrdinale())
+                      .thenComparing(d -> d.sortKey);
+    /**
+     * <p>Istantanea corrente, letta dalle ricerche.</p>
+     */
+    private volatile Snapshot snapshot = null;
+    /**
+     * <p>Ordinale corrente di ciascuna convenzione, per id (stato dello scrittore).</p>
+     */
+    private final HashMap<Integer, Integer> ordinals = new HashMap<>();
+    /**
+     * <p>Documenti per ordinale, null se dismessi (stato dello scrittore).</p>
+     */
+    private final ArrayList<Document> documents = new ArrayList<>();
+    /**
+     * <p>Liste degli ordinali per termine (stato dello scrittore).</p>
+     */
+    private final TreeMap<String, int[]> postings = new TreeMap<>();
+    /**
+     * <p>Ordinali in uso, nell'ordinamento di base (stato dello scrittore).</p>
+     */
+    private int[] order = EMPTY;
+    /**
+     * <p>Numero di aggiornamenti puntuali ricevuti (stato dello scrittore).</p>
+     */
+    private long updates = 0L;
+
+
+    /* ********************************************************** *
+     *                      Documenti indicizzati                 *
+     * ********************************************************** */
+    /**
+     * <p>Convenzione indicizzata, con i dati necessari ai filtri.</p>
+     */
+    static final class Document {
+        /** Convenzione, come restituita dalla ricerca */
+        final Convenzione convention;
+        /** Id della convenzione */
+        final int id;
+        /** Id della tipologia */
+        final int idType;
+        /** Id delle finalit&agrave;, ordinati */
+        final int[] scopes;
+        /** Id dei gruppi cui &egrave; collegata la convenzione, ordinati */
+        final int[] groups;
+        /** Termini distinti di tutti i campi indicizzati */
+        final String[] terms;
+        /** Termini distinti, ordinati, di titolo e numero di repertorio */
+        final String[] titleTerms;
+        /** Titolo in minuscolo, per l'ordinamento dei risultati */
+        final String sortKey;
+
+        /**
+         * <p>Costruttore: estrae i termini dai campi della convenzione
+         * e dai nomi dei contraenti.</p>
+         *
+         * @param convention  convenzione da indicizzare
+         * @param id          id della convenzione
+         * @param idType      id della tipologia
+         * @param scopes      id delle finalit&agrave;
+         * @param groups      id dei gruppi
+         * @param contractors nomi dei contraenti
+         */
+        Document(Convenzione convention,
+                 int id,
+                 int idType,
+                 int[] scopes,
+                 int[] groups,
+                 String[] contractors) {
+            this.convention = convention;
+            this.id = id;
+            this.idType = idType;
+            this.scopes = scopes.clone();
+            Arrays.sort(this.scopes);
+            this.groups = groups.clone();
+            Arrays.sort(this.groups);
+            TreeSet<String> title = new TreeSet<>();
+            tokenize(convention.getTitolo(), title);
+            tokenize(convention.getNumRepertorio(), title);
+            TreeSet<String> all = new TreeSet<>(title);
+            tokenize(convention.getInformativa(), all);
+            tokenize(convention.getNote(), all);
+            tokenize(convention.getNotaApprovazione(), all);
+            tokenize(convention.getNotaApprovazione2(), all);
+            tokenize(convention.getNotaSottoscrizione(), all);
+            tokenize(convention.getNotaScadenza(), all);
+            for (String contractor : contractors) {
+                tokenize(contractor, all);
+            }
+            this.sortKey = (convention.getTitolo() == null ? "" : convention.getTitolo().toLowerCase());
+            this.titleTerms = title.toArray(new String[0]);
+            this.terms = all.toArray(new String[0]);
+        }
+    }
+
+
+    /**
+     * <p>Istantanea immutabile dell'indice.</p>
+     */
+    private static final class Snapshot {
+        /** Termini, ordinati */
+        final String[] terms;
+        /** Ordinali delle convenzioni per termine, ordinati */
+        final int[][] postings;
+        /** Documenti per ordinale (null se dismessi) */
+        final Document[] documents;
+        /** Documenti in uso, per id della convenzione */
+        final HashMap<Integer, Document> byId;
+        /** Posizione di ciascun ordinale nell'ordinamento di base */
+        final int[] positions;
+        /** Ordinali in ordinamento di base */
+        final int[] order;
+        /** Numero di convenzioni indicizzate */
+        final int size;
+
+        /**
+         * <p>Costruttore.</p>
+         *
+         * @param terms     termini ordinati
+         * @param postings  liste degli ordinali
+         * @param documents documenti per ordinale
+         * @param byId      documenti in uso per id
+         * @param positions posizioni degli ordinali nell'ordinamento di base
+         * @param order     ordinali in ordinamento di base
+         * @param size      numero di convenzioni indicizzate
+         */
+        Snapshot(String[] terms,
+                 int[][] postings,
+                 Document[] documents,
+                 HashMap<Integer, Document> byId,
+                 int[] positions,
+                 int[] order,
+                 int size) {
+            this.terms = terms;
+            this.postings = postings;
+            this.documents = documents;
+            this.byId = byId;
+            this.positions = positions;
+            this.order = order;
+            this.size = size;
+        }
+    }
+
+
+    /* ********************************************************** *
+     *                     Metodi di aggiornamento                *
+     * ********************************************************** */
+    /**
+     * <p>Ricostruisce l'indice a partire da tutte le convenzioni.</p>
+     *
+     * @param all documenti di tutte le convenzioni
+     */
+    private void rebuild(Collection<Document> all) {
+        ordinals.clear();
+        documents.clear();
+        postings.clear();
+        // Primo passaggio: assegna gli ordinali e conta le occorrenze di ogni termine
+        HashMap<String, int[]> counts = new HashMap<>();
+        for (Document document : all) {
+            ordinals.put(document.id, documents.size());
+            documents.add(document);
+            for (String term : document.terms) {
+                counts.computeIfAbsent(term, k -> new int[1])[0]++;
+            }
+        }
+        // Secondo passaggio: riempie liste gia' dimensionate, ordinate per costruzione
+        HashMap<String, int[]> lists = new HashMap<>(counts.size() * 2);
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            lists.put(entry.getKey(), new int[entry.getValue()[0]]);
+            entry.getValue()[0] = 0;
+        }
+        for (int ordinal = 0; ordinal < documents.size(); ordinal++) {
+            for (String term : documents.get(ordinal).terms) {
+                lists.get(term)[counts.get(term)[0]++] = ordinal;
+            }
+        }
+        postings.putAll(lists);
+        // Ordinamento di base di tutti i documenti
+        Integer[] sorted = new Integer[documents.size()];
+        for (int ordinal = 0; ordinal < sorted.length; ordinal++) {
+            sorted[ordinal] = ordinal;
+        }
+        Arrays.sort(sorted, Comparator.comparing((Integer ordinal) -> documents.get(ordinal), LIST_ORDER));
+        order = new int[sorted.length];
+        for (int position = 0; position < sorted.length; position++) {
+            order[position] = sorted[position];
+        }
+        publish();
+    }
+
+
+    /**
+     * <p>Sostituisce il contenuto dell'indice con tutte le convenzioni lette
+     * dal database, a meno che l'indice, gi&agrave; caricato, non abbia ricevuto
+     * aggiornamenti puntuali dopo l'inizio della lettura: in tal caso i
+     * documenti letti potrebbero essere meno recenti di quelli indicizzati.</p>
+     *
+     * @param all     documenti di tutte le convenzioni
+     * @param updates numero di aggiornamenti puntuali all'inizio della lettura (v. {@link #getUpdates()})
+     * @return <code>boolean</code> - true se l'indice &egrave; stato ricaricato
+     */
+    synchronized boolean reload(Collection<Document> all,
+                                long updates) {
+        if (snapshot != null && this.updates != updates) {
+            return false;
+        }
+        rebuild(all);
+        return true;
+    }
+
+
+    /**
+     * <p>Restituisce il numero di aggiornamenti puntuali ricevuti dall'indice,
+     * da leggere prima di iniziare un ricaricamento.</p>
+     *
+     * @return <code>long</code> - numero di aggiornamenti
+     */
+    synchronized long getUpdates() {
+        return updates;
+    }
+
+
+    /**
+     * <p>Inserisce una convenzione nell'indice o ne sostituisce la versione precedente.</p>
+     *
+     * @param document documento della convenzione inserita o modificata
+     */
+    synchronized void put(Document document) {
+        if (snapshot == null) {
+            // Indice non ancora caricato: la convenzione verra' letta al caricamento
+            return;
+        }
+        updates++;
+        Integer previous = ordinals.get(document.id);
+        if (previous != null) {
+            remove(previous.intValue());
+        }
+        add(document);
+        // Inserisce il nuovo ordinale nell'ordinamento di base
+        int ordinal = documents.size() - 1;
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (LIST_ORDER.compare(documents.get(order[mid]), document) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int[] reordered = new int[order.length + 1];
+        System.arraycopy(order, 0, reordered, 0, low);
+        reordered[low] = ordinal;
+        System.arraycopy(order, low, reordered, low + 1, order.length - low);
+        order = reordered;
+        // Compatta quando gli ordinali dismessi superano quelli in uso
+        if (documents.size() > 2 * ordinals.size() + 64) {
+            ArrayList<Document> live = new ArrayList<>(ordinals.size());
+            for (Document d : documents) {
+                if (d != null) {
+                    live.add(d);
+                }
+            }
+            rebuild(live);
+            return;
+        }
+        publish();
+    }
+
+
+    /**
+     * <p>Accoda un documento con un nuovo ordinale (il pi&ugrave; alto).</p>
+     *
+     * @param document documento da aggiungere
+     */
+    private void add(Document document) {
+        int ordinal = documents.size();
+        documents.add(document);
+        ordinals.put(document.id, ordinal);
+        for (String term : document.terms) {
+            int[] list = postings.get(term);
+            if (list == null) {
+                postings.put(term, new int[] { ordinal });
+            } else {
+                int[] grown = Arrays.copyOf(list, list.length + 1);
+                grown[list.length] = ordinal;
+                postings.put(term, grown);
+            }
+        }
+    }
+
+
+    /**
+     * <p>Dismette l'ordinale di un documento togliendolo dalle liste dei suoi termini.</p>
+     *
+     * @param ordinal ordinale da dismettere
+     */
+    private void remove(int ordinal) {
+        Document old = documents.get(ordinal);
+        documents.set(ordinal, null);
+        // Toglie l'ordinale dall'ordinamento di base
+        int position = snapshot.positions[ordinal];
+        int[] reordered = new int[order.length - 1];
+        System.arraycopy(order, 0, reordered, 0, position);
+        System.arraycopy(order, position + 1, reordered, position, order.length - position - 1);
+        order = reordered;
+        for (String term : old.terms) {
+            int[] list = postings.get(term);
+            int pos = Arrays.binarySearch(list, ordinal);
+            if (list.length == 1) {
+                postings.remove(term);
+            } else {
+                int[] shrunk = new int[list.length - 1];
+                System.arraycopy(list, 0, shrunk, 0, pos);
+                System.arraycopy(list, pos + 1, shrunk, pos, list.length - pos - 1);
+                postings.put(term, shrunk);
+            }
+        }
+    }
+
+
+    /**
+     * <p>Pubblica una nuova istantanea dello stato dello scrittore.
+     * Le liste non vengono copiate: lo scrittore le sostituisce
+     * senza mai modificarle.</p>
+     */
+    private void publish() {
+        String[] terms = new String[postings.size()];
+        int[][] lists = new int[postings.size()][];
+        int i = 0;
+        for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+            terms[i] = entry.getKey();
+            lists[i] = entry.getValue();
+            i++;
+        }
+        // Posizioni nell'ordinamento di base: la ricerca ordina i risultati confrontando interi
+        Document[] docs = documents.toArray(new Document[0]);
+        int[] positions = new int[docs.length];
+        HashMap<Integer, Document> byId = new HashMap<>(ordinals.size() * 2);
+        for (int position = 0; position < order.length; position++) {
+            positions[order[position]] = position;
+            byId.put(docs[order[position]].id, docs[order[position]]);
+        }
+        snapshot = new Snapshot(terms, lists, docs, byId, positions, order, ordinals.size());
+    }
+
+
+    /* ********************************************************** *
+     *                       Metodi di ricerca                    *
+     * ********************************************************** */
+    /**
+     * <p>Restituisce true se l'indice &egrave; stato caricato.</p>
+     *
+     * @return <code>boolean</code> - true se l'indice pu&ograve; rispondere alle ricerche
+     */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+
+    /**
+     * <p>Restituisce il numero di convenzioni indicizzate.</p>
+     *
+     * @return <code>int</code> - numero di convenzioni
+     */
+    public int getSize() {
+        Snapshot s = snapshot;
+        return (s == null ? 0 : s.size);
+    }
+
+
+    /**
+     * <p>Restituisce il numero di termini distinti indicizzati.</p>
+     *
+     * @return <code>int</code> - numero di termini
+     */
+    public int getTermCount() {
+        Snapshot s = snapshot;
+        return (s == null ? 0 : s.terms.length);
+    }
+
+
+    /**
+     * <p>Cerca, tra le convenzioni collegate ai gruppi dati, quelle
+     * che soddisfano le chiavi di ricerca, eventualmente ristrette
+     * per tipologia e finalit&agrave;, e ne restituisce gli id.</p>
+     * <p>Se viene passato un dizionario di faccette, nella stessa scansione
+     * delle corrispondenze vi vengono contati i risultati per ciascuna
+     * tipologia (chiave <code>type</code>, rispettando il solo filtro
+     * per finalit&agrave;) e per ciascuna finalit&agrave; (chiave
+     * <code>scop</code>, rispettando il solo filtro per tipologia):
+     * ogni conteggio &egrave; quindi il numero di risultati che si otterrebbe
+     * scegliendo quella voce nel relativo filtro.</p>
+     *
+     * @param key     chiave/i di ricerca immesse (separate da virgola)
+     * @param idType  id della tipologia, 0 per qualsiasi
+     * @param idScope id della finalit&agrave;, 0 per qualsiasi
+     * @param groupIds id dei gruppi dell'utente
+     * @param facets  dizionario da valorizzare con i conteggi per faccetta, o null
+     * @return <code>int[]</code> - id delle convenzioni trovate, in ordine di rilevanza
+     */
+    public int[] search(String key,
+                        int idType,
+                        int idScope,
+                        Integer[] groupIds,
+                        Map<String, HashMap<Integer, Integer>> facets) {
+        Snapshot s = snapshot;
+        if (s == null) {
+            return EMPTY;
+        }
+        int[] found = EMPTY;
+        ArrayList<String> words = new ArrayList<>();
+        for (String k : Utils.tokenizeByComma(key)) {
+            TreeSet<String> keyWords = new TreeSet<>();
+            tokenize(k, keyWords);
+            int[] all = null;
+            for (String word : keyWords) {
+                int[] matches = prefix(s, word);
+                all = (all == null ? matches : intersect(all, matches));
+                if (all.length == 0) {
+                    break;
+                }
+            }
+            if (all != null && all.length > 0) {
+                found = union(found, all);
+                words.addAll(keyWords);
+            }
+        }
+        // Chiave di ordinamento: punteggio decrescente, poi ordinamento di base
+        long[] hits = new long[found.length];
+        int n = 0;
+        HashMap<Integer, Integer> byType = null;
+        HashMap<Integer, Integer> byScope = null;
+        if (facets != null) {
+            byType = facets.computeIfAbsent(FACET_TYPE, f -> new HashMap<>());
+            byScope = facets.computeIfAbsent(FACET_SCOPE, f -> new HashMap<>());
+        }
+        int[] groups = sortedIds(groupIds);
+        for (int ordinal : found) {
+            Document document = s.documents[ordinal];
+            if (!intersects(document.groups, groups)) {
+                // Convenzione non visibile ai gruppi dell'utente
+                continue;
+            }
+            boolean typeMatches = (idType <= 0 || document.idType == idType);
+            boolean scopeMatches = (idScope <= 0 || Arrays.binarySearch(document.scopes, idScope) >= 0);
+            if (facets != null) {
+                if (scopeMatches) {
+                    byType.merge(document.idType, 1, Integer::sum);
+                }
+                if (typeMatches) {
+                    for (int scope : document.scopes) {
+                        byScope.merge(scope, 1, Integer::sum);
+                    }
+                }
+            }
+            if (!typeMatches || !scopeMatches) {
+                continue;
+            }
+            int score = 0;
+            for (String word : words) {
+                if (hasPrefix(document.titleTerms, word)) {
+                    score++;
+                }
+            }
+            hits[n++] = ((long) (MAX_SCORE - Math.min(score, MAX_SCORE)) << 32) | s.positions[ordinal];
+        }
+        Arrays.sort(hits, 0, n);
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = s.documents[s.order[(int) hits[i]]].id;
+        }
+        return ids;
+    }
+
+
+    /**
+     * <p>Restituisce le copie delle convenzioni indicizzate di id dati,
+     * nell'ordine degli id, limitatamente all'intervallo
+     * <code>[from, to)</code>: chi mostra una sola pagina di risultati
+     * copia solo le convenzioni di quella pagina.<br>
+     * Gli id non (pi&ugrave;) indicizzati vengono tralasciati.</p>
+     *
+     * @param ids  id delle convenzioni (p.es. il risultato di una ricerca)
+     * @param from posizione del primo id da restituire
+     * @param to   posizione successiva all'ultimo id da restituire
+     * @return <code>ArrayList&lt;Convenzione&gt;</code> - copie delle convenzioni, nell'ordine degli id
+     * @throws AttributoNonValorizzatoException se l'id di una convenzione indicizzata non risulta valorizzato
+     */
+    public ArrayList<Convenzione> getConventions(int[] ids,
+                                                 int from,
+                                                 int to)
+                                          throws AttributoNonValorizzatoException {
+        Snapshot s = snapshot;
+        int end = Math.min(to, ids.length);
+        ArrayList<Convenzione> conventions = new ArrayList<>(Math.max(end - from, 0));
+        if (s == null) {
+            return conventions;
+        }
+        for (int i = from; i < end; i++) {
+            Document document = s.byId.get(ids[i]);
+            if (document != null) {
+                conventions.add(new Convenzione(document.convention));
+            }
+        }
+        return conventions;
+    }
+
+
+    /**
+     * <p>Restituisce, ordinati, gli ordinali delle convenzioni che contengono
+     * almeno un termine che inizia con la parola data.<br>
+     * Se il prefisso &egrave; condiviso da un solo termine la sua lista
+     * &egrave; gi&agrave; il risultato; altrimenti le liste vengono fuse,
+     * passando per una bitmap quando le occorrenze sono molte.</p>
+     *
+     * @param s    istantanea dell'indice
+     * @param word parola normalizzata
+     * @return <code>int[]</code> - ordinali delle convenzioni trovate, ordinati e distinti
+     */
+    private static int[] prefix(Snapshot s,
+                                String word) {
+        int from = lowerBound(s.terms, word);
+        int to = from;
+        long total = 0L;
+        while (to < s.terms.length && s.terms[to].startsWith(word)) {
+            total += s.postings[to].length;
+            to++;
+        }
+        if (to - from == 0) {
+            return EMPTY;
+        }
+        if (to - from == 1) {
+            return s.postings[from];
+        }
+        if (total > s.documents.length / 16) {
+            BitSet matches = new BitSet(s.documents.length);
+            for (int i = from; i < to; i++) {
+                for (int ordinal : s.postings[i]) {
+                    matches.set(ordinal);
+                }
+            }
+            return matches.stream().toArray();
+        }
+        int[] matches = new int[(int) total];
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            System.arraycopy(s.postings[i], 0, matches, n, s.postings[i].length);
+            n += s.postings[i].length;
+        }
+        Arrays.sort(matches);
+        return distinct(matches, n);
+    }
+
+
+    /**
+     * <p>Intersezione di due liste ordinate di ordinali.</p>
+     *
+     * @param a prima lista, ordinata
+     * @param b seconda lista, ordinata
+     * @return <code>int[]</code> - ordinali presenti in entrambe, ordinati
+     */
+    private static int[] intersect(int[] a,
+                                   int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+
+    /**
+     * <p>Unione di due liste ordinate di ordinali.</p>
+     *
+     * @param a prima lista, ordinata
+     * @param b seconda lista, ordinata
+     * @return <code>int[]</code> - ordinali presenti in almeno una delle due, ordinati e distinti
+     */
+    private static int[] union(int[] a,
+                               int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                next = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                next = b[j++];
+            } else {
+                next = a[i++];
+                j++;
+            }
+            result[n++] = next;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+
+    /**
+     * <p>Elimina i duplicati dai primi <code>n</code> elementi di una lista ordinata.</p>
+     *
+     * @param sorted lista ordinata
+     * @param n      numero di elementi validi
+     * @return <code>int[]</code> - lista ordinata priva di duplicati
+     */
+    private static int[] distinct(int[] sorted,
+                                  int n) {
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || sorted[i] != sorted[m - 1]) {
+                sorted[m++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, m);
+    }
+
+
+    /**
+     * <p>Restituisce gli id dati come array ordinato di interi.</p>
+     *
+     * @param ids id (p.es. dei gruppi dell'utente)
+     * @return <code>int[]</code> - id ordinati
+     */
+    static int[] sortedIds(Integer[] ids) {
+        int[] sorted = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            sorted[i] = ids[i].intValue();
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+
+    /**
+     * <p>Restituisce true se due liste ordinate di id hanno almeno un elemento in comune.</p>
+     *
+     * @param a prima lista, ordinata
+     * @param b seconda lista, ordinata
+     * @return <code>boolean</code> - true se le liste non sono disgiunte
+     */
+    static boolean intersects(int[] a,
+                                      int[] b) {
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * <p>Restituisce true se un array ordinato di termini contiene
+     * un termine che inizia con la parola data.</p>
+     *
+     * @param terms termini ordinati
+     * @param word  parola normalizzata
+     * @return <code>boolean</code> - true se esiste un termine con quel prefisso
+     */
+    private static boolean hasPrefix(String[] terms,
+                                     String word) {
+        int i = lowerBound(terms, word);
+        return (i < terms.length && terms[i].startsWith(word));
+    }
+
+
+    /**
+     * <p>Restituisce la posizione del primo termine non minore della parola data.</p>
+     *
+     * @param terms termini ordinati
+     * @param word  parola cercata
+     * @return <code>int</code> - posizione di inserimento della parola
+     */
+    private static int lowerBound(String[] terms,
+                                  String word) {
+        int pos = Arrays.binarySearch(terms, word);
+        return (pos >= 0 ? pos : -pos - 1);
+    }
+
+
+    /**
+     * <p>Restituisce un testo in minuscolo e privo di accenti.</p>
+     *
+     * @param text testo da normalizzare
+     * @return <code>String</code> - testo normalizzato
+     */
+    static String normalize(String text) {
+        return DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase();
+    }
+
+
+    /**
+     * <p>Scompone un testo in parole minuscole e prive di accenti,
+     * aggiungendole all'insieme passato.</p>
+     *
+     * @param text  testo da scomporre (eventualmente null)
+     * @param words insieme delle parole
+     */
+    static void tokenize(String text,
+                         Collection<String> words) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String word : WORD_SEPARATOR.split(normalize(text))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+    }
+
+}
@@ -119,6 +119,21 @@ public class DBManager extends HttpServlet {
         if ( !getServletContext().getRealPath("/").equals("/var/lib/tomcat9/webapps/col/") ) {
             contextDbName = new StringBuffer("java:comp/env/jdbc/coldev");
         }
+        // Espone via JMX le metriche delle query
+        QueryMetrics.register();
+    }
+
+
+    /**
+     * <p>Rimuove da JMX le metriche delle query alla dismissione
+     * dell'applicazione, per non trattenerne le classi dopo un redeploy.</p>
+     *
+     * @see javax.servlet.GenericServlet#destroy()
+     */
+    @Override
+    public void destroy() {
+        QueryMetrics.unregister();
+        super.destroy();
     }
 
 
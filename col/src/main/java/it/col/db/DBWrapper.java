@@ -49,8 +49,12 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import javax.naming.InitialContext;
@@ -119,6 +123,48 @@ public class DBWrapper extends QueryImpl {
      * <p>Recupera da Servlet la stringa opportuna per il puntamento del DataSource.</p>
      */
     private static String contextDbName = DBManager.getDbName();
+    /**
+     * <p>Istanza condivisa: la classe non ha stato d'istanza
+     * e pu&ograve; quindi essere usata contemporaneamente da pi&ugrave; thread.</p>
+     */
+    private static volatile DBWrapper instance = null;
+    /**
+     * <p>Numero di righe richieste al database per ogni lettura
+     * dai metodi in streaming; &egrave; anche la dimensione dei blocchi
+     * di convenzioni (o contraenti) completati e passati al consumatore.</p>
+     */
+    private static final int STREAM_FETCH_SIZE = 100;
+    /**
+     * <p>Tipi di suggerimento riferiti a una convenzione,
+     * da sostituire quando la convenzione viene modificata.</p>
+     */
+    private static final String[] CONVENTION_SUGGESTIONS = { SuggestionIndex.TITLE, SuggestionIndex.REPERTORY };
+    /**
+     * <p>Indice di ricerca in memoria delle convenzioni.</p>
+     */
+    private static final ConventionIndex SEARCH_INDEX = new ConventionIndex();
+    /**
+     * <p>Indice in memoria dei suggerimenti di completamento della ricerca.</p>
+     */
+    private static final SuggestionIndex SUGGESTIONS = new SuggestionIndex();
+    /**
+     * <p>Cache dei risultati della ricerca libera, per ricerca normalizzata.</p>
+     */
+    private static final SearchCache SEARCH_CACHE = new SearchCache();
+    /**
+     * <p>Cache delle pagine dell'elenco delle convenzioni, per insieme di gruppi.</p>
+     */
+    private static final ConventionCache CONVENTIONS_CACHE = new ConventionCache();
+    /**
+     * <p>Versione dei dati: viene incrementata a ogni scrittura
+     * andata a buon fine e concorre al validatore (ETag) delle pagine.</p>
+     */
+    private static final AtomicLong DATA_VERSION = new AtomicLong();
+    /**
+     * <p>Istante (in millisecondi) dell'ultima scrittura andata a buon fine
+     * o, in assenza di scritture, dell'avvio dell'applicazione.</p>
+     */
+    private static volatile long lastDataChange = System.currentTimeMillis();
 
 
     /**
@@ -147,6 +193,127 @@ public class DBWrapper extends QueryImpl {
     }
 
 
+    /**
+     * <p>Restituisce l'istanza condivisa del DataBound, creandola
+     * alla prima richiesta.</p>
+     * <p>Tutti i metodi ottengono e restituiscono una connessione dal pool
+     * ad ogni invocazione e non mantengono stato d'istanza, per cui
+     * non &egrave; necessario costruire un nuovo oggetto per ogni richiesta.</p>
+     *
+     * @return <code>DBWrapper</code> - l'istanza condivisa
+     * @throws WebStorageException in caso di mancata connessione al database per errore password o dbms down
+     */
+    public static DBWrapper getInstance()
+                                 throws WebStorageException {
+        DBWrapper db = instance;
+        if (db == null) {
+            synchronized (DBWrapper.class) {
+                db = instance;
+                if (db == null) {
+                    instance = db = new DBWrapper();
+                }
+            }
+        }
+        return db;
+    }
+
+
+    /**
+     * <p>Restituisce l'indice di ricerca in memoria delle convenzioni.</p>
+     *
+     * @return <code>ConventionIndex</code> - indice di ricerca delle convenzioni
+     */
+    public static ConventionIndex getSearchIndex() {
+        return SEARCH_INDEX;
+    }
+
+
+    /**
+     * <p>Restituisce l'indice in memoria dei suggerimenti di ricerca.</p>
+     *
+     * @return <code>SuggestionIndex</code> - indice dei suggerimenti
+     */
+    public static SuggestionIndex getSuggestions() {
+        return SUGGESTIONS;
+    }
+
+
+    /**
+     * <p>Restituisce la cache dei risultati della ricerca libera,
+     * per la consultazione delle relative statistiche.</p>
+     *
+     * @return <code>SearchCache</code> - la cache delle ricerche
+     */
+    public static SearchCache getSearchCache() {
+        return SEARCH_CACHE;
+    }
+
+
+    /**
+     * <p>Restituisce la cache delle pagine dell'elenco delle convenzioni,
+     * per la consultazione delle relative statistiche.</p>
+     *
+     * @return <code>ConventionCache</code> - la cache delle pagine di convenzioni
+     */
+    public static ConventionCache getConventionCache() {
+        return CONVENTIONS_CACHE;
+    }
+
+
+    /**
+     * <p>Restituisce la versione corrente dei dati, che cambia
+     * a ogni inserimento o aggiornamento andato a buon fine.</p>
+     *
+     * @return <code>long</code> - versione corrente dei dati
+     */
+    public static long getDataVersion() {
+        return DATA_VERSION.get();
+    }
+
+
+    /**
+     * <p>Restituisce l'istante dell'ultimo inserimento o aggiornamento
+     * andato a buon fine o, se non ce ne sono stati, dell'avvio
+     * dell'applicazione: i dati serviti prima di tale istante
+     * potrebbero non essere pi&ugrave; attuali.</p>
+     *
+     * @return <code>long</code> - istante dell'ultima modifica, in millisecondi
+     */
+    public static long getLastDataChange() {
+        return lastDataChange;
+    }
+
+
+    /**
+     * <p>Registra una scrittura andata a buon fine,
+     * invalidando i validatori delle pagine gi&agrave; servite.</p>
+     */
+    private static void markDataChanged() {
+        lastDataChange = System.currentTimeMillis();
+        DATA_VERSION.incrementAndGet();
+    }
+
+
+    /**
+     * <p>Ottiene una connessione dal pool avvolgendola in una
+     * {@link TrackedConnection}, che alla chiusura chiude
+     * tutti gli statement (e i ResultSet) rimasti aperti.
+     * Sul database di sviluppo gli statement non chiusi dal chiamante
+     * vengono segnalati nel log.<br>
+     * L'attesa per ottenere la connessione viene misurata e registrata
+     * in {@link QueryMetrics} insieme ai tempi della prima query eseguita.</p>
+     *
+     * @return <code>Connection</code> - connessione tracciata
+     * @throws SQLException se non &egrave; possibile ottenere una connessione dal pool
+     */
+    private static Connection getConnection()
+                                     throws SQLException {
+        long start = System.nanoTime();
+        Connection con = col_manager.getConnection();
+        return TrackedConnection.wrap(con, contextDbName.endsWith("dev"), System.nanoTime() - start);
+    }
+
+
     /* ********************************************************** *
      *                     Metodi di SELEZIONE                    *
      * ********************************************************** */
@@ -160,7 +327,7 @@ public class DBWrapper extends QueryImpl {
     @SuppressWarnings({ "static-method" })
     public Vector<CommandBean> lookupCommand()
                                       throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
             CommandBean cmd = null;
@@ -211,7 +378,7 @@ public class DBWrapper extends QueryImpl {
     @SuppressWarnings({ "static-method" })
     public int getMax(String table)
                throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
             try {
@@ -262,7 +429,7 @@ public class DBWrapper extends QueryImpl {
     @SuppressWarnings({ "static-method" })
     public int getMin(String table)
                throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
             try {
@@ -319,7 +486,7 @@ public class DBWrapper extends QueryImpl {
         try {
             int count = NOTHING;
             String query = SELECT_COUNT + table;
-            con = col_manager.getConnection();
+            con = getConnection();
             pst = con.prepareStatement(query);
             pst.clearParameters();
             rs = pst.executeQuery();
@@ -361,7 +528,7 @@ public class DBWrapper extends QueryImpl {
         ResultSet rs = null;
         String value = null;
         try {
-            con = col_manager.getConnection();
+            con = getConnection();
             pst = con.prepareStatement(query);
             pst.clearParameters();
             rs = pst.executeQuery();
@@ -398,7 +565,7 @@ public class DBWrapper extends QueryImpl {
     @SuppressWarnings({ "static-method" })
     public CodeBean getEncryptedPassword(String username)
                                   throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
             CodeBean password = null;
@@ -450,7 +617,7 @@ public class DBWrapper extends QueryImpl {
                               String password)
                        throws WebStorageException, 
                               AttributoNonValorizzatoException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs, rs1, rs2, rs3 = null;
             PersonBean usr = null;
@@ -537,6 +704,110 @@ public class DBWrapper extends QueryImpl {
         }
     }
 
+
+
+    /**
+     * <p>Restituisce, con un'unica query, l'utente che sta effettuando
+     * la login, completo di ruoli giuridici, ruolo applicativo e gruppi,
+     * insieme alle credenziali necessarie a verificarne la password
+     * (v. {@link Query#GET_USR_LOGIN}).</p>
+     * <p>Le credenziali vengono scritte nel CodeBean passato come argomento,
+     * modificandolo per riferimento (<code>ByRef</code>), con la stessa
+     * convenzione di {@link #getEncryptedPassword(String)}:<ul>
+     * <li><code>nome</code>: password criptata (null se l'utenza
+     * non &egrave; ammessa alla login con password criptata);</li>
+     * <li><code>informativa</code>: seme;</li>
+     * <li><code>ordinale</code>: 1 se la password passata corrisponde
+     * alle credenziali in chiaro (utenze storiche), 0 altrimenti.</li>
+     * </ul>
+     * L'utente restituito non &egrave; quindi ancora autenticato:
+     * spetta al chiamante verificare la password in base alle credenziali.</p>
+     *
+     * @param username    username della persona che ha richiesto il login
+     * @param password    password inserita dalla persona che ha richiesto il login
+     * @param credentials CodeBean in cui vengono scritte le credenziali
+     * @return <code>PersonBean</code> - PersonBean rappresentante l'utente, oppure null se l'utenza non esiste
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     * @throws it.col.exception.AttributoNonValorizzatoException  eccezione che viene sollevata se questo oggetto viene usato e l'id della persona non &egrave; stato valorizzato (&egrave; un dato obbligatorio)
+     */
+    @SuppressWarnings({ "static-method" })
+    public PersonBean getUserLogin(String username,
+                                   String password,
+                                   CodeBean credentials)
+                            throws WebStorageException, 
+                                   AttributoNonValorizzatoException {
+        try (Connection con = getConnection()) {
+            PreparedStatement pst = null;
+            ResultSet rs = null;
+            PersonBean usr = null;
+            int nextInt = NOTHING;
+            try {
+                pst = con.prepareStatement(GET_USR_LOGIN);
+                pst.clearParameters();
+                pst.setString(++nextInt, password);
+                pst.setString(++nextInt, password);
+                pst.setString(++nextInt, username);
+                rs = pst.executeQuery();
+                if (rs.next()) {
+                    usr = new PersonBean();
+                    BeanUtil.populate(usr, rs);
+                    // Aggiusta i nomi (prima lettera grande, altre piccole)
+                    usr.setNome(Utils.formatNames(usr.getNome()));
+                    // Recupera i ruoli giuridici
+                    Vector<CodeBean> vRuoli = new Vector<>();
+                    for (String[] row : toRows(rs.getArray("aggRuoli"))) {
+                        CodeBean ruolo = new CodeBean();
+                        ruolo.setId(Integer.parseInt(row[0]));
+                        ruolo.setNome(row[1]);
+                        ruolo.setInformativa(row[2]);
+                        vRuoli.add(ruolo);
+                    }
+                    usr.setRuoli(vRuoli);
+                    // Recupera i gruppi dell'utente
+                    Vector<CodeBean> vGruppi = new Vector<>();
+                    for (String[] row : toRows(rs.getArray("aggGruppi"))) {
+                        CodeBean gruppo = new CodeBean();
+                        gruppo.setId(Integer.parseInt(row[0]));
+                        gruppo.setNome(row[1]);
+                        gruppo.setInformativa(row[2]);
+                        gruppo.setOrdinale(Integer.parseInt(row[3]));
+                        vGruppi.add(gruppo);
+                    }
+                    usr.setGruppi(vGruppi);
+                    // Restituisce per riferimento le credenziali
+                    credentials.setNome(rs.getString("passwdform"));
+                    credentials.setInformativa(rs.getString("salt"));
+                    credentials.setOrdinale(rs.getBoolean("chiaro") ? 1 : NOTHING);
+                }
+                // Try to engage the Garbage Collector
+                pst = null;
+                // Get Out
+                return usr;
+            } catch (NumberFormatException nfe) {
+                String msg = FOR_NAME + "Problema nella conversione di un identificativo aggregato.\n";
+                LOG.severe(msg);
+                throw new WebStorageException(msg + nfe.getMessage(), nfe);
+            } catch (SQLException sqle) {
+                String msg = FOR_NAME + "Oggetto PersonBean non valorizzato; problema nella query dell\'utente.\n";
+                LOG.severe(msg);
+                throw new WebStorageException(msg + sqle.getMessage(), sqle);
+            } finally {
+                try {
+                    con.close();
+                } catch (NullPointerException npe) {
+                    String msg = FOR_NAME + "Ooops... problema nella chiusura della connessione.\n";
+                    LOG.severe(msg);
+                    throw new WebStorageException(msg + npe.getMessage());
+                } catch (SQLException sqle) {
+                    throw new WebStorageException(FOR_NAME + sqle.getMessage());
+                }
+            }
+        } catch (SQLException sqle) {
+            String msg = FOR_NAME + "Problema con la creazione della connessione.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + sqle.getMessage(), sqle);
+        }
+    }
     
     /**
      * <p>Restituisce la lista delle convenzioni attive per l'utente considerato.</p>
@@ -550,12 +821,11 @@ public class DBWrapper extends QueryImpl {
     public ArrayList<Convenzione> getConventions(PersonBean user)
                                           throws WebStorageException, 
                                                  AttributoNonValorizzatoException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
-            ResultSet rs, rs1 = null;
+            ResultSet rs = null;
             int nParam = NOTHING; 
             Convenzione c = null;
-            ArrayList<PersonBean> contraenti = null;
             ArrayList<Convenzione> convenzioni = new ArrayList<>();
             try {
                 Vector<CodeBean> groups = user.getGruppi();
@@ -576,23 +846,11 @@ public class DBWrapper extends QueryImpl {
                 while (rs.next()) {
                     c = new Convenzione();
                     BeanUtil.populate(c, rs);
-                    // Recupera i contraenti collegati alla convenzione
-                    contraenti = new ArrayList<>();
-                    pst = null;
-                    pst = con.prepareStatement(GET_CONTRACTORS_BY_CONVENTION);
-                    pst.clearParameters();
-                    pst.setInt(1, c.getId());
-                    rs1 = pst.executeQuery();
-                    while (rs1.next()) {
-                        PersonBean contraente = new PersonBean();
-                        BeanUtil.populate(contraente, rs1);
-                        contraenti.add(contraente);
-                    }
-                    // Li aggiunge alla convenzione
-                    c.setContraenti(contraenti);
                     // Aggiunge la convenzione alla lista
                     convenzioni.add(c);
                 }
+                // Recupera i contraenti di tutte le convenzioni con una sola query
+                loadContractors(con, convenzioni);
                 // Try to engage the Garbage Collector
                 pst = null;
                 // Get Out
@@ -622,10 +880,106 @@ public class DBWrapper extends QueryImpl {
             throw new WebStorageException(msg + sqle.getMessage(), sqle);
         }
     }
-    
-    
+
+
     /**
-     * <p>Restituisce la lista delle convenzioni attive 
+     * <p>Valorizza i contraenti di tutte le convenzioni passate
+     * eseguendo un'unica query, qualunque sia il numero delle convenzioni.</p>
+     * <p>Gli identificativi delle convenzioni vengono passati alla query
+     * in un array SQL (<code>id = ANY(?)</code>); ogni riga restituita
+     * riporta l'id della convenzione di appartenenza, che viene usato
+     * per ripartire in memoria i contraenti tra le convenzioni.
+     * Le convenzioni prive di contraenti ricevono comunque una lista vuota.</p>
+     * <p>Usa la connessione del chiamante, che ne gestisce il ciclo di vita.</p>
+     *
+     * @param con         connessione aperta dal metodo chiamante
+     * @param conventions lista delle convenzioni di cui recuperare i contraenti
+     * @throws SQLException se si verifica un problema nell'esecuzione della query o nel popolamento dei bean
+     * @throws AttributoNonValorizzatoException se l'id di una convenzione non risulta valorizzato
+     */
+    private static void loadContractors(Connection con,
+                                        ArrayList<Convenzione> conventions)
+                                 throws SQLException,
+                                        AttributoNonValorizzatoException {
+        if (conventions.isEmpty()) {
+            return;
+        }
+        // Indicizza le convenzioni per id, preservandone l'ordine
+        LinkedHashMap<Integer, ArrayList<PersonBean>> contractorsByConvention = new LinkedHashMap<>();
+        for (Convenzione c : conventions) {
+            contractorsByConvention.put(c.getId(), new ArrayList<>());
+        }
+        Integer[] convIds = contractorsByConvention.keySet().toArray(new Integer[NOTHING]);
+        try (PreparedStatement pst = con.prepareStatement(GET_CONTRACTORS_BY_CONVENTIONS)) {
+            pst.setArray(1, con.createArrayOf("integer", convIds));
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    PersonBean contraente = new PersonBean();
+                    BeanUtil.populate(contraente, rs);
+                    ArrayList<PersonBean> contraenti = contractorsByConvention.get(rs.getInt("idConvenzione"));
+                    if (contraenti != null) {
+                        contraenti.add(contraente);
+                    }
+                }
+            }
+        }
+        // Li aggiunge alle rispettive convenzioni
+        for (Convenzione c : conventions) {
+            c.setContraenti(contractorsByConvention.get(c.getId()));
+        }
+    }
+
+
+    /**
+     * <p>Valorizza le convenzioni di tutti i contraenti passati
+     * eseguendo un'unica query, qualunque sia il numero dei contraenti.</p>
+     * <p>&Egrave; il simmetrico di {@link #loadContractors(Connection, ArrayList)}:
+     * gli identificativi dei contraenti vengono passati alla query in un
+     * array SQL e le convenzioni restituite vengono ripartite in memoria
+     * in base all'id del contraente riportato da ogni riga.
+     * I contraenti privi di convenzioni ricevono comunque una lista vuota.</p>
+     * <p>Usa la connessione del chiamante, che ne gestisce il ciclo di vita.</p>
+     *
+     * @param con         connessione aperta dal metodo chiamante
+     * @param contractors lista dei contraenti di cui recuperare le convenzioni
+     * @throws SQLException se si verifica un problema nell'esecuzione della query o nel popolamento dei bean
+     * @throws AttributoNonValorizzatoException se l'id di un contraente non risulta valorizzato
+     */
+    private static void loadConventions(Connection con,
+                                        ArrayList<PersonBean> contractors)
+                                 throws SQLException,
+                                        AttributoNonValorizzatoException {
+        if (contractors.isEmpty()) {
+            return;
+        }
+        // Indicizza i contraenti per id, preservandone l'ordine
+        LinkedHashMap<Integer, ArrayList<Convenzione>> conventionsByContractor = new LinkedHashMap<>();
+        for (PersonBean p : contractors) {
+            conventionsByContractor.put(p.getId(), new ArrayList<>());
+        }
+        Integer[] contIds = conventionsByContractor.keySet().toArray(new Integer[NOTHING]);
+        try (PreparedStatement pst = con.prepareStatement(GET_CONVENTIONS_BY_CONTRACTORS)) {
+            pst.setArray(1, con.createArrayOf("integer", contIds));
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    Convenzione c = new Convenzione();
+                    BeanUtil.populate(c, rs);
+                    ArrayList<Convenzione> convenzioni = conventionsByContractor.get(rs.getInt("idContraente"));
+                    if (convenzioni != null) {
+                        convenzioni.add(c);
+                    }
+                }
+            }
+        }
+        // Le aggiunge ai rispettivi contraenti
+        for (PersonBean p : contractors) {
+            p.setConvenzioni(conventionsByContractor.get(p.getId()));
+        }
+    }
+
+
+    /**
+     * <p>Restituisce la lista delle convenzioni attive
      * entro un intervallo considerato.</p>
      *
      * @param user utente che ha effettuato la richiesta
@@ -641,12 +995,11 @@ public class DBWrapper extends QueryImpl {
                                                  Date end)
                                           throws WebStorageException, 
                                                  AttributoNonValorizzatoException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
-            ResultSet rs, rs1, rs2 = null;
+            ResultSet rs = null;
             int nParam = NOTHING; 
             Convenzione c = null;
-            ArrayList<PersonBean> contraenti = null;
             ArrayList<Convenzione> convenzioni = new ArrayList<>();
             try {
                 // Recupera i gruppi dell'utente
@@ -664,35 +1017,13 @@ public class DBWrapper extends QueryImpl {
                 while (rs.next()) {
                     c = new Convenzione();
                     BeanUtil.populate(c, rs);
-                    // Recupera i contraenti collegati alla convenzione
-                    contraenti = new ArrayList<>();
-                    pst = null;
-                    pst = con.prepareStatement(GET_CONTRACTORS_BY_CONVENTION);
-                    pst.clearParameters();
-                    pst.setInt(1, c.getId());
-                    rs1 = pst.executeQuery();
-                    while (rs1.next()) {
-                        PersonBean contraente = new PersonBean();
-                        BeanUtil.populate(contraente, rs1);
-                        contraenti.add(contraente);
-                    }
-                    // Li aggiunge alla convenzione
-                    c.setContraenti(contraenti);
-                    // Recupera il "gruppo principale" della convenzione corrente
-                    pst = null;
-                    pst = con.prepareStatement(GET_CONVENTION_GROUP);
-                    pst.clearParameters();
-                    pst.setInt(1, c.getId());
-                    rs2 = pst.executeQuery();
-                    // Assume che il gruppo sia uno solo (v. commento query)
-                    if (rs2.next()) {
-                        CodeBean gruppo = new CodeBean();
-                        BeanUtil.populate(gruppo, rs2);
-                        c.setGruppoPrincipale(gruppo);
-                    }
                     // Aggiunge la convenzione alla lista
                     convenzioni.add(c);
                 }
+                // Recupera il "gruppo principale" di tutte le convenzioni con una sola query
+                loadMainGroups(con, convenzioni);
+                // Recupera i contraenti di tutte le convenzioni con una sola query
+                loadContractors(con, convenzioni);
                 // Try to engage the Garbage Collector
                 pst = null;
                 // Get Out
@@ -722,34 +1053,88 @@ public class DBWrapper extends QueryImpl {
     
     /**
      * <p>Restituisce la lista delle convenzioni attive 
-     * in base a una o pi&uacute; chiavi di ricerca passate dall'utente.</p>
+     * in base a una o pi&uacute; chiavi di ricerca passate dall'utente,
+     * eventualmente ristrette per tipologia e finalit&agrave;.</p>
+     * <p>La ricerca viene risolta dall'indice in memoria ({@link ConventionIndex}),
+     * se caricato, altrimenti dalla ricerca full-text su database
+     * (v. {@link Query#GET_CONVENTIONS_BY_KEYS}); in entrambi i casi
+     * le convenzioni sono restituite in ordine di rilevanza.</p>
+     * <p>Il dizionario <code>facets</code>, se non nullo, viene valorizzato
+     * con il numero di risultati per tipologia e per finalit&agrave;
+     * (v. {@link ConventionIndex#search(String, int, int, Integer[], Map)}): dall'indice
+     * nella stessa scansione dei risultati, dal database con un'unica query
+     * aggregata (v. {@link Query#GET_CONVENTION_FACETS_BY_KEYS}).</p>
+     * <p>Gli id trovati e i relativi conteggi vengono memorizzati nella
+     * cache delle ricerche ({@link SearchCache}), qualunque sia la fonte,
+     * per cui la stessa ricerca, a meno di maiuscole, accenti e ordine delle
+     * parole, fatta da utenti con gli stessi gruppi, non viene rieseguita fino
+     * alla successiva scrittura su una convenzione; le convenzioni vengono
+     * materializzate dall'indice o, in sua assenza, dalla cache stessa.</p>
      *
      * @param user utente che ha effettuato la richiesta
      * @param params parametri di ricerca scelti dall'utente
+     * @param facets dizionario da valorizzare con i conteggi per tipologia e finalit&agrave;, o null
      * @return <code>ArrayList&lt;Convenzione&gt;</code> - lista convenzioni trovate in base alle chiavi di ricerca immesse
      * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
      * @throws it.col.exception.AttributoNonValorizzatoException  eccezione che viene sollevata un dato obbligatorio di un oggetto non risulta valorizzato
      */
     public ArrayList<Convenzione> getConventions(PersonBean user,
-                                                 HashMap<String, LinkedHashMap<String, String>> params)
+                                                 HashMap<String, LinkedHashMap<String, String>> params,
+                                                 Map<String, HashMap<Integer, Integer>> facets)
                                           throws WebStorageException, 
                                                  AttributoNonValorizzatoException {
-        try (Connection con = col_manager.getConnection()) {
+        // Dizionario dei parametri contenente i parametri di ricerca
+        LinkedHashMap<String, String> searchForm = params.get(SEARCH);
+        // Prepara i parametri per l'estrazione
+        String type = searchForm.get("type");
+        String scope = searchForm.get("scop");
+        String key = searchForm.get("keys");
+        int idType = Utils.isInteger(type) ? Integer.parseInt(type) : NOTHING;
+        int idScope = Utils.isInteger(scope) ? Integer.parseInt(scope) : NOTHING;
+        Integer[] groups = Utils.convert(user.getGruppi());
+        Map<String, HashMap<Integer, Integer>> counts = (facets != null ? facets : new HashMap<>());
+        // Ricerche uguali a meno di maiuscole, accenti e ordine delle parole condividono il risultato
+        String cacheKey = SearchCache.key(key, idType, idScope, groups);
+        // Generazione da verificare prima di memorizzare il risultato
+        long generation = SEARCH_CACHE.generation();
+        // Se l'indice in memoria e' disponibile, la ricerca non interroga il database
+        if (SEARCH_INDEX.isLoaded()) {
+            int[] ids = SEARCH_CACHE.getIds(cacheKey, counts);
+            if (ids == null) {
+                ids = SEARCH_INDEX.search(key, idType, idScope, groups, counts);
+                SEARCH_CACHE.put(cacheKey, ids, null, counts, generation);
+            }
+            // La pagina dei risultati mostra tutte le convenzioni trovate
+            return SEARCH_INDEX.getConventions(ids, 0, ids.length);
+        }
+        ArrayList<Convenzione> cached = SEARCH_CACHE.getConventions(cacheKey, counts);
+        if (cached != null) {
+            return cached;
+        }
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
-            // Dizionario dei parametri contenente i parametri di ricerca
-            LinkedHashMap<String, String> searchForm = params.get(SEARCH);
-            // Prepara i parametri per l'estrazione
-            String type = searchForm.get("type");
-            String scope = searchForm.get("scop");
-            String key = searchForm.get("keys");
             Convenzione c = null;
             ArrayList<Convenzione> convenzioni = new ArrayList<>();
             try {
-                String query = getQueryConventionsByKeys(type, scope, key);
-                pst = con.prepareStatement(query);
+                // Testo della ricerca full-text
+                String tsQuery = getTsQueryByKeys(key);
+                if (tsQuery.isEmpty()) {
+                    // Nessuna parola ricercabile: nessun risultato
+                    return convenzioni;
+                }
+                // Solo le convenzioni dei gruppi dell'utente, come nell'indice in memoria
+                Array sqlArray = con.createArrayOf("integer", groups);
+                int nParam = NOTHING;
+                pst = con.prepareStatement(GET_CONVENTIONS_BY_KEYS);
                 pst.clearParameters();
-                // TODO Per il momento, ignora i gruppi dell'utente: le convenzioni escono nella ricerca ma i link verranno bloccati
+                pst.setString(++nParam, tsQuery);
+                pst.setArray(++nParam, sqlArray);
+                pst.setInt(++nParam, idType);
+                pst.setInt(++nParam, idType);
+                pst.setInt(++nParam, idScope);
+                pst.setInt(++nParam, idScope);
+                // Le convenzioni arrivano ordinate per rilevanza
                 rs = pst.executeQuery();
                 while (rs.next()) {
                     c = new Convenzione();
@@ -757,6 +1142,37 @@ public class DBWrapper extends QueryImpl {
                     // Aggiunge la convenzione alla lista
                     convenzioni.add(c);
                 }
+                // Conteggi per faccetta, con un'unica query aggregata
+                HashMap<Integer, Integer> byType = counts.computeIfAbsent(ConventionIndex.FACET_TYPE, f -> new HashMap<>());
+                HashMap<Integer, Integer> byScope = counts.computeIfAbsent(ConventionIndex.FACET_SCOPE, f -> new HashMap<>());
+                nParam = NOTHING;
+                pst = con.prepareStatement(GET_CONVENTION_FACETS_BY_KEYS);
+                pst.clearParameters();
+                pst.setInt(++nParam, idScope);
+                pst.setInt(++nParam, idScope);
+                pst.setInt(++nParam, idType);
+                pst.setInt(++nParam, idType);
+                pst.setString(++nParam, tsQuery);
+                pst.setArray(++nParam, sqlArray);
+                rs = pst.executeQuery();
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    if (rs.wasNull()) {
+                        // Convenzioni senza finalita'
+                        continue;
+                    }
+                    if (rs.getInt("grouping") == 0) {
+                        byType.put(id, rs.getInt("perTipo"));
+                    } else {
+                        byScope.put(id, rs.getInt("perFinalita"));
+                    }
+                }
+                // Memorizza gli id trovati, le convenzioni e i conteggi per la stessa ricerca
+                int[] ids = new int[convenzioni.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = convenzioni.get(i).getId();
+                }
+                SEARCH_CACHE.put(cacheKey, ids, convenzioni, counts, generation);
                 // Try to engage the Garbage Collector
                 pst = null;
                 // Back Off
@@ -789,44 +1205,94 @@ public class DBWrapper extends QueryImpl {
     
     
     /**
-     * <p>Restituisce la lista delle convenzioni collegate a un dato
-     * contraente.</p>
+     * <p>Restituisce una convenzione di dato id.</p>
+     * <p>Effettua un controllo dei diritti dell'utente contestualmente
+     * all'estrazione della convenzione per differenziare il comportamento tra:<dl>
+     * <dt>convenzione non esistente</dt>
+     * <dd>p.es. ...&id=10000, messaggio "la convenzione non esiste"</dd>
+     * <dt>convenzione esistente ma non visualizzabile</dt>
+     * <dd>messaggio "la convenzione esiste ma non hai diritto a visualizzarla"</dd>
+     * </dl>
+     * Se la query mettesse nella clausola WHERE la solita condizione tra la
+     * convenzione e i gruppi
+     * ( AND C.id IN (SELECT CG.id_convenzione FROM convenzione_grp CG WHERE CG.id_grp = ANY(?))" +)
+     * cui appartiene l'utente, non sarebbe possibile discriminare tra queste
+     * due situazioni, che per&ograve; &egrave; opportuno gestire in modo differente;
+     * per questo la condizione viene restituita come colonna
+     * (<code>autorizzata</code>) da un'unica query, che restituisce anche
+     * contraenti e finalit&agrave; aggregati in array
+     * (v. {@link Query#GET_CONVENTION_DETAIL}).</p>
      *
-     * @param user       utente che ha effettuato la richiesta
-     * @param contractor contraente di cui si vogliono recuperare le convenzioni
-     * @return <code>ArrayList&lt;Convenzione&gt;</code> - lista convenzioni trovate in base al contraente passato
+     * @param user utente che ha effettuato la richiesta
+     * @param idConvention identificativo della convenzione che si vuole recuperare
+     * @return <code>Convenzione</code> - convenzione trovata, oppure convenzione con id di default se l'utente non ha diritto a visualizzarla, oppure <code>null</code> se la convenzione non esiste
      * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
-     * @throws it.col.exception.AttributoNonValorizzatoException  eccezione che viene sollevata un dato obbligatorio di un oggetto non risulta valorizzato
+     * @throws it.col.exception.AttributoNonValorizzatoException  eccezione che viene sollevata se questo oggetto viene usato e l'id della persona non &egrave; stato valorizzato (&egrave; un dato obbligatorio)
      */
-    @SuppressWarnings("static-method")
-    public ArrayList<Convenzione> getConventions(PersonBean user,
-                                                 PersonBean contractor)
-                                          throws WebStorageException, 
-                                                 AttributoNonValorizzatoException {
-        try (Connection con = col_manager.getConnection()) {
+    @SuppressWarnings({ "static-method" })
+    public Convenzione getConvention(PersonBean user,
+                                     int idConvention)
+                              throws WebStorageException, 
+                                     AttributoNonValorizzatoException {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
-            int nParam = NOTHING; 
+            int nParam = NOTHING;
             Convenzione c = null;
-            ArrayList<Convenzione> convenzioni = new ArrayList<>();
             try {
-                pst = con.prepareStatement(GET_CONVENTIONS_BY_CONTRACTOR);
+                // Passa tutti i gruppi cui l'utente appartiene in un array SQL
+                Array sqlArray = con.createArrayOf("integer", Utils.convert(user.getGruppi()));
+                pst = con.prepareStatement(GET_CONVENTION_DETAIL);
                 pst.clearParameters();
-                pst.setInt(++nParam,contractor.getId());
-                // TODO Per il momento, ignora i gruppi dell'utente: le convenzioni escono nella ricerca ma i link verranno bloccati
+                pst.setArray(++nParam, sqlArray);
+                pst.setInt(++nParam, idConvention);
                 rs = pst.executeQuery();
-                while (rs.next()) {
-                    c = new Convenzione();
-                    BeanUtil.populate(c, rs);
-                    // Aggiunge la convenzione alla lista
-                    convenzioni.add(c);
+                if (rs.next()) {
+                    // Se siamo qui ha trovato la convenzione... 
+                    if (!rs.getBoolean("autorizzata")) {
+                        // ...ma se non appartiene all'utente restituirà una convenzione vuota
+                        c = new Convenzione(DEFAULT_ID);
+                    } else {
+                        c = new Convenzione();
+                        BeanUtil.populate(c, rs);
+                        // Recupera i contraenti collegati alla convenzione
+                        ArrayList<PersonBean> contractors = new ArrayList<>();
+                        for (String[] row : toRows(rs.getArray("aggContraenti"))) {
+                            PersonBean contractor = new PersonBean();
+                            contractor.setId(Integer.parseInt(row[0]));
+                            contractor.setNome(row[1]);
+                            contractor.setInformativa(row[2]);
+                            contractor.setOrdinale(Integer.parseInt(row[3]));
+                            contractor.setCodiceFiscale(row[4]);
+                            contractor.setPartitaIva(row[5]);
+                            contractor.setEmail(row[6]);
+                            contractor.setNote(row[7]);
+                            contractors.add(contractor);
+                        }
+                        c.setContraenti(contractors);
+                        // Recupera le finalità della convenzione
+                        ArrayList<CodeBean> scopes = new ArrayList<>();
+                        for (String[] row : toRows(rs.getArray("aggFinalita"))) {
+                            CodeBean scope = new CodeBean();
+                            scope.setId(Integer.parseInt(row[0]));
+                            scope.setNome(row[1]);
+                            scope.setInformativa(row[2]);
+                            scope.setOrdinale(Integer.parseInt(row[3]));
+                            scopes.add(scope);
+                        }
+                        c.setFinalita(scopes);
+                    }
                 }
                 // Try to engage the Garbage Collector
                 pst = null;
-                // Back Off
-                return convenzioni;
+                // Get Out
+                return c;
+            } catch (NumberFormatException nfe) {
+                String msg = FOR_NAME + "Problema nella conversione di un identificativo aggregato.\n";
+                LOG.severe(msg);
+                throw new WebStorageException(msg + nfe.getMessage(), nfe);
             } catch (SQLException sqle) {
-                String msg = FOR_NAME + "Problema nella query.\n";
+                String msg = FOR_NAME + "Problema nella query della convenzione.\n";
                 LOG.severe(msg);
                 throw new WebStorageException(msg + sqle.getMessage(), sqle);
             } finally {
@@ -844,122 +1310,34 @@ public class DBWrapper extends QueryImpl {
             String msg = FOR_NAME + "Problema con la creazione della connessione.\n";
             LOG.severe(msg);
             throw new WebStorageException(msg + sqle.getMessage(), sqle);
-        } catch (Exception e) {
-            String msg = FOR_NAME + "Problema non intercettato in precedenza.\n";
-            LOG.severe(msg);
-            throw new WebStorageException(msg + e.getMessage(), e);
         }
     }
-    
-    
+
+
     /**
-     * <p>Restituisce una convenzione di dato id.</p>
-     * <p>Effettua un controllo dei diritti dell'utente a valle dell'estrazione
-     * della convenzione per differenziare il comportamento tra:<dl>
-     * <dt>convenzione non esistente</dt>
-     * <dd>p.es. ...&id=10000, messaggio "la convenzione non esiste"</dd>
-     * <dt>convenzione esistente ma non visualizzabile</dt>
-     * <dd>messaggio "la convenzione esiste ma non hai diritto a visualizzarla"</dd>
-     * </dl>
-     * Se la query mettesse a monte la solita clausola tra la convenzione e i gruppi
-     * ( AND C.id IN (SELECT CG.id_convenzione FROM convenzione_grp CG WHERE CG.id_grp = ANY(?))" +)
-     * cui appartiene l'utente, non sarebbe possibile discriminare tra queste
-     * due situazioni, che per&ograve; &egrave; opportuno gestire in modo differente.</p>
+     * <p>Converte un array SQL bidimensionale di testo (<code>text[][]</code>)
+     * nelle sue righe.</p>
+     * <p>Un array vuoto (<code>'{}'</code>) viene restituito dal driver
+     * come array monodimensionale privo di elementi, mentre un array non
+     * calcolato vale <code>null</code>: in entrambi i casi viene restituita
+     * una lista vuota.</p>
      *
-     * @param user utente che ha effettuato la richiesta
-     * @param idConvention identificativo della convenzione che si vuole recuperare
-     * @return <code>Convenzione</code> - convenzione trovata
-     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
-     * @throws it.col.exception.AttributoNonValorizzatoException  eccezione che viene sollevata se questo oggetto viene usato e l'id della persona non &egrave; stato valorizzato (&egrave; un dato obbligatorio)
+     * @param array array SQL restituito dal ResultSet
+     * @return <code>List&lt;String[]&gt;</code> - righe dell'array, nell'ordine restituito dalla query
+     * @throws SQLException se si verifica un problema nel recupero degli elementi dell'array
      */
-    @SuppressWarnings({ "static-method" })
-    public Convenzione getConvention(PersonBean user,
-                                     int idConvention)
-                              throws WebStorageException, 
-                                     AttributoNonValorizzatoException {
-        try (Connection con = col_manager.getConnection()) {
-            PreparedStatement pst = null;
-            ResultSet rs, rs1, rs2, rs3 = null;
-            Convenzione c = null;
-            ArrayList<PersonBean> contractors = new ArrayList<>();
-            ArrayList<CodeBean> scopes = new ArrayList<>();
-            Vector<CodeBean> groups = new Vector<>();
-            CodeBean group = new CodeBean();
-            try {
-                pst = con.prepareStatement(GET_CONVENTION);
-                pst.clearParameters();
-                pst.setInt(1, idConvention);
-                rs = pst.executeQuery();
-                if (rs.next()) {
-                    // Se siamo qui ha trovato la convenzione... 
-                    c = new Convenzione();
-                    BeanUtil.populate(c, rs);
-                    // ...ma ora bisogna vedere se l'utente ha i diritti di visualizzarla
-                    pst = null;
-                    // Recupera i gruppi cui è collegata la convenzione
-                    pst = con.prepareStatement(GET_GROUPS_BY_CONVENTION);
-                    pst.clearParameters();
-                    pst.setInt(1, idConvention);
-                    rs3 = pst.executeQuery();
-                    while (rs3.next()) {
-                        BeanUtil.populate(group, rs3);
-                        groups.add(group);
-                    }
-                    // Almeno un gruppo dell'utente deve combaciare con uno di quelli della convenzione 
-                    if (!Utils.belongs(user.getGruppi(), groups)) {
-                        // Se la convenzione esiste ma non appartiene all'utente restituirà una convenzione vuota
-                        c = new Convenzione(DEFAULT_ID);
-                    } else {
-                        // Recupera i contraenti collegati alla convenzione
-                        pst = null;
-                        pst = con.prepareStatement(GET_CONTRACTORS_BY_CONVENTION);
-                        pst.clearParameters();
-                        pst.setInt(1, idConvention);
-                        rs1 = pst.executeQuery();
-                        while (rs1.next()) {
-                            PersonBean contractor = new PersonBean();
-                            BeanUtil.populate(contractor, rs1);
-                            contractors.add(contractor);
-                        }
-                        c.setContraenti(contractors);
-                        // Recupera le finalità della convenzione
-                        pst = null;
-                        pst = con.prepareStatement(GET_SCOPES_BY_CONVENTION);
-                        pst.clearParameters();
-                        pst.setInt(1, idConvention);
-                        rs2 = pst.executeQuery();
-                        while (rs2.next()) {
-                            CodeBean scope = new CodeBean();
-                            BeanUtil.populate(scope, rs2);
-                            scopes.add(scope);
-                        }
-                        c.setFinalita(scopes);
-                    }
-                }
-                // Try to engage the Garbage Collector
-                pst = null;
-                // Get Out
-                return c;
-            } catch (SQLException sqle) {
-                String msg = FOR_NAME + "Problema nella query della convenzione.\n";
-                LOG.severe(msg);
-                throw new WebStorageException(msg + sqle.getMessage(), sqle);
-            } finally {
-                try {
-                    con.close();
-                } catch (NullPointerException npe) {
-                    String msg = FOR_NAME + "Ooops... problema nella chiusura della connessione.\n";
-                    LOG.severe(msg);
-                    throw new WebStorageException(msg + npe.getMessage());
-                } catch (SQLException sqle) {
-                    throw new WebStorageException(FOR_NAME + sqle.getMessage());
+    private static List<String[]> toRows(Array array)
+                                  throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        if (array != null) {
+            Object elements = array.getArray();
+            if (elements instanceof String[][]) {
+                for (String[] row : (String[][]) elements) {
+                    rows.add(row);
                 }
             }
-        } catch (SQLException sqle) {
-            String msg = FOR_NAME + "Problema con la creazione della connessione.\n";
-            LOG.severe(msg);
-            throw new WebStorageException(msg + sqle.getMessage(), sqle);
         }
+        return rows;
     }
     
     
@@ -986,13 +1364,12 @@ public class DBWrapper extends QueryImpl {
                                                 boolean getAll)
                                          throws WebStorageException, 
                                                 AttributoNonValorizzatoException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
             int numParam = NOTHING; 
             PersonBean p = null;
             ArrayList<PersonBean> contraenti = new ArrayList<>();
-            ArrayList<Convenzione> convenzioni = new ArrayList<>();
             try {
                 // TODO: Controllare i diritti dell'utente
                 
@@ -1006,10 +1383,10 @@ public class DBWrapper extends QueryImpl {
                 while (rs.next()) {
                     p = new PersonBean();
                     BeanUtil.populate(p, rs);
-                    convenzioni = getConventions(user, p);
-                    p.setConvenzioni(convenzioni);
                     contraenti.add(p);
                 }
+                // Recupera le convenzioni di tutti i contraenti con una sola query
+                loadConventions(con, contraenti);
                 // Try to engage the Garbage Collector
                 pst = null;
                 // Get Out
@@ -1054,12 +1431,11 @@ public class DBWrapper extends QueryImpl {
                                     int id)
                              throws WebStorageException, 
                                     AttributoNonValorizzatoException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
             int numParam = NOTHING; 
             PersonBean c = null;
-            ArrayList<Convenzione> convenzioni = new ArrayList<>();
             try {
                 // TODO: Controllare i diritti dell'utente
                 pst = con.prepareStatement(GET_CONTRACTOR);
@@ -1069,8 +1445,10 @@ public class DBWrapper extends QueryImpl {
                 if (rs.next()) {
                     c = new PersonBean();
                     BeanUtil.populate(c, rs);
-                    convenzioni = this.getConventions(user, c);
-                    c.setConvenzioni(convenzioni);
+                    // Recupera le convenzioni sulla stessa connessione
+                    ArrayList<PersonBean> contraenti = new ArrayList<>();
+                    contraenti.add(c);
+                    loadConventions(con, contraenti);
                 }
                 // Try to engage the Garbage Collector
                 pst = null;
@@ -1112,7 +1490,7 @@ public class DBWrapper extends QueryImpl {
     @SuppressWarnings({ "static-method" })
     public ArrayList<CodeBean> getTypes()
                                  throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
             CodeBean type = null;
@@ -1163,7 +1541,7 @@ public class DBWrapper extends QueryImpl {
     @SuppressWarnings({ "static-method" })
     public ArrayList<CodeBean> getScopes()
                                   throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
             CodeBean scope = null;
@@ -1209,6 +1587,742 @@ public class DBWrapper extends QueryImpl {
     }
 
 
+    /* ********************************************************** *
+     *                 Indice di ricerca in memoria               *
+     * ********************************************************** */
+    
+    /**
+     * <p>Carica nell'indice di ricerca in memoria tutte le convenzioni,
+     * sostituendone il contenuto.</p>
+     * <p>Viene invocato all'avvio dell'applicazione, insieme al caricamento
+     * delle altre strutture di configurazione; da quel momento l'indice
+     * viene aggiornato a ogni inserimento o modifica di una convenzione
+     * e ricaricato periodicamente, per recepire le modifiche fatte
+     * sul database al di fuori dell'applicazione.<br>
+     * Se durante la lettura l'indice &egrave; stato aggiornato
+     * da una scrittura dell'applicazione, un ricaricamento non lo sostituisce,
+     * perch&eacute; potrebbe essere pi&ugrave; recente dei dati letti:
+     * ci riprover&agrave; quello successivo. I nomi dei contraenti
+     * suggeriti vengono invece sostituiti in ogni caso.</p>
+     *
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     */
+    @SuppressWarnings({ "static-method" })
+    public void loadSearchIndex()
+                         throws WebStorageException {
+        long updates = SEARCH_INDEX.getUpdates();
+        try (Connection con = getConnection()) {
+            // Cursore lato server: la lettura avviene a blocchi
+            con.setAutoCommit(false);
+            try {
+                ArrayList<ConventionIndex.Document> documents = readIndexDocuments(con, NOTHING);
+                ArrayList<SuggestionIndex.Suggestion> suggestions = new ArrayList<>(documents.size() * 2);
+                for (ConventionIndex.Document document : documents) {
+                    suggestions.addAll(suggestionsOf(document));
+                }
+                ArrayList<SuggestionIndex.Suggestion> contractors = readContractorSuggestions(con);
+                con.commit();
+                if (SEARCH_INDEX.reload(documents, updates)) {
+                    LOG.info("Indice di ricerca caricato: " + SEARCH_INDEX.getSize() + " convenzioni, " + SEARCH_INDEX.getTermCount() + " termini.\n");
+                    SUGGESTIONS.rebuild(suggestions);
+                    // I risultati memorizzati potrebbero non riflettere le modifiche recepite
+                    SEARCH_CACHE.invalidate();
+                } else {
+                    LOG.info("Ricaricamento dell\'indice di ricerca rimandato: indice aggiornato durante la lettura.\n");
+                }
+                // I contraenti non dipendono dalle convenzioni: vengono comunque aggiornati
+                SUGGESTIONS.replaceContractors(contractors);
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException sqle) {
+            String msg = FOR_NAME + "Problema nel caricamento dell\'indice di ricerca.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + sqle.getMessage(), sqle);
+        }
+    }
+    
+    
+    /**
+     * <p>Aggiorna nell'indice di ricerca una convenzione appena inserita
+     * o modificata, e ricarica i nomi dei contraenti suggeriti;
+     * va invocato dopo il commit della transazione.</p>
+     * <p>Un problema nell'aggiornamento dell'indice non annulla
+     * l'operazione gi&agrave; confermata: viene segnalato nel log.</p>
+     *
+     * @param con    connessione aperta dal metodo chiamante
+     * @param idConv id della convenzione da reindicizzare
+     */
+    private static void refreshSearchIndex(Connection con,
+                                           int idConv) {
+        if (!SEARCH_INDEX.isLoaded()) {
+            return;
+        }
+        try {
+            for (ConventionIndex.Document document : readIndexDocuments(con, idConv)) {
+                SEARCH_INDEX.put(document);
+                SUGGESTIONS.replace(CONVENTION_SUGGESTIONS, idConv, suggestionsOf(document));
+            }
+            SUGGESTIONS.replaceContractors(readContractorSuggestions(con));
+        } catch (SQLException sqle) {
+            LOG.warning(FOR_NAME + "Impossibile aggiornare l\'indice di ricerca per la convenzione " + idConv + ": " + sqle.getMessage());
+        }
+    }
+    
+    
+    /**
+     * <p>Restituisce le etichette suggerite per una convenzione:
+     * il titolo e, se presente, il numero di repertorio,
+     * visibili ai soli gruppi della convenzione.</p>
+     *
+     * @param document documento indicizzato della convenzione
+     * @return <code>ArrayList&lt;SuggestionIndex.Suggestion&gt;</code> - etichette della convenzione
+     */
+    private static ArrayList<SuggestionIndex.Suggestion> suggestionsOf(ConventionIndex.Document document) {
+        ArrayList<SuggestionIndex.Suggestion> suggestions = new ArrayList<>(2);
+        Convenzione c = document.convention;
+        if (c.getTitolo() != null) {
+            suggestions.add(new SuggestionIndex.Suggestion(SuggestionIndex.TITLE, document.id, c.getTitolo(), document.groups));
+        }
+        if (c.getNumRepertorio() != null && !c.getNumRepertorio().isBlank()) {
+            suggestions.add(new SuggestionIndex.Suggestion(SuggestionIndex.REPERTORY, document.id, c.getNumRepertorio(), document.groups));
+        }
+        return suggestions;
+    }
+    
+    
+    /**
+     * <p>Legge i nomi di tutti i contraenti, da suggerire a tutti gli utenti.</p>
+     *
+     * @param con connessione aperta dal metodo chiamante
+     * @return <code>ArrayList&lt;SuggestionIndex.Suggestion&gt;</code> - etichette dei contraenti
+     * @throws SQLException se si verifica un problema nell'esecuzione della query
+     */
+    private static ArrayList<SuggestionIndex.Suggestion> readContractorSuggestions(Connection con)
+                                                                            throws SQLException {
+        ArrayList<SuggestionIndex.Suggestion> suggestions = new ArrayList<>();
+        try (PreparedStatement pst = con.prepareStatement(GET_CONTRACTOR_NAMES)) {
+            pst.setFetchSize(STREAM_FETCH_SIZE);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getString("nome") != null) {
+                        suggestions.add(new SuggestionIndex.Suggestion(SuggestionIndex.CONTRACTOR, rs.getInt("id"), rs.getString("nome")));
+                    }
+                }
+            }
+        }
+        return suggestions;
+    }
+    
+    
+    /**
+     * <p>Legge i documenti da indicizzare: tutte le convenzioni
+     * oppure solo quella di id dato.</p>
+     *
+     * @param con    connessione aperta dal metodo chiamante
+     * @param idConv id della convenzione, 0 per tutte
+     * @return <code>ArrayList&lt;ConventionIndex.Document&gt;</code> - documenti da indicizzare
+     * @throws SQLException se si verifica un problema nell'esecuzione della query
+     */
+    private static ArrayList<ConventionIndex.Document> readIndexDocuments(Connection con,
+                                                                          int idConv)
+                                                                   throws SQLException {
+        ArrayList<ConventionIndex.Document> documents = new ArrayList<>();
+        try (PreparedStatement pst = con.prepareStatement(GET_CONVENTIONS_TO_INDEX)) {
+            pst.setInt(1, idConv);
+            pst.setInt(2, idConv);
+            pst.setFetchSize(STREAM_FETCH_SIZE);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    Convenzione c = new Convenzione();
+                    BeanUtil.populate(c, rs);
+                    int[] idScopes = toInts((Integer[]) rs.getArray("idFinalita").getArray());
+                    int[] idGroups = toInts((Integer[]) rs.getArray("idGruppi").getArray());
+                    String[] contractors = (String[]) rs.getArray("nomiContraenti").getArray();
+                    documents.add(new ConventionIndex.Document(c, rs.getInt("id"), rs.getInt("idTipo"), idScopes, idGroups, contractors));
+                }
+            }
+        }
+        return documents;
+    }
+
+
+    /**
+     * <p>Converte un array di interi letto da un array SQL in un array di int.</p>
+     *
+     * @param values valori dell'array SQL
+     * @return <code>int[]</code> - gli stessi valori, come int
+     */
+    private static int[] toInts(Integer[] values) {
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = values[i].intValue();
+        }
+        return ints;
+    }
+
+    
+    /**
+     * <p>Restituisce gli identificativi dei gruppi collegati a una convenzione,
+     * usando la connessione (e quindi la transazione) passata.</p>
+     *
+     * @param con          connessione al database
+     * @param idConvention identificativo della convenzione
+     * @return <code>ArrayList&lt;Integer&gt;</code> - identificativi dei gruppi collegati alla convenzione
+     * @throws SQLException se si verifica un problema nell'esecuzione della query
+     */
+    private static ArrayList<Integer> getGroupIds(Connection con,
+                                                  int idConvention)
+                                           throws SQLException {
+        ArrayList<Integer> groupIds = new ArrayList<>();
+        try (PreparedStatement pst = con.prepareStatement(GET_GROUPS_BY_CONVENTION)) {
+            pst.setInt(1, idConvention);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    groupIds.add(Integer.valueOf(rs.getInt("id")));
+                }
+            }
+        }
+        return groupIds;
+    }
+
+
+    /* ********************************************************** *
+     *                 Metodi di SELEZIONE paginata               *
+     * ********************************************************** */
+    
+    /**
+     * <p>Restituisce una pagina dell'elenco delle convenzioni attive
+     * visibili ai gruppi dell'utente, con i relativi contraenti, 
+     * nell'ordinamento e con il filtro full-text del cursore passato.</p>
+     * <p>La pagina viene estratta a partire dalla chiave di ordinamento
+     * nota pi&ugrave; vicina (paginazione keyset, v. {@link PageCursor}),
+     * per cui scorrere l'elenco pagina dopo pagina costa ogni volta quanto 
+     * la pagina stessa; la chiave dell'ultima riga viene memorizzata nel 
+     * cursore per la pagina seguente. I conteggi dell'elenco vengono 
+     * calcolati solo alla prima richiesta del cursore; conteggi e chiavi
+     * vengono comunque ricalcolati dopo ogni scrittura.</p>
+     * <p>Pagine e conteggi vengono letti, se presenti, dalla cache
+     * per insieme di gruppi dell'utente (v. {@link ConventionCache}),
+     * che ogni scrittura su una convenzione invalida per i gruppi
+     * collegati alla convenzione stessa.</p>
+     *
+     * @param user   utente che ha effettuato la richiesta
+     * @param cursor cursore dell'elenco (ordinamento, filtro, chiavi e conteggi)
+     * @param start  posizione della prima riga della pagina
+     * @param length numero di righe della pagina
+     * @return <code>ArrayList&lt;Convenzione&gt;</code> - convenzioni della pagina
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     * @throws it.col.exception.AttributoNonValorizzatoException  eccezione che viene sollevata se l'id di un gruppo o di una convenzione non risulta valorizzato
+     */
+    public ArrayList<Convenzione> getConventionsPage(PersonBean user,
+                                                     PageCursor cursor,
+                                                     int start,
+                                                     int length)
+                                              throws WebStorageException, 
+                                                     AttributoNonValorizzatoException {
+        Integer[] groupIds = Utils.convert(user.getGruppi());
+        String tsQuery = getTsQueryByKeys(cursor.getSearch());
+        String pageKey = ConventionCache.pageKey(cursor.getColumn(), cursor.isDescending(), tsQuery, start, length);
+        // Generazione letta prima di caricare: se nel frattempo si scrive, non si memorizza
+        long generation = CONVENTIONS_CACHE.generation();
+        // Conteggi e chiavi calcolati prima dell'ultima scrittura non valgono piu'
+        cursor.sync(getDataVersion());
+        // Conteggi dell'elenco, una volta per ordinamento e filtro
+        if (cursor.getTotal() < NOTHING) {
+            long[] counts = CONVENTIONS_CACHE.getCounts(groupIds, tsQuery);
+            if (counts != null) {
+                cursor.setCounts(counts[0], counts[1]);
+            }
+        }
+        // Pagina gia' estratta per lo stesso insieme di gruppi
+        ConventionCache.Page page = CONVENTIONS_CACHE.getPage(groupIds, pageKey);
+        if (page != null && cursor.getTotal() >= NOTHING) {
+            ArrayList<Convenzione> convenzioni = page.getConventions();
+            // La chiave dell'ultima riga apre la pagina seguente
+            if (page.lastKey != null) {
+                cursor.put(start + convenzioni.size(), page.lastKey);
+            }
+            return convenzioni;
+        }
+        try (Connection con = getConnection()) {
+            ArrayList<Convenzione> convenzioni = new ArrayList<>(length);
+            Array groups = con.createArrayOf("integer", groupIds);
+            if (cursor.getTotal() < NOTHING) {
+                try (PreparedStatement pst = con.prepareStatement(COUNT_CONVENTIONS_PAGE)) {
+                    pst.setString(1, tsQuery);
+                    pst.setString(2, tsQuery);
+                    pst.setArray(3, groups);
+                    try (ResultSet rs = pst.executeQuery()) {
+                        if (rs.next()) {
+                            cursor.setCounts(rs.getLong("total"), rs.getLong("filtered"));
+                            CONVENTIONS_CACHE.putCounts(groupIds, tsQuery, cursor.getTotal(), cursor.getFiltered(), generation);
+                        }
+                    }
+                }
+            }
+            // Chiave nota piu' vicina alla pagina richiesta
+            Map.Entry<Integer, Object[]> from = cursor.floor(start);
+            boolean keyset = (from != null);
+            int keySize = getConventionsPageKeySize(cursor.getColumn());
+            String query = getQueryConventionsPage(cursor.getColumn(), cursor.isDescending(), keyset);
+            Object[] last = null;
+            try (PreparedStatement pst = con.prepareStatement(query)) {
+                int nParam = NOTHING;
+                pst.setArray(++nParam, groups);
+                pst.setString(++nParam, tsQuery);
+                pst.setString(++nParam, tsQuery);
+                if (keyset) {
+                    for (Object value : from.getValue()) {
+                        pst.setObject(++nParam, value);
+                    }
+                }
+                pst.setInt(++nParam, length);
+                pst.setInt(++nParam, start - (keyset ? from.getKey().intValue() : NOTHING));
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next()) {
+                        Convenzione c = new Convenzione();
+                        BeanUtil.populate(c, rs);
+                        convenzioni.add(c);
+                        last = readPageKey(rs, keySize);
+                    }
+                    // La chiave dell'ultima riga apre la pagina seguente
+                    if (last != null) {
+                        cursor.put(start + convenzioni.size(), last);
+                    }
+                }
+            }
+            // Recupera i contraenti delle sole convenzioni della pagina
+            loadContractors(con, convenzioni);
+            CONVENTIONS_CACHE.putPage(groupIds, pageKey, convenzioni, last, generation);
+            return convenzioni;
+        } catch (SQLException sqle) {
+            String msg = FOR_NAME + "Problema nella query della pagina di convenzioni.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + sqle.getMessage(), sqle);
+        }
+    }
+    
+    
+    /**
+     * <p>Restituisce una pagina dell'elenco dei contraenti, con le relative
+     * convenzioni, nell'ordinamento e con il filtro del cursore passato
+     * (cercato in nome, codice fiscale, partita IVA ed email).</p>
+     * <p>Usa la paginazione keyset come 
+     * {@link #getConventionsPage(PersonBean, PageCursor, int, int)}.</p>
+     *
+     * @param cursor cursore dell'elenco (ordinamento, filtro, chiavi e conteggi)
+     * @param start  posizione della prima riga della pagina
+     * @param length numero di righe della pagina
+     * @return <code>ArrayList&lt;PersonBean&gt;</code> - contraenti della pagina
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     * @throws it.col.exception.AttributoNonValorizzatoException  eccezione che viene sollevata se l'id di un contraente non risulta valorizzato
+     */
+    public ArrayList<PersonBean> getContractorsPage(PageCursor cursor,
+                                                    int start,
+                                                    int length)
+                                             throws WebStorageException, 
+                                                    AttributoNonValorizzatoException {
+        try (Connection con = getConnection()) {
+            ArrayList<PersonBean> contraenti = new ArrayList<>(length);
+            String search = (cursor.getSearch() == null ? VOID_STRING : cursor.getSearch().trim());
+            // Conteggi e chiavi calcolati prima dell'ultima scrittura non valgono piu'
+            cursor.sync(getDataVersion());
+            // Il filtro e' cercato come sottostringa: i caratteri jolly immessi valgono alla lettera
+            String pattern = "%" + search.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+            // Conteggi dell'elenco, una volta per ordinamento e filtro
+            if (cursor.getTotal() < NOTHING) {
+                try (PreparedStatement pst = con.prepareStatement(COUNT_CONTRACTORS_PAGE)) {
+                    int nParam = NOTHING;
+                    pst.setString(++nParam, search);
+                    for (int i = 0; i < 4; i++) {
+                        pst.setString(++nParam, pattern);
+                    }
+                    try (ResultSet rs = pst.executeQuery()) {
+                        if (rs.next()) {
+                            cursor.setCounts(rs.getLong("total"), rs.getLong("filtered"));
+                        }
+                    }
+                }
+            }
+            // Chiave nota piu' vicina alla pagina richiesta
+            Map.Entry<Integer, Object[]> from = cursor.floor(start);
+            boolean keyset = (from != null);
+            int keySize = getContractorsPageKeySize(cursor.getColumn());
+            String query = getQueryContractorsPage(cursor.getColumn(), cursor.isDescending(), keyset);
+            try (PreparedStatement pst = con.prepareStatement(query)) {
+                int nParam = NOTHING;
+                pst.setString(++nParam, search);
+                for (int i = 0; i < 4; i++) {
+                    pst.setString(++nParam, pattern);
+                }
+                if (keyset) {
+                    for (Object value : from.getValue()) {
+                        pst.setObject(++nParam, value);
+                    }
+                }
+                pst.setInt(++nParam, length);
+                pst.setInt(++nParam, start - (keyset ? from.getKey().intValue() : NOTHING));
+                try (ResultSet rs = pst.executeQuery()) {
+                    Object[] last = null;
+                    while (rs.next()) {
+                        PersonBean p = new PersonBean();
+                        BeanUtil.populate(p, rs);
+                        contraenti.add(p);
+                        last = readPageKey(rs, keySize);
+                    }
+                    // La chiave dell'ultima riga apre la pagina seguente
+                    if (last != null) {
+                        cursor.put(start + contraenti.size(), last);
+                    }
+                }
+            }
+            // Recupera le convenzioni dei soli contraenti della pagina
+            loadConventions(con, contraenti);
+            return contraenti;
+        } catch (SQLException sqle) {
+            String msg = FOR_NAME + "Problema nella query della pagina di contraenti.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + sqle.getMessage(), sqle);
+        }
+    }
+    
+    
+    /**
+     * <p>Legge dalla riga corrente i valori della chiave di ordinamento
+     * (colonne <code>k1</code>, <code>k2</code>...).</p>
+     *
+     * @param rs      ResultSet posizionato sulla riga
+     * @param keySize numero di valori della chiave
+     * @return <code>Object[]</code> - valori della chiave di ordinamento
+     * @throws SQLException se si verifica un problema nella lettura della riga
+     */
+    private static Object[] readPageKey(ResultSet rs,
+                                        int keySize)
+                                 throws SQLException {
+        Object[] key = new Object[keySize];
+        for (int i = 0; i < keySize; i++) {
+            key[i] = rs.getObject("k" + (i + 1));
+        }
+        return key;
+    }
+
+
+    /* ********************************************************** *
+     *               Metodi di SELEZIONE in streaming             *
+     * ********************************************************** */
+    
+    /**
+     * <p>Completa un blocco di bean letti in streaming
+     * (ad es. recuperandone le entit&agrave; collegate)
+     * usando la connessione del chiamante.</p>
+     *
+     * @param <T> tipo dei bean del blocco
+     */
+    @FunctionalInterface
+    private interface BatchLoader<T> {
+        /**
+         * <p>Completa i bean del blocco.</p>
+         *
+         * @param con   connessione aperta dal metodo chiamante
+         * @param batch blocco di bean da completare
+         * @throws SQLException se si verifica un problema nell'esecuzione delle query
+         * @throws AttributoNonValorizzatoException se un dato obbligatorio di un bean non risulta valorizzato
+         */
+        void load(Connection con, ArrayList<T> batch)
+           throws SQLException, AttributoNonValorizzatoException;
+    }
+    
+    
+    /**
+     * <p>Esegue una query preparata e passa al consumatore i bean
+     * ottenuti dalle righe, uno alla volta, senza materializzare
+     * l'intero risultato.</p>
+     * <p>Il driver PostgreSQL legge le righe tramite un cursore lato server
+     * (a blocchi di {@link #STREAM_FETCH_SIZE}) solo se la connessione
+     * non &egrave; in autocommit: il metodo disattiva quindi l'autocommit
+     * per la durata della lettura e lo ripristina al termine.<br>
+     * Le righe vengono raccolte in blocchi della stessa dimensione, che il
+     * <code>loader</code> eventuale completa (con una query per blocco)
+     * prima che i bean siano passati al consumatore; la memoria
+     * occupata resta quindi limitata a un blocco, qualunque sia
+     * la dimensione del risultato.</p>
+     *
+     * @param <T>      tipo dei bean prodotti
+     * @param con      connessione aperta dal metodo chiamante
+     * @param pst      statement preparato con i parametri gi&agrave; valorizzati
+     * @param factory  costruttore dei bean
+     * @param loader   completamento dei blocchi, o null
+     * @param consumer destinatario dei bean
+     * @throws SQLException se si verifica un problema nell'esecuzione delle query
+     * @throws AttributoNonValorizzatoException se un dato obbligatorio di un bean non risulta valorizzato
+     */
+    private static <T> void streamRows(Connection con,
+                                       PreparedStatement pst,
+                                       Supplier<? extends T> factory,
+                                       BatchLoader<T> loader,
+                                       Consumer<? super T> consumer)
+                                throws SQLException,
+                                       AttributoNonValorizzatoException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try {
+            pst.setFetchSize(STREAM_FETCH_SIZE);
+            ArrayList<T> batch = new ArrayList<>(STREAM_FETCH_SIZE);
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    T bean = factory.get();
+                    BeanUtil.populate(bean, rs);
+                    batch.add(bean);
+                    if (batch.size() == STREAM_FETCH_SIZE) {
+                        flush(con, batch, loader, consumer);
+                    }
+                }
+            }
+            flush(con, batch, loader, consumer);
+            // Sola lettura: chiude la transazione
+            con.commit();
+        } catch (SQLException | AttributoNonValorizzatoException | RuntimeException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+    
+    
+    /**
+     * <p>Completa un blocco di bean, lo passa al consumatore e lo svuota.</p>
+     *
+     * @param <T>      tipo dei bean
+     * @param con      connessione aperta dal metodo chiamante
+     * @param batch    blocco di bean letti
+     * @param loader   completamento del blocco, o null
+     * @param consumer destinatario dei bean
+     * @throws SQLException se si verifica un problema nell'esecuzione delle query
+     * @throws AttributoNonValorizzatoException se un dato obbligatorio di un bean non risulta valorizzato
+     */
+    private static <T> void flush(Connection con,
+                                  ArrayList<T> batch,
+                                  BatchLoader<T> loader,
+                                  Consumer<? super T> consumer)
+                           throws SQLException,
+                                  AttributoNonValorizzatoException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (loader != null) {
+            loader.load(con, batch);
+        }
+        for (T bean : batch) {
+            consumer.accept(bean);
+        }
+        batch.clear();
+    }
+    
+    
+    /**
+     * <p>Valorizza il "gruppo principale" di ciascuna delle convenzioni passate
+     * con una sola query (v. {@link Query#GET_CONVENTION_GROUPS_BY_CONVENTIONS}),
+     * indicizzando le convenzioni per id.</p>
+     *
+     * @param con         connessione aperta dal metodo chiamante
+     * @param conventions convenzioni di cui recuperare il gruppo principale
+     * @throws SQLException se si verifica un problema nell'esecuzione della query
+     * @throws AttributoNonValorizzatoException se l'id di una convenzione non risulta valorizzato
+     */
+    private static void loadMainGroups(Connection con,
+                                       ArrayList<Convenzione> conventions)
+                                throws SQLException,
+                                       AttributoNonValorizzatoException {
+        if (conventions.isEmpty()) {
+            return;
+        }
+        // Indicizza le convenzioni per id
+        HashMap<Integer, Convenzione> conventionsById = new HashMap<>();
+        for (Convenzione c : conventions) {
+            conventionsById.put(c.getId(), c);
+        }
+        Integer[] convIds = conventionsById.keySet().toArray(new Integer[NOTHING]);
+        try (PreparedStatement pst = con.prepareStatement(GET_CONVENTION_GROUPS_BY_CONVENTIONS)) {
+            pst.setArray(1, con.createArrayOf("integer", convIds));
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    Convenzione c = conventionsById.get(rs.getInt("idConvenzione"));
+                    // Assume che il gruppo sia uno solo (v. commento query): vale il primo
+                    if (c != null && c.getGruppoPrincipale() == null) {
+                        CodeBean gruppo = new CodeBean();
+                        BeanUtil.populate(gruppo, rs);
+                        c.setGruppoPrincipale(gruppo);
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * <p>Passa al consumatore, una alla volta, le convenzioni attive
+     * per l'utente considerato, complete dei contraenti.</p>
+     * <p>Variante in streaming di {@link #getConventions(PersonBean)},
+     * pensata per le esportazioni: occupa memoria costante
+     * qualunque sia il numero delle convenzioni.</p>
+     *
+     * @param user     utente che ha effettuato la richiesta
+     * @param consumer destinatario delle convenzioni
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     */
+    @SuppressWarnings({ "static-method" })
+    public void streamConventions(PersonBean user,
+                                  Consumer<? super Convenzione> consumer)
+                           throws WebStorageException {
+        try (Connection con = getConnection();
+             PreparedStatement pst = con.prepareStatement(GET_CONVENTIONS)) {
+            pst.setArray(1, con.createArrayOf("integer", Utils.convert(user.getGruppi())));
+            streamRows(con, pst, Convenzione::new, DBWrapper::loadContractors, consumer);
+        } catch (AttributoNonValorizzatoException anve) {
+            String msg = FOR_NAME + "Impossibile recuperare l'id di una convenzione.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + anve.getMessage(), anve);
+        } catch (SQLException sqle) {
+            String msg = FOR_NAME + "Problema nella query delle convenzioni.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + sqle.getMessage(), sqle);
+        }
+    }
+    
+    
+    /**
+     * <p>Passa al consumatore, una alla volta, le convenzioni attive
+     * in scadenza entro l'intervallo considerato, complete
+     * del gruppo principale e dei contraenti.</p>
+     * <p>Variante in streaming di {@link #getConventions(PersonBean, Date, Date)},
+     * usata per comporre i riepiloghi delle scadenze: gruppo principale
+     * e contraenti vengono recuperati con una query per blocco.</p>
+     *
+     * @param user     utente che ha effettuato la richiesta
+     * @param start    limite inferiore della data di scadenza convenzione 
+     * @param end      limite superiore della data di scadenza convenzione
+     * @param consumer destinatario delle convenzioni
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     */
+    @SuppressWarnings({ "static-method" })
+    public void streamConventions(PersonBean user,
+                                  Date start,
+                                  Date end,
+                                  Consumer<? super Convenzione> consumer)
+                           throws WebStorageException {
+        try (Connection con = getConnection();
+             PreparedStatement pst = con.prepareStatement(GET_CONVENTIONS_BY_DATES)) {
+            int nParam = NOTHING;
+            pst.setArray(++nParam, con.createArrayOf("integer", Utils.convert(user.getGruppi())));
+            pst.setDate(++nParam, Utils.convert(Utils.convert(start)));
+            pst.setDate(++nParam, Utils.convert(Utils.convert(end)));
+            streamRows(con, pst, Convenzione::new, (c, batch) -> {
+                loadMainGroups(c, batch);
+                loadContractors(c, batch);
+            }, consumer);
+        } catch (AttributoNonValorizzatoException anve) {
+            String msg = FOR_NAME + "Impossibile recuperare l'id di una convenzione.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + anve.getMessage(), anve);
+        } catch (SQLException sqle) {
+            String msg = FOR_NAME + "Problema nella query delle convenzioni.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + sqle.getMessage(), sqle);
+        }
+    }
+    
+    
+    /**
+     * <p>Passa al consumatore, uno alla volta, i contraenti,
+     * completi delle convenzioni cui sono collegati.</p>
+     * <p>Variante in streaming di {@link #getContractors(PersonBean, Convenzione, boolean)}.</p>
+     *
+     * @param user     utente che ha effettuato la richiesta
+     * @param conv     convenzione data
+     * @param getAll   se true passa tutti i contraenti indipendentemente da conv; se false, tutti meno quelli gia' associati a conv
+     * @param consumer destinatario dei contraenti
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     * @throws it.col.exception.AttributoNonValorizzatoException se l'id della convenzione data non &egrave; stato valorizzato
+     */
+    @SuppressWarnings({ "static-method" })
+    public void streamContractors(PersonBean user,
+                                  Convenzione conv,
+                                  boolean getAll,
+                                  Consumer<? super PersonBean> consumer)
+                           throws WebStorageException,
+                                  AttributoNonValorizzatoException {
+        // Converte il flag in valore intero (per chiarezza)
+        int getAllByClause = (getAll ? -1 : conv.getId());
+        try (Connection con = getConnection();
+             PreparedStatement pst = con.prepareStatement(GET_CONTRACTORS)) {
+            int numParam = NOTHING;
+            pst.setInt(++numParam, conv.getId());
+            pst.setInt(++numParam, getAllByClause);
+            streamRows(con, pst, PersonBean::new, DBWrapper::loadConventions, consumer);
+        } catch (SQLException sqle) {
+            String msg = FOR_NAME + "Problema nella query dei contraenti.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + sqle.getMessage(), sqle);
+        }
+    }
+    
+    
+    /**
+     * <p>Passa al consumatore, una alla volta, le tipologie delle convenzioni.</p>
+     * <p>Variante in streaming di {@link #getTypes()}.</p>
+     *
+     * @param consumer destinatario delle tipologie
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     */
+    @SuppressWarnings({ "static-method" })
+    public void streamTypes(Consumer<? super CodeBean> consumer)
+                     throws WebStorageException {
+        streamCodes(GET_CONVENTION_TYPES, consumer);
+    }
+    
+    
+    /**
+     * <p>Passa al consumatore, una alla volta, le finalit&agrave; delle convenzioni.</p>
+     * <p>Variante in streaming di {@link #getScopes()}.</p>
+     *
+     * @param consumer destinatario delle finalit&agrave;
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     */
+    @SuppressWarnings({ "static-method" })
+    public void streamScopes(Consumer<? super CodeBean> consumer)
+                      throws WebStorageException {
+        streamCodes(GET_CONVENTION_SCOPES, consumer);
+    }
+    
+    
+    /**
+     * <p>Passa al consumatore, uno alla volta, i CodeBean estratti
+     * da una query di decodifica priva di parametri.</p>
+     *
+     * @param query    query da eseguire
+     * @param consumer destinatario dei CodeBean
+     * @throws it.col.exception.WebStorageException se si verifica un problema nell'esecuzione della query, nell'accesso al db o in qualche tipo di puntamento
+     */
+    private static void streamCodes(String query,
+                                    Consumer<? super CodeBean> consumer)
+                             throws WebStorageException {
+        try (Connection con = getConnection();
+             PreparedStatement pst = con.prepareStatement(query)) {
+            streamRows(con, pst, CodeBean::new, null, consumer);
+        } catch (AttributoNonValorizzatoException anve) {
+            String msg = FOR_NAME + "Problema nel popolamento dei dati.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + anve.getMessage(), anve);
+        } catch (SQLException sqle) {
+            String msg = FOR_NAME + "Problema nella query delle decodifiche.\n";
+            LOG.severe(msg);
+            throw new WebStorageException(msg + sqle.getMessage(), sqle);
+        }
+    }
+
+
     /* ********************************************************** *
      *                    Metodi di INSERIMENTO                   *
      * ********************************************************** */
@@ -1225,7 +2339,7 @@ public class DBWrapper extends QueryImpl {
     public void insertConventionContractors(PersonBean user, 
                                             HashMap<String, LinkedHashMap<String, String>> params) 
                                      throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             // Dizionario dei parametri contenente l'identificativo dei contraenti da associare
             LinkedHashMap<String, String> contractor = params.get(CONTRACTOR);
@@ -1290,8 +2404,14 @@ public class DBWrapper extends QueryImpl {
                     LOG.severe(msg);
                     throw new WebStorageException(msg, e);
                 }
+                // Gruppi le cui pagine di convenzioni in cache vanno invalidate
+                ArrayList<Integer> touchedGroups = getGroupIds(con, Integer.parseInt(contractor.get("conv")));
                 // End: <==
                 con.commit();
+                refreshSearchIndex(con, Integer.parseInt(contractor.get("conv")));
+                SEARCH_CACHE.invalidate();
+                CONVENTIONS_CACHE.invalidate(touchedGroups);
+                markDataChanged();
                 pst.close();
                 pst = null;
             } catch (SQLException sqle) {
@@ -1329,7 +2449,7 @@ public class DBWrapper extends QueryImpl {
     public Convenzione insertConvention(PersonBean user, 
                                         HashMap<String, LinkedHashMap<String, String>> params) 
                                  throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst, pst1, pst2 = null;
             // Dizionario dei parametri contenente l'identificativo dei contraenti da associare
             LinkedHashMap<String, String> convention = params.get(CONVENTION);
@@ -1337,8 +2457,8 @@ public class DBWrapper extends QueryImpl {
             int nextParam = NOTHING;
             // Definisce un indice per il numero di finalità da inserire
             int index = NOTHING;
-            // Definisce l'ID della convenzione da inserire
-            int idConv = getMax("convenzione") + ELEMENT_LEV_1;
+            // ID della convenzione inserita, assegnato dalla sequenza
+            int idConv = NOTHING;
             // Return type
             Convenzione c = new Convenzione();
             try {
@@ -1347,9 +2467,6 @@ public class DBWrapper extends QueryImpl {
                 // TODO: Controllare se user è superuser
                 pst = con.prepareStatement(INSERT_CONVENTION);
                 pst.clearParameters();
-                // === ID ===
-                pst.setInt(++nextParam, idConv);
-                c.setId(idConv);
                 // === Titolo ===
                 String title = convention.get("titl");
                 pst.setString(++nextParam, title);
@@ -1490,7 +2607,12 @@ public class DBWrapper extends QueryImpl {
                 // === Id convenzione ===
                 // TODO: gestire self-relationship in caso rinnovo (id_convenzione = id conv. originale)
                 // Do Insert agreement: ==>
-                pst.executeUpdate();
+                try (ResultSet rs = pst.executeQuery()) {
+                    // === ID === (assegnato dalla sequenza, v. RETURNING id)
+                    rs.next();
+                    idConv = rs.getInt("id");
+                    c.setId(idConv);
+                }
                 // Preparazione inserimento relazioni
                 try {
                     // Query di inserimento gruppi associati
@@ -1555,7 +2677,7 @@ public class DBWrapper extends QueryImpl {
                             // CR (Carriage Return) o 0DH
                             pst2.addBatch();
                             // Add the current scope to the set of updated scopes
-                            updatedScopeIds.add(Integer.valueOf(idConv));
+                            updatedScopeIds.add(Integer.valueOf(idScope));
                         }
                     }
                     // Cicla su tutte le finalità e aggiunge "checked" se la finalità corrisponde a quella aggiornata
@@ -1585,8 +2707,15 @@ public class DBWrapper extends QueryImpl {
                     LOG.severe(msg);
                     throw new WebStorageException(msg, e);
                 }
+                // Gruppi le cui pagine di convenzioni in cache vanno invalidate
+                ArrayList<Integer> touchedGroups = getGroupIds(con, idConv);
                 // End: <==
                 con.commit();
+                refreshSearchIndex(con, idConv);
+                // Dopo l'aggiornamento dell'indice, per non rimemorizzare risultati superati
+                SEARCH_CACHE.invalidate();
+                CONVENTIONS_CACHE.invalidate(touchedGroups);
+                markDataChanged();
                 pst.close();
                 pst = null;
                 return c;
@@ -1636,7 +2765,7 @@ public class DBWrapper extends QueryImpl {
      */
     public void manageAccess(String username)
                       throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst = null;
             ResultSet rs = null;
             CodeBean accessRow = null;
@@ -1669,9 +2798,8 @@ public class DBWrapper extends QueryImpl {
                     con.setAutoCommit(false);
                     pst = con.prepareStatement(INSERT_ACCESSLOG_BY_USER);
                     pst.clearParameters();
-                    int nextVal = getMax("access_log") + ELEMENT_LEV_1;
-                    pst.setInt(nextParam, nextVal);
-                    pst.setString(++nextParam, username);
+                    // L'id viene assegnato dalla sequenza di access_log
+                    pst.setString(nextParam, username);
                     pst.setDate(++nextParam, Utils.convert(Utils.convert(Utils.getCurrentDate())));
                     pst.setTime(++nextParam, Utils.getCurrentTime());
                     pst.executeUpdate();
@@ -1730,7 +2858,7 @@ public class DBWrapper extends QueryImpl {
     public Convenzione updateConvention(PersonBean user, 
                                         HashMap<String, LinkedHashMap<String, String>> params) 
                                  throws WebStorageException {
-        try (Connection con = col_manager.getConnection()) {
+        try (Connection con = getConnection()) {
             PreparedStatement pst, pst1, pst2 = null;
             // Dizionario dei parametri contenente l'identificativo dei contraenti da associare
             LinkedHashMap<String, String> convention = params.get(CONVENTION);
@@ -1949,8 +3077,15 @@ public class DBWrapper extends QueryImpl {
                 }
                 // Do Update: ==>
                 pst.executeUpdate();
+                // Gruppi le cui pagine di convenzioni in cache vanno invalidate
+                ArrayList<Integer> touchedGroups = getGroupIds(con, idConv);
                 // End: <==
                 con.commit();
+                refreshSearchIndex(con, idConv);
+                // Dopo l'aggiornamento dell'indice, per non rimemorizzare risultati superati
+                SEARCH_CACHE.invalidate();
+                CONVENTIONS_CACHE.invalidate(touchedGroups);
+                markDataChanged();
                 pst.close();
                 pst = null;
                 return c;
@@ -0,0 +1,205 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * <p><code>LatencyHistogram</code> &egrave; un istogramma di latenze
+ * a bucket fissi, aggiornabile concorrentemente senza lock.</p>
+ * <p>Ogni bucket &egrave; un {@link LongAdder}, per cui la registrazione
+ * di una misura costa un confronto lineare sui (pochi) limiti
+ * e un incremento non contendibile; la lettura restituisce
+ * una fotografia approssimata, sufficiente per il monitoraggio.</p>
+ * <p>Oltre che dalle {@link QueryMetrics}, &egrave; usato per i tempi
+ * di calcolo degli hash delle password ({@link it.col.PasswordHasher}).</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class LatencyHistogram {
+
+    /**
+     * <p>Limiti superiori (inclusi) dei bucket, in microsecondi;
+     * l'ultimo bucket raccoglie tutte le misure oltre l'ultimo limite.</p>
+     */
+    static final long[] BOUNDS_MICROS = {
+        100, 250, 500,
+        1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+        1_000_000, 2_500_000, 5_000_000
+    };
+    /**
+     * <p>Contatori dei bucket (uno in pi&ugrave; dei limiti).</p>
+     */
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+    /**
+     * <p>Somma delle misure, in nanosecondi.</p>
+     */
+    private final LongAdder totalNanos = new LongAdder();
+    /**
+     * <p>Misura massima registrata, in nanosecondi.</p>
+     */
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+
+    /**
+     * <p>Costruttore: inizializza i bucket vuoti.</p>
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+
+    /**
+     * <p>Registra una misura.</p>
+     *
+     * @param nanos durata in nanosecondi (i valori negativi vengono ignorati)
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long micros = nanos / 1_000;
+        int i = 0;
+        while (i < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+
+    /**
+     * <p>Restituisce il numero di misure registrate.</p>
+     *
+     * @return <code>long</code> - numero di misure
+     */
+    long getCount() {
+        long count = 0L;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+
+    /**
+     * <p>Restituisce la media delle misure, in microsecondi.</p>
+     *
+     * @return <code>long</code> - media in microsecondi, 0 se non ci sono misure
+     */
+    long getMeanMicros() {
+        long count = getCount();
+        return (count == 0 ? 0L : totalNanos.sum() / count / 1_000);
+    }
+
+
+    /**
+     * <p>Restituisce la misura massima, in microsecondi.</p>
+     *
+     * @return <code>long</code> - massimo in microsecondi
+     */
+    long getMaxMicros() {
+        return maxNanos.get() / 1_000;
+    }
+
+
+    /**
+     * <p>Restituisce una stima del percentile richiesto, pari al limite
+     * superiore del bucket in cui cade (il massimo osservato, se cade
+     * nell'ultimo bucket).</p>
+     *
+     * @param fraction percentile espresso come frazione (es. 0.95)
+     * @return <code>long</code> - stima del percentile in microsecondi, 0 se non ci sono misure
+     */
+    long getPercentileMicros(double fraction) {
+        long[] counts = new long[buckets.length];
+        long count = 0L;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0L;
+        for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS_MICROS[i], getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+
+    /**
+     * <p>Azzera l'istogramma.</p>
+     */
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+
+    /**
+     * <p>Restituisce una sintesi dell'istogramma nel formato
+     * <code>n=&hellip; avg=&hellip; p50=&hellip; p95=&hellip; p99=&hellip; max=&hellip;</code>
+     * (tempi in microsecondi).</p>
+     *
+     * @return <code>String</code> - sintesi dell'istogramma
+     */
+    @Override
+    public String toString() {
+        return "n=" + getCount()
+             + " avg=" + getMeanMicros()
+             + " p50=" + getPercentileMicros(0.50)
+             + " p95=" + getPercentileMicros(0.95)
+             + " p99=" + getPercentileMicros(0.99)
+             + " max=" + getMaxMicros();
+    }
+
+}
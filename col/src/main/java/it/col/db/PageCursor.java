@@ -0,0 +1,263 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+
+/**
+ * <p><code>PageCursor</code> conserva, per un elenco paginato lato server
+ * (convenzioni o contraenti) con un dato ordinamento e un dato filtro,
+ * le chiavi di ordinamento delle righe che chiudono le pagine gi&agrave;
+ * servite e i conteggi dell'elenco.</p>
+ * <p>Grazie alle chiavi, la pagina successiva (o una pagina vicina a una
+ * gi&agrave; vista) viene estratta con la paginazione keyset: la query 
+ * riparte dalla chiave pi&ugrave; vicina e scorre solo le righe richieste,
+ * invece di scorrere con OFFSET tutte quelle che precedono la pagina.
+ * I conteggi (totale e filtrato) vengono calcolati una volta sola 
+ * per ordinamento e filtro.</p>
+ * <p>Un cursore viene conservato nella sessione dell'utente e sostituito
+ * quando cambia l'ordinamento o il filtro (v. {@link #isFor(String, int, boolean, String)}).<br>
+ * Poich&eacute; conteggi e chiavi non valgono pi&ugrave; dopo una scrittura,
+ * il cursore ricorda la versione dei dati cui si riferiscono e li scarta
+ * quando questa cambia (v. {@link #sync(long)}); vengono inoltre scartati
+ * a ogni ritorno alla prima pagina (v. {@link #reset()}), cos&igrave; da
+ * recepire anche le modifiche fatte sul database al di fuori
+ * dell'applicazione.</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class PageCursor implements Serializable {
+
+    /**
+     * La serializzazione necessita di dichiarare una costante di tipo long
+     * identificativa della versione seriale.
+     */
+    private static final long serialVersionUID = 2146702953208867714L;
+    /**
+     * <p>Numero massimo di chiavi conservate.</p>
+     */
+    private static final int MAX_KEYS = 64;
+    /**
+     * <p>Elenco cui si riferisce il cursore.</p>
+     */
+    private final String list;
+    /**
+     * <p>Indice della colonna di ordinamento.</p>
+     */
+    private final int column;
+    /**
+     * <p>Flag di ordinamento decrescente.</p>
+     */
+    private final boolean descending;
+    /**
+     * <p>Filtro immesso dall'utente.</p>
+     */
+    private final String search;
+    /**
+     * <p>Numero totale di righe dell'elenco (-1 = non ancora calcolato).</p>
+     */
+    private long total = -1L;
+    /**
+     * <p>Numero di righe che soddisfano il filtro (-1 = non ancora calcolato).</p>
+     */
+    private long filtered = -1L;
+    /**
+     * <p>Chiavi di ordinamento per posizione: la chiave in posizione
+     * <code>n</code> &egrave; quella dell'ultima riga che precede la riga
+     * <code>n</code> dell'elenco.</p>
+     */
+    private final TreeMap<Integer, Object[]> keys = new TreeMap<>();
+    /**
+     * <p>Versione dei dati cui si riferiscono conteggi e chiavi
+     * (-1 = nessuna, v. {@link DBWrapper#getDataVersion()}).</p>
+     */
+    private long version = -1L;
+
+
+    /**
+     * <p>Costruttore.</p>
+     *
+     * @param list       elenco cui si riferisce il cursore
+     * @param column     indice della colonna di ordinamento
+     * @param descending true per l'ordinamento decrescente
+     * @param search     filtro immesso dall'utente
+     */
+    public PageCursor(String list,
+                      int column,
+                      boolean descending,
+                      String search) {
+        this.list = list;
+        this.column = column;
+        this.descending = descending;
+        this.search = search;
+    }
+
+
+    /**
+     * <p>Restituisce true se il cursore si riferisce all'elenco,
+     * all'ordinamento e al filtro dati.</p>
+     *
+     * @param list       elenco
+     * @param column     indice della colonna di ordinamento
+     * @param descending true per l'ordinamento decrescente
+     * @param search     filtro immesso dall'utente
+     * @return <code>boolean</code> - true se il cursore pu&ograve; essere riusato
+     */
+    public boolean isFor(String list,
+                         int column,
+                         boolean descending,
+                         String search) {
+        return this.list.equals(list) && this.column == column
+               && this.descending == descending && Objects.equals(this.search, search);
+    }
+
+
+    /**
+     * @return <code>int</code> - indice della colonna di ordinamento
+     */
+    public int getColumn() {
+        return column;
+    }
+
+
+    /**
+     * @return <code>boolean</code> - true per l'ordinamento decrescente
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+
+    /**
+     * @return <code>String</code> - filtro immesso dall'utente
+     */
+    public String getSearch() {
+        return search;
+    }
+
+
+    /**
+     * @return <code>long</code> - numero totale di righe, -1 se non ancora calcolato
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+
+    /**
+     * @return <code>long</code> - numero di righe che soddisfano il filtro, -1 se non ancora calcolato
+     */
+    public synchronized long getFiltered() {
+        return filtered;
+    }
+
+
+    /**
+     * <p>Memorizza i conteggi dell'elenco.</p>
+     *
+     * @param total    numero totale di righe
+     * @param filtered numero di righe che soddisfano il filtro
+     */
+    synchronized void setCounts(long total,
+                                long filtered) {
+        this.total = total;
+        this.filtered = filtered;
+    }
+
+
+    /**
+     * <p>Scarta conteggi e chiavi, che verranno ricalcolati
+     * alla richiesta successiva.</p>
+     */
+    public synchronized void reset() {
+        total = -1L;
+        filtered = -1L;
+        keys.clear();
+        version = -1L;
+    }
+
+
+    /**
+     * <p>Allinea il cursore alla versione corrente dei dati:
+     * se conteggi e chiavi sono stati calcolati su una versione diversa,
+     * li scarta.</p>
+     *
+     * @param dataVersion versione corrente dei dati
+     */
+    synchronized void sync(long dataVersion) {
+        if (version != dataVersion) {
+            reset();
+            version = dataVersion;
+        }
+    }
+
+
+    /**
+     * <p>Restituisce la chiave nota pi&ugrave; vicina che precede
+     * (o coincide con) la posizione data.</p>
+     *
+     * @param start posizione della prima riga richiesta
+     * @return <code>Map.Entry&lt;Integer, Object[]&gt;</code> - posizione e chiave, null se nessuna
+     */
+    synchronized Map.Entry<Integer, Object[]> floor(int start) {
+        return keys.floorEntry(Integer.valueOf(start));
+    }
+
+
+    /**
+     * <p>Memorizza la chiave dell'ultima riga che precede la posizione data;
+     * oltre il numero massimo di chiavi, scarta quella pi&ugrave; lontana.</p>
+     *
+     * @param start posizione della riga che segue la chiave
+     * @param key   valori della chiave di ordinamento
+     */
+    synchronized void put(int start,
+                          Object[] key) {
+        keys.put(Integer.valueOf(start), key);
+        if (keys.size() > MAX_KEYS) {
+            int first = keys.firstKey().intValue();
+            int last = keys.lastKey().intValue();
+            keys.remove(Integer.valueOf(start - first > last - start ? first : last));
+        }
+    }
+
+}
@@ -202,6 +202,73 @@ public interface Query extends Serializable {
             "   FROM usr U" +
             "   WHERE U.login = ?";
 
+    /**
+     * <p>Estrae, con un'unica query, tutto ci&ograve; che serve alla login
+     * dell'utente avente username passato come parametro:<dl>
+     * <dt>credenziali</dt>
+     * <dd><code>passwdform</code> e <code>salt</code> per la verifica
+     * della password criptata (<code>passwdform</code> vale null
+     * se la password in chiaro, quando presente, non coincide con quella
+     * criptata, cio&egrave; se l'utenza non &egrave; ammessa
+     * alla login con password criptata);
+     * <code>chiaro</code> vale <code>true</code> se la password passata
+     * come parametro corrisponde alle credenziali in chiaro
+     * (utenze storiche)</dd>
+     * <dt>persona</dt>
+     * <dd>i dati anagrafici, l'id dell'utenza e il ruolo applicativo</dd>
+     * <dt>aggRuoli</dt>
+     * <dd>array bidimensionale di testo, una riga per ruolo giuridico,
+     * con le colonne: id persona, codice csa, informativa</dd>
+     * <dt>aggGruppi</dt>
+     * <dd>array bidimensionale di testo, una riga per gruppo di appartenenza,
+     * con le colonne: id, nome, informativa, ordinale</dd>
+     * </dl>
+     * Se l'utenza non esiste la query non restituisce righe.</p>
+     * <p>Parametri: password (2 volte), username.</p>
+     */
+    public static final String GET_USR_LOGIN =
+            "SELECT " +
+            "       U.id                AS \"usrId\"" +
+            "   ,   P.id                AS \"id\"" +
+            "   ,   P.nome              AS \"nome\"" +
+            "   ,   P.cognome           AS \"cognome\"" +
+            "   ,   P.sesso             AS \"sesso\"" +
+            "   ,   P.data_nascita      AS \"dataNascita\"" +
+            "   ,   P.codice_fiscale    AS \"codiceFiscale\"" +
+            "   ,   P.email             AS \"email\"" +
+            "   ,   P.cittadinanza      AS \"cittadinanza\"" +
+            "   ,   P.note              AS \"note\"" +
+            "   ,   RA.nome             AS \"ruolo\"" +
+            "   ,   CASE WHEN U.passwd IS NULL OR U.passwd = U.passwdform" +
+            "           THEN U.passwdform" +
+            "       END                 AS \"passwdform\"" +
+            "   ,   U.salt              AS \"salt\"" +
+            "   ,   COALESCE(( U.passwd IS NULL OR U.passwd = ? ) " +
+            "           AND ( U.passwdform IS NULL OR U.passwdform = ? ), false)" +
+            "                           AS \"chiaro\"" +
+            "   ,   ARRAY(" +
+            "           SELECT ARRAY[PR.id_persona::text" +
+            "                    ,   PR.codice_csa" +
+            "                    ,   COALESCE(PR.informativa, '')]" +
+            "           FROM persona_ruolo PR" +
+            "           WHERE PR.id_persona = P.id" +
+            "           ORDER BY PR.codice_csa)" +
+            "                           AS \"aggRuoli\"" +
+            "   ,   ARRAY(" +
+            "           SELECT ARRAY[GR.id::text" +
+            "                    ,   GR.nome" +
+            "                    ,   COALESCE(GR.informativa, '')" +
+            "                    ,   GR.ordinale::text]" +
+            "           FROM grp GR" +
+            "               INNER JOIN belongs B ON B.id_grp = GR.id" +
+            "           WHERE B.id_usr = U.id" +
+            "           ORDER BY GR.ordinale, GR.nome)" +
+            "                           AS \"aggGruppi\"" +
+            "   FROM usr U" +
+            "       INNER JOIN persona P ON P.id = U.id_persona" +
+            "       LEFT JOIN ruolo_applicativo RA ON RA.id = U.id_ruolo" +
+            "   WHERE U.login = ?";
+
     /* ********************************************************************** *
      *                    Query di Selezione "applicative"                    *
      * ********************************************************************** */
@@ -264,6 +331,127 @@ public interface Query extends Serializable {
             "       AND (C.data_scadenza > ? AND C.data_scadenza < ?)" + 
             "   ORDER BY C.data_scadenza, C.titolo";
     
+    /**
+     * <p>Estrae le convenzioni che soddisfano la ricerca libera,
+     * ordinate per rilevanza.</p>
+     * <p>La ricerca usa il vettore full-text <code>indice_ricerca</code>
+     * (tsvector pesato per campo, configurazione <code>simple</code> sul testo
+     * normalizzato da <code>col_normalizza</code>, comprensivo dei nomi
+     * dei contraenti e indicizzato GIN), cos&igrave; che parole, campi e
+     * risultati coincidano con quelli dell'indice di ricerca in memoria
+     * ({@link ConventionIndex}); il punteggio viene calcolato solo per le
+     * convenzioni trovate;
+     * tutti i parametri sono vincolati:<ol>
+     * <li>testo della tsquery (v. {@link #getTsQueryByKeys(String)});</li>
+     * <li>array SQL degli id dei gruppi dell'utente: come nell'indice in memoria,
+     * si trovano solo le convenzioni collegate ad almeno uno di essi;</li>
+     * <li>id della tipologia, ripetuto due volte (0 = qualsiasi);</li>
+     * <li>id della finalit&agrave;, ripetuto due volte (0 = qualsiasi).</li>
+     * </ol></p>
+     */
+    public static final String GET_CONVENTIONS_BY_KEYS =
+            "SELECT " +
+            "       C.id                    AS \"id\"" +
+            "   ,   C.titolo                AS \"titolo\"" +
+            "   ,   C.informativa           AS \"informativa\"" +
+            "   ,   C.ordinale              AS \"ordinale\"" +
+            "   ,   C.note                  AS \"note\"" +
+            "   ,   C.data_approvazione     AS \"dataApprovazione\"" +
+            "   ,   C.nota_approvazione     AS \"notaApprovazione\"" +
+            "   ,   C.data_approvazione2    AS \"dataApprovazione2\"" +
+            "   ,   C.nota_approvazione2    AS \"notaApprovazione2\"" +
+            "   ,   C.data_sottoscrizione   AS \"dataSottoscrizione\"" +
+            "   ,   C.nota_sottoscrizione   AS \"notaSottoscrizione\"" +
+            "   ,   C.data_scadenza         AS \"dataScadenza\"" +
+            "   ,   C.nota_scadenza         AS \"notaScadenza\"" +
+            "   ,   C.num_repertorio        AS \"numRepertorio\"" +
+            "   ,   C.carico_bollo          AS \"caricoBollo\"" +
+            "   ,   C.bollo_pagato          AS \"pagato\"" +
+            "   ,   C.data_ultima_modifica  AS \"dataUltimaModifica\"" +
+            "   ,   C.ora_ultima_modifica   AS \"oraUltimaModifica\"" +
+            "   ,   C.id_usr_ultima_modifica                                    AS \"idUsrUltimaModifica\"" +
+            "   ,   (SELECT nome FROM tipo_convenzione WHERE id = C.id_tipo)    AS \"tipo\"" +
+            "   FROM convenzione C" +
+            "       CROSS JOIN LATERAL to_tsquery('simple', ?) AS Q(query)" +
+            "   WHERE C.indice_ricerca @@ Q.query" +
+            "       AND C.id IN (SELECT CG.id_convenzione FROM convenzione_grp CG WHERE CG.id_grp = ANY(?))" +
+            "       AND (? = 0 OR C.id_tipo = ?)" +
+            "       AND (? = 0 OR EXISTS (SELECT 1 FROM convenzione_finalita CF WHERE CF.id_convenzione = C.id AND CF.id_finalita = ?))" +
+            "   ORDER BY ts_rank_cd(C.indice_ricerca, Q.query) DESC, C.ordinale, C.titolo";
+    
+    /**
+     * <p>Conta, per ciascuna tipologia e per ciascuna finalit&agrave;, 
+     * le convenzioni trovate dalla ricerca full-text 
+     * (v. {@link #GET_CONVENTIONS_BY_KEYS}), con un solo passaggio 
+     * grazie ai <code>GROUPING SETS</code>.<br>
+     * Ogni riga riporta una tipologia (<code>grouping</code> = 0) oppure
+     * una finalit&agrave; (<code>grouping</code> = 1); il conteggio per 
+     * tipologia rispetta il solo filtro per finalit&agrave; e viceversa,
+     * cos&igrave; che ogni voce indichi quanti risultati darebbe se scelta.
+     * Le corrispondenze sono quelle della ricerca, e quindi dell'indice
+     * in memoria.</p>
+     * <p>Parametri, nell'ordine: l'id della finalit&agrave; (due volte),
+     * l'id della tipologia (due volte), 0 = qualsiasi, il testo della tsquery
+     * e l'array SQL degli id dei gruppi dell'utente.</p>
+     */
+    public static final String GET_CONVENTION_FACETS_BY_KEYS =
+            "SELECT " +
+            "       GROUPING(C.id_tipo)     AS \"grouping\"" +
+            "   ,   COALESCE(C.id_tipo, CF.id_finalita)     AS \"id\"" +
+            "   ,   COUNT(DISTINCT C.id) FILTER (WHERE ? = 0 OR EXISTS (SELECT 1 FROM convenzione_finalita F WHERE F.id_convenzione = C.id AND F.id_finalita = ?))   AS \"perTipo\"" +
+            "   ,   COUNT(DISTINCT C.id) FILTER (WHERE ? = 0 OR C.id_tipo = ?)  AS \"perFinalita\"" +
+            "   FROM convenzione C" +
+            "       CROSS JOIN LATERAL to_tsquery('simple', ?) AS Q(query)" +
+            "       LEFT JOIN convenzione_finalita CF ON CF.id_convenzione = C.id" +
+            "   WHERE C.indice_ricerca @@ Q.query" +
+            "       AND C.id IN (SELECT CG.id_convenzione FROM convenzione_grp CG WHERE CG.id_grp = ANY(?))" +
+            "   GROUP BY GROUPING SETS ((C.id_tipo), (CF.id_finalita))";
+    
+    /**
+     * <p>Estrae le convenzioni da caricare nell'indice di ricerca in memoria
+     * ({@link ConventionIndex}), con l'id della tipologia, gli id delle
+     * finalit&agrave; e dei gruppi e i nomi dei contraenti; il parametro, ripetuto
+     * due volte, &egrave; l'id della convenzione da estrarre (0 = tutte).</p>
+     */
+    public static final String GET_CONVENTIONS_TO_INDEX =
+            "SELECT " +
+            "       C.id                    AS \"id\"" +
+            "   ,   C.titolo                AS \"titolo\"" +
+            "   ,   C.informativa           AS \"informativa\"" +
+            "   ,   C.ordinale              AS \"ordinale\"" +
+            "   ,   C.note                  AS \"note\"" +
+            "   ,   C.data_approvazione     AS \"dataApprovazione\"" +
+            "   ,   C.nota_approvazione     AS \"notaApprovazione\"" +
+            "   ,   C.data_approvazione2    AS \"dataApprovazione2\"" +
+            "   ,   C.nota_approvazione2    AS \"notaApprovazione2\"" +
+            "   ,   C.data_sottoscrizione   AS \"dataSottoscrizione\"" +
+            "   ,   C.nota_sottoscrizione   AS \"notaSottoscrizione\"" +
+            "   ,   C.data_scadenza         AS \"dataScadenza\"" +
+            "   ,   C.nota_scadenza         AS \"notaScadenza\"" +
+            "   ,   C.num_repertorio        AS \"numRepertorio\"" +
+            "   ,   C.carico_bollo          AS \"caricoBollo\"" +
+            "   ,   C.bollo_pagato          AS \"pagato\"" +
+            "   ,   C.data_ultima_modifica  AS \"dataUltimaModifica\"" +
+            "   ,   C.ora_ultima_modifica   AS \"oraUltimaModifica\"" +
+            "   ,   C.id_usr_ultima_modifica                                    AS \"idUsrUltimaModifica\"" +
+            "   ,   (SELECT nome FROM tipo_convenzione WHERE id = C.id_tipo)    AS \"tipo\"" +
+            "   ,   C.id_tipo               AS \"idTipo\"" +
+            "   ,   ARRAY(SELECT CF.id_finalita FROM convenzione_finalita CF WHERE CF.id_convenzione = C.id)     AS \"idFinalita\"" +
+            "   ,   ARRAY(SELECT CG.id_grp FROM convenzione_grp CG WHERE CG.id_convenzione = C.id)     AS \"idGruppi\"" +
+            "   ,   ARRAY(SELECT T.nome FROM contraente_convenzione CC INNER JOIN contraente T ON T.id = CC.id_contraente WHERE CC.id_convenzione = C.id)   AS \"nomiContraenti\"" +
+            "   FROM convenzione C" +
+            "   WHERE (? = 0 OR C.id = ?)";
+    
+    /**
+     * <p>Estrae id e nome di tutti i contraenti, da caricare
+     * nell'indice dei suggerimenti di ricerca ({@link SuggestionIndex}).</p>
+     */
+    public static final String GET_CONTRACTOR_NAMES =
+            "SELECT " +
+            "       P.id                    AS \"id\"" +
+            "   ,   P.nome                  AS \"nome\"" +
+            "   FROM contraente P";
+    
     /**
      * <p>Estrae il "gruppo principale" di una data convenzione, 
      * ovvero il gruppo dell'utente che l'ha inserita/cui la convenzione appartiene.
@@ -315,6 +503,23 @@ public interface Query extends Serializable {
             "       INNER JOIN convenzione_grp CGR ON CGR.id_grp = GR.id" +
             "   WHERE CGR.id_convenzione = ? ";
     
+    /**
+     * <p>Estrae il gruppo principale (v. {@link #GET_CONVENTION_GROUP})
+     * di ciascuna delle convenzioni i cui id sono passati
+     * come array SQL, con l'id della convenzione cui si riferisce.</p>
+     */
+    public static final String GET_CONVENTION_GROUPS_BY_CONVENTIONS =
+            "SELECT " +
+            "       GR.id               AS \"id\"" +
+            "   ,   GR.nome             AS \"nome\"" +
+            "   ,   GR.informativa      AS \"informativa\"" +
+            "   ,   GR.ordinale         AS \"ordinale\"" +
+            "   ,   CGR.id_convenzione  AS \"idConvenzione\"" +
+            "   FROM grp GR" +
+            "       INNER JOIN convenzione_grp CGR ON CGR.id_grp = GR.id" +
+            "   WHERE CGR.id_convenzione = ANY(?)" +
+            "   ORDER BY CGR.id_convenzione, GR.id";
+    
     /**
      * <p>Estrae una convenzione di dato id.</p>
      */
@@ -342,11 +547,95 @@ public interface Query extends Serializable {
             "   ,   (SELECT nome FROM tipo_convenzione WHERE id = C.id_tipo)    AS \"tipo\"" +
             "   FROM convenzione C" +
             "   WHERE C.id = ?";
-    
+
     /**
-     * <p>Estrae le convenzioni associate a un contraente di dato id.</p>
+     * <p>Estrae, con un'unica query, il dettaglio di una convenzione di dato id
+     * insieme alle informazioni necessarie alla pagina di dettaglio:<dl>
+     * <dt>autorizzata</dt>
+     * <dd>vale <code>true</code> se almeno uno dei gruppi passati come array SQL
+     * (i gruppi dell'utente) &egrave; associato alla convenzione in
+     * <code>convenzione_grp</code></dd>
+     * <dt>aggContraenti</dt>
+     * <dd>array bidimensionale di testo, una riga per contraente collegato,
+     * con le colonne: id, nome, informativa, ordinale, codice fiscale,
+     * partita iva, email, tipo</dd>
+     * <dt>aggFinalita</dt>
+     * <dd>array bidimensionale di testo, una riga per finalit&agrave;,
+     * con le colonne: id, nome, informativa, ordinale</dd>
+     * </dl>
+     * I valori nulli restano <code>null</code> anche negli elementi degli
+     * array, come nelle singole query che questa sostituisce.
+     * Gli array vengono calcolati solo se l'utente &egrave; autorizzato,
+     * per cui una convenzione non visualizzabile (o non esistente)
+     * costa solo la lettura della riga e il controllo sui gruppi.
+     * Se la convenzione non esiste la query non restituisce righe,
+     * mantenendo cos&igrave; distinti i casi di convenzione inesistente
+     * e di convenzione non visualizzabile.</p>
+     * <p>Parametri: array dei gruppi dell'utente, id della convenzione.</p>
      */
-    public static final String GET_CONVENTIONS_BY_CONTRACTOR =
+    public static final String GET_CONVENTION_DETAIL =
+            "SELECT " +
+            "       C.id                    AS \"id\"" +
+            "   ,   C.titolo                AS \"titolo\"" +
+            "   ,   C.informativa           AS \"informativa\"" +
+            "   ,   C.ordinale              AS \"ordinale\"" +
+            "   ,   C.note                  AS \"note\"" +
+            "   ,   C.data_approvazione     AS \"dataApprovazione\"" +
+            "   ,   C.nota_approvazione     AS \"notaApprovazione\"" +
+            "   ,   C.data_approvazione2    AS \"dataApprovazione2\"" +
+            "   ,   C.nota_approvazione2    AS \"notaApprovazione2\"" +
+            "   ,   C.data_sottoscrizione   AS \"dataSottoscrizione\"" +
+            "   ,   C.nota_sottoscrizione   AS \"notaSottoscrizione\"" +
+            "   ,   C.data_scadenza         AS \"dataScadenza\"" +
+            "   ,   C.nota_scadenza         AS \"notaScadenza\"" +
+            "   ,   C.num_repertorio        AS \"numRepertorio\"" +
+            "   ,   C.carico_bollo          AS \"caricoBollo\"" +
+            "   ,   C.bollo_pagato          AS \"pagato\"" +
+            "   ,   C.data_ultima_modifica  AS \"dataUltimaModifica\"" +
+            "   ,   C.ora_ultima_modifica   AS \"oraUltimaModifica\"" +
+            "   ,   C.id_usr_ultima_modifica                                    AS \"idUsrUltimaModifica\"" +
+            "   ,   (SELECT nome FROM tipo_convenzione WHERE id = C.id_tipo)    AS \"tipo\"" +
+            "   ,   A.autorizzata           AS \"autorizzata\"" +
+            "   ,   CASE WHEN A.autorizzata THEN ARRAY(" +
+            "           SELECT ARRAY[P.id::text" +
+            "                    ,   P.nome" +
+            "                    ,   P.informativa" +
+            "                    ,   P.ordinale::text" +
+            "                    ,   P.codice_fiscale" +
+            "                    ,   P.partita_iva" +
+            "                    ,   P.email" +
+            "                    ,   (SELECT nome FROM tipo_contraente WHERE id = P.id_tipo)]" +
+            "           FROM contraente P" +
+            "               INNER JOIN contraente_convenzione CC ON CC.id_contraente = P.id" +
+            "           WHERE CC.id_convenzione = C.id" +
+            "           ORDER BY P.ordinale, P.nome)" +
+            "       END                     AS \"aggContraenti\"" +
+            "   ,   CASE WHEN A.autorizzata THEN ARRAY(" +
+            "           SELECT ARRAY[F.id::text" +
+            "                    ,   F.nome" +
+            "                    ,   F.informativa" +
+            "                    ,   F.ordinale::text]" +
+            "           FROM finalita F" +
+            "               INNER JOIN convenzione_finalita CF ON CF.id_finalita = F.id" +
+            "           WHERE CF.id_convenzione = C.id" +
+            "           ORDER BY F.ordinale, F.nome)" +
+            "       END                     AS \"aggFinalita\"" +
+            "   FROM convenzione C" +
+            "       CROSS JOIN LATERAL (SELECT EXISTS (SELECT 1 FROM convenzione_grp CG" +
+            "                                          WHERE CG.id_convenzione = C.id" +
+            "                                            AND CG.id_grp = ANY(?)) AS autorizzata) A" +
+            "   WHERE C.id = ?";
+
+    /**
+     * <p>Estrae, in un colpo solo, le convenzioni associate a un insieme
+     * di contraenti, i cui identificativi vengono passati come array SQL.</p>
+     * <p>Ogni riga riporta anche l'id del contraente cui la convenzione
+     * &egrave; collegata (<code>idContraente</code>), cos&igrave; che il
+     * chiamante possa ripartire le convenzioni tra i contraenti in memoria;
+     * una convenzione con pi&uacute; contraenti compare quindi una volta
+     * per ciascuno di essi.</p>
+     */
+    public static final String GET_CONVENTIONS_BY_CONTRACTORS =
             "SELECT DISTINCT" +
             "       C.id                    AS \"id\"" +
             "   ,   C.titolo                AS \"titolo\"" +
@@ -368,11 +657,12 @@ public interface Query extends Serializable {
             "   ,   C.ora_ultima_modifica   AS \"oraUltimaModifica\"" +
             "   ,   C.id_usr_ultima_modifica                                    AS \"idUsrUltimaModifica\"" +
             "   ,   (SELECT nome FROM tipo_convenzione WHERE id = C.id_tipo)    AS \"tipo\"" +
+            "   ,   CC.id_contraente        AS \"idContraente\"" +
             "   FROM convenzione C" +
             "       INNER JOIN contraente_convenzione CC ON CC.id_convenzione = C.id" +
-            "   WHERE CC.id_contraente = ?" +
-            "   ORDER BY C.ordinale, C.titolo";
-    
+            "   WHERE CC.id_contraente = ANY(?)" +
+            "   ORDER BY CC.id_contraente, C.ordinale, C.titolo";
+
     /**
      * <p><dl>
      * <dt>Estrae tutti i contraenti salvo quelli collegati a una data convenzione</dt>
@@ -447,7 +737,31 @@ public interface Query extends Serializable {
             "       INNER JOIN contraente_convenzione CC ON CC.id_contraente = P.id" +
             "   WHERE CC.id_convenzione = ?" +
             "   ORDER BY P.ordinale, P.nome";
-    
+
+    /**
+     * <p>Estrae, in un colpo solo, i contraenti collegati a un insieme
+     * di convenzioni, i cui identificativi vengono passati come array SQL.</p>
+     * <p>Ogni riga riporta anche l'id della convenzione cui il contraente
+     * &egrave; collegato (<code>idConvenzione</code>), cos&igrave; che il
+     * chiamante possa ripartire i contraenti tra le convenzioni in memoria,
+     * evitando di eseguire una query per ogni convenzione estratta.</p>
+     */
+    public static final String GET_CONTRACTORS_BY_CONVENTIONS =
+            "SELECT DISTINCT" +
+            "       P.id                    AS \"id\"" +
+            "   ,   P.nome                  AS \"nome\"" +
+            "   ,   P.informativa           AS \"informativa\"" +
+            "   ,   P.ordinale              AS \"ordinale\"" +
+            "   ,   P.codice_fiscale        AS \"codiceFiscale\"" +
+            "   ,   P.partita_iva           AS \"partitaIva\"" +
+            "   ,   P.email                 AS \"email\"" +
+            "   ,   (SELECT nome FROM tipo_contraente WHERE id = P.id_tipo)    AS \"note\"" +
+            "   ,   CC.id_convenzione       AS \"idConvenzione\"" +
+            "   FROM contraente P" +
+            "       INNER JOIN contraente_convenzione CC ON CC.id_contraente = P.id" +
+            "   WHERE CC.id_convenzione = ANY(?)" +
+            "   ORDER BY CC.id_convenzione, P.ordinale, P.nome";
+
     /**
      * <p>Estrae le tipologie.</p>
      */
@@ -496,6 +810,37 @@ public interface Query extends Serializable {
             "   WHERE CG.id_convenzione = ?" +
             "   ORDER BY CG.id_grp";
     
+    /**
+     * <p>Conta le convenzioni attive visibili ai gruppi dell'utente,
+     * in totale e ristrette dal filtro full-text di un elenco paginato
+     * (v. {@link #getQueryConventionsPage(int, boolean, boolean)}).</p>
+     * <p>Parametri: il testo della tsquery (due volte, vuoto = nessun filtro)
+     * e l'array SQL degli id dei gruppi dell'utente.</p>
+     */
+    public static final String COUNT_CONVENTIONS_PAGE =
+            "SELECT " +
+            "       COUNT(*)                AS \"total\"" +
+            "   ,   COUNT(*) FILTER (WHERE ? = '' OR C.indice_ricerca @@ to_tsquery('simple', ?))   AS \"filtered\"" +
+            "   FROM convenzione C" +
+            "   WHERE C.id_stato = (SELECT id FROM stato_convenzione WHERE nome = 'ATTIVO')" +
+            "       AND C.id IN (SELECT CG.id_convenzione FROM convenzione_grp CG WHERE CG.id_grp = ANY(?))";
+    
+    /**
+     * <p>Conta i contraenti, in totale e ristretti dal filtro di un elenco
+     * paginato (v. {@link #getQueryContractorsPage(int, boolean, boolean)}).</p>
+     * <p>Parametri: il testo del filtro, poi il pattern ILIKE 
+     * ripetuto quattro volte (nome, codice fiscale, partita IVA, email).</p>
+     */
+    public static final String COUNT_CONTRACTORS_PAGE =
+            "SELECT " +
+            "       COUNT(*)                AS \"total\"" +
+            "   ,   COUNT(*) FILTER (WHERE ? = ''" +
+            "                           OR P.nome ILIKE ?" +
+            "                           OR P.codice_fiscale ILIKE ?" +
+            "                           OR P.partita_iva ILIKE ?" +
+            "                           OR P.email ILIKE ?)    AS \"filtered\"" +
+            "   FROM contraente P";
+    
     /* ************************************************************************ *
      *  Interfacce di metodi che costruiscono dinamicamente Query di Selezione  *
      *    (in taluni casi non si riesce a prestabilire la query ma questa va    *
@@ -503,30 +848,87 @@ public interface Query extends Serializable {
      * ************************************************************************ */
 
     /**
-     * <p>Costruisce dinamicamente la query che seleziona le convenzioni 
-     * sulla base dei parametri di ricerca immessi
+     * <p>Costruisce il testo della tsquery con cui interrogare
+     * {@link #GET_CONVENTIONS_BY_KEYS} a partire dalle chiavi
+     * di ricerca immesse (separate da virgola): le parole di una stessa
+     * chiave devono comparire tutte, mentre basta una chiave qualsiasi; 
+     * ogni parola vale anche come prefisso.<br>
+     * Le parole sono estratte come nell'indice di ricerca in memoria
+     * (minuscole, senza accenti, separate da tutto ci&ograve; che non
+     * &egrave; lettera o cifra), che &egrave; la stessa normalizzazione
+     * applicata dal database al testo indicizzato.</p>
      * 
-     * @param type  tipologia selezionata
-     * @param scope finalit&agrave; selezionata
      * @param key   chiave/i di ricerca immesse
-     * @return <code>String</code> - la query che seleziona le convenzioni desiderate
+     * @return <code>String</code> - testo della tsquery, vuoto se le chiavi non contengono parole
+     */
+    public String getTsQueryByKeys(String key);
+    
+    /**
+     * <p>Costruisce la query di una pagina dell'elenco delle convenzioni attive
+     * visibili ai gruppi dell'utente, ordinata per la colonna scelta
+     * (indice della colonna nell'elenco, negativo per l'ordinamento di base
+     * <code>ordinale, data_scadenza, id</code>) e completata sempre dall'id,
+     * cos&igrave; che ogni riga abbia una chiave di ordinamento univoca,
+     * restituita nelle colonne <code>k1</code>, <code>k2</code>...</p>
+     * <p>Se <code>keyset</code> &egrave; true la pagina inizia dopo la chiave
+     * passata nei parametri (paginazione keyset), senza scorrere le righe
+     * precedenti; altrimenti si posiziona solo tramite OFFSET.</p>
+     * <p>Parametri: l'array SQL dei gruppi, il testo della tsquery (due volte,
+     * vuoto = nessun filtro), i valori della chiave (se keyset), LIMIT e OFFSET.</p>
+     * 
+     * @param column        indice della colonna di ordinamento
+     * @param descending    true per l'ordinamento decrescente
+     * @param keyset        true se la pagina inizia dopo una chiave data
+     * @return <code>String</code> - la query della pagina
+     */
+    public String getQueryConventionsPage(int column, boolean descending, boolean keyset);
+    
+    /**
+     * <p>Restituisce il numero di valori della chiave di ordinamento
+     * delle pagine di convenzioni per la colonna data.</p>
+     * 
+     * @param column indice della colonna di ordinamento
+     * @return <code>int</code> - numero di colonne <code>k1</code>, <code>k2</code>... della query
+     */
+    public int getConventionsPageKeySize(int column);
+    
+    /**
+     * <p>Costruisce la query di una pagina dell'elenco dei contraenti,
+     * con le stesse regole di {@link #getQueryConventionsPage(int, boolean, boolean)};
+     * l'ordinamento di base &egrave; <code>ordinale, nome, id</code>.</p>
+     * <p>Parametri: il testo del filtro, il pattern ILIKE ripetuto quattro 
+     * volte, i valori della chiave (se keyset), LIMIT e OFFSET.</p>
+     * 
+     * @param column        indice della colonna di ordinamento
+     * @param descending    true per l'ordinamento decrescente
+     * @param keyset        true se la pagina inizia dopo una chiave data
+     * @return <code>String</code> - la query della pagina
+     */
+    public String getQueryContractorsPage(int column, boolean descending, boolean keyset);
+    
+    /**
+     * <p>Restituisce il numero di valori della chiave di ordinamento
+     * delle pagine di contraenti per la colonna data.</p>
+     * 
+     * @param column indice della colonna di ordinamento
+     * @return <code>int</code> - numero di colonne <code>k1</code>, <code>k2</code>... della query
      */
-    public String getQueryConventionsByKeys(String type, String scope, String key);
+    public int getContractorsPageKeySize(int column);
     
     /* ********************************************************************** *
      *                         Query di inserimento                           *
      * ********************************************************************** */
     /**
      * <p>Query per inserimento dell'ultimo accesso al sistema.</p>
+     * <p>L'identificativo viene assegnato dalla sequenza
+     * associata alla colonna SERIAL <code>access_log.id</code>.</p>
      */
     public static final String INSERT_ACCESSLOG_BY_USER =
             "INSERT INTO access_log" +
-            "   (   id" +
-            "   ,   login" +
+            "   (   login" +
             "   ,   data_ultimo_accesso" +
             "   ,   ora_ultimo_accesso )" +
-            "   VALUES (? " +          // id
-            "   ,       ? " +          // login
+            "   VALUES (? " +          // login
             "   ,       ? " +          // dataultimoaccesso
             "   ,       ?)" ;          // oraultimoaccesso
     
@@ -564,11 +966,15 @@ public interface Query extends Serializable {
     
     /**
      * <p>Query per inserimento di una convenzione.</p>
+     * <p>L'identificativo viene assegnato dalla sequenza associata
+     * alla colonna SERIAL <code>convenzione.id</code> e restituito
+     * dalla query stessa (<code>RETURNING id</code>), in modo che
+     * l'assegnazione avvenga all'interno della transazione di inserimento
+     * e senza ulteriori accessi al database.</p>
      */
     public static final String INSERT_CONVENTION =
             "INSERT INTO convenzione" +
-            "   (   id" +
-            "   ,   titolo" +
+            "   (   titolo" +
             "   ,   num_repertorio" +                    
             "   ,   informativa" +
             "   ,   note" +
@@ -587,8 +993,7 @@ public interface Query extends Serializable {
             "   ,   id_usr_ultima_modifica" +
             "   ,   id_tipo" +
             "   ,   id_stato)" +
-            "   VALUES (? " +          // id
-            "   ,       ? " +          // titolo
+            "   VALUES (? " +          // titolo
             "   ,       ? " +          // num_repertorio
             "   ,       ? " +          // informativa
             "   ,       ? " +          // note
@@ -606,7 +1011,8 @@ public interface Query extends Serializable {
             "   ,       ? " +          // ora_ultima_modifica
             "   ,       ? " +          // id_usr_ultima_modifica
             "   ,       ? " +          // id_tipo
-            "   ,       ?)" ;          // id_stato
+            "   ,       ?)" +          // id_stato
+            "   RETURNING id";
     
     /**
      * <p>Query per inserimento della relazione tra convenzione e gruppo di utenti.</p>
@@ -37,6 +37,7 @@
 
 package it.col.db;
 
+import java.util.LinkedHashSet;
 import java.util.StringJoiner;
 
 import it.col.util.Constants;
@@ -67,80 +68,218 @@ public class QueryImpl implements Query, Constants {
      * @see java.io.Serializable
      */
     private static final long serialVersionUID = 7339151352217708748L;
+    /**
+     * Chiavi di ordinamento delle pagine di convenzioni, per indice
+     * di colonna dell'elenco (null = colonna non ordinabile): 
+     * tipologia, contraenti, titolo, data di approvazione, 
+     * data di sottoscrizione, data di scadenza, numero di repertorio.
+     * Le colonne sono tutte NOT NULL e l'id rende ogni chiave univoca.
+     */
+    private static final String[][] CONVENTION_KEYS = {
+        { "T.nome", "C.id" },
+        null,
+        { "C.titolo", "C.id" },
+        { "C.data_approvazione", "C.id" },
+        { "C.data_sottoscrizione", "C.id" },
+        { "C.data_scadenza", "C.id" },
+        { "C.num_repertorio", "C.id" }
+    };
+    /**
+     * Ordinamento di base delle pagine di convenzioni
+     */
+    private static final String[] CONVENTION_DEFAULT_KEY = { "C.ordinale", "C.data_scadenza", "C.id" };
+    /**
+     * Chiavi di ordinamento delle pagine di contraenti, per indice
+     * di colonna dell'elenco (null = colonna non ordinabile): 
+     * tipologia, nome, convenzioni, codice fiscale, partita IVA,
+     * email, note.
+     */
+    private static final String[][] CONTRACTOR_KEYS = {
+        { "T.nome", "P.id" },
+        { "P.nome", "P.id" },
+        null,
+        { "COALESCE(P.codice_fiscale, '')", "P.id" },
+        { "COALESCE(P.partita_iva, '')", "P.id" },
+        { "COALESCE(P.email, '')", "P.id" },
+        { "COALESCE(P.informativa, '')", "P.id" }
+    };
+    /**
+     * Ordinamento di base delle pagine di contraenti
+     */
+    private static final String[] CONTRACTOR_DEFAULT_KEY = { "P.ordinale", "P.nome", "P.id" };
 
 
     /** 
-     * {@link Query#getQueryConventionsByKeys(String, String, String)} 
-     * @see it.col.db.Query#getQueryConventionsByKeys(String, String, String)
+     * {@link Query#getTsQueryByKeys(String)} 
+     * @see it.col.db.Query#getTsQueryByKeys(String)
+     */
+    @Override
+    public String getTsQueryByKeys(String key) {
+        StringJoiner anyKey = new StringJoiner(" | ");
+        // The keys are separated by comma
+        for (String k : Utils.tokenizeByComma(key)) {
+            StringJoiner allWords = new StringJoiner(" & ");
+            // Same words as the in-memory index: only letters and digits
+            // survive, so no tsquery syntax can be injected
+            LinkedHashSet<String> words = new LinkedHashSet<>();
+            ConventionIndex.tokenize(k, words);
+            for (String word : words) {
+                allWords.add(word + ":*");
+            }
+            if (allWords.length() > NOTHING) {
+                anyKey.add("(" + allWords + ")");
+            }
+        }
+        return anyKey.toString();
+    }
+    
+    
+    /** 
+     * {@link Query#getQueryConventionsPage(int, boolean, boolean)} 
+     * @see it.col.db.Query#getQueryConventionsPage(int, boolean, boolean)
+     */
+    @Override
+    public String getQueryConventionsPage(int column, 
+                                          boolean descending, 
+                                          boolean keyset) {
+        String[] key = pageKey(CONVENTION_KEYS, CONVENTION_DEFAULT_KEY, column);
+        return "SELECT " +
+               "       C.id                    AS \"id\"" +
+               "   ,   C.titolo                AS \"titolo\"" +
+               "   ,   C.ordinale              AS \"ordinale\"" +
+               "   ,   C.note                  AS \"note\"" +
+               "   ,   C.data_approvazione     AS \"dataApprovazione\"" +
+               "   ,   C.data_sottoscrizione   AS \"dataSottoscrizione\"" +
+               "   ,   C.data_scadenza         AS \"dataScadenza\"" +
+               "   ,   C.num_repertorio        AS \"numRepertorio\"" +
+               "   ,   C.carico_bollo          AS \"caricoBollo\"" +
+               "   ,   C.bollo_pagato          AS \"pagato\"" +
+               "   ,   C.data_ultima_modifica  AS \"dataUltimaModifica\"" +
+               "   ,   C.ora_ultima_modifica   AS \"oraUltimaModifica\"" +
+               "   ,   T.nome                  AS \"tipo\"" +
+               keyColumns(key) +
+               "   FROM convenzione C" +
+               "       INNER JOIN tipo_convenzione T ON T.id = C.id_tipo" +
+               "   WHERE C.id_stato = (SELECT id FROM stato_convenzione WHERE nome = 'ATTIVO')" +
+               "       AND C.id IN (SELECT CG.id_convenzione FROM convenzione_grp CG WHERE CG.id_grp = ANY(?))" +
+               "       AND (? = '' OR C.indice_ricerca @@ to_tsquery('simple', ?))" +
+               pageClauses(key, descending, keyset);
+    }
+    
+    
+    /** 
+     * {@link Query#getConventionsPageKeySize(int)} 
+     * @see it.col.db.Query#getConventionsPageKeySize(int)
+     */
+    @Override
+    public int getConventionsPageKeySize(int column) {
+        return pageKey(CONVENTION_KEYS, CONVENTION_DEFAULT_KEY, column).length;
+    }
+    
+    
+    /** 
+     * {@link Query#getQueryContractorsPage(int, boolean, boolean)} 
+     * @see it.col.db.Query#getQueryContractorsPage(int, boolean, boolean)
+     */
+    @Override
+    public String getQueryContractorsPage(int column, 
+                                          boolean descending, 
+                                          boolean keyset) {
+        String[] key = pageKey(CONTRACTOR_KEYS, CONTRACTOR_DEFAULT_KEY, column);
+        return "SELECT " +
+               "       P.id                    AS \"id\"" +
+               "   ,   P.nome                  AS \"nome\"" +
+               "   ,   P.informativa           AS \"informativa\"" +
+               "   ,   P.ordinale              AS \"ordinale\"" +
+               "   ,   P.codice_fiscale        AS \"codiceFiscale\"" +
+               "   ,   P.partita_iva           AS \"partitaIva\"" +
+               "   ,   P.email                 AS \"email\"" +
+               "   ,   T.nome                  AS \"note\"" +
+               keyColumns(key) +
+               "   FROM contraente P" +
+               "       INNER JOIN tipo_contraente T ON T.id = P.id_tipo" +
+               "   WHERE (? = ''" +
+               "           OR P.nome ILIKE ?" +
+               "           OR P.codice_fiscale ILIKE ?" +
+               "           OR P.partita_iva ILIKE ?" +
+               "           OR P.email ILIKE ?)" +
+               pageClauses(key, descending, keyset);
+    }
+    
+    
+    /** 
+     * {@link Query#getContractorsPageKeySize(int)} 
+     * @see it.col.db.Query#getContractorsPageKeySize(int)
      */
     @Override
-    public String getQueryConventionsByKeys(String type, 
-                                            String scope, 
-                                            String key) {
-        StringBuffer join = new StringBuffer();
-        StringBuffer clause = new StringBuffer("WHERE");
-        clause.append(BLANK_SPACE);
-        if (!type.equals(String.valueOf(NOTHING))) {
-            clause.append("C.id_tipo = ")
-            .append(type)
-            .append(" AND ");
+    public int getContractorsPageKeySize(int column) {
+        return pageKey(CONTRACTOR_KEYS, CONTRACTOR_DEFAULT_KEY, column).length;
+    }
+    
+    
+    /**
+     * Restituisce le espressioni della chiave di ordinamento di una colonna,
+     * oppure quelle dell'ordinamento di base se la colonna non &egrave; ordinabile.
+     * Le espressioni provengono solo dalle tabelle costanti: l'indice
+     * ricevuto dal client non entra mai nel testo della query.
+     * 
+     * @param keys          chiavi di ordinamento per colonna
+     * @param defaultKey    chiave dell'ordinamento di base
+     * @param column        indice della colonna richiesta
+     * @return <code>String[]</code> - espressioni della chiave di ordinamento
+     */
+    private static String[] pageKey(String[][] keys, 
+                                    String[] defaultKey, 
+                                    int column) {
+        if (column < NOTHING || column >= keys.length || keys[column] == null) {
+            return defaultKey;
         }
-        if (!scope.equals(String.valueOf(NOTHING))) {
-            join.append("INNER JOIN convenzione_finalita CF ON CF.id_convenzione = C.id");
-            clause
-                  .append("CF.id_finalita = ")
-                  .append(scope)
-                  .append(" AND ");
+        return keys[column];
+    }
+    
+    
+    /**
+     * Restituisce le colonne della SELECT che riportano i valori
+     * della chiave di ordinamento (<code>k1</code>, <code>k2</code>...).
+     * 
+     * @param key espressioni della chiave di ordinamento
+     * @return <code>String</code> - frammento della lista di SELECT
+     */
+    private static String keyColumns(String[] key) {
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < key.length; i++) {
+            columns.append("   ,   ").append(key[i]).append(" AS \"k").append(i + 1).append("\"");
         }
-        // The key is mandatory
-        String[] keys = Utils.tokenizeByComma(key);
-        StringJoiner joiner = new StringJoiner(COMMA);
-        for (String k : keys) {
-            joiner.add("'" + k + "'");
+        return columns.toString();
+    }
+    
+    
+    /**
+     * Restituisce le clausole finali della query di una pagina:
+     * l'eventuale confronto della chiave di ordinamento con quella
+     * dell'ultima riga gi&agrave; vista (row value comparison, che l'indice
+     * sull'ordinamento pu&ograve; risolvere senza scorrere le righe precedenti),
+     * l'ordinamento, LIMIT e OFFSET.
+     * 
+     * @param key           espressioni della chiave di ordinamento
+     * @param descending    true per l'ordinamento decrescente
+     * @param keyset        true se la pagina inizia dopo una chiave data
+     * @return <code>String</code> - clausole finali della query
+     */
+    private static String pageClauses(String[] key, 
+                                      boolean descending, 
+                                      boolean keyset) {
+        StringJoiner columns = new StringJoiner(", ", "(", ")");
+        StringJoiner params = new StringJoiner(", ", "(", ")");
+        StringJoiner orderBy = new StringJoiner(", ");
+        for (String expression : key) {
+            columns.add(expression);
+            params.add("?");
+            orderBy.add(expression + (descending ? " DESC" : " ASC"));
         }
-        clause.append("C.titolo ~* ANY(ARRAY[" + joiner.toString() + "])")
-              .append(" OR ")
-              .append("C.informativa ~* ANY(ARRAY[" + joiner.toString() + "])")
-              .append(" OR ")
-              .append("C.note ~* ANY(ARRAY[" + joiner.toString() + "])")
-              .append(" OR ")
-              .append("C.nota_approvazione ~* ANY(ARRAY[" + joiner.toString() + "])")
-              .append(" OR ")
-              .append("C.nota_approvazione2 ~* ANY(ARRAY[" + joiner.toString() + "])")
-              .append(" OR ")
-              .append("C.nota_sottoscrizione ~* ANY(ARRAY[" + joiner.toString() + "])")
-              .append(" OR ")
-              .append("C.nota_scadenza ~* ANY(ARRAY[" + joiner.toString() + "])")
-              .append(" OR ")
-              .append("C.num_repertorio ~* ANY(ARRAY[" + joiner.toString() + "])");
-        // Query
-        final String GET_CONVENTIONS_BY_KEYS =
-                "SELECT " +
-                    "       C.id                    AS \"id\"" +
-                    "   ,   C.titolo                AS \"titolo\"" +
-                    "   ,   C.informativa           AS \"informativa\"" +
-                    "   ,   C.ordinale              AS \"ordinale\"" +
-                    "   ,   C.note                  AS \"note\"" +
-                    "   ,   C.data_approvazione     AS \"dataApprovazione\"" +
-                    "   ,   C.nota_approvazione     AS \"notaApprovazione\"" +
-                    "   ,   C.data_approvazione2    AS \"dataApprovazione2\"" +
-                    "   ,   C.nota_approvazione2    AS \"notaApprovazione2\"" +
-                    "   ,   C.data_sottoscrizione   AS \"dataSottoscrizione\"" +
-                    "   ,   C.nota_sottoscrizione   AS \"notaSottoscrizione\"" +
-                    "   ,   C.data_scadenza         AS \"dataScadenza\"" +
-                    "   ,   C.nota_scadenza         AS \"notaScadenza\"" +
-                    "   ,   C.num_repertorio        AS \"numRepertorio\"" +
-                    "   ,   C.carico_bollo          AS \"caricoBollo\"" +
-                    "   ,   C.bollo_pagato          AS \"pagato\"" +
-                    "   ,   C.data_ultima_modifica  AS \"dataUltimaModifica\"" +
-                    "   ,   C.ora_ultima_modifica   AS \"oraUltimaModifica\"" +
-                    "   ,   C.id_usr_ultima_modifica                                    AS \"idUsrUltimaModifica\"" +
-                    "   ,   (SELECT nome FROM tipo_convenzione WHERE id = C.id_tipo)    AS \"tipo\"" +
-                    "   FROM convenzione C " +
-                            join +
-                            clause + 
-                    "   ORDER BY C.ordinale, C.titolo";
-        return GET_CONVENTIONS_BY_KEYS;
+        return (keyset ? "       AND " + columns + (descending ? " < " : " > ") + params : VOID_STRING) +
+               "   ORDER BY " + orderBy +
+               "   LIMIT ? OFFSET ?";
     }
     
 }
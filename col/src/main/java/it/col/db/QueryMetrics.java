@@ -0,0 +1,363 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * <p><code>QueryMetrics</code> raccoglie, per ogni query nominata,
+ * le misure di latenza delle chiamate al database effettuate
+ * attraverso il {@link DBWrapper}:<ul>
+ * <li><em>acquire</em>: attesa per ottenere la connessione dal pool
+ * (attribuita alla prima query eseguita sulla connessione);</li>
+ * <li><em>execute</em>: tempo di esecuzione dello statement;</li>
+ * <li><em>fetch</em>: tempo di scorrimento del ResultSet e di mappatura
+ * sui bean, dalla restituzione alla chiusura;</li>
+ * <li><em>rows</em>: righe lette (o modificate, per gli aggiornamenti).</li>
+ * </ul></p>
+ * <p>Le misure sono registrate dalla {@link TrackedConnection}
+ * in istogrammi lock-free ({@link LatencyHistogram}); il nome
+ * di una query &egrave; quello della costante di {@link Query}
+ * che ne contiene il testo, oppure {@link #DYNAMIC} per le query
+ * costruite a runtime.</p>
+ * <p>I dati sono consultabili dall'operazione di monitoraggio
+ * della servlet <code>Data</code> e via JMX, sotto il nome
+ * {@link #OBJECT_NAME}.</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class QueryMetrics implements QueryMetricsMXBean {
+
+    /**
+     * <p>Logger della classe per scrivere i messaggi di errore.</p>
+     */
+    private static Logger LOG = Logger.getLogger(QueryMetrics.class.getName());
+    /**
+     * <p>Nome con cui le metriche vengono registrate nel server JMX.</p>
+     */
+    public static final String OBJECT_NAME = "it.col:type=QueryMetrics";
+    /**
+     * <p>Nome attribuito alle query non dichiarate in {@link Query}.</p>
+     */
+    public static final String DYNAMIC = "QUERY_DINAMICA";
+    /**
+     * <p>Nomi delle costanti di {@link Query}, indicizzati per testo della query.</p>
+     */
+    private static final Map<String, String> NAMES = new HashMap<>();
+    /**
+     * <p>Costanti di {@link Query} pensate per essere completate dal chiamante
+     * (terminano con la clausola FROM), come coppie {testo, nome}.</p>
+     */
+    private static final List<String[]> PREFIXES = new ArrayList<>();
+    /**
+     * <p>Statistiche per nome di query.</p>
+     */
+    private static final ConcurrentHashMap<String, QueryStats> STATS = new ConcurrentHashMap<>();
+    /**
+     * <p>Unica istanza, esposta via JMX.</p>
+     */
+    private static final QueryMetrics INSTANCE = new QueryMetrics();
+
+    static {
+        for (Field field : Query.class.getFields()) {
+            if (field.getType() == String.class && Modifier.isStatic(field.getModifiers())) {
+                try {
+                    String sql = (String) field.get(null);
+                    NAMES.put(sql, field.getName());
+                    if (sql.trim().toUpperCase().endsWith("FROM")) {
+                        PREFIXES.add(new String[] { sql, field.getName() });
+                    }
+                } catch (IllegalAccessException iae) {
+                    LOG.warning("Impossibile leggere la query " + field.getName() + ": " + iae.getMessage());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * <p>Costruttore privato: le metriche sono uniche per l'applicazione.</p>
+     */
+    private QueryMetrics() {
+    }
+
+
+    /* ********************************************************** *
+     *                 Statistiche per singola query              *
+     * ********************************************************** */
+    /**
+     * <p>Misure raccolte per una singola query nominata.</p>
+     */
+    static final class QueryStats {
+        /** Attesa per ottenere la connessione dal pool */
+        final LatencyHistogram acquire = new LatencyHistogram();
+        /** Tempo di esecuzione dello statement */
+        final LatencyHistogram execute = new LatencyHistogram();
+        /** Tempo di lettura e mappatura del ResultSet */
+        final LatencyHistogram fetch = new LatencyHistogram();
+        /** Righe lette o modificate */
+        final LongAdder rows = new LongAdder();
+        /** Esecuzioni terminate con eccezione */
+        final LongAdder errors = new LongAdder();
+
+        /**
+         * <p>Azzera le misure.</p>
+         */
+        void reset() {
+            acquire.reset();
+            execute.reset();
+            fetch.reset();
+            rows.reset();
+            errors.reset();
+        }
+
+        /**
+         * <p>Restituisce una sintesi delle misure, su pi&ugrave; righe.</p>
+         *
+         * @return <code>String</code> - sintesi delle misure (tempi in microsecondi)
+         */
+        @Override
+        public String toString() {
+            return "  acquire: " + acquire + "\n"
+                 + "  execute: " + execute + "\n"
+                 + "  fetch:   " + fetch + "\n"
+                 + "  rows=" + rows.sum() + " errors=" + errors.sum() + "\n";
+        }
+    }
+
+
+    /* ********************************************************** *
+     *                  Metodi di accesso al registro             *
+     * ********************************************************** */
+    /**
+     * <p>Restituisce il nome della costante di {@link Query} che contiene
+     * il testo passato, se la query &egrave; statica.</p>
+     *
+     * @param sql testo della query
+     * @return <code>String</code> - nome della costante, null se la query non &egrave; dichiarata in Query
+     */
+    static String staticName(String sql) {
+        return (sql == null ? null : NAMES.get(sql));
+    }
+
+
+    /**
+     * <p>Restituisce il nome con cui registrare le misure di una query:
+     * la costante che la contiene, la costante di cui &egrave; il
+     * completamento o, in mancanza, {@link #DYNAMIC}.</p>
+     *
+     * @param sql testo della query
+     * @return <code>String</code> - nome della query
+     */
+    static String nameOf(String sql) {
+        String name = staticName(sql);
+        if (name != null) {
+            return name;
+        }
+        if (sql != null) {
+            for (String[] prefix : PREFIXES) {
+                if (sql.startsWith(prefix[0])) {
+                    return prefix[1];
+                }
+            }
+        }
+        return DYNAMIC;
+    }
+
+
+    /**
+     * <p>Restituisce (creandole se necessario) le statistiche di una query.</p>
+     *
+     * @param name nome della query
+     * @return <code>QueryStats</code> - statistiche della query
+     */
+    static QueryStats stats(String name) {
+        return STATS.computeIfAbsent(name, k -> new QueryStats());
+    }
+
+
+    /**
+     * <p>Restituisce l'unica istanza delle metriche.</p>
+     *
+     * @return <code>QueryMetrics</code> - metriche delle query
+     */
+    public static QueryMetrics getInstance() {
+        return INSTANCE;
+    }
+
+
+    /* ********************************************************** *
+     *                       Registrazione JMX                    *
+     * ********************************************************** */
+    /**
+     * <p>Registra le metriche nel server JMX della piattaforma.</p>
+     */
+    static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException jme) {
+            LOG.warning("Impossibile registrare le metriche delle query via JMX: " + jme.getMessage());
+        }
+    }
+
+
+    /**
+     * <p>Rimuove le metriche dal server JMX della piattaforma.</p>
+     */
+    static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException jme) {
+            LOG.warning("Impossibile rimuovere le metriche delle query da JMX: " + jme.getMessage());
+        }
+    }
+
+
+    /* ********************************************************** *
+     *                        Attributi JMX                       *
+     * ********************************************************** */
+    /* (non-Javadoc)
+     * @see it.col.db.QueryMetricsMXBean#getQueryNames()
+     */
+    @Override
+    public List<String> getQueryNames() {
+        List<String> names = new ArrayList<>(STATS.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+
+    /* (non-Javadoc)
+     * @see it.col.db.QueryMetricsMXBean#getQueryReport(java.lang.String)
+     */
+    @Override
+    public String getQueryReport(String name) {
+        QueryStats stats = STATS.get(name);
+        return (stats == null ? null : name + "\n" + stats);
+    }
+
+
+    /* (non-Javadoc)
+     * @see it.col.db.QueryMetricsMXBean#getReport()
+     */
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("# Latenze in microsecondi per query (acquire = attesa connessione, ")
+              .append("execute = esecuzione, fetch = lettura e mappatura)\n");
+        for (Map.Entry<String, QueryStats> entry : new TreeMap<>(STATS).entrySet()) {
+            report.append(entry.getKey()).append('\n').append(entry.getValue());
+        }
+        SearchCache searches = DBWrapper.getSearchCache();
+        report.append("# Cache delle ricerche\n")
+              .append("  size=").append(searches.getSize())
+              .append(" hits=").append(searches.getHits())
+              .append(" misses=").append(searches.getMisses())
+              .append(" evictions=").append(searches.getEvictions())
+              .append(" invalidations=").append(searches.getInvalidations())
+              .append('\n');
+        ConventionCache pages = DBWrapper.getConventionCache();
+        report.append("# Cache delle pagine di convenzioni\n")
+              .append("  size=").append(pages.getSize())
+              .append(" hits=").append(pages.getHits())
+              .append(" misses=").append(pages.getMisses())
+              .append(" evictions=").append(pages.getEvictions())
+              .append(" invalidations=").append(pages.getInvalidations())
+              .append('\n');
+        ConventionIndex index = DBWrapper.getSearchIndex();
+        report.append("# Indice di ricerca in memoria\n")
+              .append("  conventions=").append(index.getSize())
+              .append(" terms=").append(index.getTermCount())
+              .append('\n');
+        return report.toString();
+    }
+
+
+    /* (non-Javadoc)
+     * @see it.col.db.QueryMetricsMXBean#getSearchCacheHits()
+     */
+    @Override
+    public long getSearchCacheHits() {
+        return DBWrapper.getSearchCache().getHits();
+    }
+
+
+    /* (non-Javadoc)
+     * @see it.col.db.QueryMetricsMXBean#getSearchCacheMisses()
+     */
+    @Override
+    public long getSearchCacheMisses() {
+        return DBWrapper.getSearchCache().getMisses();
+    }
+
+
+    /* (non-Javadoc)
+     * @see it.col.db.QueryMetricsMXBean#reset()
+     */
+    @Override
+    public void reset() {
+        for (QueryStats stats : STATS.values()) {
+            stats.reset();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.util.List;
+
+
+/**
+ * <p>Interfaccia di gestione JMX delle metriche delle query
+ * raccolte da {@link QueryMetrics}.</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public interface QueryMetricsMXBean {
+
+    /**
+     * <p>Restituisce i nomi delle query per cui sono state raccolte misure.</p>
+     *
+     * @return <code>List&lt;String&gt;</code> - nomi delle query, in ordine alfabetico
+     */
+    public List<String> getQueryNames();
+
+    /**
+     * <p>Restituisce la sintesi delle misure di una singola query.</p>
+     *
+     * @param name nome della query
+     * @return <code>String</code> - sintesi delle misure, null se la query non ha misure
+     */
+    public String getQueryReport(String name);
+
+    /**
+     * <p>Restituisce il rapporto testuale completo delle misure.</p>
+     *
+     * @return <code>String</code> - rapporto delle misure di tutte le query e della cache
+     */
+    public String getReport();
+
+    /**
+     * <p>Restituisce il numero di ricerche servite dalla cache delle ricerche.</p>
+     *
+     * @return <code>long</code> - numero di hit
+     */
+    public long getSearchCacheHits();
+
+    /**
+     * <p>Restituisce il numero di ricerche non servite dalla cache delle ricerche.</p>
+     *
+     * @return <code>long</code> - numero di miss
+     */
+    public long getSearchCacheMisses();
+
+    /**
+     * <p>Azzera le misure di tutte le query.</p>
+     */
+    public void reset();
+
+}
@@ -0,0 +1,420 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import it.col.bean.Convenzione;
+import it.col.exception.AttributoNonValorizzatoException;
+import it.col.util.Utils;
+
+
+/**
+ * <p><code>SearchCache</code> &egrave; la cache dei risultati della ricerca
+ * libera delle convenzioni, indicizzata per "forma" normalizzata della
+ * richiesta: tipologia, finalit&agrave;, parole chiave (minuscole, senza
+ * accenti e ordinate) e gruppi dell'utente (ordinati); due ricerche che
+ * differiscono solo per maiuscole, accenti o ordine delle parole, fatte
+ * da utenti con gli stessi gruppi, condividono quindi lo stesso elemento.</p>
+ * <p>Ogni elemento conserva soltanto gli id delle convenzioni trovate,
+ * in ordine di rilevanza, e i conteggi per faccetta. I bean vengono
+ * materializzati dall'indice in memoria ({@link ConventionIndex}) quando
+ * &egrave; caricato; altrimenti dalla cache per id tenuta qui, alimentata
+ * dalle ricerche su database e condivisa tra gli elementi. Le convenzioni
+ * vengono copiate sia in memorizzazione sia in lettura, per cui le modifiche
+ * fatte dal chiamante non alterano la cache.</p>
+ * <p>La cache &egrave; limitata in numero di elementi (LRU) e nel tempo di
+ * permanenza (TTL); le convenzioni per id non pi&ugrave; riferite da alcun
+ * elemento vengono scartate quando superano il limite. Ogni scrittura su
+ * <code>convenzione</code>, <code>convenzione_finalita</code> o
+ * <code>contraente_convenzione</code> la svuota, perch&eacute; pu&ograve;
+ * cambiare il risultato di qualsiasi ricerca. Un contatore di generazione
+ * impedisce che una ricerca concorrente a una scrittura memorizzi
+ * risultati superati.</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class SearchCache {
+
+    /**
+     * <p>Numero massimo di ricerche memorizzate.</p>
+     */
+    static final int MAX_ENTRIES = 256;
+    /**
+     * <p>Numero di convenzioni per id oltre il quale vengono scartate
+     * quelle non pi&ugrave; riferite da alcuna ricerca memorizzata.</p>
+     */
+    static final int MAX_CONVENTIONS = 4096;
+    /**
+     * <p>Tempo massimo di permanenza di un elemento in cache (in nanosecondi).</p>
+     */
+    static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(10);
+    /**
+     * <p>Elementi memorizzati, in ordine di accesso (LRU).</p>
+     */
+    private final LinkedHashMap<String, Entry> entries;
+    /**
+     * <p>Convenzioni trovate dalle ricerche su database, per id.</p>
+     */
+    private final HashMap<Integer, Convenzione> conventions = new HashMap<>();
+    /**
+     * <p>Generazione corrente, incrementata da ogni invalidazione.</p>
+     */
+    private final AtomicLong generation = new AtomicLong();
+    /**
+     * <p>Contatori delle statistiche di utilizzo.</p>
+     */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+
+    /**
+     * <p>Elemento della cache: gli id delle convenzioni trovate,
+     * i conteggi per faccetta e l'istante di caricamento.</p>
+     */
+    private static final class Entry {
+        final int[] ids;
+        final Map<String, HashMap<Integer, Integer>> facets;
+        final long loadedAt;
+
+        Entry(int[] ids,
+              Map<String, HashMap<Integer, Integer>> facets) {
+            this.ids = ids;
+            this.facets = facets;
+            this.loadedAt = System.nanoTime();
+        }
+    }
+
+
+    /**
+     * <p>Costruttore: prepara la mappa ad accesso ordinato,
+     * che rimuove l'elemento usato meno di recente
+     * quando si supera il numero massimo di elementi.</p>
+     */
+    SearchCache() {
+        entries = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > MAX_ENTRIES) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * <p>Calcola la chiave normalizzata di una ricerca: le parole di ciascuna
+     * chiave vengono normalizzate e ordinate, le chiavi deduplicate e ordinate,
+     * i gruppi dell'utente deduplicati e ordinati.</p>
+     *
+     * @param key      chiave/i di ricerca immesse (separate da virgola)
+     * @param idType   id della tipologia, 0 per qualsiasi
+     * @param idScope  id della finalit&agrave;, 0 per qualsiasi
+     * @param groupIds id dei gruppi dell'utente
+     * @return <code>String</code> - chiave della cache
+     */
+    static String key(String key,
+                      int idType,
+                      int idScope,
+                      Integer[] groupIds) {
+        TreeSet<String> keys = new TreeSet<>();
+        for (String k : Utils.tokenizeByComma(key)) {
+            TreeSet<String> words = new TreeSet<>();
+            ConventionIndex.tokenize(k, words);
+            if (!words.isEmpty()) {
+                keys.add(String.join(" ", words));
+            }
+        }
+        StringBuilder groups = new StringBuilder();
+        int previous = 0;
+        for (int group : ConventionIndex.sortedIds(groupIds)) {
+            if (groups.length() == 0 || group != previous) {
+                groups.append(groups.length() == 0 ? "" : ",").append(group);
+            }
+            previous = group;
+        }
+        return idType + "|" + idScope + "|" + String.join(",", keys) + "|" + groups;
+    }
+
+
+    /**
+     * <p>Restituisce la generazione corrente, da leggere
+     * <em>prima</em> di eseguire la ricerca e da passare
+     * poi a {@link #put(String, int[], ArrayList, Map, long)}.</p>
+     *
+     * @return <code>long</code> - generazione corrente
+     */
+    long generation() {
+        return generation.get();
+    }
+
+
+    /**
+     * <p>Restituisce gli id delle convenzioni trovate da una ricerca
+     * memorizzata e copia nel dizionario passato i conteggi per faccetta;
+     * restituisce null se la ricerca non &egrave; presente o &egrave; scaduta.<br>
+     * Da usare quando le convenzioni vengono materializzate
+     * dall'indice in memoria.</p>
+     *
+     * @param key    chiave normalizzata della ricerca
+     * @param facets dizionario da valorizzare con i conteggi per faccetta, o null
+     * @return <code>int[]</code> - id delle convenzioni trovate, in ordine di rilevanza, oppure null
+     */
+    int[] getIds(String key,
+                 Map<String, HashMap<Integer, Integer>> facets) {
+        Entry entry;
+        synchronized (entries) {
+            entry = lookup(key);
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        copyFacets(entry, facets);
+        hits.increment();
+        return entry.ids;
+    }
+
+
+    /**
+     * <p>Restituisce una copia delle convenzioni trovate da una ricerca
+     * memorizzata, materializzate dalla cache per id, e copia nel dizionario
+     * passato i conteggi per faccetta; restituisce null se la ricerca
+     * non &egrave; presente, &egrave; scaduta o se qualcuna delle sue
+     * convenzioni non &egrave; pi&ugrave; in cache.</p>
+     *
+     * @param key    chiave normalizzata della ricerca
+     * @param facets dizionario da valorizzare con i conteggi per faccetta, o null
+     * @return <code>ArrayList&lt;Convenzione&gt;</code> - convenzioni trovate, oppure null
+     * @throws AttributoNonValorizzatoException se l'id di una convenzione memorizzata non risulta valorizzato
+     */
+    ArrayList<Convenzione> getConventions(String key,
+                                          Map<String, HashMap<Integer, Integer>> facets)
+                                   throws AttributoNonValorizzatoException {
+        Entry entry;
+        ArrayList<Convenzione> found = null;
+        synchronized (entries) {
+            entry = lookup(key);
+            if (entry != null) {
+                found = new ArrayList<>(entry.ids.length);
+                for (int id : entry.ids) {
+                    Convenzione c = conventions.get(id);
+                    if (c == null) {
+                        found = null;
+                        break;
+                    }
+                    found.add(c);
+                }
+            }
+        }
+        if (found == null) {
+            misses.increment();
+            return null;
+        }
+        // Le convenzioni in cache non vengono mai modificate: si copiano fuori dal lock
+        for (int i = 0; i < found.size(); i++) {
+            found.set(i, new Convenzione(found.get(i)));
+        }
+        copyFacets(entry, facets);
+        hits.increment();
+        return found;
+    }
+
+
+    /**
+     * <p>Memorizza i risultati di una ricerca, a meno che nel frattempo
+     * non sia intervenuta un'invalidazione.</p>
+     *
+     * @param key              chiave normalizzata della ricerca
+     * @param ids              id delle convenzioni trovate, in ordine di rilevanza
+     * @param found            convenzioni trovate, da memorizzare per id, o null se materializzate dall'indice
+     * @param facets           conteggi per faccetta calcolati dalla ricerca
+     * @param generationAtLoad generazione letta prima della ricerca
+     * @throws AttributoNonValorizzatoException se l'id di una convenzione non risulta valorizzato
+     */
+    void put(String key,
+             int[] ids,
+             ArrayList<Convenzione> found,
+             Map<String, HashMap<Integer, Integer>> facets,
+             long generationAtLoad)
+      throws AttributoNonValorizzatoException {
+        HashMap<String, HashMap<Integer, Integer>> counts = new HashMap<>();
+        facets.forEach((name, values) -> counts.put(name, new HashMap<>(values)));
+        Entry entry = new Entry(ids.clone(), counts);
+        ArrayList<Convenzione> copies = null;
+        if (found != null) {
+            copies = new ArrayList<>(found.size());
+            for (Convenzione c : found) {
+                copies.add(new Convenzione(c));
+            }
+        }
+        synchronized (entries) {
+            if (generation.get() != generationAtLoad) {
+                return;
+            }
+            entries.put(key, entry);
+            if (copies != null) {
+                for (Convenzione c : copies) {
+                    conventions.put(c.getId(), c);
+                }
+                if (conventions.size() > MAX_CONVENTIONS) {
+                    retainReferenced();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * <p>Svuota la cache dei risultati dopo l'inserimento o la modifica
+     * di una convenzione (o il suo collegamento a nuovi contraenti),
+     * o dopo il ricaricamento dell'indice in memoria.</p>
+     */
+    void invalidate() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            invalidations.add(entries.size());
+            entries.clear();
+            conventions.clear();
+        }
+    }
+
+
+    /**
+     * <p>Restituisce l'elemento di una chiave, rimuovendolo se scaduto;
+     * va invocato tenendo il lock sugli elementi.</p>
+     *
+     * @param key chiave normalizzata della ricerca
+     * @return <code>Entry</code> - elemento valido, oppure null
+     */
+    private Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.loadedAt > TTL_NANOS) {
+            entries.remove(key);
+            evictions.increment();
+            entry = null;
+        }
+        return entry;
+    }
+
+
+    /**
+     * <p>Scarta le convenzioni per id non riferite da alcun elemento;
+     * va invocato tenendo il lock sugli elementi.</p>
+     */
+    private void retainReferenced() {
+        HashSet<Integer> referenced = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            for (int id : entry.ids) {
+                referenced.add(id);
+            }
+        }
+        conventions.keySet().retainAll(referenced);
+    }
+
+
+    /**
+     * <p>Copia i conteggi per faccetta di un elemento nel dizionario passato.</p>
+     *
+     * @param entry  elemento della cache
+     * @param facets dizionario da valorizzare, o null
+     */
+    private static void copyFacets(Entry entry,
+                                   Map<String, HashMap<Integer, Integer>> facets) {
+        if (facets != null) {
+            entry.facets.forEach((name, counts) -> facets.put(name, new HashMap<>(counts)));
+        }
+    }
+
+
+    /* **************************************************** *
+     *                  Statistiche (getters)               *
+     * **************************************************** */
+    /**
+     * @return <code>long</code> - numero di ricerche soddisfatte dalla cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return <code>long</code> - numero di ricerche eseguite sull'indice o sul database
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return <code>long</code> - numero di elementi rimossi per superamento della dimensione massima o del TTL
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return <code>long</code> - numero di elementi rimossi a seguito di scritture sulle convenzioni
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return <code>int</code> - numero di ricerche attualmente in cache
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+}
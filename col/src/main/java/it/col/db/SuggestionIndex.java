@@ -0,0 +1,553 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+
+/**
+ * <p><code>SuggestionIndex</code> &egrave; l'indice, residente in memoria,
+ * usato per i suggerimenti di completamento della ricerca: titoli
+ * e numeri di repertorio delle convenzioni, nomi dei contraenti.</p>
+ * <p>Ogni etichetta viene normalizzata (minuscolo, senza accenti) e indicizzata
+ * a partire dall'inizio di ciascuna delle sue parole: l'indice &egrave; un array
+ * ordinato di <code>long</code>, ognuno dei quali codifica la coppia
+ * (etichetta, posizione di inizio parola), ordinato per il testo che segue
+ * la posizione. I completamenti di un prefisso occupano quindi un intervallo
+ * contiguo, individuato con una ricerca binaria, senza alcuna stringa
+ * aggiuntiva in memoria.</p>
+ * <p>Titoli e numeri di repertorio vengono suggeriti soltanto agli utenti
+ * che appartengono ad almeno uno dei gruppi della convenzione; i nomi dei
+ * contraenti, come il loro elenco, sono visibili a tutti gli utenti
+ * e occupano un segmento a parte, che viene ricaricato per intero
+ * dopo ogni scrittura e a ogni ricaricamento dell'indice, in modo da
+ * recepire anche i contraenti inseriti al di fuori dell'applicazione.</p>
+ * <p>Le etichette inserite o modificate dopo il caricamento finiscono in un
+ * piccolo segmento aggiuntivo, riordinato a ogni modifica; le versioni
+ * precedenti vengono mascherate e, superata una certa dimensione, il segmento
+ * viene fuso con quello principale. Le letture non acquisiscono lock.</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class SuggestionIndex {
+
+    /**
+     * <p>Tipo di suggerimento: titolo di una convenzione.</p>
+     */
+    public static final String TITLE = "titolo";
+    /**
+     * <p>Tipo di suggerimento: numero di repertorio di una convenzione.</p>
+     */
+    public static final String REPERTORY = "repertorio";
+    /**
+     * <p>Tipo di suggerimento: nome di un contraente.</p>
+     */
+    public static final String CONTRACTOR = "contraente";
+    /**
+     * <p>Numero di etichette del segmento aggiuntivo oltre il quale
+     * questo viene fuso con il segmento principale.</p>
+     */
+    private static final int MAX_DELTA = 256;
+    /**
+     * <p>Ordinamento dei suggerimenti: prima quelli la cui etichetta inizia
+     * con il prefisso, poi i pi&ugrave; brevi, quindi in ordine alfabetico.</p>
+     */
+    private static final Comparator<long[]> RANKING =
+            Comparator.comparingLong((long[] c) -> c[0]).thenComparingLong(c -> c[1]);
+    /**
+     * <p>Stato corrente, letto dalle richieste.</p>
+     */
+    private volatile State state = null;
+    /**
+     * <p>Etichette del segmento aggiuntivo per chiave (stato dello scrittore).</p>
+     */
+    private final LinkedHashMap<String, Suggestion> delta = new LinkedHashMap<>();
+
+
+    /* ********************************************************** *
+     *                          Suggerimenti                      *
+     * ********************************************************** */
+    /**
+     * <p>Etichetta suggerita, con il tipo e l'id dell'oggetto cui si riferisce.</p>
+     */
+    public static final class Suggestion {
+        /** Tipo del suggerimento */
+        private final String kind;
+        /** Id della convenzione o del contraente */
+        private final int id;
+        /** Etichetta originale */
+        private final String label;
+        /** Etichetta normalizzata */
+        final String key;
+        /** Id dei gruppi cui l'etichetta &egrave; visibile, ordinati, o null se visibile a tutti */
+        final int[] groups;
+
+        /**
+         * <p>Costruttore di un'etichetta visibile a tutti gli utenti.</p>
+         *
+         * @param kind  tipo del suggerimento
+         * @param id    id della convenzione o del contraente
+         * @param label etichetta
+         */
+        Suggestion(String kind,
+                   int id,
+                   String label) {
+            this(kind, id, label, null);
+        }
+
+        /**
+         * <p>Costruttore.</p>
+         *
+         * @param kind   tipo del suggerimento
+         * @param id     id della convenzione o del contraente
+         * @param label  etichetta
+         * @param groups id ordinati dei gruppi cui l'etichetta &egrave; visibile, o null se visibile a tutti
+         */
+        Suggestion(String kind,
+                   int id,
+                   String label,
+                   int[] groups) {
+            this.kind = kind;
+            this.id = id;
+            this.label = label;
+            this.key = ConventionIndex.normalize(label);
+            this.groups = groups;
+        }
+
+        /**
+         * @return <code>String</code> - tipo del suggerimento
+         */
+        public String getKind() {
+            return kind;
+        }
+
+        /**
+         * @return <code>int</code> - id della convenzione o del contraente
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return <code>String</code> - etichetta suggerita
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * <p>Restituisce true se l'etichetta &egrave; visibile a un utente dei gruppi dati.</p>
+         *
+         * @param userGroups id ordinati dei gruppi dell'utente
+         * @return <code>boolean</code> - true se l'etichetta pu&ograve; essere suggerita all'utente
+         */
+        boolean isVisibleTo(int[] userGroups) {
+            return groups == null || ConventionIndex.intersects(groups, userGroups);
+        }
+
+        /**
+         * <p>Restituisce la chiave che identifica l'oggetto suggerito.</p>
+         *
+         * @return <code>String</code> - tipo e id dell'oggetto
+         */
+        String identity() {
+            return kind + ':' + id;
+        }
+    }
+
+
+    /**
+     * <p>Segmento immutabile: etichette e posizioni di inizio parola ordinate.</p>
+     */
+    private static final class Segment {
+        /** Segmento vuoto */
+        static final Segment EMPTY = new Segment(new Suggestion[0], new long[0]);
+        /** Etichette */
+        final Suggestion[] entries;
+        /** Coppie (indice etichetta, posizione) ordinate per testo seguente */
+        final long[] starts;
+
+        /**
+         * <p>Costruttore.</p>
+         *
+         * @param entries etichette
+         * @param starts  posizioni ordinate
+         */
+        Segment(Suggestion[] entries,
+                long[] starts) {
+            this.entries = entries;
+            this.starts = starts;
+        }
+
+        /**
+         * <p>Costruisce un segmento ordinando tutte le posizioni di inizio parola.</p>
+         *
+         * @param all etichette del segmento
+         * @return <code>Segment</code> - segmento ordinato
+         */
+        static Segment of(Collection<Suggestion> all) {
+            Suggestion[] entries = all.toArray(new Suggestion[0]);
+            ArrayList<Long> starts = new ArrayList<>();
+            for (int i = 0; i < entries.length; i++) {
+                String key = entries[i].key;
+                for (int offset = 0; offset < key.length(); offset++) {
+                    if (isWordStart(key, offset)) {
+                        starts.add(((long) i << 32) | offset);
+                    }
+                }
+            }
+            starts.sort((a, b) -> compareSuffixes(entries, a, b));
+            long[] sorted = new long[starts.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = starts.get(i);
+            }
+            return new Segment(entries, sorted);
+        }
+
+        /**
+         * <p>Restituisce l'etichetta normalizzata di una posizione.</p>
+         *
+         * @param start posizione codificata
+         * @return <code>String</code> - etichetta normalizzata
+         */
+        String key(long start) {
+            return entries[(int) (start >>> 32)].key;
+        }
+    }
+
+
+    /**
+     * <p>Stato immutabile dell'indice.</p>
+     */
+    private static final class State {
+        /** Segmento principale */
+        final Segment base;
+        /** Segmento aggiuntivo */
+        final Segment delta;
+        /** Oggetti del segmento principale superati da quello aggiuntivo */
+        final Set<String> masked;
+        /** Segmento dei contraenti */
+        final Segment contractors;
+
+        /**
+         * <p>Costruttore.</p>
+         *
+         * @param base        segmento principale
+         * @param delta       segmento aggiuntivo
+         * @param masked      oggetti mascherati nel segmento principale
+         * @param contractors segmento dei contraenti
+         */
+        State(Segment base,
+              Segment delta,
+              Set<String> masked,
+              Segment contractors) {
+            this.base = base;
+            this.delta = delta;
+            this.masked = masked;
+            this.contractors = contractors;
+        }
+    }
+
+
+    /* ********************************************************** *
+     *                     Metodi di aggiornamento                *
+     * ********************************************************** */
+    /**
+     * <p>Ricostruisce l'indice a partire dalle etichette di tutte le convenzioni;
+     * i contraenti gi&agrave; caricati vengono mantenuti.</p>
+     *
+     * @param all etichette di tutte le convenzioni
+     */
+    synchronized void rebuild(Collection<Suggestion> all) {
+        State current = state;
+        delta.clear();
+        state = new State(Segment.of(all), Segment.EMPTY, new HashSet<>(),
+                          (current == null ? Segment.EMPTY : current.contractors));
+    }
+
+
+    /**
+     * <p>Sostituisce i nomi di tutti i contraenti.</p>
+     *
+     * @param all etichette di tutti i contraenti
+     */
+    synchronized void replaceContractors(Collection<Suggestion> all) {
+        State current = state;
+        if (current == null) {
+            // Indice non ancora caricato: i contraenti verranno letti al caricamento
+            return;
+        }
+        state = new State(current.base, current.delta, current.masked, Segment.of(all));
+    }
+
+
+    /**
+     * <p>Sostituisce le etichette di un oggetto (p.es. titolo e repertorio
+     * di una convenzione appena inserita o modificata).</p>
+     *
+     * @param kinds       tipi delle etichette da sostituire
+     * @param id          id dell'oggetto
+     * @param suggestions nuove etichette dell'oggetto
+     */
+    synchronized void replace(String[] kinds,
+                              int id,
+                              Collection<Suggestion> suggestions) {
+        State current = state;
+        if (current == null) {
+            // Indice non ancora caricato: l'oggetto verra' letto al caricamento
+            return;
+        }
+        Set<String> masked = new HashSet<>(current.masked);
+        for (String kind : kinds) {
+            String identity = kind + ':' + id;
+            delta.remove(identity);
+            masked.add(identity);
+        }
+        for (Suggestion suggestion : suggestions) {
+            if (suggestion.label != null && !suggestion.key.isEmpty()) {
+                delta.put(suggestion.identity(), suggestion);
+            }
+        }
+        if (delta.size() > MAX_DELTA) {
+            // Fonde il segmento aggiuntivo con quello principale
+            ArrayList<Suggestion> all = new ArrayList<>(current.base.entries.length + delta.size());
+            for (Suggestion suggestion : current.base.entries) {
+                if (!masked.contains(suggestion.identity())) {
+                    all.add(suggestion);
+                }
+            }
+            all.addAll(delta.values());
+            rebuild(all);
+            return;
+        }
+        state = new State(current.base, Segment.of(delta.values()), masked, current.contractors);
+    }
+
+
+    /* ********************************************************** *
+     *                       Metodi di ricerca                    *
+     * ********************************************************** */
+    /**
+     * <p>Restituisce true se l'indice &egrave; stato caricato.</p>
+     *
+     * @return <code>boolean</code> - true se l'indice pu&ograve; rispondere alle richieste
+     */
+    public boolean isLoaded() {
+        return state != null;
+    }
+
+
+    /**
+     * <p>Restituisce i migliori suggerimenti per il prefisso digitato,
+     * tra le etichette visibili ai gruppi dell'utente:
+     * prima le etichette che iniziano con il prefisso, poi quelle che
+     * contengono una parola che inizia con il prefisso; a parit&agrave;,
+     * le pi&ugrave; brevi.</p>
+     * <p>Vengono classificate tutte le corrispondenze, e il limite
+     * si applica alla classifica: una selezione limitata a
+     * <code>limit</code> elementi evita di ordinarle tutte.</p>
+     *
+     * @param prefix   testo digitato dall'utente
+     * @param limit    numero massimo di suggerimenti
+     * @param groupIds id dei gruppi dell'utente
+     * @return <code>List&lt;Suggestion&gt;</code> - suggerimenti, al pi&ugrave; <code>limit</code>
+     */
+    public List<Suggestion> suggest(String prefix,
+                                    int limit,
+                                    Integer[] groupIds) {
+        State current = state;
+        ArrayList<Suggestion> suggestions = new ArrayList<>();
+        if (current == null || prefix == null || limit <= 0) {
+            return suggestions;
+        }
+        String p = ConventionIndex.normalize(prefix).trim();
+        if (p.isEmpty()) {
+            return suggestions;
+        }
+        int[] groups = ConventionIndex.sortedIds(groupIds);
+        // Candidati come {rango, posizione nella lista}, per etichetta: il rango
+        // combina l'inizio della corrispondenza (0 = inizio etichetta) e la lunghezza
+        HashMap<String, long[]> ranked = new HashMap<>();
+        ArrayList<Suggestion> candidates = new ArrayList<>();
+        collect(current.base, current.masked, p, groups, candidates, ranked);
+        collect(current.delta, null, p, groups, candidates, ranked);
+        collect(current.contractors, null, p, groups, candidates, ranked);
+        // Tiene i migliori 'limit' candidati; in testa alla coda il peggiore
+        PriorityQueue<long[]> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        for (long[] candidate : ranked.values()) {
+            best.add(candidate);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        while (!best.isEmpty()) {
+            suggestions.add(candidates.get((int) best.poll()[1]));
+        }
+        // La coda restituisce i candidati dal peggiore al migliore
+        Collections.reverse(suggestions);
+        return suggestions;
+    }
+
+
+    /**
+     * <p>Raccoglie le etichette visibili di un segmento che contengono
+     * una parola che inizia con il prefisso dato; di un'etichetta che
+     * corrisponde in pi&ugrave; punti viene tenuto il rango migliore.</p>
+     *
+     * @param segment    segmento da esaminare
+     * @param masked     oggetti da ignorare, o null
+     * @param p          prefisso normalizzato
+     * @param groups     id ordinati dei gruppi dell'utente
+     * @param candidates etichette raccolte
+     * @param ranked     rango delle etichette raccolte, per tipo ed etichetta normalizzata
+     */
+    private static void collect(Segment segment,
+                                Set<String> masked,
+                                String p,
+                                int[] groups,
+                                List<Suggestion> candidates,
+                                Map<String, long[]> ranked) {
+        long[] starts = segment.starts;
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(segment.key(starts[mid]), (int) starts[mid], p) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < starts.length; i++) {
+            String key = segment.key(starts[i]);
+            int offset = (int) starts[i];
+            if (!key.startsWith(p, offset)) {
+                break;
+            }
+            Suggestion suggestion = segment.entries[(int) (starts[i] >>> 32)];
+            if (masked != null && masked.contains(suggestion.identity())) {
+                continue;
+            }
+            if (!suggestion.isVisibleTo(groups)) {
+                continue;
+            }
+            long rank = ((offset == 0 ? 0L : 1L) << 32) | key.length();
+            long[] known = ranked.get(suggestion.kind + ':' + suggestion.key);
+            if (known == null) {
+                ranked.put(suggestion.kind + ':' + suggestion.key, new long[] { rank, candidates.size() });
+                candidates.add(suggestion);
+            } else if (rank < known[0]) {
+                known[0] = rank;
+            }
+        }
+    }
+
+
+    /**
+     * <p>Confronta il testo che segue una posizione con un prefisso:
+     * restituisce 0 se il testo inizia con il prefisso.</p>
+     *
+     * @param key    etichetta normalizzata
+     * @param offset posizione di inizio del testo
+     * @param p      prefisso
+     * @return <code>int</code> - negativo, zero o positivo come <code>compareTo</code>
+     */
+    private static int comparePrefix(String key,
+                                     int offset,
+                                     String p) {
+        int n = Math.min(key.length() - offset, p.length());
+        for (int i = 0; i < n; i++) {
+            int diff = key.charAt(offset + i) - p.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (key.length() - offset < p.length() ? -1 : 0);
+    }
+
+
+    /**
+     * <p>Confronta i testi che seguono due posizioni codificate.</p>
+     *
+     * @param entries etichette del segmento
+     * @param a       prima posizione
+     * @param b       seconda posizione
+     * @return <code>int</code> - negativo, zero o positivo come <code>compareTo</code>
+     */
+    private static int compareSuffixes(Suggestion[] entries,
+                                       long a,
+                                       long b) {
+        String keyA = entries[(int) (a >>> 32)].key;
+        String keyB = entries[(int) (b >>> 32)].key;
+        int offA = (int) a;
+        int offB = (int) b;
+        int n = Math.min(keyA.length() - offA, keyB.length() - offB);
+        for (int i = 0; i < n; i++) {
+            int diff = keyA.charAt(offA + i) - keyB.charAt(offB + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (keyA.length() - offA) - (keyB.length() - offB);
+    }
+
+
+    /**
+     * <p>Restituisce true se in una data posizione inizia una parola.</p>
+     *
+     * @param key    etichetta normalizzata
+     * @param offset posizione
+     * @return <code>boolean</code> - true se la posizione &egrave; l'inizio di una parola
+     */
+    private static boolean isWordStart(String key,
+                                       int offset) {
+        return Character.isLetterOrDigit(key.charAt(offset))
+               && (offset == 0 || !Character.isLetterOrDigit(key.charAt(offset - 1)));
+    }
+
+}
@@ -0,0 +1,356 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.postgresql.PGStatement;
+
+import it.col.db.QueryMetrics.QueryStats;
+
+
+/**
+ * <p><code>TrackedConnection</code> avvolge una connessione ottenuta
+ * dal pool del DataSource e tiene traccia di tutti gli statement
+ * creati attraverso di essa.</p>
+ * <p>Alla chiusura della connessione (ovvero alla sua restituzione al pool)
+ * chiude deterministicamente tutti gli statement rimasti aperti
+ * &ndash; e con essi i relativi ResultSet &ndash; in modo che le risorse
+ * lato server non sopravvivano al metodo che le ha create, anche quando
+ * questo riassegna lo stesso riferimento a PreparedStatement diversi
+ * senza chiudere il precedente.<br>
+ * Sul database di sviluppo (<code>coldev</code>) ogni statement trovato
+ * ancora aperto alla chiusura viene segnalato nel log, con il testo
+ * della query, per poterlo individuare e correggere.</p>
+ * <p>Inoltre, i PreparedStatement creati a partire dalle query statiche
+ * dichiarate nell'interfaccia {@link Query} vengono preparati lato server
+ * fin dalla prima esecuzione, cos&igrave; che il driver li conservi nella
+ * propria cache degli statement della connessione fisica e li riusi
+ * alle esecuzioni successive.</p>
+ * <p>Infine, gli statement restituiti al chiamante sono a loro
+ * volta avvolti per misurare, per ogni query nominata, l'attesa
+ * della connessione e il tempo di esecuzione, mentre i ResultSet
+ * vengono avvolti in un {@link TrackedResultSet}, che delega
+ * direttamente al ResultSet reale senza riflessione e ne misura righe
+ * e tempo di lettura/mappatura; le misure vengono registrate
+ * in {@link QueryMetrics}.</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+final class TrackedConnection implements InvocationHandler {
+
+    /**
+     * <p>Logger della classe per scrivere i messaggi di errore.</p>
+     */
+    private static Logger LOG = Logger.getLogger(TrackedConnection.class.getName());
+    /**
+     * <p>Numero di esecuzioni dopo il quale il driver passa a uno statement
+     * preparato lato server: 1 significa fin dalla prima.</p>
+     */
+    private static final int PREPARE_THRESHOLD = 1;
+    /**
+     * <p>Connessione reale, ottenuta dal pool.</p>
+     */
+    private final Connection con;
+    /**
+     * <p>Se true, gli statement rimasti aperti vengono segnalati nel log.</p>
+     */
+    private final boolean reportLeaks;
+    /**
+     * <p>Attesa per ottenere la connessione dal pool, in nanosecondi;
+     * viene attribuita alla prima query eseguita e poi azzerata (-1).</p>
+     */
+    private long acquireNanos;
+    /**
+     * <p>Statement creati attraverso la connessione.</p>
+     */
+    private final List<TrackedStatement> statements = new ArrayList<>();
+
+
+    /**
+     * <p>Costruttore privato: le connessioni tracciate si ottengono tramite
+     * {@link #wrap(Connection, boolean, long)}.</p>
+     *
+     * @param con          connessione reale
+     * @param reportLeaks  flag di segnalazione degli statement non chiusi
+     * @param acquireNanos attesa per ottenere la connessione, in nanosecondi
+     */
+    private TrackedConnection(Connection con,
+                              boolean reportLeaks,
+                              long acquireNanos) {
+        this.con = con;
+        this.reportLeaks = reportLeaks;
+        this.acquireNanos = acquireNanos;
+    }
+
+
+    /**
+     * <p>Avvolge una connessione in un proxy che ne traccia gli statement.</p>
+     *
+     * @param con          connessione ottenuta dal pool
+     * @param reportLeaks  se true, segnala nel log gli statement trovati aperti alla chiusura
+     * @param acquireNanos attesa per ottenere la connessione dal pool, in nanosecondi
+     * @return <code>Connection</code> - la connessione tracciata
+     */
+    static Connection wrap(Connection con,
+                           boolean reportLeaks,
+                           long acquireNanos) {
+        return (Connection) Proxy.newProxyInstance(TrackedConnection.class.getClassLoader(),
+                                                   new Class<?>[] { Connection.class },
+                                                   new TrackedConnection(con, reportLeaks, acquireNanos));
+    }
+
+
+    /**
+     * <p>Intercetta le chiamate alla connessione:<ul>
+     * <li>gli statement creati vengono registrati e avvolti per le misure;</li>
+     * <li>la chiusura della connessione chiude prima gli statement registrati;</li>
+     * <li>tutte le altre chiamate vengono delegate alla connessione reale.</li>
+     * </ul></p>
+     *
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+     */
+    @Override
+    public Object invoke(Object proxy,
+                         Method method,
+                         Object[] args)
+                  throws Throwable {
+        String name = method.getName();
+        if ("close".equals(name) && method.getParameterCount() == 0) {
+            close();
+            return null;
+        }
+        Object result = delegate(con, method, args);
+        if (result instanceof Statement) {
+            Statement st = (Statement) result;
+            String sql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : null;
+            if (st instanceof PreparedStatement && QueryMetrics.staticName(sql) != null) {
+                if (st.isWrapperFor(PGStatement.class)) {
+                    st.unwrap(PGStatement.class).setPrepareThreshold(PREPARE_THRESHOLD);
+                }
+            }
+            TrackedStatement tracked = new TrackedStatement(st, sql);
+            statements.add(tracked);
+            return Proxy.newProxyInstance(TrackedConnection.class.getClassLoader(),
+                                          new Class<?>[] { method.getReturnType() },
+                                          tracked);
+        }
+        return result;
+    }
+
+
+    /**
+     * <p>Chiude tutti gli statement rimasti aperti e quindi la connessione reale,
+     * che torna cos&igrave; al pool priva di risorse pendenti.</p>
+     *
+     * @throws SQLException se si verifica un problema nella chiusura della connessione reale
+     */
+    private void close()
+                throws SQLException {
+        try {
+            for (TrackedStatement tracked : statements) {
+                tracked.finishResultSet();
+                try {
+                    if (!tracked.st.isClosed()) {
+                        if (reportLeaks) {
+                            LOG.warning("Statement non chiuso dal chiamante, chiuso alla restituzione della connessione: "
+                                        + abbreviate(tracked.sql));
+                        }
+                        tracked.st.close();
+                    }
+                } catch (SQLException sqle) {
+                    LOG.warning("Problema nella chiusura di uno statement: " + sqle.getMessage());
+                }
+            }
+            statements.clear();
+        } finally {
+            con.close();
+        }
+    }
+
+
+    /**
+     * <p>Restituisce le statistiche della query passata, attribuendo
+     * alla prima query eseguita sulla connessione l'attesa
+     * necessaria a ottenerla.</p>
+     *
+     * @param sql testo della query
+     * @return <code>QueryStats</code> - statistiche della query
+     */
+    private QueryStats statsFor(String sql) {
+        QueryStats stats = QueryMetrics.stats(QueryMetrics.nameOf(sql));
+        if (acquireNanos >= 0) {
+            stats.acquire.record(acquireNanos);
+            acquireNanos = -1;
+        }
+        return stats;
+    }
+
+
+    /**
+     * <p>Invoca un metodo sull'oggetto reale, propagando l'eccezione originale.</p>
+     *
+     * @param target oggetto reale
+     * @param method metodo da invocare
+     * @param args   argomenti
+     * @return <code>Object</code> - valore restituito dal metodo
+     * @throws Throwable l'eccezione sollevata dal metodo
+     */
+    static Object delegate(Object target,
+                           Method method,
+                           Object[] args)
+                    throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+
+    /**
+     * <p>Restituisce una versione abbreviata e compattata del testo di una query,
+     * adatta al log.</p>
+     *
+     * @param sql testo della query (eventualmente null)
+     * @return <code>String</code> - testo abbreviato
+     */
+    private static String abbreviate(String sql) {
+        if (sql == null) {
+            return "(statement non preparato)";
+        }
+        String compact = sql.replaceAll("\\s+", " ").trim();
+        return (compact.length() > 120 ? compact.substring(0, 120) + "..." : compact);
+    }
+
+
+    /* ********************************************************** *
+     *                          Statement                         *
+     * ********************************************************** */
+    /**
+     * <p>Avvolge uno statement creato dalla connessione tracciata
+     * misurandone le esecuzioni.</p>
+     */
+    private final class TrackedStatement implements InvocationHandler {
+        /** Statement reale */
+        final Statement st;
+        /** Testo della query, se preparata (null per gli statement semplici) */
+        final String sql;
+        /** ResultSet corrente, in lettura */
+        private TrackedResultSet current;
+
+        /**
+         * <p>Costruttore.</p>
+         *
+         * @param st  statement reale
+         * @param sql testo della query preparata, o null
+         */
+        TrackedStatement(Statement st,
+                         String sql) {
+            this.st = st;
+            this.sql = sql;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+         */
+        @Override
+        public Object invoke(Object proxy,
+                             Method method,
+                             Object[] args)
+                      throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                finishResultSet();
+                st.close();
+                return null;
+            }
+            if (!name.startsWith("execute")) {
+                return delegate(st, method, args);
+            }
+            // Esecuzione: il testo arriva qui per gli statement non preparati
+            String query = (sql == null && args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : sql;
+            QueryStats stats = statsFor(query);
+            finishResultSet();
+            Object result;
+            long start = System.nanoTime();
+            try {
+                result = delegate(st, method, args);
+            } catch (Throwable t) {
+                stats.errors.increment();
+                throw t;
+            }
+            stats.execute.record(System.nanoTime() - start);
+            if (result instanceof ResultSet) {
+                current = new TrackedResultSet((ResultSet) result, stats);
+                return current;
+            } else if (result instanceof Integer) {
+                stats.rows.add((Integer) result);
+            } else if (result instanceof Long) {
+                stats.rows.add((Long) result);
+            } else if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    stats.rows.add(Math.max(count, 0));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * <p>Registra le misure del ResultSet corrente, se non ancora fatto.</p>
+         */
+        void finishResultSet() {
+            if (current != null) {
+                current.finish();
+                current = null;
+            }
+        }
+    }
+
+}
@@ -50,6 +50,16 @@
  * <li>QueryImpl</li>
  * <li>DBManager</li>
  * <li>DBWrapper</li>
+ * <li>SearchCache</li>
+ * <li>ConventionCache</li>
+ * <li>ConventionIndex</li>
+ * <li>SuggestionIndex</li>
+ * <li>PageCursor</li>
+ * <li>TrackedConnection</li>
+ * <li>TrackedResultSet</li>
+ * <li>QueryMetrics</li>
+ * <li><em>QueryMetricsMXBean</em></li>
+ * <li>LatencyHistogram</li>
  * </ul></code>
  * 
  * <p>Created on Thu Jul 10 10:45:23 AM CEST 2025</p>
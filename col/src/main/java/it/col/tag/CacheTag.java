@@ -0,0 +1,121 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.tag;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.tagext.JspFragment;
+import javax.servlet.jsp.tagext.SimpleTagSupport;
+
+
+/**
+ * <p><code>CacheTag</code> &egrave; il tag <code>&lt;col:cache&gt;</code>,
+ * che memorizza nella {@link FragmentCache} l'output generato dal suo corpo
+ * e, finch&eacute; la versione non cambia, lo riscrive senza rielaborarlo
+ * (niente valutazione delle espressioni EL, dei cicli, della formattazione
+ * delle date...).</p>
+ * <pre>
+ * &lt;col:cache key="conv-detail:${conv.id}" version="${conv.dataUltimaModifica.time}.${conv.oraUltimaModifica}"&gt;
+ *   ...
+ * &lt;/col:cache&gt;
+ * </pre>
+ * <p>Il corpo deve dipendere solo da ci&ograve; che &egrave; identificato
+ * dalla chiave e dalla versione: parti che dipendono dall'utente,
+ * dalla richiesta o dalla data corrente vanno lasciate fuori dal tag
+ * oppure incluse nella chiave.</p>
+ *
+ * <p>Created on Sun Oct 18 2026</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public class CacheTag extends SimpleTagSupport {
+
+    /**
+     * <p>Chiave del frammento.</p>
+     */
+    private String key;
+    /**
+     * <p>Versione del frammento.</p>
+     */
+    private String version = "";
+
+
+    /**
+     * <p>Scrive il frammento memorizzato, se valido,
+     * altrimenti elabora il corpo, lo memorizza e lo scrive.</p>
+     *
+     * @throws JspException se si verifica un problema nell'elaborazione del corpo
+     * @throws IOException  se si verifica un problema nella scrittura dell'output
+     */
+    @Override
+    public void doTag() throws JspException, IOException {
+        JspFragment body = getJspBody();
+        if (body == null) {
+            return;
+        }
+        FragmentCache cache = FragmentCache.getInstance();
+        String content = cache.get(key, version);
+        if (content == null) {
+            long dataVersion = cache.dataVersion();
+            StringWriter out = new StringWriter(1024);
+            body.invoke(out);
+            content = out.toString();
+            cache.put(key, version, content, dataVersion);
+        }
+        getJspContext().getOut().write(content);
+    }
+
+
+    /**
+     * @param key la chiave del frammento da impostare
+     */
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+
+    /**
+     * @param version la versione del frammento da impostare
+     */
+    public void setVersion(String version) {
+        this.version = (version == null ? "" : version);
+    }
+
+}
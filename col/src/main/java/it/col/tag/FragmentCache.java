@@ -0,0 +1,216 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.tag;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import it.col.db.DBWrapper;
+
+
+/**
+ * <p><code>FragmentCache</code> &egrave; una cache in memoria di frammenti
+ * di output gi&agrave; generati (HTML delle pagine, righe JSON degli elenchi),
+ * indicizzati per chiave (p.es. frammento e identificativo della convenzione)
+ * e associati a una versione (p.es. data e ora di ultima modifica
+ * della convenzione): un frammento la cui versione non coincide
+ * con quella richiesta viene rigenerato.</p>
+ * <p>Oltre che dalla versione, la validit&agrave; di ogni frammento dipende
+ * dalla versione dei dati ({@link DBWrapper#getDataVersion()}) letta prima
+ * di generarlo: qualunque scrittura effettuata attraverso l'applicazione
+ * invalida quindi tutti i frammenti, compresi quelli che mostrano dati
+ * collegati (p.es. i contraenti di una convenzione).
+ * Un frammento generato mentre era in corso una scrittura non viene
+ * considerato valido.</p>
+ * <p>La cache &egrave; limitata in numero di elementi,
+ * con politica di rimozione LRU (Least Recently Used).</p>
+ *
+ * <p>Created on Sun Oct 18 2026</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class FragmentCache {
+
+    /**
+     * <p>Numero massimo di frammenti memorizzati.</p>
+     */
+    static final int MAX_ENTRIES = 4096;
+    /**
+     * <p>Istanza condivisa da tag e servlet.</p>
+     */
+    private static final FragmentCache INSTANCE = new FragmentCache();
+    /**
+     * <p>Frammenti memorizzati, in ordine di accesso (LRU).</p>
+     */
+    private final LinkedHashMap<String, Entry> entries;
+    /**
+     * <p>Contatori delle statistiche di utilizzo.</p>
+     */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * <p>Elemento della cache: il frammento, la sua versione
+     * e la versione dei dati letta prima di generarlo.</p>
+     */
+    private static final class Entry {
+        final String version;
+        final long dataVersion;
+        final String content;
+
+        Entry(String version,
+              long dataVersion,
+              String content) {
+            this.version = version;
+            this.dataVersion = dataVersion;
+            this.content = content;
+        }
+    }
+
+
+    /**
+     * <p>Costruttore: prepara la mappa ad accesso ordinato,
+     * che rimuove l'elemento usato meno di recente
+     * quando si supera il numero massimo di elementi.</p>
+     */
+    private FragmentCache() {
+        entries = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > MAX_ENTRIES) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * <p>Restituisce l'istanza condivisa della cache.</p>
+     *
+     * @return <code>FragmentCache</code> - la cache dei frammenti
+     */
+    public static FragmentCache getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * <p>Restituisce la versione corrente dei dati, da leggere
+     * <strong>prima</strong> di generare un frammento e da passare
+     * a {@link #put(String, String, String, long)}.</p>
+     *
+     * @return <code>long</code> - versione corrente dei dati
+     */
+    public long dataVersion() {
+        return DBWrapper.getDataVersion();
+    }
+
+
+    /**
+     * <p>Restituisce il frammento memorizzato con la chiave passata,
+     * se ha la versione richiesta ed &egrave; stato generato dopo l'ultima
+     * scrittura dei dati, altrimenti null.</p>
+     *
+     * @param key     chiave del frammento
+     * @param version versione richiesta
+     * @return <code>String</code> - il frammento, oppure null
+     */
+    public String get(String key,
+                      String version) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.version.equals(version) && entry.dataVersion == DBWrapper.getDataVersion()) {
+            hits.increment();
+            return entry.content;
+        }
+        misses.increment();
+        return null;
+    }
+
+
+    /**
+     * <p>Memorizza un frammento, a meno che i dati non siano stati
+     * modificati dopo la lettura della versione passata.</p>
+     *
+     * @param key         chiave del frammento
+     * @param version     versione del frammento
+     * @param content     il frammento
+     * @param dataVersion versione dei dati letta prima di generare il frammento
+     */
+    public void put(String key,
+                    String version,
+                    String content,
+                    long dataVersion) {
+        if (dataVersion != DBWrapper.getDataVersion()) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(version, dataVersion, content));
+        }
+    }
+
+
+    /**
+     * <p>Restituisce i contatori della cache, come testo semplice,
+     * da accodare al report di monitoraggio.</p>
+     *
+     * @return <code>String</code> - i contatori della cache
+     */
+    public String getReport() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return "# Cache dei frammenti di pagina\n" +
+               "  size=" + size +
+               " hits=" + hits.sum() +
+               " misses=" + misses.sum() +
+               " evictions=" + evictions.sum() + "\n";
+    }
+
+}
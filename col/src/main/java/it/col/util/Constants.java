@@ -225,6 +225,18 @@ public interface Constants extends Serializable {
      * <p>Costante per il VALORE del parametro identificante l'operazione di scambio di messaggi.</p>
      */
     public static final String SEND                     = "put";
+    /**
+     * <p>Costante per il VALORE del parametro identificante la consultazione delle metriche di monitoraggio.</p>
+     */
+    public static final String MONITOR                  = "mon";
+    /**
+     * <p>Costante per il VALORE del parametro identificante la richiesta di suggerimenti di ricerca.</p>
+     */
+    public static final String SUGGEST                  = "sug";
+    /**
+     * <p>Costante per il VALORE del parametro identificante la richiesta di una pagina di un elenco.</p>
+     */
+    public static final String TABLE                    = "tab";
     /* 
      * --------------------    OTHER PARAMS    -------------------- 
      */
@@ -376,6 +388,10 @@ public interface Constants extends Serializable {
      * Costante per il tipo MIME html
      */
     public static final String MIME_TYPE_HTML = "text/html";
+    /**
+     * Costante per il tipo MIME json
+     */
+    public static final String MIME_TYPE_JSON = "application/json";
     /**
      * Costante per il formato di file plain text
      */
@@ -0,0 +1,366 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+
+
+/**
+ * <p>JsonWriter.java &egrave; una classe di servizio.</p>
+ * <p>Scrive un documento JSON direttamente su un <code>Writer</code>
+ * (tipicamente quello della risposta HTTP), un elemento alla volta, senza
+ * costruirlo prima in memoria e senza ricorrere alla reflection:
+ * chi la usa dichiara esplicitamente oggetti, array, nomi e valori.
+ * Le virgole tra gli elementi vengono inserite automaticamente.</p>
+ * <p>Le stringhe vengono scritte con i caratteri di controllo
+ * e i caratteri <code>&lt; &gt; &amp;</code> (oltre ai separatori
+ * di riga U+2028 e U+2029) sotto forma di sequenze
+ * <code>\\uXXXX</code>, cos&igrave; che il documento possa essere
+ * incluso senza rischi anche all'interno di una pagina HTML;
+ * le date vengono scritte nel formato SQL (<code>yyyy-MM-dd</code>).</p>
+ * <pre>
+ * JsonWriter json = new JsonWriter(res.getWriter());
+ * json.beginObject().name("id").value(58).name("titolo").value("...").endObject();
+ * </pre>
+ *
+ * <p>Created on Sun Oct 18 2026</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public final class JsonWriter implements Closeable, Flushable {
+
+    /**
+     * <p>Destinazione del documento.</p>
+     */
+    private final Writer out;
+    /**
+     * <p>Per ogni livello di annidamento aperto, true se contiene gi&agrave; un elemento.</p>
+     */
+    private boolean[] nonEmpty = new boolean[8];
+    /**
+     * <p>Numero di livelli di annidamento aperti.</p>
+     */
+    private int depth = 0;
+    /**
+     * <p>Flag di nome appena scritto: il valore che segue non vuole la virgola.</p>
+     */
+    private boolean afterName = false;
+    /**
+     * <p>Formato delle date.</p>
+     */
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat(Constants.DATA_SQL_PATTERN);
+
+
+    /**
+     * <p>Costruttore.</p>
+     *
+     * @param out destinazione del documento
+     */
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+
+    /**
+     * <p>Apre un oggetto.</p>
+     *
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+
+    /**
+     * <p>Chiude l'oggetto aperto per ultimo.</p>
+     *
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+
+    /**
+     * <p>Apre un array.</p>
+     *
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+
+    /**
+     * <p>Chiude l'array aperto per ultimo.</p>
+     *
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+
+    /**
+     * <p>Scrive il nome del prossimo attributo dell'oggetto aperto.</p>
+     *
+     * @param name nome dell'attributo
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(out, name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+
+    /**
+     * <p>Scrive un valore stringa, o null.</p>
+     *
+     * @param value valore da scrivere
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            out.write("null");
+        } else {
+            writeString(out, value);
+        }
+        return this;
+    }
+
+
+    /**
+     * <p>Scrive un valore intero.</p>
+     *
+     * @param value valore da scrivere
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+
+    /**
+     * <p>Scrive un valore numerico, o null.</p>
+     *
+     * @param value valore da scrivere
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter value(Number value) throws IOException {
+        separate();
+        out.write(value == null ? "null" : value.toString());
+        return this;
+    }
+
+
+    /**
+     * <p>Scrive un valore booleano, o null.</p>
+     *
+     * @param value valore da scrivere
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter value(Boolean value) throws IOException {
+        separate();
+        out.write(value == null ? "null" : value.toString());
+        return this;
+    }
+
+
+    /**
+     * <p>Scrive una data nel formato SQL (<code>yyyy-MM-dd</code>), o null.</p>
+     *
+     * @param value data da scrivere
+     * @return <code>JsonWriter</code> - questo oggetto, per concatenare le chiamate
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    public JsonWriter value(java.util.Date value) throws IOException {
+        return value(value == null ? null : dateFormat.format(value));
+    }
+
+
+    /* (non-Javadoc)
+     * @see java.io.Flushable#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+
+    /* (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+
+    /**
+     * <p>Accoda una stringa a un documento JSON in costruzione,
+     * tra virgolette e con i caratteri speciali trasformati in sequenze
+     * di escape, oppure <code>null</code> se la stringa &egrave; null.</p>
+     *
+     * @param json  documento in costruzione
+     * @param value stringa da accodare
+     */
+    public static void appendString(StringBuilder json,
+                                    String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        try {
+            writeString(json, value);
+        } catch (IOException ioe) {
+            // Uno StringBuilder non solleva eccezioni di I/O
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+
+    /**
+     * <p>Scrive una stringa tra virgolette, trasformando in sequenze
+     * di escape le virgolette, la barra rovesciata, i caratteri di controllo
+     * e i caratteri significativi per l'HTML.</p>
+     *
+     * @param out   destinazione
+     * @param value stringa da scrivere
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    private static void writeString(Appendable out,
+                                    String value)
+                             throws IOException {
+        out.append('"');
+        int from = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escape;
+            switch (c) {
+                case '"' -> escape = "\\\"";
+                case '\\' -> escape = "\\\\";
+                case '\n' -> escape = "\\n";
+                case '\r' -> escape = "\\r";
+                case '\t' -> escape = "\\t";
+                default -> escape = (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '\u2028' || c == '\u2029')
+                                    ? String.format("\\u%04x", Integer.valueOf(c))
+                                    : null;
+            }
+            if (escape != null) {
+                // Scrive in blocco i caratteri che non richiedono escape
+                out.append(value, from, i).append(escape);
+                from = i + 1;
+            }
+        }
+        out.append(value, from, length).append('"');
+    }
+
+
+    /**
+     * <p>Scrive la virgola che separa l'elemento che sta per essere scritto
+     * dal precedente, se ce n'&egrave; uno nello stesso livello.</p>
+     *
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (nonEmpty[depth - 1]) {
+                out.write(',');
+            }
+            nonEmpty[depth - 1] = true;
+        }
+    }
+
+
+    /**
+     * <p>Apre un livello di annidamento.</p>
+     *
+     * @param bracket parentesi di apertura
+     * @return <code>JsonWriter</code> - questo oggetto
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    private JsonWriter open(char bracket) throws IOException {
+        separate();
+        if (depth == nonEmpty.length) {
+            nonEmpty = Arrays.copyOf(nonEmpty, depth * 2);
+        }
+        nonEmpty[depth++] = false;
+        out.write(bracket);
+        return this;
+    }
+
+
+    /**
+     * <p>Chiude il livello di annidamento aperto per ultimo.</p>
+     *
+     * @param bracket parentesi di chiusura
+     * @return <code>JsonWriter</code> - questo oggetto
+     * @throws IOException se si verifica un problema nella scrittura
+     */
+    private JsonWriter close(char bracket) throws IOException {
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+}
@@ -38,8 +38,12 @@
 package it.col.util;
 
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Date;
 import java.util.Properties;
@@ -104,18 +108,17 @@ public class MailManager {
      * <p><strong>Security Note:</strong> Port 25, no auth/TLS - internal university network only.</p>
      * 
      * @param subject the subject shown on the e-mail
-     * @param body the HTML email content to send
+     * @param body the file holding the HTML email content to send
      * @return success message "Email inviata" (Email sent)
      * @throws Exception wraps {@link MessagingException} with Italian error message
      */
     public static String sendEmail(String subject, 
-                                   String body) 
+                                   File body) 
                             throws Exception {
         String mailTo = "lindamaria.frigo@univr.it, giovanni.olivieri@univr.it, elisa.puddu@univr.it, francesca.limberto@univr.it, giovanroberto.torre@univr.it";
         //String mailTo = "giovanroberto.torre@univr.it";
         InternetAddress[] addresses = InternetAddress.parse(mailTo);
         String mailFrom = "convenzioniecentri@ateneo.univr.it";
-        String mailContent = new String(body); 
         Properties props = System.getProperties();  // Get system properties
         props.put("mailTo", mailTo);
         props.put("mail.smtp.host", "smtp.univr.it");
@@ -129,8 +132,7 @@ public class MailManager {
             //message.addRecipient(Message.RecipientType.TO, new InternetAddress(mailTo));    // Set the to address
             message.setRecipients(Message.RecipientType.TO, addresses);
             message.setSubject(subject, "UTF-8");
-            //message.setContent(mailContent, "text/html");   // Set the content
-            message.setContent(mailContent, Constants.MIME_TYPE_HTML + "; charset=UTF-8");
+            message.setDataHandler(new DataHandler(new HtmlFileDataSource(body)));   // Set the content, read from the file while sending
             Transport.send(message);                    // Send message
         } catch (MessagingException mex) {
             String msg = "Si e\' verificato un problema nel processamento del messaggio.\n" + mex.getMessage();
@@ -165,14 +167,14 @@ public class MailManager {
      * MailManager.sendEmail(body, "smtp2go_username", "smtp2go_api_key");
      * }
      * 
-     * @param body the HTML email content to send
+     * @param body the file holding the HTML email content to send
      * @param username SMTP2GO username (email address)
      * @param password SMTP2GO password or API key
      * @return success message "Email inviata" (Email sent)
      * @throws Exception wraps {@link MessagingException} with Italian error message for servlet error handling
      */
     
-    public static String sendEmail(String body, String username, String password) 
+    public static String sendEmail(File body, String username, String password) 
             throws Exception {
         //String mailTo = "albertomaria.arenaagostino@univr.it";
         //String mailTo = "lindamaria.frigo@univr.it, giovanni.olivieri@univr.it, elisa.puddu@univr.it, francesca.limberto@univr.it, giovanroberto.torre@univr.it";
@@ -180,7 +182,6 @@ public class MailManager {
         InternetAddress[] addresses = InternetAddress.parse(mailTo);
         String mailFrom = "giovanroberto.torre@univr.eu";
         String subject = "Riepilogo del " + Utils.format(Utils.getCurrentDate()) + " [TEST]";
-        String mailContent = new String(body); 
         Properties props = System.getProperties();  // Get system properties
         props.put("mailTo", mailTo);
         props.put("mail.smtp.host", "mail.smtp2go.com");
@@ -202,7 +203,7 @@ public class MailManager {
             //message.addRecipient(Message.RecipientType.TO, new InternetAddress(mailTo));    // Set the to address
             message.setRecipients(Message.RecipientType.TO, addresses);
             message.setSubject(subject, "UTF-8");
-            message.setContent(mailContent, Constants.MIME_TYPE_HTML + "; charset=UTF-8");  // Set the content
+            message.setDataHandler(new DataHandler(new HtmlFileDataSource(body)));   // Set the content, read from the file while sending
             Transport.send(message);                    // Send message
         } catch (MessagingException mex) {
             String msg = "Si e\' verificato un problema nel processamento del messaggio.\n" + mex.getMessage();
@@ -222,7 +223,7 @@ public class MailManager {
      */
     public static String sendEmail(int[] groupIds,
                                    String subject,
-                                   String body) 
+                                   File body) 
                             throws Exception {
         String mailTo = null;
         // TODO: there is a naming here, this gotta be optimized dinamically, after 
@@ -237,7 +238,6 @@ public class MailManager {
         }*/
         InternetAddress[] addresses = InternetAddress.parse(mailTo);
         String mailFrom = "convenzioniecentri@ateneo.univr.it";
-        String mailContent = new String(body); 
         Properties props = System.getProperties();  // Get system properties
         props.put("mailTo", mailTo);
         props.put("mail.smtp.host", "smtp.univr.it");
@@ -251,8 +251,7 @@ public class MailManager {
             //message.addRecipient(Message.RecipientType.TO, new InternetAddress(mailTo));    // Set the to address
             message.setRecipients(Message.RecipientType.TO, addresses);
             message.setSubject(subject, "UTF-8");
-            //message.setContent(mailContent, "text/html");   // Set the content
-            message.setContent(mailContent, Constants.MIME_TYPE_HTML + "; charset=UTF-8");
+            message.setDataHandler(new DataHandler(new HtmlFileDataSource(body)));   // Set the content, read from the file while sending
             Transport.send(message);                    // Send message
         } catch (MessagingException mex) {
             String msg = "Si e\' verificato un problema nel processamento del messaggio.\n" + mex.getMessage();
@@ -317,4 +316,40 @@ public class MailManager {
         return "Email inviata";
     }
     
+    
+    /**
+     * Serves an HTML body stored in a file as the content of a message,
+     * so that it is read (and encoded) by blocks while the message is sent,
+     * instead of being held in memory as a whole.
+     */
+    private static final class HtmlFileDataSource implements DataSource {
+        
+        /** The file holding the UTF-8 encoded HTML body */
+        private final File body;
+        
+        HtmlFileDataSource(File body) {
+            this.body = body;
+        }
+        
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new BufferedInputStream(new FileInputStream(body));
+        }
+        
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Contenuto in sola lettura: " + body.getName());
+        }
+        
+        @Override
+        public String getContentType() {
+            return Constants.MIME_TYPE_HTML + "; charset=UTF-8";
+        }
+        
+        @Override
+        public String getName() {
+            return body.getName();
+        }
+    }
+    
 }
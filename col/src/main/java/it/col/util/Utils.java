@@ -1086,5 +1086,38 @@ public class Utils implements Constants {
         int days = endAsCalendar.get(Calendar.DAY_OF_YEAR) - startAsCalendar.get(Calendar.DAY_OF_YEAR);
         return days;
     }
+    
+    
+    /**
+     * <p>Restituisce true se il valore di un header 
+     * <code>Accept-Encoding</code> accetta la codifica passata come argomento,
+     * cio&egrave; se la elenca senza escluderla con <code>q=0</code>.<br>
+     * For instance:<pre>
+     * acceptsEncoding("gzip, deflate, br", "br") -> true
+     * acceptsEncoding("br;q=0, gzip", "br") -> false</pre>
+     * </p>
+     *
+     * @param acceptEncoding valore dell'header, eventualmente null
+     * @param coding         codifica da cercare (p.es. <code>gzip</code>)
+     * @return  <code>boolean</code> - true se la codifica &egrave; accettata
+     */
+    public static boolean acceptsEncoding(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(coding)) {
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim().replace(" ", "");
+                    if (param.startsWith("q=") && param.substring(2).matches("0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
 
 }
@@ -50,6 +50,7 @@
  * <ul>
  * <li><em>Constants</em></li>
  * <li>DataUrl</li>
+ * <li>JsonWriter</li>
  * <li>MailManager</li>
  * <li>Utils</li>
  * </ul>
@@ -1,6 +1,5 @@
 <%@ page language="java" contentType="text/html; charset=UTF-8"  pageEncoding="UTF-8"%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
-<c:set var="conts" value="${requestScope.contraenti}" scope="page" />
     <link rel="stylesheet" href="${initParam.urlDirFrameworks}DataTables/css/datatables.min.css" type="text/css" />
     <link rel="stylesheet" href="${initParam.urlDirFrameworks}DataTables/plug-ins/searchHighlight/dataTables.searchHighlight.css" type="text/css" />
     <div class="page-heading contractors">
@@ -30,32 +29,6 @@
           </tr>
         </thead>
         <tbody>
-        <c:forEach var="cont" items="${pageScope.conts}">
-          <tr>
-            <td><c:out value="${cont.note}" /></td>
-            <td>
-              <a href="${initParam.appName}/?q=co&op=sel&obj=cont&id=${cont.id}" class="btn-sm text-success" title="N. convenzioni associate: ${cont.convenzioni.size()}">
-                <c:out value="${cont.nome}" />
-              </a>
-            </td>
-            <td>
-            <c:forEach var="conv" items="${cont.convenzioni}">
-              <i class="fa fa-caret-right" aria-hidden="true" me-1></i>
-              <a href="${initParam.appName}/?q=co&op=sel&id=${conv.id}" class="btn-sm text-primary">
-                <c:out value="${conv.titolo}" />
-              </a><br>
-            </c:forEach>
-            </td>
-            <td><c:out value="${cont.codiceFiscale}" /></td>
-            <td><c:out value="${cont.partitaIva}" /></td>
-            <td>
-              <a href="mailto:${cont.email}">
-                <c:out value="${cont.email}" />
-              </a>
-            </td>
-            <td><c:out value="${cont.informativa}" /></td>
-          </tr>
-        </c:forEach>
         </tbody>
       </table>
     </div>
@@ -68,20 +41,51 @@
     <!--  <script src="https://bartaz.github.io/sandbox.js/jquery.highlight.js"></script> -->
     <script>
       $(document).ready(function () {
-        // Set datatable for a layer of mine
+        // Escapes a value to be written into the HTML of a cell
+        function esc(value) {
+          return $('<div>').text(value == null ? '' : value).html();
+        }
+        // Set datatable for a layer of mine: rows are served page by page
         $('#contractorsTable').DataTable({
+          "serverSide":   true,
+          "processing":   true,
+          "ajax":         "${initParam.appName}/data?op=tab&obj=cont",
           "pageLength":   25,
+          "lengthMenu":   [10, 25, 50, 100],
           "lengthChange": true,
           "ordering":     true,
           "searching":    true,
+          "searchDelay":  400,
           "info":         true,
           "autoWidth":    false,
           "searchHighlight": true,
           "mark":         true,
           "order": [[ 1, 'asc' ]], // columnIndex is the zero-based index of the column one want to sort by
+          "columns": [
+            { "data": "tipo", "render": esc },
+            { "data": "nome", "render": function (nome, type, cont) {
+                return '<a href="${initParam.appName}/?q=co&op=sel&obj=cont&id=' + cont.id + '" class="btn-sm text-success" title="N. convenzioni associate: ' + cont.convenzioni.length + '">' + esc(nome) + '</a>';
+              }
+            },
+            { "data": "convenzioni", "orderable": false, "render": function (convenzioni) {
+                return $.map(convenzioni, function (conv) {
+                  return '<i class="fa fa-caret-right" aria-hidden="true"></i> ' +
+                         '<a href="${initParam.appName}/?q=co&op=sel&id=' + conv.id + '" class="btn-sm text-primary">' + esc(conv.titolo) + '</a><br>';
+                }).join('');
+              }
+            },
+            { "data": "codiceFiscale", "render": esc },
+            { "data": "partitaIva", "render": esc },
+            { "data": "email", "render": function (email) {
+                return email ? '<a href="mailto:' + esc(email) + '">' + esc(email) + '</a>' : '';
+              }
+            },
+            { "data": "informativa", "render": esc }
+          ],
           "language": {
             "search": "_INPUT_",
             "searchPlaceholder": "Filtra contraenti...",
+            "processing": "Caricamento...",
             "lengthMenu": "Mostra _MENU_ risultati per pagina",    // Label for the dropdown to select page length
             "info": "Mostrati _START_ a _END_ di _TOTAL_",  // Info about currently shown entries
             "infoEmpty": "Mostrati 0 a 0 di 0 risultati trovati",      // When empty
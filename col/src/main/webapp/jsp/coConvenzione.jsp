@@ -1,6 +1,7 @@
 <%@ page language="java" contentType="text/html; charset=UTF-8"  pageEncoding="UTF-8"%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
 <%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
+<%@ taglib prefix="col" uri="/WEB-INF/col.tld" %>
 <fmt:setLocale value="it_IT"/>
 <c:set var="conv" value="${requestScope.convenzione}" scope="page" />
 <c:choose>
@@ -55,6 +56,7 @@
                                 </div>
                               </div>
                               <hr class="separator">
+                            <col:cache key="conv-parti:${conv.id}" version="${conv.dataUltimaModifica.time}.${conv.oraUltimaModifica}">
                               <div class="col-lg-9">
                                 <div class="row">
                                   <h5><strong>Contraenti</strong></h5>
@@ -102,9 +104,11 @@
                                   <p><c:out value="${conv.tipo}" /></p>
                                 </div>
                               </div>
+                            </col:cache>
                               <hr class="separator">
                               <div class="col-lg-12">
                                 <div class="general-info">
+                                <col:cache key="conv-date:${conv.id}" version="${conv.dataUltimaModifica.time}.${conv.oraUltimaModifica}">
                                   <div class="row">
                                     <div class="col-lg-12">
                                       <h5><strong>Oggetto</strong></h5>
@@ -161,6 +165,7 @@
                                       </span>
                                     </div>
                                   </div>
+                                </col:cache>
                                 <c:if test="${not empty conv.caricoBollo}">
                                   <hr class="separator">
                                   <div class="row">
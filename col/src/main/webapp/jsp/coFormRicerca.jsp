@@ -4,6 +4,7 @@
 <c:set var="types" value="${requestScope.tipi}" scope="page" />
 <c:set var="scopes" value="${requestScope.finalita}" scope="page" />
 <c:set var="cons" value="${requestScope.convenzioni}" scope="page" />
+<c:set var="facets" value="${requestScope.faccette}" scope="page" />
 <c:set var="tipo" value="<em>Tutte</em>" scope="page" />
 <c:if test="${not empty types[requestScope.params.res.type - 1]}">
   <c:set var="tipo" value="${types[requestScope.params.res.type - 1].nome}" scope="page" />
@@ -29,7 +30,7 @@
                     <select id="chooseCategory" name="co-tipo" class="form-select" aria-label="Tipo">
                       <option value="0" selected>Tutte le tipologie</option>
                       <c:forEach var="type" items="${pageScope.types}">
-                      <option value="${type.id}"><c:out value="${type.nome}" /></option>
+                      <option value="${type.id}"><c:out value="${type.nome}" /><c:if test="${not empty pageScope.facets}"> (${pageScope.facets.type[type.id] + 0})</c:if></option>
                       </c:forEach>
                     </select>
                   </fieldset>
@@ -44,7 +45,7 @@
                     <select id="chooseCategory" name="co-fine" class="form-select" aria-label="Finalita">
                       <option value="0" selected>Tutte le finalit&agrave;</option>
                       <c:forEach var="scope" items="${pageScope.scopes}">
-                      <option value="${scope.id}"><c:out value="${scope.nome}" /></option>
+                      <option value="${scope.id}"><c:out value="${scope.nome}" /><c:if test="${not empty pageScope.facets}"> (${pageScope.facets.scop[scope.id] + 0})</c:if></option>
                       </c:forEach>
                     </select>
                   </fieldset>
@@ -108,6 +109,7 @@
 
     <!-- jQuery first -->
     <script src="${initParam.urlDirFrameworks}jquery/jquery.min.js"></script>
+    <%@ include file="suggestions.jspf" %>
     <!-- Paginathing JS -->
     <script src="${initParam.urlDirFrameworks}Paginathing/dist/paginathing.min.js" type="text/javascript"></script>
     <!-- Your script -->
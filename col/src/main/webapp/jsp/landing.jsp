@@ -5,19 +5,16 @@
 <fmt:setLocale value="it_IT"/>
 <c:set var="types" value="${requestScope.tipi}" scope="page" />
 <c:set var="scopes" value="${requestScope.finalita}" scope="page" />
-<c:set var="cons" value="${requestScope.convenzioni}" scope="page" />
 <c:set var="grp" value="${fn:toUpperCase(usr.gruppi.get(0).nome)}" />
-    <link rel="stylesheet" href="${initParam.urlDirFrameworks}DataTables/css/datatables.min.css" type="text/css" />
-    <link rel="stylesheet" href="${initParam.urlDirFrameworks}DataTables/plug-ins/searchHighlight/dataTables.searchHighlight.css" type="text/css" />
+    <link rel="stylesheet" href="${assets[initParam.urlDirFrameworks += 'DataTables/css/datatables.min.css']}" type="text/css" />
+    <link rel="stylesheet" href="${assets[initParam.urlDirFrameworks += 'DataTables/plug-ins/searchHighlight/dataTables.searchHighlight.css']}" type="text/css" />
     <div class="main-banner">
       <div class="container">
         <div class="row">
           <div class="col-lg-12">
             <div class="top-text header-text">
               <h6>
-                <span class="badge badge-pill badge-light">
-                  <c:out value="${cons.size()}" />
-                </span> 
+                <span id="count" class="badge badge-pill badge-light">&hellip;</span> 
                 &nbsp;Convenzioni Attive
               </h6>
               <h2>Cerca Convenzione</h2>
@@ -87,108 +84,90 @@
           </tr>
         </thead>
         <tbody>
-        <c:forEach var="conv" items="${pageScope.cons}">
-          <tr>
-            <td><c:out value="${conv.tipo}" /></td>
-            <td>
-            <c:forEach var="cont" items="${conv.contraenti}">
-              <i class="fa fa-caret-right" aria-hidden="true" me-1></i>
-              <a href="${initParam.appName}/?q=co&op=sel&obj=cont&id=${cont.id}" class="btn-sm text-success">
-                <c:out value="${cont.nome}" />
-              </a><br>
-            </c:forEach>
-            </td>
-            <td>
-              <a href="${initParam.appName}/?q=co&id=${conv.id}" class="btn-sm text-primary" title="${conv.note}">
-                <c:out value="${conv.titolo}" />
-              </a>
-            <c:choose>
-              <c:when test="${conv.caricoBollo eq 100.0}">
-                <span class="text-icon" title="Imposte di bollo 100% a carico dell'ateneo">
-                  <i class="fa fa-circle teal-icon"></i>
-                </span>
-              </c:when>
-              <c:when test="${conv.caricoBollo eq 50.0}">
-                <span class="text-icon" title="50% in carico all'ateneo e 50% in carico ai contraenti">
-                  <i class="fa fa-adjust teal-icon"></i>
-                </span>
-              </c:when>
-              <c:when test="${conv.caricoBollo eq 0.0}">
-                <span class="text-icon" title="Imposte di bollo a carico dei contraenti">
-                 <i class="fa fa-circle-o teal-icon"></i> 
-                </span>
-              </c:when>
-            </c:choose>
-            <c:choose>
-              <c:when test="${conv.pagato}">
-                <span class="text-icon" title="Bollo pagato">
-                  <i class="fa fa-check-circle text-success"></i> 
-                </span>
-              </c:when>
-              <c:when test="${not empty conv.pagato and not conv.pagato}">
-                <span class="text-icon" title="Bollo da pagare">
-                  <i class="fa fa-times-circle text-danger"></i>
-                </span>
-              </c:when>
-            </c:choose>
-            </td>
-            <td data-order="<fmt:formatDate value="${conv.dataApprovazione}" pattern="yyyy-MM-dd" />">
-              <fmt:formatDate value="${conv.dataApprovazione}" pattern="dd MMMMM yyyy" />
-            </td>
-            <td data-order="<fmt:formatDate value="${conv.dataSottoscrizione}" pattern="yyyy-MM-dd" />">
-              <fmt:formatDate value="${conv.dataSottoscrizione}" pattern="dd MMMMM yyyy" />
-            </td>
-            <td data-order="<fmt:formatDate value="${conv.dataScadenza}" pattern="yyyy-MM-dd" />">
-              <fmt:formatDate value="${conv.dataScadenza}" pattern="dd MMMMM yyyy" />
-            </td>
-            <td><c:out value="${conv.numRepertorio}" /></td>
-            <td>
-              <ul class="list-inline d-flex justify-content-center">
-                <li class="list-inline-item me-1">
-                  <a href="${initParam.appName}/?q=co&id=${conv.id}" class="btn btn-sm btn-success" title="Vedi dettagli Convenzione">
-                    <i class="fa fa-eye"></i>
-                  </a>
-                </li>
-                <li class="list-inline-item me-1">
-                  <a href="${initParam.appName}/?q=co&op=ins&obj=cont&data=rel&id=${conv.id}" class="btn btn-sm btn-warning" title="Assegna Contraenti a Convenzione">
-                    <i class="fa fa-users" aria-hidden="true"></i> 
-                  </a>
-                </li>
-                <li class="list-inline-item me-1">
-                  <a href="${initParam.appName}/?q=co&op=upd&obj=conv&data=ent&id=${conv.id}" class="btn btn-sm btn-primary" title="Modifica Convenzione">
-                    <i class="fa fa-pencil"></i>
-                  </a>
-                </li>
-              </ul>
-            </td>
-          </tr>
-        </c:forEach>
         </tbody>
       </table>
     </div>
     <!-- jQuery first -->
-    <script src="${initParam.urlDirFrameworks}jquery/jquery.min.js"></script>
+    <script src="${assets[initParam.urlDirFrameworks += 'jquery/jquery.min.js']}"></script>
+    <%@ include file="suggestions.jspf" %>
     <!-- DataTables JS -->
-    <script src="${initParam.urlDirFrameworks}DataTables/js/datatables.min.js" type="text/javascript"></script>
-    <script src="${initParam.urlDirFrameworks}DataTables/plug-ins/searchHighlight/dataTables.searchHighlight.min.js" type="text/javascript"></script>
-    <script src="${initParam.urlDirFrameworks}DataTables/plug-ins/jquery.highlight/jquery.highlight.js" type="text/javascript"></script>
+    <script src="${assets[initParam.urlDirFrameworks += 'DataTables/js/datatables.min.js']}" type="text/javascript"></script>
+    <script src="${assets[initParam.urlDirFrameworks += 'DataTables/plug-ins/searchHighlight/dataTables.searchHighlight.min.js']}" type="text/javascript"></script>
+    <script src="${assets[initParam.urlDirFrameworks += 'DataTables/plug-ins/jquery.highlight/jquery.highlight.js']}" type="text/javascript"></script>
     <!--  <script src="https://bartaz.github.io/sandbox.js/jquery.highlight.js"></script> -->
     <script>
       $(document).ready(function () {
-        // Set datatable for a layer of mine
+        // Escapes a value to be written into the HTML of a cell
+        function esc(value) {
+          return $('<div>').text(value == null ? '' : value).html();
+        }
+        // Formats an ISO date (yyyy-MM-dd) as in the Italian locale
+        function day(value) {
+          return value ? new Date(value + 'T00:00:00').toLocaleDateString('it-IT', { day: '2-digit', month: 'long', year: 'numeric' }) : '';
+        }
+        // Set datatable for a layer of mine: rows are served page by page
         $('#apartmentTable').DataTable({
+          "serverSide":   true,
+          "processing":   true,
+          "ajax":         "${initParam.appName}/data?op=tab&obj=conv",
           "pageLength":   10,
+          "lengthMenu":   [10, 25, 50, 100],
           "lengthChange": true,
           "ordering":     true,
           "searching":    true,
+          "searchDelay":  400,
           "info":         true,
           "autoWidth":    false,
           "searchHighlight": true,
           "mark":         true,
-          "order": [[ 2, 'asc' ]], // columnIndex is the zero-based index of the column one want to sort by
+          "order":        [], // base ordering: ordinale, data di scadenza, id
+          "columns": [
+            { "data": "tipo", "render": esc },
+            { "data": "contraenti", "orderable": false, "render": function (contraenti) {
+                return $.map(contraenti, function (cont) {
+                  return '<i class="fa fa-caret-right" aria-hidden="true"></i> ' +
+                         '<a href="${initParam.appName}/?q=co&op=sel&obj=cont&id=' + cont.id + '" class="btn-sm text-success">' + esc(cont.nome) + '</a><br>';
+                }).join('');
+              }
+            },
+            { "data": "titolo", "render": function (titolo, type, conv) {
+                var html = '<a href="${initParam.appName}/?q=co&id=' + conv.id + '" class="btn-sm text-primary" title="' + esc(conv.note) + '">' + esc(titolo) + '</a>';
+                if (conv.caricoBollo === 100) {
+                  html += ' <span class="text-icon" title="Imposte di bollo 100% a carico dell\'ateneo"><i class="fa fa-circle teal-icon"></i></span>';
+                } else if (conv.caricoBollo === 50) {
+                  html += ' <span class="text-icon" title="50% in carico all\'ateneo e 50% in carico ai contraenti"><i class="fa fa-adjust teal-icon"></i></span>';
+                } else if (conv.caricoBollo === 0) {
+                  html += ' <span class="text-icon" title="Imposte di bollo a carico dei contraenti"><i class="fa fa-circle-o teal-icon"></i></span>';
+                }
+                if (conv.pagato === true) {
+                  html += ' <span class="text-icon" title="Bollo pagato"><i class="fa fa-check-circle text-success"></i></span>';
+                } else if (conv.pagato === false) {
+                  html += ' <span class="text-icon" title="Bollo da pagare"><i class="fa fa-times-circle text-danger"></i></span>';
+                }
+                return html;
+              }
+            },
+            { "data": "dataApprovazione", "render": day },
+            { "data": "dataSottoscrizione", "render": day },
+            { "data": "dataScadenza", "render": day },
+            { "data": "numRepertorio", "render": esc },
+            { "data": "id", "orderable": false, "render": function (id) {
+                return '<ul class="list-inline d-flex justify-content-center">' +
+                       '<li class="list-inline-item me-1"><a href="${initParam.appName}/?q=co&id=' + id + '" class="btn btn-sm btn-success" title="Vedi dettagli Convenzione"><i class="fa fa-eye"></i></a></li>' +
+                       '<li class="list-inline-item me-1"><a href="${initParam.appName}/?q=co&op=ins&obj=cont&data=rel&id=' + id + '" class="btn btn-sm btn-warning" title="Assegna Contraenti a Convenzione"><i class="fa fa-users" aria-hidden="true"></i></a></li>' +
+                       '<li class="list-inline-item me-1"><a href="${initParam.appName}/?q=co&op=upd&obj=conv&data=ent&id=' + id + '" class="btn btn-sm btn-primary" title="Modifica Convenzione"><i class="fa fa-pencil"></i></a></li>' +
+                       '</ul>';
+              }
+            }
+          ],
+          "drawCallback": function () {
+            // Number of active conventions, as counted by the server
+            $('#count').text(this.api().page.info().recordsTotal);
+          },
           "language": {
             "search": "_INPUT_",
             "searchPlaceholder": "Filtra convenzione...",
+            "processing": "Caricamento...",
             "lengthMenu": "Mostra _MENU_ risultati per pagina",    // Label for the dropdown to select page length
             "info": "Mostrati _START_ a _END_ di _TOTAL_",  // Info about currently shown entries
             "infoEmpty": "Mostrati 0 a 0 di 0 risultati trovati",      // When empty
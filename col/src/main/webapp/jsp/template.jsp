@@ -18,14 +18,14 @@
     <link href="https://fonts.googleapis.com/css2?family=Bitter:ital,wght@0,100..900;1,100..900&family=Great+Vibes&family=Merriweather:ital,opsz,wght@0,18..144,300..900;1,18..144,300..900&display=swap" rel="stylesheet">
     <title><c:out value="${requestScope.tP}" escapeXml="false" /></title>
     <!-- Bootstrap core CSS -->
-    <link href="${initParam.urlDirFrameworks}bootstrap/css/bootstrap.min.css" rel="stylesheet">
+    <link href="${assets[initParam.urlDirFrameworks += 'bootstrap/css/bootstrap.min.css']}" rel="stylesheet">
     <!-- Additional CSS Files -->
-    <link rel="stylesheet" href="${initParam.urlDirStyles}fontawesome.css">
-    <link rel="stylesheet" href="${initParam.urlDirStyles}templatemo-plot-listing.css">
-    <link rel="stylesheet" href="${initParam.urlDirStyles}animated.css">
-    <link rel="stylesheet" href="${initParam.urlDirStyles}owl.css">
+    <link rel="stylesheet" href="${assets[initParam.urlDirStyles += 'fontawesome.css']}">
+    <link rel="stylesheet" href="${assets[initParam.urlDirStyles += 'templatemo-plot-listing.css']}">
+    <link rel="stylesheet" href="${assets[initParam.urlDirStyles += 'animated.css']}">
+    <link rel="stylesheet" href="${assets[initParam.urlDirStyles += 'owl.css']}">
     <!--  Customized and taylored CSS for col  -->
-    <link rel="stylesheet" href="${initParam.urlDirStyles}col.css">
+    <link rel="stylesheet" href="${assets[initParam.urlDirStyles += 'col.css']}">
   <body class="${pageScope.bgbody}">
   <c:catch var="exception"><!-- Cookie consent -->
     <%@ include file="cookieConsent.jspf" %>
@@ -45,11 +45,11 @@
       <hr class="row">
       <%@ include file="footer.jspf" %>
     </c:if>
-    <script src="${initParam.urlDirFrameworks}bootstrap/js/bootstrap.bundle.min.js"></script>
-    <script src="${initParam.urlDirScripts}owl-carousel.js"></script>
-    <script src="${initParam.urlDirScripts}animation.js"></script>
-    <script src="${initParam.urlDirScripts}imagesloaded.js"></script>
-    <script src="${initParam.urlDirScripts}custom.js"></script>
+    <script src="${assets[initParam.urlDirFrameworks += 'bootstrap/js/bootstrap.bundle.min.js']}"></script>
+    <script src="${assets[initParam.urlDirScripts += 'owl-carousel.js']}"></script>
+    <script src="${assets[initParam.urlDirScripts += 'animation.js']}"></script>
+    <script src="${assets[initParam.urlDirScripts += 'imagesloaded.js']}"></script>
+    <script src="${assets[initParam.urlDirScripts += 'custom.js']}"></script>
   </c:catch>
   <c:out value="${exception}" />
   </body>
@@ -0,0 +1,261 @@
+/*
+ *   Convenzioni On Line (COL-GeCo). 
+ *   Applicazione web: 
+ *   - per la visualizzazione delle convenzioni attivate dall'ateneo, 
+ *   - per la gestione delle convenzioni della pubblica amministrazione, 
+ *   - per ottenere notifiche riguardo le scadenze ed i rinnovi
+ *   - e per effettuare il monitoraggio delle attività legate alle convenzioni.
+ *
+ *   Agreements Mapping and Management Software (COL-GeCo).
+ *   Web application: 
+ *   - for viewing conventions activated by the university,
+ *   - for the management of public administration conventions,
+ *   - to obtain notifications regarding deadlines and renewals
+ *   - and to carry out monitoring of activities related to agreements..
+ *   
+ *   Copyright (C) 2025-2026 Giovanroberto Torre
+ *   all right reserved
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program; if not, see <https://www.gnu.org/licenses/>.
+ *
+ *   Giovanroberto Torre <gianroberto.torre@gmail.com>
+ *   Universita' degli Studi di Verona
+ *   Via Dell'Artigliere, 8
+ *   37129 Verona (Italy)
+ */
+
+package it.col.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import it.col.bean.Convenzione;
+
+
+/**
+ * <p><code>ConventionIndexBenchmark</code> misura la latenza della ricerca
+ * sull'indice in memoria ({@link ConventionIndex}) con un numero
+ * di convenzioni sintetiche pari, per default, a 100.000.</p>
+ * <p>Le convenzioni hanno titolo, informativa, numero di repertorio,
+ * un contraente, una tipologia, una finalit&agrave; e un gruppo estratti
+ * a caso (con seme fisso) da un vocabolario di parole sintetiche;
+ * le ricerche alternano una chiave per prefisso e una parola intera
+ * (<code>"abcd, parola"</code>), una sola parola intera e due parole
+ * della stessa chiave, con i conteggi per faccetta come nella ricerca
+ * dell'applicazione e con gli stessi dieci gruppi dell'utente.
+ * Viene misurata la ricerca (id in ordine di rilevanza, faccette incluse);
+ * la copia delle convenzioni da mostrare &egrave; misurata a parte, su una
+ * pagina di dieci risultati.</p>
+ * <p>Si esegue con il profilo <code>bench</code>:<pre>
+ * mvn -Pbench test
+ * </pre>
+ * oppure direttamente, passando facoltativamente il numero di convenzioni,
+ * il numero di ricerche misurate e il p99 massimo ammesso in microsecondi:
+ * <pre>
+ * java -cp target/classes:target/test-classes:... it.col.db.ConventionIndexBenchmark 100000 20000 1000
+ * </pre>
+ * Termina con codice di uscita 1 se il p99 della ricerca supera il massimo.</p>
+ *
+ * @author <a href="mailto:gianroberto.torre@gmail.com">Giovanroberto Torre</a>
+ */
+public class ConventionIndexBenchmark {
+
+    /**
+     * <p>Gruppi dell'utente che effettua le ricerche.</p>
+     */
+    private static final Integer[] GROUPS = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+    /**
+     * <p>Numero di gruppi cui possono appartenere le convenzioni.</p>
+     */
+    private static final int GROUP_COUNT = 20;
+    /**
+     * <p>Numero di parole distinte del vocabolario sintetico.</p>
+     */
+    private static final int VOCABULARY = 20000;
+    /**
+     * <p>Numero di passate di riscaldamento, non misurate.</p>
+     */
+    private static final int WARMUP = 3;
+
+
+    /**
+     * <p>Costruisce l'indice, esegue le ricerche e ne stampa i percentili.</p>
+     *
+     * @param args numero di convenzioni, numero di ricerche, p99 massimo in microsecondi
+     */
+    public static void main(String[] args) {
+        int size = (args.length > 0 ? Integer.parseInt(args[0]) : 100000);
+        int searches = (args.length > 1 ? Integer.parseInt(args[1]) : 20000);
+        long maxP99Micros = (args.length > 2 ? Long.parseLong(args[2]) : 1000L);
+        Random random = new Random(1L);
+        String[] vocabulary = vocabulary(random);
+        // Costruzione dell'indice
+        ArrayList<ConventionIndex.Document> documents = new ArrayList<>(size);
+        for (int id = 1; id <= size; id++) {
+            documents.add(document(id, vocabulary, random));
+        }
+        ConventionIndex index = new ConventionIndex();
+        long start = System.nanoTime();
+        index.reload(documents, 0L);
+        System.out.printf("Indice: %d convenzioni, %d termini, costruito in %d ms%n",
+                          index.getSize(), index.getTermCount(), (System.nanoTime() - start) / 1000000L);
+        // Ricerche, sempre le stesse per il riscaldamento e per la misura
+        String[] queries = new String[searches];
+        for (int i = 0; i < searches; i++) {
+            queries[i] = query(i, vocabulary, random);
+        }
+        long[] latencies = new long[searches];
+        long hits = 0L;
+        for (int pass = 0; pass <= WARMUP; pass++) {
+            hits = 0L;
+            for (int i = 0; i < searches; i++) {
+                Map<String, HashMap<Integer, Integer>> facets = new HashMap<>();
+                long t = System.nanoTime();
+                int[] found = index.search(queries[i], 0, 0, GROUPS, facets);
+                latencies[i] = System.nanoTime() - t;
+                hits += found.length;
+            }
+        }
+        long p99 = report("Ricerca", latencies);
+        System.out.printf("Risultati per ricerca: %d in media%n", hits / searches);
+        // Copia di una pagina di risultati
+        try {
+            for (int pass = 0; pass <= WARMUP; pass++) {
+                for (int i = 0; i < searches; i++) {
+                    int[] found = index.search(queries[i], 0, 0, GROUPS, null);
+                    long t = System.nanoTime();
+                    index.getConventions(found, 0, 10);
+                    latencies[i] = System.nanoTime() - t;
+                }
+            }
+        } catch (it.col.exception.AttributoNonValorizzatoException anve) {
+            throw new IllegalStateException(anve);
+        }
+        report("Pagina di 10", latencies);
+        if (p99 > maxP99Micros) {
+            System.out.printf("p99 della ricerca oltre il massimo di %d us%n", maxP99Micros);
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * <p>Ordina le latenze, ne stampa i percentili e restituisce il p99.</p>
+     *
+     * @param label     descrizione dell'operazione misurata
+     * @param latencies latenze in nanosecondi
+     * @return <code>long</code> - p99 in microsecondi
+     */
+    private static long report(String label,
+                               long[] latencies) {
+        Arrays.sort(latencies);
+        long p50 = latencies[latencies.length / 2] / 1000L;
+        long p99 = latencies[(int) (latencies.length * 0.99)] / 1000L;
+        long p999 = latencies[(int) (latencies.length * 0.999)] / 1000L;
+        long max = latencies[latencies.length - 1] / 1000L;
+        System.out.printf("%s: p50 %d us, p99 %d us, p99.9 %d us, max %d us%n", label, p50, p99, p999, max);
+        return p99;
+    }
+
+
+    /**
+     * <p>Genera il vocabolario sintetico: parole minuscole di 4-11 lettere.</p>
+     *
+     * @param random generatore di numeri casuali
+     * @return <code>String[]</code> - parole del vocabolario
+     */
+    private static String[] vocabulary(Random random) {
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 4 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words[i] = word.toString();
+        }
+        return words;
+    }
+
+
+    /**
+     * <p>Genera il documento di una convenzione sintetica.</p>
+     *
+     * @param id         id della convenzione
+     * @param vocabulary vocabolario sintetico
+     * @param random     generatore di numeri casuali
+     * @return <code>ConventionIndex.Document</code> - documento da indicizzare
+     */
+    private static ConventionIndex.Document document(int id,
+                                                     String[] vocabulary,
+                                                     Random random) {
+        Convenzione c = new Convenzione();
+        c.setId(id);
+        c.setTitolo(words(8, vocabulary, random));
+        c.setInformativa(words(30, vocabulary, random));
+        c.setNumRepertorio(id + "/2025");
+        c.setOrdinale(random.nextInt(10));
+        int[] scopes = { 1 + random.nextInt(6) };
+        int[] groups = { 1 + random.nextInt(GROUP_COUNT) };
+        String[] contractors = { vocabulary[random.nextInt(vocabulary.length)] + " srl" };
+        return new ConventionIndex.Document(c, id, 1 + random.nextInt(5), scopes, groups, contractors);
+    }
+
+
+    /**
+     * <p>Genera la ricerca i-esima, alternando tre forme di chiave.</p>
+     *
+     * @param i          numero della ricerca
+     * @param vocabulary vocabolario sintetico
+     * @param random     generatore di numeri casuali
+     * @return <code>String</code> - chiave/i di ricerca
+     */
+    private static String query(int i,
+                                String[] vocabulary,
+                                Random random) {
+        String word = vocabulary[random.nextInt(vocabulary.length)];
+        String other = vocabulary[random.nextInt(vocabulary.length)];
+        switch (i % 3) {
+            case 0:
+                return word.substring(0, 4) + ", " + other;
+            case 1:
+                return word;
+            default:
+                return word.substring(0, 3) + " " + other.substring(0, 3);
+        }
+    }
+
+
+    /**
+     * <p>Restituisce un testo di parole estratte dal vocabolario.</p>
+     *
+     * @param count      numero di parole
+     * @param vocabulary vocabolario sintetico
+     * @param random     generatore di numeri casuali
+     * @return <code>String</code> - parole separate da spazio
+     */
+    private static String words(int count,
+                                String[] vocabulary,
+                                Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int j = 0; j < count; j++) {
+            text.append(vocabulary[random.nextInt(vocabulary.length)]).append(' ');
+        }
+        return text.toString();
+    }
+
+}